@@ -0,0 +1,42 @@
+package eu.esonia.but.geoloc4d.benchmark;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.util.TopologyGenerator;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Round-trips of a node and of the whole synthetic network through their
+ * JSON representations.
+ *
+ * @author rychly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONBenchmark {
+
+    @Benchmark
+    public String nodeRoundTrip(final NetworkState network) throws JSONException {
+        return new Node(network.nodeRepresentation).toJSONString();
+    }
+
+    @Benchmark
+    public String nodeToJSONString(final NetworkState network) {
+        return network.mapOfNodes.get(TopologyGenerator.getID(0)).toJSONString();
+    }
+
+    @Benchmark
+    public MapOfNodes mapOfNodesFromJSONString(final NetworkState network) throws JSONException {
+        return new MapOfNodes(network.representation);
+    }
+
+    @Benchmark
+    public String mapOfNodesToJSONString(final NetworkState network) {
+        return network.mapOfNodes.toJSONString();
+    }
+}
@@ -0,0 +1,50 @@
+package eu.esonia.but.geoloc4d.benchmark;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.util.BatchLocaliser;
+import eu.esonia.but.geoloc4d.util.PartitionedLocaliser;
+import eu.esonia.but.geoloc4d.util.TrilaterationStrategy;
+import eu.esonia.but.geoloc4d.util.TrilaterationStrategyException;
+import eu.esonia.but.geoloc4d.util.TrilaterationStrategyFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Localisation of the whole synthetic network in partitions by parallel
+ * workers (a single partition is the localisation in waves).
+ *
+ * @author rychly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LocaliserBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int partitions;
+    private PartitionedLocaliser localiser;
+    private MapOfNodes mapOfNodes;
+
+    @Setup(Level.Trial)
+    public void setUp(final NetworkState network) throws TrilaterationStrategyException {
+        TrilaterationStrategy strategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        strategy.calibrateMetric(network.mapOfNodes);
+        this.localiser = new PartitionedLocaliser(strategy, this.partitions);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpNodes(final NetworkState network) throws JSONException {
+        // the localisation sets locations of the nodes, so each invocation needs a new network
+        this.mapOfNodes = new MapOfNodes(network.representation);
+    }
+
+    @Benchmark
+    public Map<String, BatchLocaliser.NodeResult> localise() throws TrilaterationStrategyException {
+        return this.localiser.localise(this.mapOfNodes);
+    }
+}
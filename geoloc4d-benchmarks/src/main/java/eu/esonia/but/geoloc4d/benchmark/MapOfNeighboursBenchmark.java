@@ -0,0 +1,53 @@
+package eu.esonia.but.geoloc4d.benchmark;
+
+import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.util.NeighbourQuery;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Filtering and sorting of neighbours in scans of all nodes of the synthetic
+ * network.
+ *
+ * @author rychly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapOfNeighboursBenchmark {
+
+    @Benchmark
+    public void getNodesWithDistance(final NetworkState network, final Blackhole blackhole) {
+        for (Node node : network.mapOfNodes.values()) {
+            blackhole.consume(node.getScan().getNodesWithDistance(node.getInfo().getLocationAbsolute(), true, false));
+        }
+    }
+
+    @Benchmark
+    public void queryWithDistance(final NetworkState network, final Blackhole blackhole) {
+        NeighbourQuery query = new NeighbourQuery().withRssi();
+        for (Node node : network.mapOfNodes.values()) {
+            blackhole.consume(query.from(node.getScan()).withDistance(node.getInfo().getLocationAbsolute()).evaluate());
+        }
+    }
+
+    @Benchmark
+    public void sortByIsolation(final NetworkState network, final Blackhole blackhole) {
+        for (Node node : network.mapOfNodes.values()) {
+            MapOfNeighbours neighbours = node.getScan().getNodesWithLocation();
+            blackhole.consume(neighbours.sortByIsolation());
+        }
+    }
+
+    @Benchmark
+    public void sortByIsolationApproximate(final NetworkState network, final Blackhole blackhole) {
+        for (Node node : network.mapOfNodes.values()) {
+            MapOfNeighbours neighbours = node.getScan().getNodesWithLocation();
+            blackhole.consume(neighbours.sortByIsolation(false, false));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package eu.esonia.but.geoloc4d.benchmark;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.NodeStore;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import eu.esonia.but.geoloc4d.util.TopologyGenerator;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A synthetic network of nodes shared by the benchmarks and parameterised by
+ * the number of nodes and the number of neighbours of each node.
+ *
+ * @author rychly
+ */
+@State(Scope.Benchmark)
+public class NetworkState {
+
+    /**
+     * Ratio of the anchors (the nodes with known locations).
+     */
+    public static final double ANCHOR_RATIO = 0.25;
+    /**
+     * Seed of the generator, so all runs benchmark the same network.
+     */
+    public static final long SEED = 20100101L;
+    /**
+     * Average distance in meters of the nearest nodes.
+     */
+    public static final double SPACING = 10;
+    @Param({"100", "1000", "10000"})
+    public int networkSize;
+    @Param({"8", "16", "32"})
+    public int degree;
+    /**
+     * The network as a map of nodes with locations of neighbours set from
+     * the anchors.
+     */
+    public MapOfNodes mapOfNodes;
+    /**
+     * The network as a columnar store of nodes.
+     */
+    public NodeStore nodeStore;
+    /**
+     * JSON representation of the network.
+     */
+    public String representation;
+    /**
+     * JSON representation of the first node of the network.
+     */
+    public String nodeRepresentation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TopologyGenerator generator = new TopologyGenerator(SEED);
+        generator.setNodeCount(this.networkSize);
+        generator.setAnchorRatio(ANCHOR_RATIO);
+        // the nodes are spread with the same density regardless of their count
+        double side = Math.cbrt(this.networkSize) * SPACING;
+        generator.setBounds(new Vector3D(0, 0, 0), new Vector3D(side, side, side));
+        // the nearest nodes are the neighbours regardless of their distance
+        generator.setRadioRange(2 * side);
+        generator.setMaxNeighbours(this.degree);
+        this.mapOfNodes = generator.generate();
+        this.nodeStore = new NodeStore(this.mapOfNodes);
+        for (Node node : this.mapOfNodes.values()) {
+            node.getScan().setLocationsFromNodes(this.mapOfNodes);
+        }
+        this.representation = this.mapOfNodes.toJSONString();
+        this.nodeRepresentation = this.mapOfNodes.get(TopologyGenerator.getID(0)).toJSONString();
+    }
+}
@@ -0,0 +1,98 @@
+package eu.esonia.but.geoloc4d.benchmark;
+
+import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.util.PreparedNodes;
+import eu.esonia.but.geoloc4d.util.TrilaterationStrategy;
+import eu.esonia.but.geoloc4d.util.TrilaterationStrategyException;
+import eu.esonia.but.geoloc4d.util.TrilaterationStrategyFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Calibration of the metric and preparation of neighbours for trilateration
+ * in both strategies on the whole synthetic network.
+ *
+ * @author rychly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StrategyBenchmark {
+
+    @Param({"RSSI", "RTT"})
+    public String metric;
+    private TrilaterationStrategy strategy;
+    private PreparedNodes preparedNodes;
+
+    private TrilaterationStrategy newStrategy() {
+        return "RSSI".equals(this.metric)
+                ? TrilaterationStrategyFactory.newStrategyWithRSSI()
+                : TrilaterationStrategyFactory.newStrategyWithRTT();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(final NetworkState network) throws TrilaterationStrategyException {
+        this.strategy = this.newStrategy();
+        this.strategy.calibrateMetric(network.mapOfNodes);
+        this.preparedNodes = new PreparedNodes();
+    }
+
+    @Benchmark
+    public TrilaterationStrategy calibrateMetricOfMapOfNodes(final NetworkState network)
+            throws TrilaterationStrategyException {
+        TrilaterationStrategy result = this.newStrategy();
+        result.calibrateMetric(network.mapOfNodes);
+        return result;
+    }
+
+    @Benchmark
+    public TrilaterationStrategy calibrateMetricOfNodeStore(final NetworkState network)
+            throws TrilaterationStrategyException {
+        TrilaterationStrategy result = this.newStrategy();
+        result.calibrateMetric(network.nodeStore);
+        return result;
+    }
+
+    @Benchmark
+    public int prepareNodesOfMapOfNodes(final NetworkState network, final Blackhole blackhole) {
+        int count = 0;
+        for (Node node : network.mapOfNodes.values()) {
+            if (node.getInfo().isAbsolutelyLocalised()) {
+                continue;
+            }
+            try {
+                MapOfNeighbours prepared = this.strategy.prepareNodesForTrilateration(node.getInfo(), node.getScan());
+                blackhole.consume(prepared);
+                count++;
+            }
+            catch (TrilaterationStrategyException ex) {
+                // skip the nodes without enough localised neighbours
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int prepareNodesOfNodeStore(final NetworkState network) {
+        int count = 0;
+        for (int position = 0; position < network.nodeStore.nodeCount(); position++) {
+            int node = network.nodeStore.getNodeIndex(position);
+            if (network.nodeStore.isAbsolutelyLocalised(node)) {
+                continue;
+            }
+            try {
+                this.strategy.prepareNodesForTrilateration(network.nodeStore, node, this.preparedNodes);
+                count += this.preparedNodes.getCount();
+            }
+            catch (TrilaterationStrategyException ex) {
+                // skip the nodes without enough localised neighbours
+            }
+        }
+        return count;
+    }
+}
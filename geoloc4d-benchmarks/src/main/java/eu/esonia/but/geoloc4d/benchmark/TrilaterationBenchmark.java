@@ -0,0 +1,65 @@
+package eu.esonia.but.geoloc4d.benchmark;
+
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
+import eu.esonia.but.geoloc4d.util.WirelessMetric;
+import eu.esonia.but.geoloc4d.util.WirelessMetricException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Comparison of the trilateration on {@link Vector3D} objects and on primitive
+ * coordinates by {@link Vector3DMath}.
+ *
+ * @author rychly
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TrilaterationBenchmark {
+
+    private Vector3D nodeA, nodeB, nodeC, nodeD;
+    private double distanceA, distanceB, distanceC, distanceD;
+    private double[] locations;
+    private double[] distances;
+    private double[] workspace;
+    private double[] result;
+
+    @Setup
+    public void setUp() {
+        Vector3D blindNode = new Vector3D(1.5, 2.5, 3.5);
+        this.nodeA = new Vector3D(10, 0, 0);
+        this.nodeB = new Vector3D(0, 20, 0);
+        this.nodeC = new Vector3D(0, 0, 10);
+        this.nodeD = new Vector3D(20, 0, 0);
+        this.distanceA = this.nodeA.distance(blindNode);
+        this.distanceB = this.nodeB.distance(blindNode);
+        this.distanceC = this.nodeC.distance(blindNode);
+        this.distanceD = this.nodeD.distance(blindNode);
+        this.locations = new double[4 * Vector3DMath.SIZE];
+        this.nodeA.copyTo(this.locations, 0);
+        this.nodeB.copyTo(this.locations, Vector3DMath.SIZE);
+        this.nodeC.copyTo(this.locations, 2 * Vector3DMath.SIZE);
+        this.nodeD.copyTo(this.locations, 3 * Vector3DMath.SIZE);
+        this.distances = new double[]{this.distanceA, this.distanceB, this.distanceC, this.distanceD};
+        this.workspace = new double[WirelessMetric.TRILATERATION3D_WORKSPACE];
+        this.result = new double[Vector3DMath.SIZE];
+    }
+
+    @Benchmark
+    public Vector3D trilaterationOfVector3D() throws WirelessMetricException {
+        return WirelessMetric.trilateration3D(
+                this.nodeA, this.distanceA, this.nodeB, this.distanceB,
+                this.nodeC, this.distanceC, this.nodeD, this.distanceD);
+    }
+
+    @Benchmark
+    public double[] trilaterationOfPrimitives() throws WirelessMetricException {
+        WirelessMetric.trilateration3D(this.locations, this.distances, 0, 1, 2, 3,
+                this.workspace, this.result, 0);
+        return this.result;
+    }
+}
@@ -24,7 +24,7 @@ public class DPWSAssetServiceSimulator {
         // Check parameters
         // To enable multicast on loopback interface do "ifconfig lo multicast"
         if (args.length != 4) {
-            System.err.println("Usage: java " + DPWSAssetServiceSimulator.class.getName() + " <hostname> <port> <path/> <services.properties>");
+            System.err.println("Usage: java " + DPWSAssetServiceSimulator.class.getName() + " <hostname> <port> <path/> <services.json|services.snapshot>");
             System.exit(-1);
         }
 
@@ -2,20 +2,12 @@ package eu.esonia.but.geoloc4d;
 
 import eu.esonia.but.geoloc4d.dpws.NodeServiceDetector;
 import eu.esonia.but.geoloc4d.dpws.NodeServiceDetectorHeartbeat;
-import eu.esonia.but.geoloc4d.dpws.NodeServiceInterface;
 import eu.esonia.but.geoloc4d.dpws.NodeServiceProxy;
-import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
-import eu.esonia.but.geoloc4d.type.MapOfNodes;
-import eu.esonia.but.geoloc4d.type.NodeData;
 import eu.esonia.but.geoloc4d.type.Vector3D;
 import eu.esonia.but.geoloc4d.util.*;
-import java.util.List;
-import org.json.JSONArray;
+import java.util.Map;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.ws4d.java.DPWSFramework;
-import org.ws4d.java.communication.TimeoutException;
-import org.ws4d.java.service.InvocationException;
 import org.ws4d.java.util.Log;
 
 /**
@@ -28,10 +20,19 @@ public class DPWSSpatialContextProvider {
     public static void main(final String[] args) throws InterruptedException, JSONException {
         // Check parameters
         // To enable multicast on loopback interface do "ifconfig lo multicast"
-        if (args.length != 1) {
-            System.err.println("Usage: java " + DPWSSpatialContextProvider.class.getName() + " [rssi-startegy|rtt-strategy]");
+        if (( args.length != 1 ) && ( args.length != 3 )) {
+            System.err.println("Usage: java " + DPWSSpatialContextProvider.class.getName() + " [rssi-startegy|rtt-strategy|rssi-multilateration|rtt-multilateration] [-idle-timeout <seconds>]");
             System.exit(-1);
         }
+        // the localisation terminates after 10 minutes without progress (0 for never)
+        long idleTimeout = 600;
+        if (args.length == 3) {
+            if (!args[1].equalsIgnoreCase("-idle-timeout")) {
+                System.err.println("!!! Unknown option '" + args[1] + "'!");
+                System.exit(-1);
+            }
+            idleTimeout = Long.parseLong(args[2]);
+        }
 
         // Start DPWSFramework without any properties file (e.g. bindings and metadata for device and services)
         System.out.println("=== Starting DPWS framework...");
@@ -40,7 +41,9 @@ public class DPWSSpatialContextProvider {
 
         // Create DPWS client, its heartbeat and periodically search for available services
         System.out.println("=== Starting service detector...");
-        NodeServiceDetector nodeServiceDetector = new NodeServiceDetector();
+        final NodeServiceDetector nodeServiceDetector = new NodeServiceDetector();
+        nodeServiceDetector.setParallelism(16);
+        nodeServiceDetector.setTimeout(10000);
         NodeServiceDetectorHeartbeat nodeServiceDetectorHeartbeat =
                 new NodeServiceDetectorHeartbeat(nodeServiceDetector);
         nodeServiceDetectorHeartbeat.schedule(10000);
@@ -52,34 +55,69 @@ public class DPWSSpatialContextProvider {
             trilaterationStrategy = TrilaterationStrategyFactory.newStrategyWithRSSI();
         } else if (args[0].equalsIgnoreCase("rtt-strategy")) {
             trilaterationStrategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        } else if (args[0].equalsIgnoreCase("rssi-multilateration")) {
+            trilaterationStrategy = TrilaterationStrategyFactory.newMultilaterationStrategyWithRSSI(
+                    MultilaterationSolver.Refinement.LEVENBERG_MARQUARDT);
+        } else if (args[0].equalsIgnoreCase("rtt-multilateration")) {
+            trilaterationStrategy = TrilaterationStrategyFactory.newMultilaterationStrategyWithRTT(
+                    MultilaterationSolver.Refinement.LEVENBERG_MARQUARDT);
         } else {
             System.err.println("!!! Unknown trilateration strategy '" + args[0] + "'!");
             System.exit(-2);
         }
 
-        // Calibrate the strategy's metric
-        while (!trilaterationStrategy.isCalibrated()) {
-            System.out.println("=== Calibrate the trilateration strategy's metric...");
-            Thread.sleep(1000);
-            try {
-                MapOfNodes mapOfNodes = nodeServiceDetector.getMapOfNodesForDetectedServices(true);
-                System.out.println("=== the calibration will be performed for nodes:\n"
-                        + mapOfNodes.toString());
-                trilaterationStrategy.calibrateMetric(mapOfNodes);
-            }
-            catch (InvocationException ex) {
-                // service error will be ignored -- next time, the network may be ready
-                System.err.println("!!! exception: " + ex.toString());
-            }
-            catch (TimeoutException ex) {
-                // service error will be ignored -- next time, the network may be ready
-                System.err.println("!!! exception: " + ex.toString());
-            }
-            catch (TrilaterationStrategyException ex) {
+        // Calibrate and localise the nodes in rounds, a round is delayed while nothing changes
+        LocalisationScheduler<NodeServiceProxy> localisationScheduler = new LocalisationScheduler<>(
+                new LocalisationScheduler.Transport<NodeServiceProxy>() {
+
+                    @Override
+                    public GatheredNodes<NodeServiceProxy> gatherNodes() {
+                        // get actually detected the nodes' services and their nodes (all at once)
+                        GatheredNodes<NodeServiceProxy> gatheredNodes = nodeServiceDetector.getMapOfNodesForDetectedServices(true);
+                        for (Map.Entry<NodeServiceProxy, Exception> pair : gatheredNodes.getErrors().entrySet()) {
+                            // service error will be ignored -- we will try it next time
+                            System.err.println("!!! exception of service " + pair.getKey() + ": " + pair.getValue().toString());
+                        }
+                        return gatheredNodes;
+                    }
+
+                    @Override
+                    public Map<String, Exception> postLocationsAbsolute(final GatheredNodes<NodeServiceProxy> gatheredNodes,
+                            final Map<String, Vector3D> locations) {
+                        return nodeServiceDetector.setLocationsAbsolute(gatheredNodes, locations);
+                    }
+                }, trilaterationStrategy);
+        localisationScheduler.setDelays(1000, 30000);
+        localisationScheduler.setIdleTimeout(idleTimeout * 1000);
+        localisationScheduler.setListener(new LocalisationScheduler.Listener() {
+
+            @Override
+            public void calibrationFailed(final TrilaterationStrategyException ex) {
                 // calibration error will be ignored -- next time, there may be enought nodes
                 System.err.println("!!! exception: " + ex.toString());
             }
-        }
+
+            @Override
+            public void roundCompleted(final int round, final Map<String, BatchLocaliser.NodeResult> results,
+                    final Map<String, Exception> errors) {
+                System.out.println("=== Performed trilateration of " + results.size() + " changed nodes in round " + round);
+                for (Map.Entry<String, BatchLocaliser.NodeResult> pair : results.entrySet()) {
+                    BatchLocaliser.NodeResult result = pair.getValue();
+                    if (result.getStatus() == BatchLocaliser.Status.LOCALISED) {
+                        System.out.println("=== the node's " + pair.getKey() + " location will be set to the trilateration's result: " + result.getLocation().toString());
+                    } else {
+                        // trilateration error will be ignored -- we will try it after a change of the node
+                        System.err.println("!!! the node " + pair.getKey() + " cannot be localised: " + result.getMessage());
+                    }
+                }
+                for (Map.Entry<String, Exception> pair : errors.entrySet()) {
+                    // service error will be ignored -- we will try it next time
+                    System.err.println("!!! exception of node " + pair.getKey() + ": " + pair.getValue().toString());
+                }
+            }
+        });
+        System.out.println("=== Calibrate the trilateration strategy's metric...");
+        localisationScheduler.calibrate();
         System.out.println("=== The trilateration strategy has calibrated metric:");
         if (trilaterationStrategy instanceof StrategyWithRSSI) {
             System.out.println(
@@ -96,71 +134,20 @@ public class DPWSSpatialContextProvider {
                     "=== an unknown implementation of the strategy!");
         }
 
-        // Localise all detected nodes
-        List<NodeServiceProxy> services;
-        boolean completelyLocalised;
-        do {
-            System.out.println("=== Performing trilateration of detected nodes...");
-            // nodes can be completely localised only if there are some
-            //completelyLocalised = !((services == null) || services.isEmpty());
-            completelyLocalised = false; // infinite loop for debuging
-            // get actually detected the nodes' services
-            services = nodeServiceDetector.getDetectedServices();
-            for (NodeServiceInterface service : services) {
-                System.out.println("=== found a node's service: " + service.toString());
-                try {
-                    // get data of node and check if it is localised
-                    NodeData nodeData = new NodeData(new JSONObject(service.getInfo()));
-                    System.out.println("=== the service represents node: " + nodeData.getID());
-                    if (nodeData.isAbsolutelyLocalised()) {
-                        // if it is localised, print its location
-                        System.out.println("=== the node is localised as: " + nodeData.getLocationAbsolute().toString());
-                    } else {
-                        // if not, get scan of its neighbours and perform trilateration
-                        System.out.println("=== the node is not localised, locating its neighbours...");
-                        MapOfNeighbours nodeNeighbours = new MapOfNeighbours(new JSONArray(service.getScan()));
-                        nodeNeighbours.setLocationsFromNodes(nodeServiceDetector.getMapOfNodesForDetectedServices(false));
-                        System.out.println("=== preparing for the node's trilateration with neighbours:\n" + nodeNeighbours.toString());
-                        MapOfNeighbours selectedNeighbours =
-                                trilaterationStrategy.prepareNodesForTrilateration(nodeData, nodeNeighbours);
-                        System.out.println("=== the trilateration will be performed with nodes:\n" + selectedNeighbours.toString());
-                        Vector3D newLocation =
-                                trilaterationStrategy.doTrilateration(selectedNeighbours);
-                        System.out.println("=== the node's location will be set to the trilateration's result: " + newLocation.toString());
-                        // finally, set trilateration result as the node's location
-                        service.setLocationAbsolute(newLocation.toJSONString());
-                    }
-                }
-                catch (InvocationException ex) {
-                    // service error will be ignored -- we will try it next time
-                    System.err.println("!!! exception: " + ex.toString());
-                    completelyLocalised = false;
-                }
-                catch (TimeoutException ex) {
-                    // service error will be ignored -- we will try it next time
-                    System.err.println("!!! exception: " + ex.toString());
-                    completelyLocalised = false;
-                }
-                catch (TrilaterationStrategyException ex) {
-                    // trilateration error will be ignored -- we will try it next time
-                    System.err.println("!!! exception: " + ex.toString());
-                    completelyLocalised = false;
-                }
-            }
-            Thread.sleep(3000);
-        } while (!completelyLocalised);
-        try {
-            // Print all nodes including their locations
-            System.out.println("=== Localised nodes (without scan of their neighbours):\n"
-                    + nodeServiceDetector.getMapOfNodesForDetectedServices(false).toString());
+        // Localise all detected nodes, until all of them are localised or there is no progress
+        System.out.println("=== Performing trilateration of detected nodes...");
+        if (!localisationScheduler.run()) {
+            System.err.println("!!! Some nodes have not been localised in " + idleTimeout + " seconds without progress!");
         }
-        catch (InvocationException ex) {
-            System.err.println("!!! exception: " + ex.toString());
+        nodeServiceDetectorHeartbeat.stop();
+        // Print all nodes including their locations
+        GatheredNodes<NodeServiceProxy> gatheredNodes = nodeServiceDetector.getMapOfNodesForDetectedServices(false);
+        System.out.println("=== Localised nodes (without scan of their neighbours):\n"
+                + gatheredNodes.getMapOfNodes().toString());
+        if (!gatheredNodes.isComplete()) {
+            System.err.println("!!! exception: " + gatheredNodes.getErrors().toString());
             System.exit(-2);
         }
-        catch (TimeoutException ex) {
-            System.err.println("!!! exception: " + ex.toString());
-            System.exit(-3);
-        }
+        DPWSFramework.stop();
     }
 }
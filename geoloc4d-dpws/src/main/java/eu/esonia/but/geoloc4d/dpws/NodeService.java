@@ -3,6 +3,7 @@ package eu.esonia.but.geoloc4d.dpws;
 import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
 import eu.esonia.but.geoloc4d.type.Node;
 import eu.esonia.but.geoloc4d.type.NodeData;
+import eu.esonia.but.geoloc4d.type.SharedNode;
 import eu.esonia.but.geoloc4d.type.Vector3D;
 import org.json.JSONException;
 import org.ws4d.java.communication.TimeoutException;
@@ -17,6 +18,9 @@ import org.ws4d.java.util.ParameterUtil;
 
 /**
  * Service of DPWS representing a network node and its data (e.g. location).
+ * The node is held by a {@link SharedNode} (which can be shared with other
+ * services), so the operations are served from immutable snapshots of the
+ * node without locking.
  *
  * @author rychly
  */
@@ -29,7 +33,7 @@ public class NodeService extends DefaultService implements NodeServiceInterface
     /**
      * Data of node where is service
      */
-    private Node node;
+    private SharedNode node;
 
     /**
      * Construct NodeService object from a node of a network with geolocation
@@ -42,6 +46,16 @@ public class NodeService extends DefaultService implements NodeServiceInterface
         this(-1, serviceNode);
     }
 
+    /**
+     * Construct NodeService object from a shared node of a network with
+     * geolocation ability.
+     *
+     * @param serviceNode the shared node to construct from
+     */
+    public NodeService(SharedNode serviceNode) {
+        this(-1, serviceNode);
+    }
+
     /**
      * Construct NodeService object from a node of a network with geolocation
      * ability and configuration with given ID.
@@ -50,6 +64,17 @@ public class NodeService extends DefaultService implements NodeServiceInterface
      * @param serviceNode the node to construct from
      */
     public NodeService(int serviceConfigID, Node serviceNode) {
+        this(serviceConfigID, new SharedNode(serviceNode));
+    }
+
+    /**
+     * Construct NodeService object from a shared node of a network with
+     * geolocation ability and configuration with given ID.
+     *
+     * @param serviceConfigID ID of the service's configuration (-1 to ignore)
+     * @param serviceNode the shared node to construct from
+     */
+    public NodeService(int serviceConfigID, SharedNode serviceNode) {
         // if (id == -1) then do configure this service from config. file
         super(serviceConfigID);
         // init properties
@@ -95,17 +120,17 @@ public class NodeService extends DefaultService implements NodeServiceInterface
 
     @Override
     public String getInfo() {
-        return this.node.getInfo().toJSONString();
+        return this.node.getSnapshot().getInfoJSONString();
     }
 
     @Override
     public String getScan() {
-        return this.node.getScan().toJSONString();
+        return this.node.getSnapshot().getScanJSONString();
     }
 
     @Override
     public void setLocationAbsolute(String location) throws JSONException {
-        this.node.getInfo().setLocationAbsolute(new Vector3D(location));
+        this.node.setLocationAbsolute(new Vector3D(location));
     }
 
     /**
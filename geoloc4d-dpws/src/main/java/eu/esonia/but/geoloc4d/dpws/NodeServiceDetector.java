@@ -1,10 +1,14 @@
 package eu.esonia.but.geoloc4d.dpws;
 
-import eu.esonia.but.geoloc4d.type.MapOfNodes;
 import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import eu.esonia.but.geoloc4d.util.GatheredNodes;
+import eu.esonia.but.geoloc4d.util.ParallelNodeFetcher;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import org.json.JSONException;
 import org.ws4d.java.client.DefaultClient;
@@ -32,6 +36,20 @@ public class NodeServiceDetector extends DefaultClient {
      * The actual number of time-outs.
      */
     private int numberOfTimeOuts;
+    /**
+     * Maximal number of concurrent invocations of the services.
+     */
+    private int parallelism = 1;
+    /**
+     * Time in milliseconds for getting all nodes of detected services (0 for
+     * unlimited).
+     */
+    private long timeout = 0;
+    /**
+     * Fetcher of nodes of detected services with the actual parallelism and time (it
+     * holds its threads for all the fetches).
+     */
+    private ParallelNodeFetcher fetcher = new ParallelNodeFetcher(1, 0);
 
     /**
      * Nonparametric constructor.
@@ -112,24 +130,99 @@ public class NodeServiceDetector extends DefaultClient {
     }
 
     /**
-     * Get a map of all nodes of actually available (detected) services.
+     * Get the maximal number of concurrent invocations of the services.
+     *
+     * @return the maximal number of concurrent invocations
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Set the maximal number of concurrent invocations of the services when
+     * getting their nodes.
+     *
+     * @param parallelism the maximal number of concurrent invocations
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be a positive value!");
+        }
+        this.parallelism = parallelism;
+        this.fetcher = new ParallelNodeFetcher(this.parallelism, this.timeout);
+    }
+
+    /**
+     * Get the time for getting all nodes of detected services.
+     *
+     * @return the time in milliseconds (0 for unlimited)
+     */
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Set the time for getting all nodes of detected services, the services
+     * which do not respond in the time are reported as failed.
+     *
+     * @param timeout the time in milliseconds (0 for unlimited)
+     */
+    public void setTimeout(final long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout must be a non-negative value!");
+        }
+        this.timeout = timeout;
+        this.fetcher = new ParallelNodeFetcher(this.parallelism, this.timeout);
+    }
+
+    /**
+     * Get a map of all nodes of actually available (detected) services. The
+     * services are invoked concurrently (see {@link #setParallelism(int)} and
+     * {@link #setTimeout(long)}) and the services which fail (e.g. due to a
+     * declared fault of the operation, a time-out of the invocation, or an
+     * error in parsing of JSON string representation) are reported without
+     * affecting the nodes of the other services.
      *
      * @param includingNeighbours query also neighbours of the services' nodes
-     * @return the map of nodes of detected services
-     * @throws InvocationException thrown to indicate that a declared fault
-     * occurred during execution of this operation's business logic; clients can
-     * extract further fault-related information from this exception, such as
-     * user-defined data attached to it
-     * @throws TimeoutException in case invoking an operation of a remote
-     * service times out
-     * @throws JSONException error in parsing of JSON string representation
-     */
-    public MapOfNodes getMapOfNodesForDetectedServices(boolean includingNeighbours) throws InvocationException, TimeoutException, JSONException {
-        MapOfNodes result = new MapOfNodes();
+     * @return the map of nodes of detected services, their services, and
+     * errors of the failed services
+     */
+    public GatheredNodes<NodeServiceProxy> getMapOfNodesForDetectedServices(final boolean includingNeighbours) {
         // detectedServices cannot be accessed direcly due to cuncurrency, so we use thread-safe getDetectedServices()
-        for (NodeServiceProxy nodeServiceProxy : this.getDetectedServices()) {
-            Node node = nodeServiceProxy.getNodeObject(includingNeighbours);
-            result.put(node.getInfo().getID(), node);
+        return this.fetcher.fetch(this.getDetectedServices(),
+                new ParallelNodeFetcher.Fetch<NodeServiceProxy>() {
+
+                    @Override
+                    public Node fetch(final NodeServiceProxy nodeServiceProxy)
+                            throws InvocationException, TimeoutException, JSONException {
+                        return nodeServiceProxy.getNodeObject(includingNeighbours);
+                    }
+                });
+    }
+
+    /**
+     * Set locations of nodes of detected services.
+     *
+     * @param gatheredNodes the nodes and their services
+     * @param locations the locations to set by the nodes' IDs
+     * @return errors of the nodes whose locations have not been set by the
+     * nodes' IDs
+     */
+    public Map<String, Exception> setLocationsAbsolute(final GatheredNodes<NodeServiceProxy> gatheredNodes,
+            final Map<String, Vector3D> locations) {
+        Map<String, Exception> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Vector3D> pair : locations.entrySet()) {
+            NodeServiceProxy nodeServiceProxy = gatheredNodes.getSource(pair.getKey());
+            if (nodeServiceProxy == null) {
+                result.put(pair.getKey(), new IllegalArgumentException("The node has not been detected!"));
+                continue;
+            }
+            try {
+                nodeServiceProxy.setLocationAbsolute(pair.getValue());
+            }
+            catch (InvocationException | TimeoutException ex) {
+                result.put(pair.getKey(), ex);
+            }
         }
         return result;
     }
@@ -0,0 +1,181 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Nodes of a network with a spatial index of their localised nodes. The index
+ * is updated incrementally on changes of the nodes by {@link #put(java.lang.String, eu.esonia.but.geoloc4d.type.Node)}
+ * and {@link #remove(java.lang.String)}, and on changes of the nodes' absolute
+ * locations by {@link NodeData#setLocationAbsolute(eu.esonia.but.geoloc4d.type.Vector3D)}
+ * (the index listens to the nodes). The nodes can be read by an unmodifiable
+ * view only, so they cannot be changed bypassing the index.
+ *
+ * The index listens to the nodes until {@link #close()}, so the indexed nodes
+ * should be closed when they are not needed any more (e.g. when the nodes are
+ * indexed again).
+ *
+ * @author rychly
+ */
+public final class IndexedNodes implements Closeable {
+
+    /**
+     * The indexed nodes (a copy of a map, not of the nodes).
+     */
+    private final MapOfNodes nodes;
+    /**
+     * The unmodifiable view of the indexed nodes.
+     */
+    private final Map<String, Node> view;
+    private final SpatialIndex spatialIndex;
+    private boolean closed = false;
+
+    /**
+     * Index nodes of a map. The map is copied, so its later changes are not
+     * indexed, but the nodes are not copied, so the changes of their absolute
+     * locations are indexed.
+     *
+     * @param mapOfNodes the map of the nodes to index
+     */
+    public IndexedNodes(final MapOfNodes mapOfNodes) {
+        this.nodes = new MapOfNodes(mapOfNodes);
+        this.view = Collections.unmodifiableMap(this.nodes);
+        this.spatialIndex = new SpatialIndex(SpatialIndex.estimateCellSize(this.nodes), true);
+        // the index listens before it is populated, so no concurrent change of a location is lost
+        for (Node node : this.nodes.values()) {
+            node.getInfo().addLocationListener(this.spatialIndex);
+        }
+        for (Node node : this.nodes.values()) {
+            this.spatialIndex.locationChanged(node.getInfo(), null);
+        }
+    }
+
+    /**
+     * Get the unmodifiable view of the indexed nodes by their IDs. The view
+     * must not be iterated concurrently with changes of the nodes.
+     *
+     * @return the view of the nodes
+     */
+    public Map<String, Node> getNodes() {
+        return this.view;
+    }
+
+    /**
+     * Get the spatial index of the localised nodes.
+     *
+     * @return the spatial index
+     */
+    public SpatialIndex getSpatialIndex() {
+        return this.spatialIndex;
+    }
+
+    /**
+     * Put a node into the indexed nodes or replace a node of the same ID.
+     *
+     * @param id the ID of the node
+     * @param node the node
+     * @return the replaced node or null
+     * @throws IllegalStateException the indexed nodes have been closed
+     */
+    public synchronized Node put(final String id, final Node node) {
+        this.checkOpen();
+        Node oldNode = this.nodes.put(id, node);
+        this.unindexNode(oldNode);
+        node.getInfo().addLocationListener(this.spatialIndex);
+        this.spatialIndex.locationChanged(node.getInfo(), null);
+        return oldNode;
+    }
+
+    /**
+     * Remove a node from the indexed nodes.
+     *
+     * @param id the ID of the node
+     * @return the removed node or null
+     * @throws IllegalStateException the indexed nodes have been closed
+     */
+    public synchronized Node remove(final String id) {
+        this.checkOpen();
+        Node oldNode = this.nodes.remove(id);
+        this.unindexNode(oldNode);
+        return oldNode;
+    }
+
+    private void checkOpen() {
+        if (this.closed) {
+            throw new IllegalStateException("The indexed nodes have been closed!");
+        }
+    }
+
+    private void unindexNode(final Node node) {
+        if (node != null) {
+            node.getInfo().removeLocationListener(this.spatialIndex);
+            this.spatialIndex.remove(node.getInfo().getID());
+        }
+    }
+
+    /**
+     * Stop the indexing, i.e. detach the index from the nodes. The nodes and
+     * the index can be read, but they are not changed any more.
+     */
+    @Override
+    public synchronized void close() {
+        if (!this.closed) {
+            for (Node node : this.nodes.values()) {
+                node.getInfo().removeLocationListener(this.spatialIndex);
+            }
+            this.closed = true;
+        }
+    }
+
+    private synchronized MapOfNodes getNodesByIDs(final List<String> ids) {
+        MapOfNodes result = new MapOfNodes();
+        for (String id : ids) {
+            Node node = this.nodes.get(id);
+            if (node != null) {
+                result.put(id, node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get k localised nodes nearest to a given point.
+     *
+     * @param point the point
+     * @param k maximal number of the nodes
+     * @return the map of the nodes ordered by their distance from the point
+     * (the nearest first)
+     */
+    public MapOfNodes getNearestLocalisedNodes(final Vector3D point, final int k) {
+        return this.getNodesByIDs(this.spatialIndex.getNearest(point, k));
+    }
+
+    /**
+     * Get localised nodes within a given distance from a given point.
+     *
+     * @param point the point
+     * @param radius the maximal distance from the point
+     * @return the map of the nodes
+     */
+    public MapOfNodes getLocalisedNodesWithinRadius(final Vector3D point, final double radius) {
+        return this.getNodesByIDs(this.spatialIndex.getWithinRadius(point, radius));
+    }
+
+    /**
+     * Get localised nodes in a given bounding box.
+     *
+     * @param min the corner of the box with minimal coordinates
+     * @param max the corner of the box with maximal coordinates
+     * @return the map of the nodes
+     */
+    public MapOfNodes getLocalisedNodesWithinBox(final Vector3D min, final Vector3D max) {
+        return this.getNodesByIDs(this.spatialIndex.getWithinBox(min, max));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.nodes.toString();
+    }
+}
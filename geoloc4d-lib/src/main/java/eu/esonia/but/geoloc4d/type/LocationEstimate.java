@@ -0,0 +1,234 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * Estimated absolute location of a node with its uncertainty, i.e. the
+ * location computed by the trilateration, the root mean square of residuals of
+ * distances of the anchors (neighbours used for the trilateration), the
+ * estimated covariance matrix of the location and the corresponding confidence
+ * radius, and IDs of the anchors. Immutable.
+ *
+ * @author rychly
+ */
+public final class LocationEstimate implements JSONString {
+
+    /**
+     * The estimated location.
+     */
+    private final Vector3D location;
+    /**
+     * Root mean square of residuals of distances of the anchors.
+     */
+    private final double residual;
+    /**
+     * Covariance matrix of the location (3x3 in row-major order), or null if
+     * it cannot be estimated.
+     */
+    private final double[] covariance;
+    /**
+     * IDs of the anchors.
+     */
+    private final List<String> anchors;
+
+    /**
+     * Create an estimate.
+     *
+     * @param location the estimated location (it is copied)
+     * @param residual the root mean square of residuals of distances of the
+     * anchors
+     * @param covariance the covariance matrix of the location (3x3 in
+     * row-major order, it is copied), or null if it cannot be estimated
+     * @param anchors the IDs of the anchors
+     */
+    public LocationEstimate(final Vector3D location, final double residual, final double[] covariance,
+            final List<String> anchors) {
+        if (( covariance != null ) && ( covariance.length != 9 )) {
+            throw new IllegalArgumentException("The covariance matrix must have 3x3 values!");
+        }
+        this.location = new Vector3D(location);
+        this.residual = residual;
+        this.covariance = ( covariance == null ) ? null : Arrays.copyOf(covariance, 9);
+        this.anchors = Collections.unmodifiableList(new ArrayList<>(anchors));
+    }
+
+    /**
+     * Constructor of an estimate from its string representation in JSON.
+     *
+     * @param representation string representation of the estimate
+     * @throws JSONException fail to parse the string representation in JSON
+     */
+    public LocationEstimate(final String representation) throws JSONException {
+        this(new JSONObject(representation));
+    }
+
+    /**
+     * Constructor of an estimate from its representation as JSONObject.
+     *
+     * @param representation representation of the estimate in JSONObject
+     * @throws JSONException fail to parse the representation in JSON
+     */
+    public LocationEstimate(final JSONObject representation) throws JSONException {
+        this.location = new Vector3D(representation.getJSONArray("location"));
+        this.residual = representation.optDouble("residual");
+        JSONArray array = representation.optJSONArray("covariance");
+        if (array != null) {
+            if (array.length() != 9) {
+                throw new JSONException("The covariance matrix must have 3x3 values!");
+            }
+            this.covariance = new double[9];
+            for (int i = 0; i < 9; i++) {
+                this.covariance[i] = array.getDouble(i);
+            }
+        } else {
+            this.covariance = null;
+        }
+        List<String> list = new ArrayList<>();
+        array = representation.optJSONArray("anchors");
+        if (array != null) {
+            for (int i = 0; i < array.length(); i++) {
+                list.add(array.getString(i));
+            }
+        }
+        this.anchors = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Get the estimated location. It should not be modified.
+     *
+     * @return the location
+     */
+    public Vector3D getLocation() {
+        return this.location;
+    }
+
+    /**
+     * Get root mean square of residuals of distances of the anchors, i.e. of
+     * differences of the distances of the location from the anchors and the
+     * measured distances.
+     *
+     * @return the root mean square of the residuals (NaN if unknown)
+     */
+    public double getResidual() {
+        return this.residual;
+    }
+
+    /**
+     * Get the covariance matrix of the location.
+     *
+     * @return copy of the covariance matrix (3x3 in row-major order) or null
+     * if it cannot be estimated
+     */
+    public double[] getCovariance() {
+        return ( this.covariance == null ) ? null : Arrays.copyOf(this.covariance, 9);
+    }
+
+    /**
+     * Get the confidence radius of the location, i.e. the distance root mean
+     * square error computed as the square root of trace of the covariance
+     * matrix.
+     *
+     * @return the confidence radius or NaN if the covariance cannot be
+     * estimated
+     */
+    public double getConfidenceRadius() {
+        if (this.covariance == null) {
+            return Double.NaN;
+        }
+        return Math.sqrt(Math.max(0, this.covariance[0] + this.covariance[4] + this.covariance[8]));
+    }
+
+    /**
+     * Check if the location is at the least as precise as required, so there
+     * is no need to localise the node again.
+     *
+     * @param confidenceRadius the required confidence radius
+     * @return true iff the confidence radius is known and it is not greater
+     * than the required one
+     */
+    public boolean isPrecise(final double confidenceRadius) {
+        return this.getConfidenceRadius() <= confidenceRadius;
+    }
+
+    /**
+     * Get IDs of the anchors used for the estimate.
+     *
+     * @return the unmodifiable list of the IDs
+     */
+    public List<String> getAnchors() {
+        return this.anchors;
+    }
+
+    public JSONObject toJSONObject() {
+        try {
+            JSONObject result = new JSONObject();
+            result.put("location", this.location.toJSONArray());
+            if (!Double.isNaN(this.residual) && !Double.isInfinite(this.residual)) {
+                result.put("residual", this.residual);
+            }
+            double confidenceRadius = this.getConfidenceRadius();
+            if (!Double.isNaN(confidenceRadius) && !Double.isInfinite(confidenceRadius)) {
+                JSONArray array = new JSONArray();
+                for (double value : this.covariance) {
+                    array.put(value);
+                }
+                result.put("covariance", array);
+                result.put("confidenceRadius", confidenceRadius);
+            }
+            result.put("anchors", new JSONArray(this.anchors));
+            return result;
+            // e.g. {"location":[1,2,3],"residual":0.5,"covariance":[...],"confidenceRadius":0.8,"anchors":["nodeA",...]}
+        }
+        catch (JSONException ex) {
+            throw new RuntimeException("Impossible, the value cannot be a non-finite number!", ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return this.toJSONObject().toString(1);
+        }
+        catch (JSONException ex) {
+            throw new RuntimeException("Impossible, the value cannot be an invalid number!", ex);
+        }
+    }
+
+    @Override
+    public String toJSONString() {
+        return this.toJSONObject().toString();
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+        if (this == object) {
+            return true;
+        } else if (!( object instanceof LocationEstimate )) {
+            return false;
+        } else {
+            LocationEstimate locationEstimate = (LocationEstimate) object;
+            return this.location.equals(locationEstimate.location)
+                    && ( Double.compare(this.residual, locationEstimate.residual) == 0 )
+                    && Arrays.equals(this.covariance, locationEstimate.covariance)
+                    && this.anchors.equals(locationEstimate.anchors);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 97 * hash + Objects.hashCode(this.location);
+        hash = 97 * hash + Double.valueOf(this.residual).hashCode();
+        hash = 97 * hash + Arrays.hashCode(this.covariance);
+        hash = 97 * hash + this.anchors.hashCode();
+        return hash;
+    }
+}
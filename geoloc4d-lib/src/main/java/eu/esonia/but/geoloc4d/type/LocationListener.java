@@ -0,0 +1,19 @@
+package eu.esonia.but.geoloc4d.type;
+
+/**
+ * Listener of changes of absolute location of a node by {@link NodeData#setLocationAbsolute(eu.esonia.but.geoloc4d.type.Vector3D)}.
+ *
+ * @author rychly
+ */
+public interface LocationListener {
+
+    /**
+     * Called after the absolute location of a node has been set.
+     *
+     * @param node the node with the new location (which can be null or
+     * undefined)
+     * @param oldLocation the previous location of the node (can be null or
+     * undefined)
+     */
+    public void locationChanged(final NodeData node, final Vector3D oldLocation);
+}
@@ -90,11 +90,11 @@ public final class MapOfNeighbours extends LinkedHashMap<String, NeighbourProper
      * @param nodes the map of all nodes where the locations will be obtained
      */
     public void setLocationsFromNodes(final MapOfNodes nodes) {
-        MapOfNodes localisedNodes = nodes.getNodesByLocation(true);
-        for (Map.Entry<String, Node> pair : localisedNodes.entrySet()) {
-            if (this.containsKey(pair.getKey())) {
-                this.get(pair.getKey()).setLocationAbsolute(
-                        pair.getValue().getInfo().getLocationAbsolute());
+        // lookup of the neighbours in the map of all nodes, there is no need to filter all the nodes
+        for (Map.Entry<String, NeighbourProperties> pair : this.entrySet()) {
+            Node node = nodes.get(pair.getKey());
+            if (( node != null ) && node.getInfo().isAbsolutelyLocalised()) {
+                pair.getValue().setLocationAbsolute(node.getInfo().getLocationAbsolute());
             }
         }
     }
@@ -265,44 +265,39 @@ public final class MapOfNeighbours extends LinkedHashMap<String, NeighbourProper
      * standard order)
      */
     public MapOfNeighbours sortByIsolation(boolean reverseOrder) {
-        // nested class for isolated node and its comparator
-        class IsolatedNode {
-
-            private String id;
-            private NeighbourProperties nodeProperties;
-            private Double isolation;
+        return sortByIsolation(reverseOrder, true);
+    }
 
-            public IsolatedNode(final String id, final NeighbourProperties nodeProperties, final Double isolation) {
-                this.id = id;
-                this.nodeProperties = nodeProperties;
-                this.isolation = isolation;
-            }
+    /**
+     * Get a map of nodes sorted by isolation (the most isolated node is a node
+     * with the highes distances from its neighbouring nodes). The isolations
+     * are computed by {@link Vector3DMath#isolations(double[], int, boolean, double[])},
+     * i.e. from sums of distances in the exact mode, or in O(n log n) time
+     * from sums of squares of the distances otherwise. The sorting is stable.
+     *
+     * @param reverseOrder true for reverse ordering of the resulting map of
+     * nodes
+     * @param exact true for the exact mode, false for the approximate
+     * (faster) ordering
+     * @return the sorted map of nodes (the most isolated nodes are last in
+     * standard order)
+     */
+    public MapOfNeighbours sortByIsolation(final boolean reverseOrder, final boolean exact) {
+        String[] ids = this.keySet().toArray(new String[this.size()]);
+        NeighbourProperties[] nodes = this.values().toArray(new NeighbourProperties[this.size()]);
+        double[] locations = new double[nodes.length * Vector3DMath.SIZE];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].getLocationAbsolute().copyTo(locations, i * Vector3DMath.SIZE);
         }
-        Comparator<IsolatedNode> isolationComparator = new Comparator<IsolatedNode>() {
-
-            @Override
-            public int compare(final IsolatedNode in1, final IsolatedNode in2) {
-                return in1.isolation.compareTo(in2.isolation);
-            }
-        };
         // compute isolation values for each node and sort them
-        List<IsolatedNode> isolatedNodes = new LinkedList<>();
-        for (Map.Entry<String, NeighbourProperties> firstNodeEntry : this.entrySet()) {
-            double isolation = 0;
-            for (NeighbourProperties secondNode : this.values()) {
-                if (firstNodeEntry.getValue() != secondNode) {
-                    isolation += firstNodeEntry.getValue().getLocationAbsolute().distance(
-                            secondNode.getLocationAbsolute());
-                }
-            }
-            isolatedNodes.add(new IsolatedNode(firstNodeEntry.getKey(), firstNodeEntry.getValue(), isolation));
-        }
-        Collections.sort(isolatedNodes,
-                reverseOrder ? Collections.reverseOrder(isolationComparator) : isolationComparator);
+        double[] isolations = new double[nodes.length];
+        Vector3DMath.isolations(locations, nodes.length, exact, isolations);
+        int[] order = new int[nodes.length];
+        Vector3DMath.sortOrder(isolations, nodes.length, reverseOrder, order, new int[nodes.length]);
         // prepare resulting map of nodes
         MapOfNeighbours result = new MapOfNeighbours();
-        for (IsolatedNode isolatedNode : isolatedNodes) {
-            result.put(isolatedNode.id, isolatedNode.nodeProperties);
+        for (int i : order) {
+            result.put(ids[i], nodes[i]);
         }
         return result;
     }
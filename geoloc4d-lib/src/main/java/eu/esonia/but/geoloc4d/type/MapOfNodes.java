@@ -3,11 +3,9 @@ package eu.esonia.but.geoloc4d.type;
 import java.io.*;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Scanner;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONString;
-import org.json.JSONTokener;
 
 /**
  * Map of neighbouring nodes as a hash-map.
@@ -86,7 +84,8 @@ public final class MapOfNodes extends LinkedHashMap<String, Node> implements JSO
     }
 
     /**
-     * Loads a map of nodes from a file with its JSON representation.
+     * Loads a map of nodes from a file with its JSON representation or with
+     * its binary snapshot (see {@link NodeSnapshot}).
      *
      * @param filename the file to read from
      * @throws FileNotFoundException the file not found
@@ -96,14 +95,18 @@ public final class MapOfNodes extends LinkedHashMap<String, Node> implements JSO
      */
     public static MapOfNodes loadNodes(final String filename)
             throws FileNotFoundException, IOException, JSONException {
+        if (NodeSnapshot.isSnapshot(filename)) {
+            return NodeSnapshot.open(filename).toMapOfNodes();
+        }
         try (FileInputStream stream = new FileInputStream(filename)) {
             return loadNodes(stream);
         }
     }
 
     /**
-     * Loads a map of nodes from a file with its JSON representation and the
-     * nodes' IDs modified by given replacement.
+     * Loads a map of nodes from a file with its JSON representation or with
+     * its binary snapshot (see {@link NodeSnapshot}) and the nodes' IDs
+     * modified by given replacement.
      *
      * @param filename the file to read from
      * @param idReplacement the replacement string where a node's ID will be
@@ -115,6 +118,9 @@ public final class MapOfNodes extends LinkedHashMap<String, Node> implements JSO
      */
     public static MapOfNodes loadNodes(final String filename, final String idReplacement)
             throws FileNotFoundException, IOException, JSONException {
+        if (NodeSnapshot.isSnapshot(filename)) {
+            return NodeSnapshot.open(filename, idReplacement).toMapOfNodes();
+        }
         try (FileInputStream stream = new FileInputStream(filename)) {
             return loadNodes(stream, idReplacement);
         }
@@ -122,6 +128,7 @@ public final class MapOfNodes extends LinkedHashMap<String, Node> implements JSO
 
     /**
      * Loads a map of nodes from an input stream with its JSON representation.
+     * The nodes are read one by one (see {@link NodeReader}).
      *
      * @param stream the input stream to read from
      * @return the map of nodes
@@ -130,14 +137,16 @@ public final class MapOfNodes extends LinkedHashMap<String, Node> implements JSO
      */
     public static MapOfNodes loadNodes(final InputStream stream)
             throws IOException, JSONException {
-        try (InputStreamReader streamReader = new InputStreamReader(stream)) {
-            return new MapOfNodes(new JSONArray(new JSONTokener(streamReader)));
+        try (NodeReader nodeReader = new NodeReader(new InputStreamReader(stream))) {
+            return nodeReader.readAll(new MapOfNodes());
         }
     }
 
     /**
      * Loads a map of nodes from an input stream with its JSON representation
-     * and the nodes' IDs modified by given replacement.
+     * and the nodes' IDs modified by given replacement. The nodes are read one
+     * by one (see {@link NodeReader}) and their IDs and IDs of their
+     * neighbours are replaced while reading.
      *
      * @param stream the input stream to read from
      * @param idReplacement the replacement string where a node's ID will be
@@ -148,13 +157,9 @@ public final class MapOfNodes extends LinkedHashMap<String, Node> implements JSO
      */
     public static MapOfNodes loadNodes(final InputStream stream, final String idReplacement)
             throws IOException, JSONException {
-        // convert the input stream into UTF-8 encoded string
-        Scanner scanner = new Scanner(stream, "UTF-8").useDelimiter("\\A");
-        String jsonString = scanner.hasNext() ? scanner.next() : "";
-        // create a map of the nodes from the string with regexp replaced the nodes' IDs
-        return new MapOfNodes(new JSONArray(jsonString.replaceAll(
-                "(?i)(\"id\"\\s*:\\s*)\"([^\"])*\"",
-                "$1\"" + idReplacement.replace("%", "$2") + "\"")));
+        try (NodeReader nodeReader = new NodeReader(new InputStreamReader(stream, "UTF-8"), idReplacement)) {
+            return nodeReader.readAll(new MapOfNodes());
+        }
     }
 
     /**
@@ -171,19 +176,15 @@ public final class MapOfNodes extends LinkedHashMap<String, Node> implements JSO
     }
 
     /**
-     * Save the map of nodes into an output stream as JSON.
+     * Save the map of nodes into an output stream as JSON. The nodes are
+     * written one by one (see {@link NodeWriter}).
      *
      * @param stream the output stream to save into
      * @throws IOException a write error to the stream
      */
     public void saveNodes(final OutputStream stream) throws IOException {
-        try (OutputStreamWriter outputWriter = new OutputStreamWriter(stream)) {
-            try {
-                this.toJSONArray().write(outputWriter);
-            }
-            catch (JSONException ex) {
-                throw new RuntimeException("Impossible, the value cannot be an invalid number!", ex);
-            }
+        try (NodeWriter nodeWriter = new NodeWriter(new BufferedWriter(new OutputStreamWriter(stream)))) {
+            nodeWriter.writeAll(this);
         }
     }
 
@@ -2,6 +2,9 @@ package eu.esonia.but.geoloc4d.type;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -24,11 +27,21 @@ public class NodeData implements JSONString {
      * Absolute location of the node (optional).
      */
     private Vector3D locationAbsolute;
+    /**
+     * Estimate of the absolute location with its uncertainty, if the location
+     * has been estimated by trilateration (optional).
+     */
+    private LocationEstimate locationEstimate;
     /**
      * IPv4 or IPv6 address of the node (optional). For example, it can be
      * 1.2.3.4 or [2001:db8:bbbb:abcd:280:e102:11:e080].
      */
     private String ip;
+    /**
+     * Listeners of changes of the absolute location (optional), replaced on
+     * each change (copy-on-write), so they can be notified without locking.
+     */
+    private volatile LocationListener[] locationListeners;
 
     protected NodeData() {
         // empty constructor for an initiation from subclasses
@@ -64,7 +77,9 @@ public class NodeData implements JSONString {
         }
         // locationAbsolute
         if (representation.has("locationAbsolute")) {
-            this.setLocationAbsolute(new Vector3D(representation.getJSONArray("locationAbsolute")));
+            this.setLocationAbsolute(new Vector3D(representation.getJSONArray("locationAbsolute")),
+                    representation.has("locationEstimate")
+                    ? new LocationEstimate(representation.getJSONObject("locationEstimate")) : null);
         }
     }
 
@@ -82,7 +97,8 @@ public class NodeData implements JSONString {
         }
         Vector3D vector = source.getLocationAbsolute();
         if (vector != null) {
-            this.setLocationAbsolute(new Vector3D(vector));
+            // the estimate is immutable
+            this.setLocationAbsolute(new Vector3D(vector), source.getLocationEstimate());
         }
     }
 
@@ -160,6 +176,9 @@ public class NodeData implements JSONString {
             if (this.getLocationAbsolute() != null) {
                 result.put("locationAbsolute", this.getLocationAbsolute().toJSONArray());
             }
+            if (this.getLocationEstimate() != null) {
+                result.put("locationEstimate", this.getLocationEstimate().toJSONObject());
+            }
             return result;
             // e.g. "{id:"SecondNode","locationAbsolute":[0,1000,0]}
         }
@@ -223,9 +242,72 @@ public class NodeData implements JSONString {
     }
 
     /**
+     * Get estimate of the absolute location with its uncertainty.
+     *
+     * @return the estimate or null if the location has not been estimated by
+     * trilateration (e.g. it has been set manually)
+     */
+    public final LocationEstimate getLocationEstimate() {
+        return this.locationEstimate;
+    }
+
+    /**
+     * Set the absolute location without its estimate, i.e. the location set
+     * manually (e.g. for an anchor).
+     *
      * @param locationAbsolute the locationAbsolute to set
      */
     public final void setLocationAbsolute(Vector3D locationAbsolute) {
+        this.setLocationAbsolute(locationAbsolute, null);
+    }
+
+    /**
+     * Set the absolute location with its estimate.
+     *
+     * @param locationAbsolute the locationAbsolute to set
+     * @param locationEstimate the estimate of the location or null if the
+     * location has not been estimated by trilateration
+     */
+    public final void setLocationAbsolute(final Vector3D locationAbsolute, final LocationEstimate locationEstimate) {
+        Vector3D oldLocation = this.locationAbsolute;
         this.locationAbsolute = locationAbsolute;
+        this.locationEstimate = locationEstimate;
+        LocationListener[] listeners = this.locationListeners;
+        if (listeners != null) {
+            for (LocationListener listener : listeners) {
+                listener.locationChanged(this, oldLocation);
+            }
+        }
+    }
+
+    /**
+     * Add a listener of changes of the absolute location by {@link #setLocationAbsolute(eu.esonia.but.geoloc4d.type.Vector3D)}.
+     * The listeners are not copied by the copy constructor and they are not
+     * notified on changes of coordinates of the location vector itself.
+     *
+     * @param listener the listener to add
+     */
+    public final synchronized void addLocationListener(final LocationListener listener) {
+        if (this.locationListeners == null) {
+            this.locationListeners = new LocationListener[]{listener};
+        } else {
+            LocationListener[] listeners = Arrays.copyOf(this.locationListeners, this.locationListeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+            this.locationListeners = listeners;
+        }
+    }
+
+    /**
+     * Remove a listener of changes of the absolute location.
+     *
+     * @param listener the listener to remove
+     */
+    public final synchronized void removeLocationListener(final LocationListener listener) {
+        if (this.locationListeners != null) {
+            List<LocationListener> listeners = new ArrayList<>(Arrays.asList(this.locationListeners));
+            listeners.remove(listener);
+            this.locationListeners = listeners.isEmpty()
+                    ? null : listeners.toArray(new LocationListener[listeners.size()]);
+        }
     }
 }
@@ -0,0 +1,186 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Streaming reader of nodes from JSON representation of a map of nodes (see
+ * {@link MapOfNodes#toJSONString()}). The nodes are read one by one, so only
+ * a single node is kept in memory while reading, regardless of size of the
+ * whole representation.
+ *
+ * @author rychly
+ */
+public class NodeReader implements Closeable {
+
+    private final Reader reader;
+    private final JSONTokener tokener;
+    /**
+     * The replacement string where a node's ID will be inserted instead of "%"
+     * character (or null for no replacement).
+     */
+    private final String idReplacement;
+    /**
+     * Indicates that the beginning of the array of nodes has been read.
+     */
+    private boolean started = false;
+    /**
+     * Indicates that the end of the array of nodes has been read.
+     */
+    private boolean finished = false;
+    /**
+     * Indicates that the reader is at the beginning of a next node.
+     */
+    private boolean ready = false;
+
+    /**
+     * Create a reader of nodes.
+     *
+     * @param reader the reader of JSON representation of a map of nodes
+     */
+    public NodeReader(final Reader reader) {
+        this(reader, null);
+    }
+
+    /**
+     * Create a reader of nodes with the nodes' IDs modified by given
+     * replacement (IDs of the nodes and IDs of their neighbours).
+     *
+     * @param reader the reader of JSON representation of a map of nodes
+     * @param idReplacement the replacement string where a node's ID will be
+     * inserted instead of "%" character (or null for no replacement)
+     */
+    public NodeReader(final Reader reader, final String idReplacement) {
+        this.reader = reader;
+        this.tokener = new JSONTokener(reader);
+        this.idReplacement = idReplacement;
+    }
+
+    /**
+     * Check if there is a next node to read.
+     *
+     * @return true iff there is a next node
+     * @throws JSONException parsing error in the JSON represenatation
+     */
+    public boolean hasNext() throws JSONException {
+        if (this.finished || this.ready) {
+            return this.ready;
+        }
+        char character = this.tokener.nextClean();
+        if (!this.started) {
+            if (character != '[') {
+                throw this.tokener.syntaxError("A JSONArray text must start with '['");
+            }
+            this.started = true;
+            character = this.tokener.nextClean();
+            if (character == ']') {
+                this.finished = true;
+                return false;
+            }
+        } else if (character == ']') {
+            this.finished = true;
+            return false;
+        } else if (character == ',') {
+            character = this.tokener.nextClean();
+        } else {
+            throw this.tokener.syntaxError("Expected a ',' or ']'");
+        }
+        if (character == 0) {
+            throw this.tokener.syntaxError("Expected a node");
+        }
+        this.tokener.back();
+        this.ready = true;
+        return true;
+    }
+
+    /**
+     * Read a next node.
+     *
+     * @return the node
+     * @throws JSONException parsing error in the JSON represenatation or there
+     * is no next node
+     */
+    public Node next() throws JSONException {
+        if (!this.hasNext()) {
+            throw this.tokener.syntaxError("There is no next node");
+        }
+        this.ready = false;
+        Object value = this.tokener.nextValue();
+        if (!( value instanceof JSONObject )) {
+            throw this.tokener.syntaxError("A node must be a JSONObject");
+        }
+        JSONObject representation = (JSONObject) value;
+        if (this.idReplacement != null) {
+            this.replaceIDs(representation);
+        }
+        return new Node(representation);
+    }
+
+    /**
+     * Replace IDs of a node and IDs of its neighbours in its representation.
+     *
+     * @param representation the representation of the node
+     * @throws JSONException parsing error in the JSON represenatation
+     */
+    private void replaceIDs(final JSONObject representation) throws JSONException {
+        JSONObject info = representation.optJSONObject("info");
+        if (info != null) {
+            this.replaceID(info);
+        }
+        JSONArray scan = representation.optJSONArray("scan");
+        if (scan != null) {
+            for (int i = 0; i < scan.length(); i++) {
+                JSONObject neighbour = scan.optJSONObject(i);
+                if (neighbour != null) {
+                    this.replaceID(neighbour);
+                }
+            }
+        }
+    }
+
+    private void replaceID(final JSONObject representation) throws JSONException {
+        Object id = representation.opt("id");
+        if (id instanceof String) {
+            representation.put("id", this.idReplacement.replace("%", (String) id));
+        }
+    }
+
+    /**
+     * Read all remaining nodes into a map of nodes.
+     *
+     * @param mapOfNodes the map of nodes to put the nodes into
+     * @return the map of nodes
+     * @throws JSONException parsing error in the JSON represenatation
+     */
+    public MapOfNodes readAll(final MapOfNodes mapOfNodes) throws JSONException {
+        while (this.hasNext()) {
+            Node node = this.next();
+            mapOfNodes.put(node.getInfo().getID(), node);
+        }
+        return mapOfNodes;
+    }
+
+    /**
+     * Read all remaining nodes into a columnar store of nodes.
+     *
+     * @param nodeStore the store of nodes to add the nodes into
+     * @return the store of nodes
+     * @throws JSONException parsing error in the JSON represenatation
+     */
+    public NodeStore readAll(final NodeStore nodeStore) throws JSONException {
+        while (this.hasNext()) {
+            nodeStore.add(this.next());
+        }
+        return nodeStore;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
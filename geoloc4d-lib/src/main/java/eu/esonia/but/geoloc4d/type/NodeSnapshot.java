@@ -0,0 +1,334 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Binary snapshot of a map of nodes written by {@link NodeSnapshotWriter}.
+ * The snapshot file is mapped into memory and its nodes are decoded lazily,
+ * i.e. the file is neither parsed nor copied when opened and a node is
+ * decoded only when it is requested. Instances are immutable and can be
+ * shared by several threads.
+ *
+ * @author rychly
+ */
+public class NodeSnapshot implements Iterable<Node> {
+
+    /**
+     * The mapped content of the snapshot.
+     */
+    private final ByteBuffer buffer;
+    /**
+     * The replacement string where a node's ID will be inserted instead of "%"
+     * character (or null for no replacement).
+     */
+    private final String idReplacement;
+    private final int nodeCount;
+    private final int linkCount;
+    private final int stringCount;
+    /**
+     * Offsets of sections of the snapshot.
+     */
+    private final int nodesOffset, linksOffset, stringOffsetsOffset, stringsOffset;
+    /**
+     * Indexes of the nodes by their IDs (created on the first request).
+     */
+    private volatile Map<String, Integer> indexes;
+
+    /**
+     * Create a snapshot from its content.
+     *
+     * @param buffer the content of the snapshot
+     * @param idReplacement the replacement string where a node's ID will be
+     * inserted instead of "%" character (or null for no replacement)
+     * @throws IOException the content is not a valid snapshot
+     */
+    public NodeSnapshot(final ByteBuffer buffer, final String idReplacement) throws IOException {
+        this.buffer = buffer.duplicate();
+        this.idReplacement = idReplacement;
+        if (( this.buffer.capacity() < NodeSnapshotWriter.HEADER_SIZE )
+                || ( this.buffer.getInt(0) != NodeSnapshotWriter.MAGIC )) {
+            throw new IOException("Not a snapshot of nodes!");
+        }
+        if (this.buffer.getInt(4) != NodeSnapshotWriter.VERSION) {
+            throw new IOException("Unsupported version " + this.buffer.getInt(4) + " of the snapshot of nodes!");
+        }
+        this.nodeCount = this.buffer.getInt(8);
+        this.linkCount = this.buffer.getInt(12);
+        this.stringCount = this.buffer.getInt(16);
+        int stringBytes = this.buffer.getInt(20);
+        long size = NodeSnapshotWriter.HEADER_SIZE
+                + (long) this.nodeCount * NodeSnapshotWriter.NODE_RECORD_SIZE
+                + (long) this.linkCount * NodeSnapshotWriter.LINK_RECORD_SIZE
+                + ( (long) this.stringCount + 1 ) * 4 + stringBytes;
+        if (( this.nodeCount < 0 ) || ( this.linkCount < 0 ) || ( this.stringCount < 0 ) || ( stringBytes < 0 )
+                || ( size != this.buffer.capacity() )) {
+            throw new IOException("Corrupted snapshot of nodes!");
+        }
+        this.nodesOffset = NodeSnapshotWriter.HEADER_SIZE;
+        this.linksOffset = this.nodesOffset + this.nodeCount * NodeSnapshotWriter.NODE_RECORD_SIZE;
+        this.stringOffsetsOffset = this.linksOffset + this.linkCount * NodeSnapshotWriter.LINK_RECORD_SIZE;
+        this.stringsOffset = this.stringOffsetsOffset + ( this.stringCount + 1 ) * 4;
+    }
+
+    /**
+     * Open a snapshot file and map it into memory.
+     *
+     * @param filename the snapshot file
+     * @return the snapshot
+     * @throws FileNotFoundException the file not found
+     * @throws IOException a read error of the file or the file is not a valid
+     * snapshot
+     */
+    public static NodeSnapshot open(final String filename) throws FileNotFoundException, IOException {
+        return open(filename, null);
+    }
+
+    /**
+     * Open a snapshot file and map it into memory with the nodes' IDs modified
+     * by given replacement (IDs of the nodes and IDs of their neighbours).
+     *
+     * @param filename the snapshot file
+     * @param idReplacement the replacement string where a node's ID will be
+     * inserted instead of "%" character (or null for no replacement)
+     * @return the snapshot
+     * @throws FileNotFoundException the file not found
+     * @throws IOException a read error of the file or the file is not a valid
+     * snapshot
+     */
+    public static NodeSnapshot open(final String filename, final String idReplacement)
+            throws FileNotFoundException, IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+                FileChannel channel = file.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The snapshot of nodes is too large to be mapped!");
+            }
+            // the mapping remains valid after the channel is closed
+            return new NodeSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), idReplacement);
+        }
+    }
+
+    /**
+     * Check if a file is a snapshot of nodes (by its magic number).
+     *
+     * @param filename the file to check
+     * @return true iff the file is a snapshot
+     * @throws FileNotFoundException the file not found
+     * @throws IOException a read error of the file
+     */
+    public static boolean isSnapshot(final String filename) throws FileNotFoundException, IOException {
+        try (DataInputStream stream = new DataInputStream(new FileInputStream(filename))) {
+            return stream.readInt() == NodeSnapshotWriter.MAGIC;
+        }
+        catch (EOFException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Get number of the nodes in the snapshot.
+     *
+     * @return the number of the nodes
+     */
+    public int size() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Get number of the neighbours (links) of all nodes in the snapshot.
+     *
+     * @return the number of the links
+     */
+    public int linkCount() {
+        return this.linkCount;
+    }
+
+    private String getString(final int index) {
+        if (index == NodeSnapshotWriter.NO_STRING) {
+            return null;
+        }
+        int start = this.buffer.getInt(this.stringOffsetsOffset + index * 4);
+        int end = this.buffer.getInt(this.stringOffsetsOffset + ( index + 1 ) * 4);
+        byte[] encoded = new byte[end - start];
+        ByteBuffer slice = this.buffer.duplicate();
+        slice.position(this.stringsOffset + start);
+        slice.get(encoded);
+        return new String(encoded, NodeSnapshotWriter.CHARSET);
+    }
+
+    private String getReplacedID(final int stringIndex) {
+        String id = this.getString(stringIndex);
+        return ( ( this.idReplacement != null ) && ( id != null ) ) ? this.idReplacement.replace("%", id) : id;
+    }
+
+    private Vector3D getLocation(final int offset) {
+        return new Vector3D(this.buffer.getDouble(offset), this.buffer.getDouble(offset + 8),
+                this.buffer.getDouble(offset + 16));
+    }
+
+    private int getLinkStart(final int index) {
+        return this.buffer.getInt(this.nodesOffset + index * NodeSnapshotWriter.NODE_RECORD_SIZE + 12);
+    }
+
+    private int getLinkEnd(final int index) {
+        return ( index + 1 < this.nodeCount ) ? this.getLinkStart(index + 1) : this.linkCount;
+    }
+
+    /**
+     * Get ID of a node.
+     *
+     * @param index index of the node (in order of the nodes in the snapshot)
+     * @return ID of the node
+     */
+    public String getID(final int index) {
+        return this.getReplacedID(this.buffer.getInt(this.nodesOffset + index * NodeSnapshotWriter.NODE_RECORD_SIZE));
+    }
+
+    /**
+     * Get index of a node by its ID.
+     *
+     * @param id ID of the node
+     * @return index of the node or -1 if there is no such node
+     */
+    public int indexOf(final String id) {
+        Map<String, Integer> result = this.indexes;
+        if (result == null) {
+            result = new HashMap<>(this.nodeCount * 2);
+            for (int index = 0; index < this.nodeCount; index++) {
+                result.put(this.getID(index), index);
+            }
+            this.indexes = result;
+        }
+        Integer index = result.get(id);
+        return ( index == null ) ? -1 : index;
+    }
+
+    /**
+     * Get data of a node as a NodeData object.
+     *
+     * @param index index of the node
+     * @return the data of the node
+     */
+    public NodeData getInfo(final int index) {
+        int offset = this.nodesOffset + index * NodeSnapshotWriter.NODE_RECORD_SIZE;
+        NodeData info = new NodeData();
+        info.setID(this.getReplacedID(this.buffer.getInt(offset)));
+        info.setIP(this.getString(this.buffer.getInt(offset + 4)));
+        if (( this.buffer.getInt(offset + 8) & NodeSnapshotWriter.NODE_LOCALISED ) != 0) {
+            info.setLocationAbsolute(this.getLocation(offset + 16));
+        }
+        return info;
+    }
+
+    /**
+     * Get neighbours of a node as a MapOfNeighbours object.
+     *
+     * @param index index of the node
+     * @return the neighbours of the node
+     */
+    public MapOfNeighbours getScan(final int index) {
+        MapOfNeighbours scan = new MapOfNeighbours();
+        for (int link = this.getLinkStart(index); link < this.getLinkEnd(index); link++) {
+            int offset = this.linksOffset + link * NodeSnapshotWriter.LINK_RECORD_SIZE;
+            NeighbourProperties neighbour = new NeighbourProperties();
+            neighbour.setID(this.getReplacedID(this.buffer.getInt(offset)));
+            neighbour.setIP(this.getString(this.buffer.getInt(offset + 4)));
+            int flags = this.buffer.getInt(offset + 8);
+            if (( flags & NodeStore.LINK_RSSI ) != 0) {
+                neighbour.setRssi((short) this.buffer.getInt(offset + 12));
+            }
+            if (( flags & NodeStore.LINK_RTT ) != 0) {
+                neighbour.setRtt(this.buffer.getDouble(offset + 16));
+            }
+            if (( flags & NodeStore.LINK_DISTANCE ) != 0) {
+                neighbour.setDistance(this.buffer.getDouble(offset + 24));
+            }
+            if (( flags & NodeStore.LINK_LOCATION_ABSOLUTE ) != 0) {
+                neighbour.setLocationAbsolute(this.getLocation(offset + 32));
+            }
+            if (( flags & NodeStore.LINK_LOCATION_RELATIVE ) != 0) {
+                neighbour.setLocationRelative(this.getLocation(offset + 56));
+            }
+            scan.put(neighbour.getID(), neighbour);
+        }
+        return scan;
+    }
+
+    /**
+     * Get a node as a Node object.
+     *
+     * @param index index of the node
+     * @return the node
+     */
+    public Node getNode(final int index) {
+        return new Node(this.getInfo(index), this.getScan(index));
+    }
+
+    /**
+     * Iterate over the nodes of the snapshot (decoded one by one).
+     *
+     * @return the iterator of the nodes
+     */
+    @Override
+    public Iterator<Node> iterator() {
+        return new Iterator<Node>() {
+
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.index < NodeSnapshot.this.nodeCount;
+            }
+
+            @Override
+            public Node next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return NodeSnapshot.this.getNode(this.index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("The snapshot of nodes is read-only.");
+            }
+        };
+    }
+
+    /**
+     * Decode all nodes of the snapshot into a map of nodes.
+     *
+     * @return the map of nodes
+     */
+    public MapOfNodes toMapOfNodes() {
+        MapOfNodes mapOfNodes = new MapOfNodes();
+        for (int index = 0; index < this.nodeCount; index++) {
+            Node node = this.getNode(index);
+            mapOfNodes.put(node.getInfo().getID(), node);
+        }
+        return mapOfNodes;
+    }
+
+    /**
+     * Decode all nodes of the snapshot into a columnar store of nodes.
+     *
+     * @return the store of nodes
+     */
+    public NodeStore toNodeStore() {
+        NodeStore nodeStore = new NodeStore();
+        for (int index = 0; index < this.nodeCount; index++) {
+            nodeStore.add(this.getInfo(index), this.getScan(index));
+        }
+        return nodeStore;
+    }
+}
@@ -0,0 +1,189 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+
+/**
+ * Writer of a map of nodes into a binary snapshot which can be loaded
+ * without parsing by {@link NodeSnapshot}. The snapshot (in big-endian byte
+ * order) consists of
+ * <ol>
+ * <li>a header: magic number, version, number of nodes, number of
+ * neighbours (links), number of strings, length of the strings in bytes, and
+ * 8 reserved bytes;</li>
+ * <li>fixed-width records of the nodes: ID and IP as indexes into the string
+ * table, flags, index of the first link of the node (the links of a node
+ * continue up to the first link of the next node, i.e. compressed sparse
+ * rows), and absolute location;</li>
+ * <li>fixed-width records of the links: ID and IP of the neighbour as indexes
+ * into the string table, flags (see {@link NodeStore#LINK_RSSI} etc.), RSSI,
+ * RTT, distance, and absolute and relative locations;</li>
+ * <li>the string table: offsets of the strings and the strings in UTF-8.</li>
+ * </ol>
+ *
+ * @author rychly
+ */
+public class NodeSnapshotWriter {
+
+    /**
+     * Magic number at the beginning of a snapshot ("G4DS").
+     */
+    public static final int MAGIC = 0x47344453;
+    /**
+     * Version of the snapshot format.
+     */
+    public static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int NODE_RECORD_SIZE = 40;
+    static final int LINK_RECORD_SIZE = 80;
+    static final byte NODE_LOCALISED = 1;
+    static final int NO_STRING = -1;
+    static final Charset CHARSET = Charset.forName("UTF-8");
+    /**
+     * The strings of the snapshot and their indexes.
+     */
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<byte[]> encodedStrings = new ArrayList<>();
+    private int stringBytes = 0;
+
+    private int intern(final String string) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = this.strings.get(string);
+        if (index == null) {
+            index = this.encodedStrings.size();
+            this.strings.put(string, index);
+            byte[] encoded = string.getBytes(CHARSET);
+            this.encodedStrings.add(encoded);
+            this.stringBytes += encoded.length;
+        }
+        return index;
+    }
+
+    private static void writeLocation(final DataOutputStream output, final Vector3D location) throws IOException {
+        if (( location != null ) && location.isDefined()) {
+            output.writeDouble(location.getX());
+            output.writeDouble(location.getY());
+            output.writeDouble(location.getZ());
+        } else {
+            output.writeDouble(0);
+            output.writeDouble(0);
+            output.writeDouble(0);
+        }
+    }
+
+    /**
+     * Write a map of nodes into an output stream as a snapshot.
+     *
+     * @param mapOfNodes the map of nodes to write
+     * @param stream the output stream to write into
+     * @throws IOException a write error to the stream
+     */
+    public void write(final MapOfNodes mapOfNodes, final OutputStream stream) throws IOException {
+        // intern the strings and count the links
+        int linkCount = 0;
+        for (Node node : mapOfNodes.values()) {
+            this.intern(node.getInfo().getID());
+            this.intern(node.getInfo().getIP());
+            for (NeighbourProperties neighbour : node.getScan().values()) {
+                this.intern(neighbour.getID());
+                this.intern(neighbour.getIP());
+            }
+            linkCount += node.getScan().size();
+        }
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        // header
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(mapOfNodes.size());
+        output.writeInt(linkCount);
+        output.writeInt(this.encodedStrings.size());
+        output.writeInt(this.stringBytes);
+        output.writeLong(0);
+        // records of the nodes
+        int linkStart = 0;
+        for (Node node : mapOfNodes.values()) {
+            output.writeInt(this.intern(node.getInfo().getID()));
+            output.writeInt(this.intern(node.getInfo().getIP()));
+            output.writeInt(node.getInfo().isAbsolutelyLocalised() ? NODE_LOCALISED : 0);
+            output.writeInt(linkStart);
+            writeLocation(output, node.getInfo().getLocationAbsolute());
+            linkStart += node.getScan().size();
+        }
+        // records of the links
+        for (Node node : mapOfNodes.values()) {
+            for (NeighbourProperties neighbour : node.getScan().values()) {
+                int flags = 0;
+                flags |= ( neighbour.getRssi() != null ) ? NodeStore.LINK_RSSI : 0;
+                flags |= ( neighbour.getRtt() != null ) ? NodeStore.LINK_RTT : 0;
+                flags |= ( neighbour.getDistance() != null ) ? NodeStore.LINK_DISTANCE : 0;
+                flags |= ( ( neighbour.getLocationAbsolute() != null ) && neighbour.getLocationAbsolute().isDefined() )
+                        ? NodeStore.LINK_LOCATION_ABSOLUTE : 0;
+                flags |= ( ( neighbour.getLocationRelative() != null ) && neighbour.getLocationRelative().isDefined() )
+                        ? NodeStore.LINK_LOCATION_RELATIVE : 0;
+                output.writeInt(this.intern(neighbour.getID()));
+                output.writeInt(this.intern(neighbour.getIP()));
+                output.writeInt(flags);
+                output.writeInt(( neighbour.getRssi() != null ) ? neighbour.getRssi() : 0);
+                output.writeDouble(( neighbour.getRtt() != null ) ? neighbour.getRtt() : 0);
+                output.writeDouble(( neighbour.getDistance() != null ) ? neighbour.getDistance() : 0);
+                writeLocation(output, neighbour.getLocationAbsolute());
+                writeLocation(output, neighbour.getLocationRelative());
+            }
+        }
+        // string table
+        int offset = 0;
+        for (byte[] encoded : this.encodedStrings) {
+            output.writeInt(offset);
+            offset += encoded.length;
+        }
+        output.writeInt(offset);
+        for (byte[] encoded : this.encodedStrings) {
+            output.write(encoded);
+        }
+        output.flush();
+    }
+
+    /**
+     * Write a map of nodes into a file as a snapshot.
+     *
+     * @param mapOfNodes the map of nodes to write
+     * @param filename the file to write into
+     * @throws IOException a write error to the file
+     */
+    public static void write(final MapOfNodes mapOfNodes, final String filename) throws IOException {
+        try (OutputStream stream = new FileOutputStream(filename)) {
+            new NodeSnapshotWriter().write(mapOfNodes, stream);
+        }
+    }
+
+    /**
+     * Convert a file with JSON representation of a map of nodes into a
+     * snapshot.
+     *
+     * @param args the file with JSON representation and the snapshot file
+     */
+    public static void main(final String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java " + NodeSnapshotWriter.class.getName() + " <services.json> <services.snapshot>");
+            System.exit(-1);
+        }
+        try {
+            write(MapOfNodes.loadNodes(args[0]), args[1]);
+        }
+        catch (IOException ex) {
+            System.err.println("!!! exception: " + ex.toString());
+            System.exit(-2);
+        }
+        catch (JSONException ex) {
+            System.err.println("!!! exception: Cannot parse JSON string!\n" + ex.toString());
+            System.exit(-3);
+        }
+    }
+}
@@ -0,0 +1,680 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONString;
+
+/**
+ * Columnar (structure-of-arrays) store of nodes and their neighbours for large
+ * networks. Node IDs are interned into integer indexes, absolute locations of
+ * the nodes are kept in one array of primitive coordinates (see
+ * {@link Vector3DMath}), and neighbours from scans of the nodes are kept as
+ * links in adjacency arrays (each node has a contiguous range of links) with
+ * primitive RSSI/RTT/distance columns. The store can be built from and
+ * exported to {@link MapOfNodes} (and its JSON representation).
+ *
+ * A neighbour which is not a node of the store itself is interned too, but it
+ * is not {@link #isNode(int) a node}, i.e. it has no info and no scan.
+ *
+ * @author rychly
+ */
+public final class NodeStore implements JSONString {
+
+    /**
+     * Flag of a link with set RSSI.
+     */
+    public static final byte LINK_RSSI = 1;
+    /**
+     * Flag of a link with set RTT.
+     */
+    public static final byte LINK_RTT = 2;
+    /**
+     * Flag of a link with set distance.
+     */
+    public static final byte LINK_DISTANCE = 4;
+    /**
+     * Flag of a link with set absolute location of the neighbour (as seen in
+     * the scan).
+     */
+    public static final byte LINK_LOCATION_ABSOLUTE = 8;
+    /**
+     * Flag of a link with set relative location of the neighbour.
+     */
+    public static final byte LINK_LOCATION_RELATIVE = 16;
+    private static final int INITIAL_CAPACITY = 16;
+    // interned nodes
+    private int size;
+    private Map<String, Integer> indexes;
+    private String[] ids;
+    private String[] ips;
+    private boolean[] nodes;
+    private int nodeCount;
+    private int[] nodeOrder;
+    private boolean[] localised;
+    private double[] locations;
+    private int[] linkStarts;
+    private int[] linkCounts;
+    // links of the nodes to their neighbours
+    private int linkSize;
+    private int[] linkTargets;
+    private byte[] linkFlags;
+    private short[] linkRssi;
+    private double[] linkRtt;
+    private double[] linkDistance;
+    private double[] linkLocationsAbsolute;
+    private double[] linkLocationsRelative;
+    private Map<Integer, String> linkIps;
+
+    /**
+     * Default constructor of an empty store.
+     */
+    public NodeStore() {
+        this.indexes = new HashMap<>();
+        this.ids = new String[INITIAL_CAPACITY];
+        this.ips = new String[INITIAL_CAPACITY];
+        this.nodes = new boolean[INITIAL_CAPACITY];
+        this.nodeOrder = new int[INITIAL_CAPACITY];
+        this.localised = new boolean[INITIAL_CAPACITY];
+        this.locations = new double[INITIAL_CAPACITY * Vector3DMath.SIZE];
+        this.linkStarts = new int[INITIAL_CAPACITY];
+        this.linkCounts = new int[INITIAL_CAPACITY];
+        this.linkTargets = new int[INITIAL_CAPACITY];
+        this.linkFlags = new byte[INITIAL_CAPACITY];
+        this.linkRssi = new short[INITIAL_CAPACITY];
+        this.linkRtt = new double[INITIAL_CAPACITY];
+        this.linkDistance = new double[INITIAL_CAPACITY];
+        this.linkLocationsAbsolute = new double[INITIAL_CAPACITY * Vector3DMath.SIZE];
+        this.linkLocationsRelative = new double[INITIAL_CAPACITY * Vector3DMath.SIZE];
+        this.linkIps = new HashMap<>();
+    }
+
+    /**
+     * Constructor of a store from a map of nodes.
+     *
+     * @param mapOfNodes the map of nodes to build from
+     */
+    public NodeStore(final MapOfNodes mapOfNodes) {
+        this();
+        for (Node node : mapOfNodes.values()) {
+            this.add(node);
+        }
+    }
+
+    /**
+     * Constructor of a store from a representation of a map of nodes in
+     * JSONArray.
+     *
+     * @param representation representation of the map in JSONArray
+     * @throws JSONException fail to parse a node's representation in JSON
+     */
+    public NodeStore(final JSONArray representation) throws JSONException {
+        this(new MapOfNodes(representation));
+    }
+
+    /**
+     * Loads a store of nodes from a file with JSON representation of a map of
+     * nodes or with its binary snapshot (see {@link NodeSnapshot}). The nodes
+     * are read one by one (see {@link NodeReader}).
+     *
+     * @param filename the file to read from
+     * @throws FileNotFoundException the file not found
+     * @throws IOException a read error of the file
+     * @throws JSONException parsing error in the JSON represenatation
+     * @return the store of nodes
+     */
+    public static NodeStore loadNodes(final String filename)
+            throws FileNotFoundException, IOException, JSONException {
+        if (NodeSnapshot.isSnapshot(filename)) {
+            return NodeSnapshot.open(filename).toNodeStore();
+        }
+        try (NodeReader nodeReader = new NodeReader(new InputStreamReader(new FileInputStream(filename)))) {
+            return nodeReader.readAll(new NodeStore());
+        }
+    }
+
+    /**
+     * Loads a store of nodes from a file with JSON representation of a map of
+     * nodes or with its binary snapshot (see {@link NodeSnapshot}) and the
+     * nodes' IDs modified by given replacement. The nodes are read one by one
+     * (see {@link NodeReader}).
+     *
+     * @param filename the file to read from
+     * @param idReplacement the replacement string where a node's ID will be
+     * inserted instead of "%" character
+     * @throws FileNotFoundException the file not found
+     * @throws IOException a read error of the file
+     * @throws JSONException parsing error in the JSON represenatation
+     * @return the store of nodes
+     */
+    public static NodeStore loadNodes(final String filename, final String idReplacement)
+            throws FileNotFoundException, IOException, JSONException {
+        if (NodeSnapshot.isSnapshot(filename)) {
+            return NodeSnapshot.open(filename, idReplacement).toNodeStore();
+        }
+        try (NodeReader nodeReader = new NodeReader(
+                new InputStreamReader(new FileInputStream(filename), "UTF-8"), idReplacement)) {
+            return nodeReader.readAll(new NodeStore());
+        }
+    }
+
+    /**
+     * Intern ID of a node, i.e. get its index in the store or add the ID if it
+     * does not exist yet.
+     *
+     * @param id ID of the node
+     * @return index of the node
+     */
+    public int intern(final String id) {
+        Integer index = this.indexes.get(id);
+        if (index != null) {
+            return index;
+        }
+        this.ensureCapacity(this.size + 1);
+        this.ids[this.size] = id;
+        this.indexes.put(id, this.size);
+        return this.size++;
+    }
+
+    /**
+     * Add a node and its scan into the store. An existing node with the same
+     * ID will be replaced.
+     *
+     * @param node the node to add
+     * @return index of the node
+     */
+    public int add(final Node node) {
+        return this.add(node.getInfo(), node.getScan());
+    }
+
+    /**
+     * Add a node and its scan into the store. An existing node with the same
+     * ID will be replaced (its previous links will be left unused in the
+     * store).
+     *
+     * @param info the data of the node to add
+     * @param scan the neighbours of the node to add (null for no neighbours)
+     * @return index of the node
+     */
+    public int add(final NodeData info, final MapOfNeighbours scan) {
+        int index = this.intern(info.getID());
+        if (!this.nodes[index]) {
+            this.nodes[index] = true;
+            this.nodeOrder[this.nodeCount++] = index;
+        }
+        this.ips[index] = info.getIP();
+        if (info.isAbsolutelyLocalised()) {
+            info.getLocationAbsolute().copyTo(this.locations, index * Vector3DMath.SIZE);
+            this.localised[index] = true;
+        } else {
+            this.localised[index] = false;
+        }
+        int count = ( scan == null ) ? 0 : scan.size();
+        this.ensureLinkCapacity(this.linkSize + count);
+        this.linkStarts[index] = this.linkSize;
+        this.linkCounts[index] = count;
+        if (count > 0) {
+            for (NeighbourProperties neighbour : scan.values()) {
+                this.addLink(neighbour);
+            }
+        }
+        return index;
+    }
+
+    private void addLink(final NeighbourProperties neighbour) {
+        int link = this.linkSize++;
+        // interning may reallocate the node arrays only
+        this.linkTargets[link] = this.intern(neighbour.getID());
+        byte flags = 0;
+        if (neighbour.getRssi() != null) {
+            this.linkRssi[link] = neighbour.getRssi();
+            flags |= LINK_RSSI;
+        }
+        if (neighbour.getRtt() != null) {
+            this.linkRtt[link] = neighbour.getRtt();
+            flags |= LINK_RTT;
+        }
+        if (neighbour.getDistance() != null) {
+            this.linkDistance[link] = neighbour.getDistance();
+            flags |= LINK_DISTANCE;
+        }
+        if (( neighbour.getLocationAbsolute() != null ) && neighbour.getLocationAbsolute().isDefined()) {
+            neighbour.getLocationAbsolute().copyTo(this.linkLocationsAbsolute, link * Vector3DMath.SIZE);
+            flags |= LINK_LOCATION_ABSOLUTE;
+        }
+        if (( neighbour.getLocationRelative() != null ) && neighbour.getLocationRelative().isDefined()) {
+            neighbour.getLocationRelative().copyTo(this.linkLocationsRelative, link * Vector3DMath.SIZE);
+            flags |= LINK_LOCATION_RELATIVE;
+        }
+        this.linkFlags[link] = flags;
+        // keep only such addresses which cannot be obtained from IDs as URIs
+        String ip = neighbour.getIP();
+        if (( ip != null ) && ( ( neighbour.getURI() == null ) || !ip.equals(neighbour.getURI().getHost()) )) {
+            this.linkIps.put(link, ip);
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > this.ids.length) {
+            int newCapacity = Math.max(capacity, 2 * this.ids.length);
+            this.ids = Arrays.copyOf(this.ids, newCapacity);
+            this.ips = Arrays.copyOf(this.ips, newCapacity);
+            this.nodes = Arrays.copyOf(this.nodes, newCapacity);
+            this.nodeOrder = Arrays.copyOf(this.nodeOrder, newCapacity);
+            this.localised = Arrays.copyOf(this.localised, newCapacity);
+            this.locations = Arrays.copyOf(this.locations, newCapacity * Vector3DMath.SIZE);
+            this.linkStarts = Arrays.copyOf(this.linkStarts, newCapacity);
+            this.linkCounts = Arrays.copyOf(this.linkCounts, newCapacity);
+        }
+    }
+
+    private void ensureLinkCapacity(final int capacity) {
+        if (capacity > this.linkTargets.length) {
+            int newCapacity = Math.max(capacity, 2 * this.linkTargets.length);
+            this.linkTargets = Arrays.copyOf(this.linkTargets, newCapacity);
+            this.linkFlags = Arrays.copyOf(this.linkFlags, newCapacity);
+            this.linkRssi = Arrays.copyOf(this.linkRssi, newCapacity);
+            this.linkRtt = Arrays.copyOf(this.linkRtt, newCapacity);
+            this.linkDistance = Arrays.copyOf(this.linkDistance, newCapacity);
+            this.linkLocationsAbsolute = Arrays.copyOf(this.linkLocationsAbsolute, newCapacity * Vector3DMath.SIZE);
+            this.linkLocationsRelative = Arrays.copyOf(this.linkLocationsRelative, newCapacity * Vector3DMath.SIZE);
+        }
+    }
+
+    /**
+     * Get number of interned nodes (including neighbours which are not nodes
+     * of the store).
+     *
+     * @return the number of interned nodes
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get number of nodes of the store, i.e. the interned nodes which are not
+     * only neighbours of other nodes.
+     *
+     * @return the number of nodes
+     */
+    public int nodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Get index of a node of the store in order of addition of the nodes.
+     *
+     * @param position position of the node in order of addition (from 0 to
+     * {@link #nodeCount()} exclusive)
+     * @return index of the node
+     */
+    public int getNodeIndex(final int position) {
+        return this.nodeOrder[position];
+    }
+
+    /**
+     * Get number of links of all nodes to their neighbours.
+     *
+     * @return the number of links
+     */
+    public int linkSize() {
+        return this.linkSize;
+    }
+
+    /**
+     * Get index of a node by its ID.
+     *
+     * @param id ID of the node
+     * @return index of the node or -1 if there is no such node
+     */
+    public int indexOf(final String id) {
+        Integer index = this.indexes.get(id);
+        return ( index == null ) ? -1 : index;
+    }
+
+    /**
+     * Get ID of a node.
+     *
+     * @param index index of the node
+     * @return ID of the node
+     */
+    public String getID(final int index) {
+        return this.ids[index];
+    }
+
+    /**
+     * Get IPv4 or IPv6 address of a node.
+     *
+     * @param index index of the node
+     * @return the address or null if unknown
+     */
+    public String getIP(final int index) {
+        return this.ips[index];
+    }
+
+    /**
+     * Check if an interned node is a node of the store (i.e. it has its info
+     * and scan), not only a neighbour of another node.
+     *
+     * @param index index of the node
+     * @return true iff it is a node of the store
+     */
+    public boolean isNode(final int index) {
+        return this.nodes[index];
+    }
+
+    /**
+     * Check if a node has defined its absolute location.
+     *
+     * @param index index of the node
+     * @return true iff the node has defined its absolute location
+     */
+    public boolean isAbsolutelyLocalised(final int index) {
+        return this.localised[index];
+    }
+
+    /**
+     * Get absolute locations of all nodes as primitive coordinates. The
+     * coordinates of a node are at offset index * {@link Vector3DMath#SIZE}
+     * and they are valid only for {@link #isAbsolutelyLocalised(int) localised}
+     * nodes. The array is not a copy and it can be reallocated by adding nodes.
+     *
+     * @return the coordinates
+     */
+    public double[] getLocations() {
+        return this.locations;
+    }
+
+    /**
+     * Set absolute location of a node.
+     *
+     * @param index index of the node
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param z Z coordinate
+     */
+    public void setLocationAbsolute(final int index, final double x, final double y, final double z) {
+        Vector3DMath.set(this.locations, index * Vector3DMath.SIZE, x, y, z);
+        this.localised[index] = true;
+    }
+
+    /**
+     * Unset absolute location of a node.
+     *
+     * @param index index of the node
+     */
+    public void unsetLocationAbsolute(final int index) {
+        this.localised[index] = false;
+    }
+
+    /**
+     * Get index of the first link of a node to its neighbours. The links of
+     * the node are from this index to {@link #getLinkEnd(int)} (exclusive).
+     *
+     * @param index index of the node
+     * @return index of the first link
+     */
+    public int getLinkStart(final int index) {
+        return this.linkStarts[index];
+    }
+
+    /**
+     * Get index after the last link of a node to its neighbours.
+     *
+     * @param index index of the node
+     * @return index after the last link
+     */
+    public int getLinkEnd(final int index) {
+        return this.linkStarts[index] + this.linkCounts[index];
+    }
+
+    /**
+     * Get number of links of a node to its neighbours.
+     *
+     * @param index index of the node
+     * @return number of the links
+     */
+    public int getLinkCount(final int index) {
+        return this.linkCounts[index];
+    }
+
+    /**
+     * Get index of the neighbour of a link.
+     *
+     * @param link index of the link
+     * @return index of the neighbouring node
+     */
+    public int getLinkTarget(final int link) {
+        return this.linkTargets[link];
+    }
+
+    /**
+     * Check if a link has set given properties.
+     *
+     * @param link index of the link
+     * @param flags the properties as a combination of LINK_* flags
+     * @return true iff all the properties are set
+     */
+    public boolean hasLink(final int link, final byte flags) {
+        return ( this.linkFlags[link] & flags ) == flags;
+    }
+
+    /**
+     * Get RSSI of a link, valid only if there is {@link #LINK_RSSI}.
+     *
+     * @param link index of the link
+     * @return the RSSI
+     */
+    public short getLinkRssi(final int link) {
+        return this.linkRssi[link];
+    }
+
+    /**
+     * Get RTT of a link, valid only if there is {@link #LINK_RTT}.
+     *
+     * @param link index of the link
+     * @return the RTT
+     */
+    public double getLinkRtt(final int link) {
+        return this.linkRtt[link];
+    }
+
+    /**
+     * Get distance of a link, valid only if there is {@link #LINK_DISTANCE}.
+     *
+     * @param link index of the link
+     * @return the distance
+     */
+    public double getLinkDistance(final int link) {
+        return this.linkDistance[link];
+    }
+
+    /**
+     * Set distance of a link.
+     *
+     * @param link index of the link
+     * @param distance the distance
+     */
+    public void setLinkDistance(final int link, final double distance) {
+        this.linkDistance[link] = distance;
+        this.linkFlags[link] |= LINK_DISTANCE;
+    }
+
+    /**
+     * Get absolute locations of neighbours as seen in the scans. The
+     * coordinates of a link are at offset link * {@link Vector3DMath#SIZE} and
+     * they are valid only if there is {@link #LINK_LOCATION_ABSOLUTE}.
+     *
+     * @return the coordinates
+     */
+    public double[] getLinkLocationsAbsolute() {
+        return this.linkLocationsAbsolute;
+    }
+
+    /**
+     * Get relative locations of neighbours. The coordinates of a link are at
+     * offset link * {@link Vector3DMath#SIZE} and they are valid only if there
+     * is {@link #LINK_LOCATION_RELATIVE}.
+     *
+     * @return the coordinates
+     */
+    public double[] getLinkLocationsRelative() {
+        return this.linkLocationsRelative;
+    }
+
+    /**
+     * Get absolute location of the neighbour of a link in the same way as
+     * {@link MapOfNeighbours#setLocationsFromNodes(eu.esonia.but.geoloc4d.type.MapOfNodes)}
+     * and {@link MapOfNeighbours#getNodesWithLocation(eu.esonia.but.geoloc4d.type.Vector3D, boolean, boolean)},
+     * i.e. the location of the localised neighbouring node, or its absolute
+     * location from the scan, or its relative location from the scan added to
+     * the location of the localised scanning node.
+     *
+     * @param index index of the scanning node
+     * @param link index of the link of the scanning node
+     * @param result array for the location
+     * @param resultOffset offset of the location in the array
+     * @return true iff the location is known and it has been set
+     */
+    public boolean getLinkLocationAbsolute(final int index, final int link,
+            final double[] result, final int resultOffset) {
+        int target = this.linkTargets[link];
+        if (this.localised[target]) {
+            Vector3DMath.copy(this.locations, target * Vector3DMath.SIZE, result, resultOffset);
+            return true;
+        } else if (( this.linkFlags[link] & LINK_LOCATION_ABSOLUTE ) != 0) {
+            Vector3DMath.copy(this.linkLocationsAbsolute, link * Vector3DMath.SIZE, result, resultOffset);
+            return true;
+        } else if (( ( this.linkFlags[link] & LINK_LOCATION_RELATIVE ) != 0 ) && this.localised[index]) {
+            Vector3DMath.add(this.locations, index * Vector3DMath.SIZE,
+                    this.linkLocationsRelative, link * Vector3DMath.SIZE, result, resultOffset);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Get distance of the neighbour of a link in the same way as
+     * {@link MapOfNeighbours#getNodesWithDistance(eu.esonia.but.geoloc4d.type.Vector3D, boolean, boolean)}
+     * for the neighbours with locations set by {@link MapOfNeighbours#setLocationsFromNodes(eu.esonia.but.geoloc4d.type.MapOfNodes)},
+     * i.e. the distance from the scan, or the norm of the relative location,
+     * or the distance of the absolute location of the neighbour from the
+     * localised scanning node.
+     *
+     * @param index index of the scanning node
+     * @param link index of the link of the scanning node
+     * @return the distance or NaN if it is unknown
+     */
+    public double getLinkDistanceOrLocation(final int index, final int link) {
+        if (( this.linkFlags[link] & LINK_DISTANCE ) != 0) {
+            return this.linkDistance[link];
+        } else if (( this.linkFlags[link] & LINK_LOCATION_RELATIVE ) != 0) {
+            return Vector3DMath.norm(this.linkLocationsRelative, link * Vector3DMath.SIZE);
+        } else if (this.localised[index]) {
+            int target = this.linkTargets[link];
+            if (this.localised[target]) {
+                return Vector3DMath.distance(this.locations, target * Vector3DMath.SIZE,
+                        this.locations, index * Vector3DMath.SIZE);
+            } else if (( this.linkFlags[link] & LINK_LOCATION_ABSOLUTE ) != 0) {
+                return Vector3DMath.distance(this.linkLocationsAbsolute, link * Vector3DMath.SIZE,
+                        this.locations, index * Vector3DMath.SIZE);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Get data of a node as a NodeData object.
+     *
+     * @param index index of the node
+     * @return the data of the node
+     */
+    public NodeData getInfo(final int index) {
+        NodeData info = new NodeData();
+        info.setID(this.ids[index]);
+        info.setIP(this.ips[index]);
+        if (this.localised[index]) {
+            info.setLocationAbsolute(Vector3DMath.toVector3D(this.locations, index * Vector3DMath.SIZE));
+        }
+        return info;
+    }
+
+    /**
+     * Get neighbours of a node as a MapOfNeighbours object.
+     *
+     * @param index index of the node
+     * @return the neighbours of the node
+     */
+    public MapOfNeighbours getScan(final int index) {
+        MapOfNeighbours scan = new MapOfNeighbours();
+        for (int link = this.getLinkStart(index); link < this.getLinkEnd(index); link++) {
+            NeighbourProperties neighbour = new NeighbourProperties();
+            neighbour.setID(this.ids[this.linkTargets[link]]);
+            neighbour.setIP(this.linkIps.get(link));
+            byte flags = this.linkFlags[link];
+            if (( flags & LINK_RSSI ) != 0) {
+                neighbour.setRssi(this.linkRssi[link]);
+            }
+            if (( flags & LINK_RTT ) != 0) {
+                neighbour.setRtt(this.linkRtt[link]);
+            }
+            if (( flags & LINK_DISTANCE ) != 0) {
+                neighbour.setDistance(this.linkDistance[link]);
+            }
+            if (( flags & LINK_LOCATION_ABSOLUTE ) != 0) {
+                neighbour.setLocationAbsolute(Vector3DMath.toVector3D(this.linkLocationsAbsolute, link * Vector3DMath.SIZE));
+            }
+            if (( flags & LINK_LOCATION_RELATIVE ) != 0) {
+                neighbour.setLocationRelative(Vector3DMath.toVector3D(this.linkLocationsRelative, link * Vector3DMath.SIZE));
+            }
+            scan.put(neighbour.getID(), neighbour);
+        }
+        return scan;
+    }
+
+    /**
+     * Get a node as a Node object.
+     *
+     * @param index index of the node
+     * @return the node
+     */
+    public Node getNode(final int index) {
+        return new Node(this.getInfo(index), this.getScan(index));
+    }
+
+    /**
+     * Export the store into a map of nodes (only the interned nodes which
+     * are {@link #isNode(int) nodes of the store}, in order of their addition).
+     *
+     * @return the map of nodes
+     */
+    public MapOfNodes toMapOfNodes() {
+        MapOfNodes result = new MapOfNodes();
+        for (int position = 0; position < this.nodeCount; position++) {
+            int index = this.nodeOrder[position];
+            result.put(this.ids[index], this.getNode(index));
+        }
+        return result;
+    }
+
+    public JSONArray toJSONArray() {
+        return this.toMapOfNodes().toJSONArray();
+    }
+
+    @Override
+    public String toString() {
+        return this.toMapOfNodes().toString();
+    }
+
+    @Override
+    public String toJSONString() {
+        return this.toJSONArray().toString();
+    }
+}
@@ -0,0 +1,102 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import org.json.JSONException;
+
+/**
+ * Streaming writer of nodes into JSON representation of a map of nodes (see
+ * {@link MapOfNodes#toJSONString()}). The nodes are written one by one, so
+ * there is no need to keep representation of all nodes in memory.
+ *
+ * @author rychly
+ */
+public class NodeWriter implements Closeable, Flushable {
+
+    private final Writer writer;
+    /**
+     * Number of the written nodes.
+     */
+    private int count = 0;
+
+    /**
+     * Create a writer of nodes.
+     *
+     * @param writer the writer for JSON representation of a map of nodes
+     */
+    public NodeWriter(final Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Write a node.
+     *
+     * @param node the node to write
+     * @throws IOException a write error
+     */
+    public void write(final Node node) throws IOException {
+        this.writer.write(( this.count++ == 0 ) ? '[' : ',');
+        try {
+            node.toJSONObject().write(this.writer);
+        }
+        catch (JSONException ex) {
+            throw new RuntimeException("Impossible, the value cannot be an invalid number!", ex);
+        }
+    }
+
+    /**
+     * Write all nodes of a map of nodes.
+     *
+     * @param mapOfNodes the map of nodes to write
+     * @throws IOException a write error
+     */
+    public void writeAll(final MapOfNodes mapOfNodes) throws IOException {
+        for (Node node : mapOfNodes.values()) {
+            this.write(node);
+        }
+    }
+
+    /**
+     * Write all nodes of a columnar store of nodes (one by one).
+     *
+     * @param nodeStore the store of nodes to write
+     * @throws IOException a write error
+     */
+    public void writeAll(final NodeStore nodeStore) throws IOException {
+        for (int position = 0; position < nodeStore.nodeCount(); position++) {
+            this.write(nodeStore.getNode(nodeStore.getNodeIndex(position)));
+        }
+    }
+
+    /**
+     * Get number of the written nodes.
+     *
+     * @return the number of the nodes
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    /**
+     * Finish the JSON representation of a map of nodes and close the
+     * underlying writer.
+     *
+     * @throws IOException a write error
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.writer.write(( this.count == 0 ) ? "[]" : "]");
+        }
+        finally {
+            this.writer.close();
+        }
+    }
+}
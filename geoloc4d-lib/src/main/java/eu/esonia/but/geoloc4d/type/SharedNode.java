@@ -0,0 +1,211 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Node hosted by services (e.g. by a RESTlet and a web-service) which can be
+ * read and changed concurrently. The state of the node is held as an
+ * immutable {@link Snapshot} which is replaced atomically on each change
+ * (copy-on-write), so readers never lock and they always see a consistent
+ * version of the node, and writers never block the readers.
+ *
+ * The hosted node itself (e.g. a node of {@link IndexedNodes}) is updated by the writers too, so its {@link LocationListener}s are
+ * notified. However, the hosted node must not be changed other than by this
+ * holder and it should not be read concurrently, the snapshots should be
+ * read instead.
+ *
+ * @author rychly
+ */
+public final class SharedNode {
+
+    /**
+     * Immutable version of a shared node with its precomputed string
+     * representations. The node of the snapshot must not be modified.
+     */
+    public static final class Snapshot {
+
+        private final Node node;
+        private final long version;
+        private final long modificationTime;
+        private final String representation;
+        private final String infoRepresentation;
+        private final String scanRepresentation;
+        private final String locationAbsoluteRepresentation;
+        private final String locationEstimateRepresentation;
+
+        private Snapshot(final Node node, final long version, final long modificationTime,
+                final String scanRepresentation) {
+            this.node = node;
+            this.version = version;
+            this.modificationTime = modificationTime;
+            this.representation = node.toJSONString();
+            this.infoRepresentation = node.getInfo().toJSONString();
+            this.scanRepresentation = ( scanRepresentation != null )
+                    ? scanRepresentation : node.getScan().toJSONString();
+            Vector3D location = node.getInfo().getLocationAbsolute();
+            this.locationAbsoluteRepresentation = ( location != null ) ? location.toJSONString() : "null";
+            LocationEstimate estimate = node.getInfo().getLocationEstimate();
+            this.locationEstimateRepresentation = ( estimate != null ) ? estimate.toJSONString() : null;
+        }
+
+        /**
+         * Get the node of the snapshot (a copy of the hosted node which must
+         * not be modified).
+         *
+         * @return the node
+         */
+        public Node getNode() {
+            return this.node;
+        }
+
+        /**
+         * Get the version of the node, increased on each change of the node.
+         *
+         * @return the version
+         */
+        public long getVersion() {
+            return this.version;
+        }
+
+        /**
+         * Get the modification time of the version in whole seconds (as in
+         * HTTP), it differs for each version.
+         *
+         * @return the modification time in milliseconds since the epoch
+         */
+        public long getModificationTime() {
+            return this.modificationTime;
+        }
+
+        /**
+         * @return the node as a toJSONString result
+         */
+        public String toJSONString() {
+            return this.representation;
+        }
+
+        /**
+         * @return the NodeData component (info) as a toJSONString result
+         */
+        public String getInfoJSONString() {
+            return this.infoRepresentation;
+        }
+
+        /**
+         * @return the MapOfNeighbours component (scan) as a toJSONString result
+         */
+        public String getScanJSONString() {
+            return this.scanRepresentation;
+        }
+
+        /**
+         * @return the absolute location as a toJSONString result
+         */
+        public String getLocationAbsoluteJSONString() {
+            return this.locationAbsoluteRepresentation;
+        }
+
+        /**
+         * @return the estimate of the absolute location as a toJSONString
+         * result or null if the location has not been estimated
+         */
+        public String getLocationEstimateJSONString() {
+            return this.locationEstimateRepresentation;
+        }
+    }
+    /**
+     * The hosted node, changed only by the writers holding the lock of this
+     * holder.
+     */
+    private final Node node;
+    /**
+     * The actual snapshot of the hosted node.
+     */
+    private final AtomicReference<Snapshot> snapshot;
+
+    /**
+     * Construct a holder of a hosted node.
+     *
+     * @param node the node to host
+     */
+    public SharedNode(final Node node) {
+        this.node = node;
+        this.snapshot = new AtomicReference<>(new Snapshot(new Node(node.getInfo(), node.getScan()),
+                0, System.currentTimeMillis() / 1000 * 1000, null));
+    }
+
+    /**
+     * Construct holders of nodes of a map, so the holders can be shared by
+     * services of the nodes.
+     *
+     * @param mapOfNodes the map of the nodes to host
+     * @return the holders by the nodes' IDs (in the order of the map)
+     */
+    public static Map<String, SharedNode> share(final MapOfNodes mapOfNodes) {
+        Map<String, SharedNode> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Node> entry : mapOfNodes.entrySet()) {
+            result.put(entry.getKey(), new SharedNode(entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Get the actual snapshot of the hosted node (without locking).
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        return this.snapshot.get();
+    }
+
+    /**
+     * Get identificator of the hosted node (e.g. its name).
+     *
+     * @return identificator of the node
+     */
+    public String getID() {
+        return this.snapshot.get().getNode().getInfo().getID();
+    }
+
+    /**
+     * Set the absolute location of the hosted node without its estimate, i.e.
+     * the location set manually (e.g. for an anchor).
+     *
+     * @param locationAbsolute the location to set (it is copied)
+     * @return the new snapshot of the node
+     */
+    public Snapshot setLocationAbsolute(final Vector3D locationAbsolute) {
+        return this.setLocationAbsolute(locationAbsolute, null);
+    }
+
+    /**
+     * Set the absolute location of the hosted node with its estimate and
+     * publish a new snapshot of the node. The writers are serialised, so the
+     * hosted node and the snapshots change in the same order.
+     *
+     * @param locationAbsolute the location to set (it is copied)
+     * @param locationEstimate the estimate of the location or null if the
+     * location has not been estimated by trilateration
+     * @return the new snapshot of the node
+     */
+    public synchronized Snapshot setLocationAbsolute(final Vector3D locationAbsolute,
+            final LocationEstimate locationEstimate) {
+        Snapshot previous = this.snapshot.get();
+        NodeData info = new NodeData(previous.getNode().getInfo());
+        info.setLocationAbsolute(new Vector3D(locationAbsolute), locationEstimate);
+        // the modification times of the versions must differ (in whole seconds)
+        Snapshot next = new Snapshot(new Node(info, previous.getNode().getScan()), previous.getVersion() + 1,
+                Math.max(System.currentTimeMillis() / 1000 * 1000, previous.getModificationTime() + 1000),
+                previous.getScanJSONString());
+        this.snapshot.set(next);
+        this.node.getInfo().setLocationAbsolute(new Vector3D(locationAbsolute), locationEstimate);
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        return this.snapshot.get().getNode().toString();
+    }
+}
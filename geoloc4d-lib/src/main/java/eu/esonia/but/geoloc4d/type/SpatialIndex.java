@@ -0,0 +1,532 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index of localised nodes (i.e. nodes with absolute locations) as a
+ * uniform grid of cubic cells. It answers k-nearest, radius and bounding-box
+ * queries without a full scan of all nodes, and it can be updated
+ * incrementally, e.g. as a {@link LocationListener} of the indexed nodes. The
+ * size of cells is either given, or it is adapted to the indexed nodes (about
+ * one node per cell) and the grid is rebuilt when the number of the nodes or
+ * their extent changes too much.
+ *
+ * @author rychly
+ */
+public final class SpatialIndex implements LocationListener {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int CELL_BITS = 21;
+    private static final long CELL_MASK = ( 1L << CELL_BITS ) - 1;
+    /**
+     * Factor of a change of the adapted size of cells to rebuild the grid.
+     */
+    private static final double REGRID_FACTOR = 2;
+    /**
+     * Edge length of a cell.
+     */
+    private double cellSize;
+    /**
+     * True iff the size of cells is adapted to the indexed nodes.
+     */
+    private final boolean adaptive;
+    /**
+     * Slots of the indexed nodes by their IDs.
+     */
+    private final Map<String, Integer> slots;
+    /**
+     * Cells of the grid with slots of the nodes in them.
+     */
+    private final Map<Long, Cell> cells;
+    private String[] ids;
+    private double[] locations;
+    private int[] freeSlots;
+    private int freeSlotsCount;
+    private int slotsCount;
+    // bounding box of cells which have been occupied
+    private int minCellX = Integer.MAX_VALUE, minCellY = Integer.MAX_VALUE, minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE, maxCellY = Integer.MIN_VALUE, maxCellZ = Integer.MIN_VALUE;
+    // bounding box of locations which have been indexed (for the adaptive size of cells)
+    private double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+    private double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+
+    /**
+     * Nodes in a cell of the grid.
+     */
+    private static final class Cell {
+
+        private int[] slots = new int[4];
+        private int size = 0;
+
+        private void add(final int slot) {
+            if (this.size == this.slots.length) {
+                this.slots = Arrays.copyOf(this.slots, 2 * this.size);
+            }
+            this.slots[this.size++] = slot;
+        }
+
+        private void remove(final int slot) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.slots[i] == slot) {
+                    this.slots[i] = this.slots[--this.size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Create an empty index with given size of cells. The size should be
+     * comparable with typical distances of neighbouring nodes (e.g. radio
+     * range).
+     *
+     * @param cellSize the edge length of a cell
+     */
+    public SpatialIndex(final double cellSize) {
+        this(cellSize, false);
+    }
+
+    /**
+     * Create an empty index with size of cells adapted to the indexed nodes.
+     */
+    public SpatialIndex() {
+        this(1, true);
+    }
+
+    SpatialIndex(final double cellSize, final boolean adaptive) {
+        if (!( cellSize > 0 ) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The size of cells must be a finite positive number!");
+        }
+        this.cellSize = cellSize;
+        this.adaptive = adaptive;
+        this.slots = new HashMap<>();
+        this.cells = new HashMap<>();
+        this.ids = new String[INITIAL_CAPACITY];
+        this.locations = new double[INITIAL_CAPACITY * Vector3DMath.SIZE];
+        this.freeSlots = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Create an index of localised nodes from a map of nodes with size of
+     * cells adapted to the indexed nodes (initially estimated from their
+     * bounding box).
+     *
+     * @param mapOfNodes the map of nodes
+     */
+    public SpatialIndex(final MapOfNodes mapOfNodes) {
+        this(estimateCellSize(mapOfNodes), true);
+        for (Node node : mapOfNodes.values()) {
+            if (node.getInfo().isAbsolutelyLocalised()) {
+                this.put(node.getInfo().getID(), node.getInfo().getLocationAbsolute());
+            }
+        }
+    }
+
+    static double estimateCellSize(final MapOfNodes mapOfNodes) {
+        double[] min = new double[]{Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] max = new double[]{-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        double[] location = new double[Vector3DMath.SIZE];
+        int count = 0;
+        for (Node node : mapOfNodes.values()) {
+            if (node.getInfo().isAbsolutelyLocalised()) {
+                node.getInfo().getLocationAbsolute().copyTo(location, 0);
+                for (int i = 0; i < Vector3DMath.SIZE; i++) {
+                    min[i] = Math.min(min[i], location[i]);
+                    max[i] = Math.max(max[i], location[i]);
+                }
+                count++;
+            }
+        }
+        double extent = 0;
+        for (int i = 0; i < Vector3DMath.SIZE; i++) {
+            extent = Math.max(extent, max[i] - min[i]);
+        }
+        return ( count < 2 ) || !( extent > 0 ) || Double.isInfinite(extent)
+                ? 1 : extent / Math.cbrt(count);
+    }
+
+    /**
+     * Get the edge length of a cell.
+     *
+     * @return the edge length
+     */
+    public synchronized double getCellSize() {
+        return this.cellSize;
+    }
+
+    /**
+     * Get number of the indexed nodes.
+     *
+     * @return the number of the nodes
+     */
+    public synchronized int size() {
+        return this.slots.size();
+    }
+
+    /**
+     * Check if a node is indexed.
+     *
+     * @param id ID of the node
+     * @return true iff the node is indexed
+     */
+    public synchronized boolean contains(final String id) {
+        return this.slots.containsKey(id);
+    }
+
+    /**
+     * Get location of an indexed node.
+     *
+     * @param id ID of the node
+     * @return the location or null if the node is not indexed
+     */
+    public synchronized Vector3D getLocation(final String id) {
+        Integer slot = this.slots.get(id);
+        return ( slot == null ) ? null : Vector3DMath.toVector3D(this.locations, slot * Vector3DMath.SIZE);
+    }
+
+    /**
+     * Put a node into the index or move it to a new location.
+     *
+     * @param id ID of the node
+     * @param location the location of the node (null or undefined to remove
+     * the node)
+     */
+    public void put(final String id, final Vector3D location) {
+        if (( location == null ) || location.isUndefined()) {
+            this.remove(id);
+        } else {
+            double[] coordinates = new double[Vector3DMath.SIZE];
+            location.copyTo(coordinates, 0);
+            this.put(id, coordinates[0], coordinates[1], coordinates[2]);
+        }
+    }
+
+    /**
+     * Put a node into the index or move it to a new location.
+     *
+     * @param id ID of the node
+     * @param x X coordinate of the node
+     * @param y Y coordinate of the node
+     * @param z Z coordinate of the node
+     */
+    public synchronized void put(final String id, final double x, final double y, final double z) {
+        long key = this.cellKey(x, y, z);
+        Integer slot = this.slots.get(id);
+        boolean sameCell = false;
+        if (slot == null) {
+            slot = this.allocateSlot();
+            this.ids[slot] = id;
+            this.slots.put(id, slot);
+        } else {
+            long oldKey = this.cellKey(this.locations[slot * Vector3DMath.SIZE],
+                    this.locations[slot * Vector3DMath.SIZE + 1], this.locations[slot * Vector3DMath.SIZE + 2]);
+            sameCell = ( oldKey == key );
+            if (!sameCell) {
+                this.removeFromCell(oldKey, slot);
+            }
+        }
+        Vector3DMath.set(this.locations, slot * Vector3DMath.SIZE, x, y, z);
+        if (!sameCell) {
+            this.addToCell(key, slot);
+        }
+        if (this.adaptive) {
+            this.minX = Math.min(this.minX, x);
+            this.minY = Math.min(this.minY, y);
+            this.minZ = Math.min(this.minZ, z);
+            this.maxX = Math.max(this.maxX, x);
+            this.maxY = Math.max(this.maxY, y);
+            this.maxZ = Math.max(this.maxZ, z);
+            this.adaptCellSize();
+        }
+    }
+
+    private void addToCell(final long key, final int slot) {
+        Cell cell = this.cells.get(key);
+        if (cell == null) {
+            cell = new Cell();
+            this.cells.put(key, cell);
+            int offset = slot * Vector3DMath.SIZE;
+            int cellX = this.cellIndex(this.locations[offset]);
+            int cellY = this.cellIndex(this.locations[offset + 1]);
+            int cellZ = this.cellIndex(this.locations[offset + 2]);
+            this.minCellX = Math.min(this.minCellX, cellX);
+            this.minCellY = Math.min(this.minCellY, cellY);
+            this.minCellZ = Math.min(this.minCellZ, cellZ);
+            this.maxCellX = Math.max(this.maxCellX, cellX);
+            this.maxCellY = Math.max(this.maxCellY, cellY);
+            this.maxCellZ = Math.max(this.maxCellZ, cellZ);
+        }
+        cell.add(slot);
+    }
+
+    /**
+     * Rebuild the grid if the size of cells for about one node per cell
+     * differs from the actual size by more than {@link #REGRID_FACTOR}. The
+     * size changes by the factor after the number of nodes or their extent
+     * changes geometrically, so the amortised cost of the rebuilds is O(1)
+     * per change.
+     */
+    private void adaptCellSize() {
+        int count = this.slots.size();
+        double extent = Math.max(Math.max(this.maxX - this.minX, this.maxY - this.minY), this.maxZ - this.minZ);
+        if (( count < 2 ) || !( extent > 0 ) || Double.isInfinite(extent)) {
+            return;
+        }
+        double size = extent / Math.cbrt(count);
+        if (( size > REGRID_FACTOR * this.cellSize ) || ( size * REGRID_FACTOR < this.cellSize )) {
+            this.cellSize = size;
+            this.cells.clear();
+            this.minCellX = this.minCellY = this.minCellZ = Integer.MAX_VALUE;
+            this.maxCellX = this.maxCellY = this.maxCellZ = Integer.MIN_VALUE;
+            for (int slot = 0; slot < this.slotsCount; slot++) {
+                if (this.ids[slot] != null) {
+                    int offset = slot * Vector3DMath.SIZE;
+                    this.addToCell(this.cellKey(this.locations[offset], this.locations[offset + 1],
+                            this.locations[offset + 2]), slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove a node from the index.
+     *
+     * @param id ID of the node
+     * @return true iff the node has been indexed
+     */
+    public synchronized boolean remove(final String id) {
+        Integer slot = this.slots.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        this.removeFromCell(this.cellKey(this.locations[slot * Vector3DMath.SIZE],
+                this.locations[slot * Vector3DMath.SIZE + 1], this.locations[slot * Vector3DMath.SIZE + 2]), slot);
+        this.ids[slot] = null;
+        this.freeSlots[this.freeSlotsCount++] = slot;
+        if (this.adaptive) {
+            this.adaptCellSize();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void locationChanged(final NodeData node, final Vector3D oldLocation) {
+        // the location is read under the lock, so a concurrent change cannot be overwritten by its older value
+        this.put(node.getID(), node.getLocationAbsolute());
+    }
+
+    /**
+     * Get IDs of k nodes nearest to a given point.
+     *
+     * @param point the point (with finite coordinates)
+     * @param k maximal number of the nodes (no nodes if it is not positive)
+     * @return IDs of the nodes ordered by their distance from the point (the
+     * nearest first)
+     * @throws IllegalArgumentException the coordinates of the point are not
+     * finite
+     */
+    public synchronized List<String> getNearest(final Vector3D point, final int k) {
+        double[] query = new double[Vector3DMath.SIZE];
+        point.copyTo(query, 0);
+        for (int i = 0; i < Vector3DMath.SIZE; i++) {
+            if (Double.isNaN(query[i]) || Double.isInfinite(query[i])) {
+                throw new IllegalArgumentException("The coordinates of the point must be finite numbers!");
+            }
+        }
+        int count = Math.max(0, Math.min(k, this.slots.size()));
+        // the best slots found so far sorted by their distances
+        int[] bestSlots = new int[count];
+        double[] bestDistances = new double[count];
+        int found = 0;
+        long centerX = this.cellIndex(query[0]);
+        long centerY = this.cellIndex(query[1]);
+        long centerZ = this.cellIndex(query[2]);
+        // only the rings crossing the box of the occupied cells are visited
+        long minRing = Math.max(Math.max(
+                Math.max(this.minCellX - centerX, centerX - this.maxCellX),
+                Math.max(this.minCellY - centerY, centerY - this.maxCellY)),
+                Math.max(Math.max(this.minCellZ - centerZ, centerZ - this.maxCellZ), 0));
+        long maxRing = Math.max(Math.max(
+                Math.max(Math.abs(centerX - this.minCellX), Math.abs(this.maxCellX - centerX)),
+                Math.max(Math.abs(centerY - this.minCellY), Math.abs(this.maxCellY - centerY))),
+                Math.max(Math.abs(centerZ - this.minCellZ), Math.abs(this.maxCellZ - centerZ)));
+        for (long ring = minRing; ( count > 0 ) && ( ring <= maxRing ); ring++) {
+            // the nodes in this ring are at the least (ring - 1) * cellSize far from the point
+            if (( found == count ) && ( ( ring - 1 ) * this.cellSize > Math.sqrt(bestDistances[count - 1]) )) {
+                break;
+            }
+            long fromX = Math.max(centerX - ring, this.minCellX), toX = Math.min(centerX + ring, this.maxCellX);
+            long fromY = Math.max(centerY - ring, this.minCellY), toY = Math.min(centerY + ring, this.maxCellY);
+            long fromZ = Math.max(centerZ - ring, this.minCellZ), toZ = Math.min(centerZ + ring, this.maxCellZ);
+            for (long x = fromX; x <= toX; x++) {
+                for (long y = fromY; y <= toY; y++) {
+                    boolean onBorder = ( Math.abs(x - centerX) == ring ) || ( Math.abs(y - centerY) == ring );
+                    // inside of the ring, only its bottom and top cells
+                    long z = onBorder ? fromZ : ( ( centerZ - ring >= fromZ ) ? centerZ - ring : centerZ + ring );
+                    for (; z <= toZ; z += onBorder ? 1 : 2 * ring) {
+                        Cell cell = this.cells.get(cellKey((int) x, (int) y, (int) z));
+                        if (cell == null) {
+                            continue;
+                        }
+                        for (int i = 0; i < cell.size; i++) {
+                            int slot = cell.slots[i];
+                            double distance = Vector3DMath.distanceSquared(query, 0, this.locations, slot * Vector3DMath.SIZE);
+                            if (( found < count ) || ( distance < bestDistances[found - 1] )) {
+                                // insert into the sorted best slots
+                                int position = ( found < count ) ? found++ : found - 1;
+                                while (( position > 0 ) && ( bestDistances[position - 1] > distance )) {
+                                    bestSlots[position] = bestSlots[position - 1];
+                                    bestDistances[position] = bestDistances[position - 1];
+                                    position--;
+                                }
+                                bestSlots[position] = slot;
+                                bestDistances[position] = distance;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        List<String> result = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            result.add(this.ids[bestSlots[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Get IDs of nodes within a given distance from a given point.
+     *
+     * @param point the point
+     * @param radius the maximal distance from the point
+     * @return IDs of the nodes (in no particular order)
+     */
+    public synchronized List<String> getWithinRadius(final Vector3D point, final double radius) {
+        final double[] query = new double[Vector3DMath.SIZE];
+        point.copyTo(query, 0);
+        final double radiusSquared = radius * radius;
+        final List<String> result = new ArrayList<>();
+        this.visitCells(query[0] - radius, query[1] - radius, query[2] - radius,
+                query[0] + radius, query[1] + radius, query[2] + radius, new SlotVisitor() {
+
+            @Override
+            public void visit(final int slot) {
+                if (Vector3DMath.distanceSquared(query, 0, locations, slot * Vector3DMath.SIZE) <= radiusSquared) {
+                    result.add(ids[slot]);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Get IDs of nodes in a given bounding box.
+     *
+     * @param min the corner of the box with minimal coordinates
+     * @param max the corner of the box with maximal coordinates
+     * @return IDs of the nodes (in no particular order)
+     */
+    public synchronized List<String> getWithinBox(final Vector3D min, final Vector3D max) {
+        final double[] box = new double[2 * Vector3DMath.SIZE];
+        min.copyTo(box, 0);
+        max.copyTo(box, Vector3DMath.SIZE);
+        final List<String> result = new ArrayList<>();
+        this.visitCells(box[0], box[1], box[2], box[3], box[4], box[5], new SlotVisitor() {
+
+            @Override
+            public void visit(final int slot) {
+                int offset = slot * Vector3DMath.SIZE;
+                if (( locations[offset] >= box[0] ) && ( locations[offset] <= box[3] )
+                        && ( locations[offset + 1] >= box[1] ) && ( locations[offset + 1] <= box[4] )
+                        && ( locations[offset + 2] >= box[2] ) && ( locations[offset + 2] <= box[5] )) {
+                    result.add(ids[slot]);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Visitor of slots of nodes in cells.
+     */
+    private interface SlotVisitor {
+
+        void visit(final int slot);
+    }
+
+    private void visitCells(final double minX, final double minY, final double minZ,
+            final double maxX, final double maxY, final double maxZ, final SlotVisitor visitor) {
+        if (this.cells.isEmpty()) {
+            return;
+        }
+        int fromX = Math.max(this.cellIndex(minX), this.minCellX);
+        int fromY = Math.max(this.cellIndex(minY), this.minCellY);
+        int fromZ = Math.max(this.cellIndex(minZ), this.minCellZ);
+        int toX = Math.min(this.cellIndex(maxX), this.maxCellX);
+        int toY = Math.min(this.cellIndex(maxY), this.maxCellY);
+        int toZ = Math.min(this.cellIndex(maxZ), this.maxCellZ);
+        if (( fromX > toX ) || ( fromY > toY ) || ( fromZ > toZ )) {
+            return;
+        }
+        if (( (double) ( toX - fromX + 1 ) ) * ( toY - fromY + 1 ) * ( toZ - fromZ + 1 ) > this.cells.size()) {
+            // there is less occupied cells than cells in the range, so visit all the occupied cells
+            for (Cell cell : this.cells.values()) {
+                for (int i = 0; i < cell.size; i++) {
+                    visitor.visit(cell.slots[i]);
+                }
+            }
+        } else {
+            for (int x = fromX; x <= toX; x++) {
+                for (int y = fromY; y <= toY; y++) {
+                    for (int z = fromZ; z <= toZ; z++) {
+                        Cell cell = this.cells.get(cellKey(x, y, z));
+                        if (cell != null) {
+                            for (int i = 0; i < cell.size; i++) {
+                                visitor.visit(cell.slots[i]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private int allocateSlot() {
+        if (this.freeSlotsCount > 0) {
+            return this.freeSlots[--this.freeSlotsCount];
+        }
+        if (this.slotsCount == this.ids.length) {
+            int newCapacity = 2 * this.ids.length;
+            this.ids = Arrays.copyOf(this.ids, newCapacity);
+            this.locations = Arrays.copyOf(this.locations, newCapacity * Vector3DMath.SIZE);
+            this.freeSlots = Arrays.copyOf(this.freeSlots, newCapacity);
+        }
+        return this.slotsCount++;
+    }
+
+    private void removeFromCell(final long key, final int slot) {
+        Cell cell = this.cells.get(key);
+        if (cell != null) {
+            cell.remove(slot);
+            if (cell.size == 0) {
+                this.cells.remove(key);
+            }
+        }
+    }
+
+    private int cellIndex(final double coordinate) {
+        return (int) Math.floor(coordinate / this.cellSize);
+    }
+
+    private long cellKey(final double x, final double y, final double z) {
+        return cellKey(this.cellIndex(x), this.cellIndex(y), this.cellIndex(z));
+    }
+
+    private static long cellKey(final int x, final int y, final int z) {
+        return ( ( x & CELL_MASK ) << ( 2 * CELL_BITS ) ) | ( ( y & CELL_MASK ) << CELL_BITS ) | ( z & CELL_MASK );
+    }
+}
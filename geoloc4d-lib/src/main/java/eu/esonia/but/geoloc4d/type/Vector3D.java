@@ -130,6 +130,22 @@ public final class Vector3D implements JSONString {
         this.undefined = false;
     }
 
+    /**
+     * Copy vector's coordinates into an array (without boxing) to be used by
+     * {@link Vector3DMath}.
+     *
+     * @param target the array to copy into
+     * @param offset offset of the coordinates in the array
+     * @throws Vector3DUndefinedException operation with undefined vector
+     */
+    public void copyTo(final double[] target, final int offset) throws Vector3DUndefinedException {
+        if (this.isUndefined()) {
+            throw new Vector3DUndefinedException();
+        } else {
+            Vector3DMath.set(target, offset, this.x, this.y, this.z);
+        }
+    }
+
     /**
      * Create JSONArray from the vector.
      *
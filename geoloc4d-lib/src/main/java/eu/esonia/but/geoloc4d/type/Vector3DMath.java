@@ -0,0 +1,345 @@
+package eu.esonia.but.geoloc4d.type;
+
+/**
+ * Algebraical operations on vectors in 3D stored as primitive coordinates in
+ * arrays of doubles. A vector is a triple of coordinates (x, y, z) at a given
+ * offset of an array, so many vectors can share one array and results are
+ * written into caller-provided output arrays. Contrary to {@link Vector3D},
+ * the operations do not allocate any objects and do not check undefined
+ * vectors.
+ *
+ * @author rychly
+ */
+public final class Vector3DMath {
+
+    /**
+     * Number of coordinates of a vector in an array.
+     */
+    public static final int SIZE = 3;
+
+    private Vector3DMath() {
+        // static methods only
+    }
+
+    /**
+     * Set coordinates of a vector.
+     *
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @param z Z coordinate
+     */
+    public static void set(final double[] result, final int resultOffset,
+            final double x, final double y, final double z) {
+        result[resultOffset] = x;
+        result[resultOffset + 1] = y;
+        result[resultOffset + 2] = z;
+    }
+
+    /**
+     * Copy a vector.
+     *
+     * @param vector array of the source vector
+     * @param offset offset of the source vector
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     */
+    public static void copy(final double[] vector, final int offset,
+            final double[] result, final int resultOffset) {
+        result[resultOffset] = vector[offset];
+        result[resultOffset + 1] = vector[offset + 1];
+        result[resultOffset + 2] = vector[offset + 2];
+    }
+
+    /**
+     * Addition of two vectors.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector (increment)
+     * @param bOffset offset of the second vector
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     */
+    public static void add(final double[] a, final int aOffset,
+            final double[] b, final int bOffset,
+            final double[] result, final int resultOffset) {
+        result[resultOffset] = a[aOffset] + b[bOffset];
+        result[resultOffset + 1] = a[aOffset + 1] + b[bOffset + 1];
+        result[resultOffset + 2] = a[aOffset + 2] + b[bOffset + 2];
+    }
+
+    /**
+     * Substraction of two vectors.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector (decrement)
+     * @param bOffset offset of the second vector
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     */
+    public static void sub(final double[] a, final int aOffset,
+            final double[] b, final int bOffset,
+            final double[] result, final int resultOffset) {
+        result[resultOffset] = a[aOffset] - b[bOffset];
+        result[resultOffset + 1] = a[aOffset + 1] - b[bOffset + 1];
+        result[resultOffset + 2] = a[aOffset + 2] - b[bOffset + 2];
+    }
+
+    /**
+     * Multiplication of vector by scalar value.
+     *
+     * @param vector array of the vector
+     * @param offset offset of the vector
+     * @param multiplier multiplier
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     */
+    public static void scale(final double[] vector, final int offset, final double multiplier,
+            final double[] result, final int resultOffset) {
+        result[resultOffset] = multiplier * vector[offset];
+        result[resultOffset + 1] = multiplier * vector[offset + 1];
+        result[resultOffset + 2] = multiplier * vector[offset + 2];
+    }
+
+    /**
+     * Addition of a vector multiplied by scalar value to another vector (i.e.
+     * a + multiplier * b).
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param multiplier multiplier of the second vector
+     * @param b array of the second vector
+     * @param bOffset offset of the second vector
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     */
+    public static void addScaled(final double[] a, final int aOffset, final double multiplier,
+            final double[] b, final int bOffset,
+            final double[] result, final int resultOffset) {
+        result[resultOffset] = a[aOffset] + multiplier * b[bOffset];
+        result[resultOffset + 1] = a[aOffset + 1] + multiplier * b[bOffset + 1];
+        result[resultOffset + 2] = a[aOffset + 2] + multiplier * b[bOffset + 2];
+    }
+
+    /**
+     * Dot operation on two vectors.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector
+     * @param bOffset offset of the second vector
+     * @return result
+     */
+    public static double dot(final double[] a, final int aOffset,
+            final double[] b, final int bOffset) {
+        return a[aOffset] * b[bOffset]
+                + a[aOffset + 1] * b[bOffset + 1]
+                + a[aOffset + 2] * b[bOffset + 2];
+    }
+
+    /**
+     * Cross operation of two vectors. The resulting vector must not overlap
+     * the operands.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector
+     * @param bOffset offset of the second vector
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     */
+    public static void cross(final double[] a, final int aOffset,
+            final double[] b, final int bOffset,
+            final double[] result, final int resultOffset) {
+        result[resultOffset] = a[aOffset + 1] * b[bOffset + 2] - a[aOffset + 2] * b[bOffset + 1];
+        result[resultOffset + 1] = a[aOffset + 2] * b[bOffset] - a[aOffset] * b[bOffset + 2];
+        result[resultOffset + 2] = a[aOffset] * b[bOffset + 1] - a[aOffset + 1] * b[bOffset];
+    }
+
+    /**
+     * Average vector from two vectors.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector
+     * @param bOffset offset of the second vector
+     * @param result array of the resulting vector
+     * @param resultOffset offset of the resulting vector
+     */
+    public static void avg(final double[] a, final int aOffset,
+            final double[] b, final int bOffset,
+            final double[] result, final int resultOffset) {
+        result[resultOffset] = ( a[aOffset] + b[bOffset] ) / 2;
+        result[resultOffset + 1] = ( a[aOffset + 1] + b[bOffset + 1] ) / 2;
+        result[resultOffset + 2] = ( a[aOffset + 2] + b[bOffset + 2] ) / 2;
+    }
+
+    /**
+     * Norm of vector.
+     *
+     * @param vector array of the vector
+     * @param offset offset of the vector
+     * @return norm
+     */
+    public static double norm(final double[] vector, final int offset) {
+        return Math.sqrt(dot(vector, offset, vector, offset));
+    }
+
+    /**
+     * Square of distance of two vectors.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector
+     * @param bOffset offset of the second vector
+     * @return square of the distance
+     */
+    public static double distanceSquared(final double[] a, final int aOffset,
+            final double[] b, final int bOffset) {
+        double dx = a[aOffset] - b[bOffset];
+        double dy = a[aOffset + 1] - b[bOffset + 1];
+        double dz = a[aOffset + 2] - b[bOffset + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Distance of two vectors.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector
+     * @param bOffset offset of the second vector
+     * @return distance
+     */
+    public static double distance(final double[] a, final int aOffset,
+            final double[] b, final int bOffset) {
+        return Math.sqrt(distanceSquared(a, aOffset, b, bOffset));
+    }
+
+    /**
+     * Isolation of each vector in a group of vectors, i.e. a value which is
+     * higher for vectors more distant from the others. In the exact mode, it
+     * is the sum of distances of the vector to the other vectors (which takes
+     * O(n^2) time). Otherwise, it is the sum of squares of the distances
+     * computed in O(n) time by identity sum_j |x_i - x_j|^2 = n |x_i - c|^2 +
+     * sum_j |x_j - c|^2, where c is the centroid of the vectors, so the
+     * isolations are ordered as the distances of the vectors to the centroid.
+     *
+     * @param vectors array of the vectors
+     * @param count number of the vectors
+     * @param exact true for the sums of distances, false for the sums of
+     * squares of the distances
+     * @param isolations array for the isolations of the vectors (in the same
+     * order as the vectors)
+     */
+    public static void isolations(final double[] vectors, final int count, final boolean exact,
+            final double[] isolations) {
+        if (exact) {
+            for (int i = 0; i < count; i++) {
+                double isolation = 0;
+                for (int j = 0; j < count; j++) {
+                    if (i != j) {
+                        isolation += distance(vectors, i * SIZE, vectors, j * SIZE);
+                    }
+                }
+                isolations[i] = isolation;
+            }
+        } else {
+            double x = 0, y = 0, z = 0;
+            for (int i = 0; i < count; i++) {
+                x += vectors[i * SIZE];
+                y += vectors[i * SIZE + 1];
+                z += vectors[i * SIZE + 2];
+            }
+            x /= count;
+            y /= count;
+            z /= count;
+            double spread = 0;
+            for (int i = 0; i < count; i++) {
+                double dx = vectors[i * SIZE] - x;
+                double dy = vectors[i * SIZE + 1] - y;
+                double dz = vectors[i * SIZE + 2] - z;
+                isolations[i] = dx * dx + dy * dy + dz * dz;
+                spread += isolations[i];
+            }
+            for (int i = 0; i < count; i++) {
+                isolations[i] = count * isolations[i] + spread;
+            }
+        }
+    }
+
+    /**
+     * Sort indexes of values by the values (e.g. by isolations of vectors).
+     * The sorting is stable, so the indexes of the same values keep their
+     * order. It is the bottom-up merge sort which takes O(n log n) time and
+     * does not allocate any objects.
+     *
+     * @param values array of the values
+     * @param count number of the values
+     * @param reverseOrder true for reverse ordering (the highest values first)
+     * @param order array for the sorted indexes of the values (from 0 to
+     * count exclusive)
+     * @param buffer array for temporary indexes of length at least count
+     */
+    public static void sortOrder(final double[] values, final int count, final boolean reverseOrder,
+            final int[] order, final int[] buffer) {
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        int[] source = order;
+        int[] target = buffer;
+        for (int width = 1; width < count; width *= 2) {
+            for (int from = 0; from < count; from += 2 * width) {
+                int middle = Math.min(from + width, count);
+                int to = Math.min(from + 2 * width, count);
+                int i = from, j = middle;
+                for (int k = from; k < to; k++) {
+                    // take from the left run unless the right value must precede it
+                    if (( i < middle ) && ( ( j >= to ) || !( reverseOrder
+                            ? ( values[source[j]] > values[source[i]] )
+                            : ( values[source[j]] < values[source[i]] ) ) )) {
+                        target[k] = source[i++];
+                    } else {
+                        target[k] = source[j++];
+                    }
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != order) {
+            System.arraycopy(source, 0, order, 0, count);
+        }
+    }
+
+    /**
+     * Check if two vectors have the same coordinates.
+     *
+     * @param a array of the first vector
+     * @param aOffset offset of the first vector
+     * @param b array of the second vector
+     * @param bOffset offset of the second vector
+     * @return true iff the vectors have the same coordinates
+     */
+    public static boolean equals(final double[] a, final int aOffset,
+            final double[] b, final int bOffset) {
+        return ( a[aOffset] == b[bOffset] )
+                && ( a[aOffset + 1] == b[bOffset + 1] )
+                && ( a[aOffset + 2] == b[bOffset + 2] );
+    }
+
+    /**
+     * Create a vector object from coordinates in an array.
+     *
+     * @param vector array of the vector
+     * @param offset offset of the vector
+     * @return the vector object
+     */
+    public static Vector3D toVector3D(final double[] vector, final int offset) {
+        return new Vector3D(vector[offset], vector[offset + 1], vector[offset + 2]);
+    }
+}
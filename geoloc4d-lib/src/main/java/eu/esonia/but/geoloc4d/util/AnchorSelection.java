@@ -0,0 +1,223 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
+
+/**
+ * Selection of a subset of anchors (prepared nodes with known locations and
+ * distances) with the best geometry for the trilateration, i.e. with the
+ * lowest geometric dilution of precision (GDOP). The GDOP of anchors is
+ * sqrt(trace((H^T H)^-1)), where rows of H are unit vectors from the blind
+ * node to the anchors. As the location of the blind node is not known before
+ * the trilateration, it is approximated by the centroid of all the anchors
+ * weighted by inverse values of their distances.
+ *
+ * The anchors are selected greedily: the first anchor is kept (it is the best
+ * one in the order given by a trilateration strategy) and each next anchor is
+ * the one which decreases the GDOP the most. The inverse of H^T H is updated
+ * by Sherman-Morrison formula, so the selection of k from n anchors takes
+ * O(k * n) time and it does not allocate any objects. The selected anchors
+ * are moved to the first positions of the arrays, so they can be used by
+ * {@link TrilaterationStrategy#doTrilateration(double[], double[], int, double[], double[])}.
+ *
+ * @author rychly
+ */
+public final class AnchorSelection {
+
+    /**
+     * Default number of the selected anchors, i.e. the number of anchors for
+     * the trilateration.
+     */
+    public static final int DEFAULT_SIZE = MultilaterationSolver.MIN_ANCHORS;
+    /**
+     * Regularisation of H^T H before the selection of the first three
+     * anchors, when the matrix is still singular.
+     */
+    private static final double REGULARISATION = 1e-6;
+    private static final double SINGULARITY_THRESHOLD = 1e-12;
+    private final int size;
+
+    /**
+     * Create a selection of {@link #DEFAULT_SIZE} anchors.
+     */
+    public AnchorSelection() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * Create a selection of a given number of anchors.
+     *
+     * @param size the number of the selected anchors (at the least {@link MultilaterationSolver#MIN_ANCHORS})
+     */
+    public AnchorSelection(final int size) {
+        if (size < MultilaterationSolver.MIN_ANCHORS) {
+            throw new IllegalArgumentException("The number of selected anchors must be at the least "
+                    + MultilaterationSolver.MIN_ANCHORS + "!");
+        }
+        this.size = size;
+    }
+
+    /**
+     * Get the number of the selected anchors.
+     *
+     * @return the number of the selected anchors
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Select anchors with the lowest GDOP and move them to the first positions
+     * of the arrays (in the order of the selection). The order of the other
+     * anchors is not preserved.
+     *
+     * @param locations coordinates of the anchors (see {@link Vector3DMath})
+     * @param distances distances of the anchors in the same order as the
+     * locations
+     * @param indexes indexes (e.g. in a {@link eu.esonia.but.geoloc4d.type.NodeStore})
+     * of the anchors in the same order as the locations, or null
+     * @param count number of the anchors in the arrays
+     * @return number of the selected anchors, i.e. the minimum of {@link #getSize()}
+     * and the count
+     */
+    public int select(final double[] locations, final double[] distances, final int[] indexes, final int count) {
+        if (count <= this.size) {
+            return count;
+        }
+        // approximate location of the blind node
+        double x = 0, y = 0, z = 0, weights = 0;
+        for (int i = 0; i < count; i++) {
+            double weight = 1 / Math.max(distances[i], SINGULARITY_THRESHOLD);
+            int offset = i * Vector3DMath.SIZE;
+            x += weight * locations[offset];
+            y += weight * locations[offset + 1];
+            z += weight * locations[offset + 2];
+            weights += weight;
+        }
+        x /= weights;
+        y /= weights;
+        z /= weights;
+        // the inverse of regularised H^T H (symmetric, so only its upper triangle)
+        double a11 = 1 / REGULARISATION, a12 = 0, a13 = 0;
+        double a22 = 1 / REGULARISATION, a23 = 0;
+        double a33 = 1 / REGULARISATION;
+        for (int selected = 0; selected < this.size; selected++) {
+            // keep the first anchor, then find the anchor decreasing trace of the inverse the most
+            int best = selected;
+            double bestGain = -1;
+            for (int i = selected; i < count; i++) {
+                int offset = i * Vector3DMath.SIZE;
+                double ux = locations[offset] - x;
+                double uy = locations[offset + 1] - y;
+                double uz = locations[offset + 2] - z;
+                double norm = Math.sqrt(ux * ux + uy * uy + uz * uz);
+                if (norm < SINGULARITY_THRESHOLD) {
+                    continue;
+                }
+                ux /= norm;
+                uy /= norm;
+                uz /= norm;
+                // v = A u, the trace decreases by |v|^2 / (1 + u^T v)
+                double vx = a11 * ux + a12 * uy + a13 * uz;
+                double vy = a12 * ux + a22 * uy + a23 * uz;
+                double vz = a13 * ux + a23 * uy + a33 * uz;
+                double gain = ( vx * vx + vy * vy + vz * vz ) / ( 1 + ux * vx + uy * vy + uz * vz );
+                if (gain > bestGain) {
+                    best = i;
+                    bestGain = gain;
+                }
+                if (selected == 0) {
+                    break;
+                }
+            }
+            swap(locations, distances, indexes, selected, best);
+            // update the inverse by Sherman-Morrison formula
+            int offset = selected * Vector3DMath.SIZE;
+            double ux = locations[offset] - x;
+            double uy = locations[offset + 1] - y;
+            double uz = locations[offset + 2] - z;
+            double norm = Math.sqrt(ux * ux + uy * uy + uz * uz);
+            if (norm < SINGULARITY_THRESHOLD) {
+                continue;
+            }
+            ux /= norm;
+            uy /= norm;
+            uz /= norm;
+            double vx = a11 * ux + a12 * uy + a13 * uz;
+            double vy = a12 * ux + a22 * uy + a23 * uz;
+            double vz = a13 * ux + a23 * uy + a33 * uz;
+            double denominator = 1 + ux * vx + uy * vy + uz * vz;
+            a11 -= vx * vx / denominator;
+            a12 -= vx * vy / denominator;
+            a13 -= vx * vz / denominator;
+            a22 -= vy * vy / denominator;
+            a23 -= vy * vz / denominator;
+            a33 -= vz * vz / denominator;
+        }
+        return this.size;
+    }
+
+    private static void swap(final double[] locations, final double[] distances, final int[] indexes,
+            final int i, final int j) {
+        if (i == j) {
+            return;
+        }
+        for (int k = 0; k < Vector3DMath.SIZE; k++) {
+            double location = locations[i * Vector3DMath.SIZE + k];
+            locations[i * Vector3DMath.SIZE + k] = locations[j * Vector3DMath.SIZE + k];
+            locations[j * Vector3DMath.SIZE + k] = location;
+        }
+        double distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+        if (indexes != null) {
+            int index = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = index;
+        }
+    }
+
+    /**
+     * Compute the geometric dilution of precision of anchors for a location
+     * of a blind node.
+     *
+     * @param locations coordinates of the anchors (see {@link Vector3DMath})
+     * @param count number of the anchors in the array
+     * @param location array with the location of the blind node
+     * @param locationOffset offset of the location of the blind node
+     * @return the GDOP or positive infinity if the anchors are coplanar from
+     * the point of view of the blind node
+     */
+    public static double getDilutionOfPrecision(final double[] locations, final int count,
+            final double[] location, final int locationOffset) {
+        // H^T H (symmetric)
+        double m11 = 0, m12 = 0, m13 = 0, m22 = 0, m23 = 0, m33 = 0;
+        for (int i = 0; i < count; i++) {
+            int offset = i * Vector3DMath.SIZE;
+            double ux = locations[offset] - location[locationOffset];
+            double uy = locations[offset + 1] - location[locationOffset + 1];
+            double uz = locations[offset + 2] - location[locationOffset + 2];
+            double norm = Math.sqrt(ux * ux + uy * uy + uz * uz);
+            if (norm < SINGULARITY_THRESHOLD) {
+                continue;
+            }
+            ux /= norm;
+            uy /= norm;
+            uz /= norm;
+            m11 += ux * ux;
+            m12 += ux * uy;
+            m13 += ux * uz;
+            m22 += uy * uy;
+            m23 += uy * uz;
+            m33 += uz * uz;
+        }
+        // trace of the inverse is trace of the adjugate divided by the determinant
+        double c11 = m22 * m33 - m23 * m23;
+        double c22 = m11 * m33 - m13 * m13;
+        double c33 = m11 * m22 - m12 * m12;
+        double determinant = m11 * c11 - m12 * ( m12 * m33 - m23 * m13 ) + m13 * ( m12 * m23 - m22 * m13 );
+        if (determinant < SINGULARITY_THRESHOLD) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.sqrt(( c11 + c22 + c33 ) / determinant);
+    }
+}
@@ -0,0 +1,312 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Localisation of all unlocalised nodes of a network in one pass, in parallel
+ * by a fork-join pool. Each unlocalised node is localised by a calibrated
+ * trilateration strategy from its neighbours which have been localised before
+ * the pass (i.e. the nodes localised in the pass are not used as neighbours
+ * in the same pass, so the result does not depend on the order of the nodes
+ * or the number of threads).
+ *
+ * @author rychly
+ */
+public class BatchLocaliser {
+
+    /**
+     * Minimal number of nodes localised in a single task of the pool.
+     */
+    private static final int THRESHOLD = 64;
+
+    /**
+     * Status of a node after the localisation.
+     */
+    public enum Status {
+
+        /**
+         * The node has been localised in the pass.
+         */
+        LOCALISED,
+        /**
+         * The node has been already localised before the pass.
+         */
+        ALREADY_LOCALISED,
+        /**
+         * The node cannot be localised (e.g. it has not enought localised
+         * neighbours).
+         */
+        FAILED
+    }
+
+    /**
+     * Result of the localisation of a node.
+     */
+    public static final class NodeResult {
+
+        private final Status status;
+        private final Vector3D location;
+        private final LocationEstimate locationEstimate;
+        private final String message;
+
+        NodeResult(final Status status, final Vector3D location, final String message) {
+            this(status, location, null, message);
+        }
+
+        NodeResult(final Status status, final Vector3D location, final LocationEstimate locationEstimate,
+                final String message) {
+            this.status = status;
+            this.location = location;
+            this.locationEstimate = locationEstimate;
+            this.message = message;
+        }
+
+        /**
+         * Get status of the node after the localisation.
+         *
+         * @return the status
+         */
+        public Status getStatus() {
+            return this.status;
+        }
+
+        /**
+         * Get absolute location of the node after the localisation.
+         *
+         * @return the location or null if the node cannot be localised
+         */
+        public Vector3D getLocation() {
+            return this.location;
+        }
+
+        /**
+         * Get estimate of the absolute location with its uncertainty.
+         *
+         * @return the estimate or null if the node has not been localised in
+         * the pass
+         */
+        public LocationEstimate getLocationEstimate() {
+            return this.locationEstimate;
+        }
+
+        /**
+         * Get reason why the node cannot be localised.
+         *
+         * @return the reason or null if the node is localised
+         */
+        public String getMessage() {
+            return this.message;
+        }
+
+        @Override
+        public String toString() {
+            return this.status + ( ( this.location != null ) ? " " + this.location.toString() : "" )
+                    + ( ( this.message != null ) ? " (" + this.message + ")" : "" );
+        }
+    }
+    /**
+     * The trilateration strategy used for the localisation.
+     */
+    private final TrilaterationStrategy trilaterationStrategy;
+    /**
+     * The pool of threads for the localisation.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a localiser with the shared pool of threads for all processors.
+     *
+     * @param trilaterationStrategy the trilateration strategy to use
+     */
+    public BatchLocaliser(final TrilaterationStrategy trilaterationStrategy) {
+        this(trilaterationStrategy, SharedPool.get());
+    }
+
+    /**
+     * Create a localiser.
+     *
+     * @param trilaterationStrategy the trilateration strategy to use
+     * @param pool the pool of threads for the localisation (owned by the
+     * caller which shuts it down)
+     */
+    public BatchLocaliser(final TrilaterationStrategy trilaterationStrategy, final ForkJoinPool pool) {
+        this.trilaterationStrategy = trilaterationStrategy;
+        this.pool = pool;
+    }
+
+    /**
+     * Get the trilateration strategy used for the localisation.
+     *
+     * @return the trilateration strategy
+     */
+    public TrilaterationStrategy getTrilaterationStrategy() {
+        return this.trilaterationStrategy;
+    }
+
+    /**
+     * Localise all unlocalised nodes of a map of nodes. After the pass, the
+     * localised nodes have set their absolute locations and scans of all
+     * unlocalised nodes have set locations of neighbours by {@link MapOfNeighbours#setLocationsFromNodes(eu.esonia.but.geoloc4d.type.MapOfNodes)}.
+     *
+     * @param mapOfNodes the map of nodes
+     * @return results of all the nodes by their IDs (in order of the map)
+     * @throws TrilaterationStrategyException the strategy is not calibrated
+     */
+    public Map<String, NodeResult> localise(final MapOfNodes mapOfNodes)
+            throws TrilaterationStrategyException {
+        this.checkCalibration();
+        final Node[] nodes = mapOfNodes.values().toArray(new Node[mapOfNodes.size()]);
+        final NodeResult[] results = new NodeResult[nodes.length];
+        this.pool.invoke(new LocaliseTask(new Range() {
+
+            @Override
+            public void localise(final int from, final int to) {
+                for (int i = from; i < to; i++) {
+                    results[i] = localiseNode(mapOfNodes, nodes[i]);
+                }
+            }
+        }, 0, nodes.length));
+        // set the locations after the pass, the nodes are not used as neighbours in the pass
+        Map<String, NodeResult> result = new LinkedHashMap<>(2 * nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            if (results[i].getStatus() == Status.LOCALISED) {
+                nodes[i].getInfo().setLocationAbsolute(results[i].getLocation(), results[i].getLocationEstimate());
+            }
+            result.put(nodes[i].getInfo().getID(), results[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Localise all unlocalised nodes of a store of nodes. After the pass, the
+     * localised nodes have set their absolute locations in the store.
+     *
+     * @param nodeStore the store of nodes
+     * @return results of all the nodes by their IDs (in order of the store)
+     * @throws TrilaterationStrategyException the strategy is not calibrated
+     */
+    public Map<String, NodeResult> localise(final NodeStore nodeStore)
+            throws TrilaterationStrategyException {
+        this.checkCalibration();
+        final int count = nodeStore.nodeCount();
+        final LocationEstimate[] estimates = new LocationEstimate[count];
+        final String[] messages = new String[count];
+        final Status[] statuses = new Status[count];
+        this.pool.invoke(new LocaliseTask(new Range() {
+
+            @Override
+            public void localise(final int from, final int to) {
+                PreparedNodes preparedNodes = new PreparedNodes();
+                for (int position = from; position < to; position++) {
+                    int node = nodeStore.getNodeIndex(position);
+                    if (nodeStore.isAbsolutelyLocalised(node)) {
+                        statuses[position] = Status.ALREADY_LOCALISED;
+                        continue;
+                    }
+                    try {
+                        trilaterationStrategy.prepareNodesForTrilateration(nodeStore, node, preparedNodes);
+                        estimates[position] = trilaterationStrategy.doTrilaterationWithEstimate(nodeStore, preparedNodes);
+                        statuses[position] = Status.LOCALISED;
+                    }
+                    catch (TrilaterationStrategyException ex) {
+                        statuses[position] = Status.FAILED;
+                        messages[position] = ex.getMessage();
+                    }
+                }
+            }
+        }, 0, count));
+        // set the locations after the pass, the nodes are not used as neighbours in the pass
+        Map<String, NodeResult> result = new LinkedHashMap<>(2 * count);
+        for (int position = 0; position < count; position++) {
+            int node = nodeStore.getNodeIndex(position);
+            if (statuses[position] == Status.LOCALISED) {
+                Vector3D location = estimates[position].getLocation();
+                nodeStore.setLocationAbsolute(node, location.getX(), location.getY(), location.getZ());
+            }
+            Vector3D location = null;
+            if (statuses[position] != Status.FAILED) {
+                location = Vector3DMath.toVector3D(nodeStore.getLocations(), node * Vector3DMath.SIZE);
+            }
+            result.put(nodeStore.getID(node), new NodeResult(statuses[position], location, estimates[position],
+                    messages[position]));
+        }
+        return result;
+    }
+
+    private void checkCalibration() throws TrilaterationStrategyException {
+        if (!this.trilaterationStrategy.isCalibrated()) {
+            throw new TrilaterationStrategyException("Strategy has not calibrated metric!");
+        }
+    }
+
+    /**
+     * Localise a node of a map of nodes from its neighbours.
+     *
+     * @param mapOfNodes the map of nodes
+     * @param node the node to localise
+     * @return the result of the localisation
+     */
+    private NodeResult localiseNode(final MapOfNodes mapOfNodes, final Node node) {
+        if (node.getInfo().isAbsolutelyLocalised()) {
+            return new NodeResult(Status.ALREADY_LOCALISED, node.getInfo().getLocationAbsolute(), null);
+        }
+        try {
+            // set location of neighbours that are yet known in the map of nodes
+            node.getScan().setLocationsFromNodes(mapOfNodes);
+            MapOfNeighbours selectedNeighbours =
+                    this.trilaterationStrategy.prepareNodesForTrilateration(node.getInfo(), node.getScan());
+            LocationEstimate estimate = this.trilaterationStrategy.doTrilaterationWithEstimate(selectedNeighbours);
+            return new NodeResult(Status.LOCALISED, new Vector3D(estimate.getLocation()), estimate, null);
+        }
+        catch (TrilaterationStrategyException ex) {
+            return new NodeResult(Status.FAILED, null, ex.getMessage());
+        }
+    }
+
+    /**
+     * Localisation of a range of nodes.
+     */
+    private interface Range {
+
+        /**
+         * Localise nodes at positions in a given range.
+         *
+         * @param from the first position (inclusive)
+         * @param to the last position (exclusive)
+         */
+        void localise(final int from, final int to);
+    }
+
+    /**
+     * Task of the pool to localise a range of nodes, which is split into
+     * subtasks for large ranges.
+     */
+    private static final class LocaliseTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Range range;
+        private final int from;
+        private final int to;
+
+        LocaliseTask(final Range range, final int from, final int to) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                this.range.localise(this.from, this.to);
+            } else {
+                int middle = ( this.from + this.to ) >>> 1;
+                invokeAll(new LocaliseTask(this.range, this.from, middle),
+                        new LocaliseTask(this.range, middle, this.to));
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of local models of a calibrated metric (e.g. constants for conversion
+ * of RSSI into distance) fitted for individual anchors (i.e. localised
+ * neighbours) and for cubic cells of space with the anchors. A model for a
+ * link to an anchor is looked up in a fallback hierarchy: the model of the
+ * anchor, the model of the anchor's cell, and then the global model of a
+ * strategy (if there is no local model). The number of cached models is
+ * bounded, the least recently used models are evicted.
+ *
+ * The cached models are held in a concurrent map, so the lookups do not lock
+ * and they can be done by many workers at once. The recency of the models is
+ * approximate: each lookup stamps the model by the version of the cache, which
+ * is advanced by each change, so the models looked up since the same change
+ * are equally recent (and the lookups write the stamp of a model at most
+ * once per change). The models are evicted in small batches by a single pass
+ * over the stamps of the cache.
+ *
+ * @param <M> type of the models
+ * @author rychly
+ */
+public final class CalibrationCache<M> {
+
+    private static final int CELL_BITS = 21;
+    private static final long CELL_MASK = ( 1L << CELL_BITS ) - 1;
+
+    /**
+     * Fitting of a model from running statistics of observations.
+     *
+     * @param <M> type of the models
+     */
+    public interface Fitting<M> {
+
+        /**
+         * Fit a model from running statistics of observations.
+         *
+         * @param observations the running statistics
+         * @return the model or null if there are not enough observations
+         */
+        M fit(final RunningRegression observations);
+    }
+
+    /**
+     * Running statistics of observations of links to anchors by the anchors
+     * and their cells for fitting of local models. The number of the running
+     * statistics is bounded by twice the capacity of the cache, the
+     * statistics from the least observations are dropped when the bound is
+     * reached (so the statistics from the most observations are kept).
+     */
+    public final class Observations {
+
+        /**
+         * The running statistics by IDs of anchors (String keys) and by keys
+         * of cells (Long keys).
+         */
+        private final Map<Object, RunningRegression> statistics = new HashMap<>();
+
+        private Observations() {
+        }
+
+        private void add(final Object key, final double x, final double y) {
+            RunningRegression regression = this.statistics.get(key);
+            if (regression == null) {
+                if (this.statistics.size() / 2 >= CalibrationCache.this.capacity) {
+                    // keep the statistics from the most observations only
+                    PriorityQueue<Candidate> selected = CalibrationCache.this.select(this);
+                    this.statistics.clear();
+                    for (Candidate candidate : selected) {
+                        this.statistics.put(candidate.key, candidate.observations);
+                    }
+                }
+                regression = new RunningRegression();
+                this.statistics.put(key, regression);
+            }
+            regression.add(x, y);
+        }
+
+        /**
+         * Get number of the running statistics (of anchors and of cells).
+         *
+         * @return the number of the statistics
+         */
+        public int size() {
+            return this.statistics.size();
+        }
+
+        /**
+         * Add an observation of a link to an anchor.
+         *
+         * @param id the ID of the anchor
+         * @param location the location of the anchor, or null or undefined if
+         * it is unknown
+         * @param x the value of the independent variable
+         * @param y the value of the dependent variable
+         */
+        public void add(final String id, final Vector3D location, final double x, final double y) {
+            this.add(id, x, y);
+            if (( location != null ) && location.isDefined()) {
+                this.add(cellKey(location.getX(), location.getY(), location.getZ()), x, y);
+            }
+        }
+
+        /**
+         * Add an observation of a link to an anchor.
+         *
+         * @param id the ID of the anchor
+         * @param locations the array with the location of the anchor
+         * @param offset the offset of the location in the array
+         * @param x the value of the independent variable
+         * @param y the value of the dependent variable
+         */
+        public void add(final String id, final double[] locations, final int offset, final double x, final double y) {
+            this.add(id, x, y);
+            this.add(cellKey(locations[offset], locations[offset + 1], locations[offset + 2]), x, y);
+        }
+    }
+
+    /**
+     * Running statistics of observations for a model of an anchor or a cell
+     * ordered by the number of the observations.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        private final Object key;
+        private final RunningRegression observations;
+
+        private Candidate(final Object key, final RunningRegression observations) {
+            this.key = key;
+            this.observations = observations;
+        }
+
+        @Override
+        public int compareTo(final Candidate other) {
+            return Long.compare(this.observations.getCount(), other.observations.getCount());
+        }
+    }
+    /**
+     * A cached model with the version of the cache of its last use.
+     *
+     * @param <M> type of the models
+     */
+    private static final class Entry<M> {
+
+        private final M model;
+        private volatile long used;
+
+        private Entry(final M model, final long used) {
+            this.model = model;
+            this.used = used;
+        }
+    }
+
+    /**
+     * A key of a cached model selected for the eviction by the version of its
+     * last use (the most recently used first).
+     */
+    private static final class Victim implements Comparable<Victim> {
+
+        private final Object key;
+        private final long used;
+
+        private Victim(final Object key, final long used) {
+            this.key = key;
+            this.used = used;
+        }
+
+        @Override
+        public int compareTo(final Victim other) {
+            return Long.compare(other.used, this.used);
+        }
+    }
+    /**
+     * Maximal number of the cached models.
+     */
+    private final int capacity;
+    /**
+     * Edge length of a cell.
+     */
+    private final double cellSize;
+    /**
+     * The cached models by IDs of anchors (String keys) and by keys of cells
+     * (Long keys), the map is replaced by the updates.
+     */
+    private volatile ConcurrentHashMap<Object, Entry<M>> models = new ConcurrentHashMap<>();
+    /**
+     * The version of the cache, it is advanced by the writers holding the
+     * lock of this cache.
+     */
+    private volatile long version = 0;
+
+    /**
+     * Create an empty cache.
+     *
+     * @param capacity the maximal number of the cached models
+     * @param cellSize the edge length of a cell (e.g. a building)
+     */
+    public CalibrationCache(final int capacity, final double cellSize) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be a positive value!");
+        }
+        if (!( cellSize > 0 ) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The size of cells must be a finite positive number!");
+        }
+        this.capacity = capacity;
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Get the maximal number of the cached models.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the edge length of a cell.
+     *
+     * @return the edge length
+     */
+    public double getCellSize() {
+        return this.cellSize;
+    }
+
+    private long cellKey(final double x, final double y, final double z) {
+        return ( ( (long) Math.floor(x / this.cellSize) & CELL_MASK ) << ( 2 * CELL_BITS ) )
+                | ( ( (long) Math.floor(y / this.cellSize) & CELL_MASK ) << CELL_BITS )
+                | ( (long) Math.floor(z / this.cellSize) & CELL_MASK );
+    }
+
+    /**
+     * Get number of the cached models.
+     *
+     * @return the number of models
+     */
+    public int size() {
+        return this.models.size();
+    }
+
+    /**
+     * Remove all the cached models.
+     */
+    public synchronized void clear() {
+        this.models = new ConcurrentHashMap<>();
+        this.version++;
+    }
+
+    /**
+     * Create empty running statistics of observations for {@link #update(eu.esonia.but.geoloc4d.util.CalibrationCache.Observations, eu.esonia.but.geoloc4d.util.CalibrationCache.Fitting)}.
+     *
+     * @return the running statistics
+     */
+    public Observations newObservations() {
+        return new Observations();
+    }
+
+    private PriorityQueue<Candidate> select(final Observations observations) {
+        // the least observations are at the head
+        PriorityQueue<Candidate> selected = new PriorityQueue<>(this.capacity + 1);
+        for (Map.Entry<Object, RunningRegression> pair : observations.statistics.entrySet()) {
+            selected.add(new Candidate(pair.getKey(), pair.getValue()));
+            if (selected.size() > this.capacity) {
+                selected.poll();
+            }
+        }
+        return selected;
+    }
+
+    private synchronized void put(final Object key, final M model) {
+        ConcurrentHashMap<Object, Entry<M>> cached = this.models;
+        if (!cached.containsKey(key) && ( cached.size() >= this.capacity )) {
+            // amortise the passes over the cache by evicting more models at once
+            this.evict(cached, 1 + this.capacity / 16);
+        }
+        cached.put(key, new Entry<>(model, ++this.version));
+    }
+
+    /**
+     * Evict the least recently used models from the cache by a single pass
+     * over the cache.
+     *
+     * @param cached the cached models
+     * @param count the number of the models to evict
+     */
+    private void evict(final ConcurrentHashMap<Object, Entry<M>> cached, final int count) {
+        // the most recently used of the selected models are at the head
+        PriorityQueue<Victim> selected = new PriorityQueue<>(count + 1);
+        for (Map.Entry<Object, Entry<M>> pair : cached.entrySet()) {
+            selected.add(new Victim(pair.getKey(), pair.getValue().used));
+            if (selected.size() > count) {
+                selected.poll();
+            }
+        }
+        for (Victim victim : selected) {
+            cached.remove(victim.key);
+        }
+    }
+
+    /**
+     * Look up a cached model and stamp it by the actual version of the cache.
+     *
+     * @param cached the cached models
+     * @param key the key of the model
+     * @return the model or null if it is not cached
+     */
+    private M lookUp(final Map<Object, Entry<M>> cached, final Object key) {
+        Entry<M> entry = cached.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long actual = this.version;
+        if (entry.used != actual) {
+            entry.used = actual;
+        }
+        return entry.model;
+    }
+
+    /**
+     * Replace the cached models by models fitted from running statistics of
+     * observations. If there are more models than the capacity of the cache,
+     * the models fitted from the most observations are cached.
+     *
+     * @param observations the running statistics of observations
+     * @param fitting the fitting of the models
+     * @return the number of the cached models
+     */
+    public int update(final Observations observations, final Fitting<M> fitting) {
+        // select the models from the most observations
+        PriorityQueue<Candidate> selected = this.select(observations);
+        ConcurrentHashMap<Object, Entry<M>> fitted = new ConcurrentHashMap<>(2 * selected.size());
+        for (Candidate candidate : selected) {
+            M model = fitting.fit(candidate.observations);
+            if (model != null) {
+                fitted.put(candidate.key, new Entry<>(model, 0));
+            }
+        }
+        synchronized (this) {
+            long actual = ++this.version;
+            for (Entry<M> entry : fitted.values()) {
+                entry.used = actual;
+            }
+            this.models = fitted;
+        }
+        return fitted.size();
+    }
+
+    /**
+     * Put a model of an anchor into the cache.
+     *
+     * @param id the ID of the anchor
+     * @param model the model
+     */
+    public void putAnchorModel(final String id, final M model) {
+        this.put(id, model);
+    }
+
+    /**
+     * Put a model of a cell into the cache.
+     *
+     * @param location a location in the cell
+     * @param model the model
+     */
+    public void putCellModel(final Vector3D location, final M model) {
+        this.put(this.cellKey(location.getX(), location.getY(), location.getZ()), model);
+    }
+
+    /**
+     * Get a model of an anchor from the cache.
+     *
+     * @param id the ID of the anchor
+     * @return the model or null if it is not cached
+     */
+    public M getAnchorModel(final String id) {
+        return this.lookUp(this.models, id);
+    }
+
+    /**
+     * Get a model of a cell from the cache.
+     *
+     * @param location a location in the cell
+     * @return the model or null if it is not cached
+     */
+    public M getCellModel(final Vector3D location) {
+        return this.lookUp(this.models, this.cellKey(location.getX(), location.getY(), location.getZ()));
+    }
+
+    /**
+     * Get a local model for a link to an anchor, i.e. the model of the anchor
+     * or the model of its cell.
+     *
+     * @param id the ID of the anchor
+     * @param location the location of the anchor, or null or undefined if it
+     * is unknown
+     * @return the model or null if there is no local model (i.e. the global
+     * model should be used)
+     */
+    public M get(final String id, final Vector3D location) {
+        final Map<Object, Entry<M>> cached = this.models;
+        M model = this.lookUp(cached, id);
+        if (( model == null ) && ( location != null ) && location.isDefined()) {
+            model = this.lookUp(cached, this.cellKey(location.getX(), location.getY(), location.getZ()));
+        }
+        return model;
+    }
+
+    /**
+     * Get a local model for a link to an anchor, i.e. the model of the anchor
+     * or the model of its cell.
+     *
+     * @param id the ID of the anchor
+     * @param locations the array with the location of the anchor
+     * @param offset the offset of the location in the array
+     * @return the model or null if there is no local model (i.e. the global
+     * model should be used)
+     */
+    public M get(final String id, final double[] locations, final int offset) {
+        final Map<Object, Entry<M>> cached = this.models;
+        M model = this.lookUp(cached, id);
+        if (model == null) {
+            model = this.lookUp(cached, this.cellKey(locations[offset], locations[offset + 1], locations[offset + 2]));
+        }
+        return model;
+    }
+
+    @Override
+    public String toString() {
+        return "capacity=" + this.capacity + ", cellSize=" + this.cellSize + ", size=" + this.models.size();
+    }
+}
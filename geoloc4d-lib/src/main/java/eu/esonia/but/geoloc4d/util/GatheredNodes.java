@@ -0,0 +1,95 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Node;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Nodes gathered from their remote sources (e.g. proxies of RESTlets or
+ * services) together with errors of the sources which have failed. A failure
+ * of a source does not affect the nodes gathered from the other sources.
+ *
+ * @param <S> type of the sources
+ * @author rychly
+ */
+public class GatheredNodes<S> {
+
+    private final MapOfNodes mapOfNodes = new MapOfNodes();
+    /**
+     * Sources of the gathered nodes by the nodes' IDs.
+     */
+    private final Map<String, S> sources = new LinkedHashMap<>();
+    /**
+     * Errors of the failed sources.
+     */
+    private final Map<S, Exception> errors = new LinkedHashMap<>();
+
+    /**
+     * Package-private, the nodes are gathered by {@link ParallelNodeFetcher}.
+     */
+    GatheredNodes() {
+    }
+
+    void putNode(final S source, final Node node) {
+        this.mapOfNodes.put(node.getInfo().getID(), node);
+        this.sources.put(node.getInfo().getID(), source);
+    }
+
+    void putError(final S source, final Exception error) {
+        this.errors.put(source, error);
+    }
+
+    /**
+     * Get the map of the gathered nodes (in order of their sources).
+     *
+     * @return the map of nodes
+     */
+    public MapOfNodes getMapOfNodes() {
+        return this.mapOfNodes;
+    }
+
+    /**
+     * Get source of a gathered node.
+     *
+     * @param id ID of the node
+     * @return the source of the node or null if there is no such node
+     */
+    public S getSource(final String id) {
+        return this.sources.get(id);
+    }
+
+    /**
+     * Get sources of the gathered nodes.
+     *
+     * @return the sources by IDs of their nodes
+     */
+    public Map<String, S> getSources() {
+        return Collections.unmodifiableMap(this.sources);
+    }
+
+    /**
+     * Get errors of the failed sources (e.g. an exception of a remote call or
+     * a {@link java.util.concurrent.TimeoutException}).
+     *
+     * @return the errors by the failed sources
+     */
+    public Map<S, Exception> getErrors() {
+        return Collections.unmodifiableMap(this.errors);
+    }
+
+    /**
+     * Check if the nodes have been gathered from all the sources.
+     *
+     * @return true iff no source has failed
+     */
+    public boolean isComplete() {
+        return this.errors.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return this.mapOfNodes.toString() + ( this.errors.isEmpty() ? "" : " (failed " + this.errors.toString() + ")" );
+    }
+}
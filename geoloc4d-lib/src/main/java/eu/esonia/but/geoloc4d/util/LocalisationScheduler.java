@@ -0,0 +1,414 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.*;
+
+/**
+ * Scheduler of rounds of calibration and localisation of nodes of a network
+ * accessed by a transport (e.g. by RESTlets or by DPWS services). Each round
+ * of the localisation processes only the unlocalised nodes whose inputs (their
+ * scans and locations of their neighbours) have changed since the previous
+ * round, and the unlocalised nodes which depend on them. The rounds are
+ * delayed, from the minimal delay after a progress (i.e. after some nodes have
+ * been localised) up to the maximal delay while there is no progress. The
+ * localisation terminates when all nodes are localised, after an idle timeout
+ * without progress, or on {@link #shutdown()}. The nodes of a round can
+ * be localised by workers of partitions of the network in parallel (see
+ * {@link PartitionedLocaliser}).
+ *
+ * @param <S> type of the sources of the nodes
+ * @author rychly
+ */
+public class LocalisationScheduler<S> {
+
+    /**
+     * Access to nodes of a network.
+     *
+     * @param <S> type of the sources of the nodes
+     */
+    public interface Transport<S> {
+
+        /**
+         * Gather the actual nodes of the network including their scans.
+         *
+         * @return the nodes and errors of their failed sources
+         */
+        GatheredNodes<S> gatherNodes();
+
+        /**
+         * Set absolute locations of gathered nodes.
+         *
+         * @param gatheredNodes the nodes and their sources
+         * @param locations the locations to set by the nodes' IDs
+         * @return errors of the nodes whose locations have not been set by the
+         * nodes' IDs
+         */
+        Map<String, Exception> postLocationsAbsolute(final GatheredNodes<S> gatheredNodes,
+                final Map<String, Vector3D> locations);
+    }
+
+    /**
+     * Listener of progress of the scheduler.
+     */
+    public interface Listener {
+
+        /**
+         * Called after an unsuccessful calibration of the strategy's metric
+         * (it will be repeated).
+         *
+         * @param ex the error of the calibration
+         */
+        void calibrationFailed(final TrilaterationStrategyException ex);
+
+        /**
+         * Called after each round of the localisation.
+         *
+         * @param round number of the round (from 1)
+         * @param results results of the processed nodes by their IDs (empty if
+         * no inputs have changed)
+         * @param errors errors of the nodes whose locations have not been set
+         * by the nodes' IDs
+         */
+        void roundCompleted(final int round, final Map<String, BatchLocaliser.NodeResult> results,
+                final Map<String, Exception> errors);
+    }
+
+    /**
+     * Outcome of a round of the localisation.
+     */
+    enum Outcome {
+
+        /**
+         * All the nodes are localised.
+         */
+        COMPLETED,
+        /**
+         * Some inputs have changed and some of the affected nodes have been
+         * localised.
+         */
+        CHANGED,
+        /**
+         * Nothing has changed or none of the affected nodes has been localised
+         * (i.e. there is no progress).
+         */
+        UNCHANGED
+    }
+    private final Transport<S> transport;
+    private final PartitionedLocaliser localiser;
+    private Listener listener;
+    /**
+     * Delay in milliseconds of a round after a progress.
+     */
+    private long minDelay = 1000;
+    /**
+     * Maximal delay in milliseconds of a round while there is no progress.
+     */
+    private long maxDelay = 30000;
+    /**
+     * Time in milliseconds without progress to terminate the localisation (0
+     * for never).
+     */
+    private long idleTimeout = 0;
+    /**
+     * Signatures of inputs of the unlocalised nodes in the previous round by
+     * the nodes' IDs.
+     */
+    private Map<String, Long> signatures = new HashMap<>();
+    private int round = 0;
+    private volatile boolean shutdown = false;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param transport the access to nodes of the network
+     * @param trilaterationStrategy the trilateration strategy to calibrate and
+     * to use
+     */
+    public LocalisationScheduler(final Transport<S> transport, final TrilaterationStrategy trilaterationStrategy) {
+        this(transport, trilaterationStrategy, 1);
+    }
+
+    /**
+     * Create a scheduler localising the nodes in partitions of the network.
+     *
+     * @param transport the access to nodes of the network
+     * @param trilaterationStrategy the trilateration strategy to calibrate and
+     * to use
+     * @param partitions the number of the partitions (and workers) of the
+     * localisation
+     */
+    public LocalisationScheduler(final Transport<S> transport, final TrilaterationStrategy trilaterationStrategy,
+            final int partitions) {
+        this.transport = transport;
+        this.localiser = new PartitionedLocaliser(trilaterationStrategy, partitions);
+    }
+
+    /**
+     * @param listener the listener of progress of the scheduler (or null)
+     */
+    public void setListener(final Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the delay in milliseconds of a round after a progress
+     */
+    public long getMinDelay() {
+        return this.minDelay;
+    }
+
+    /**
+     * @return the maximal delay in milliseconds of a round while there is no
+     * progress
+     */
+    public long getMaxDelay() {
+        return this.maxDelay;
+    }
+
+    /**
+     * Set the delays of rounds, the delay is doubled after each round without
+     * progress from the minimal to the maximal delay.
+     *
+     * @param minDelay the delay in milliseconds of a round after a progress
+     * @param maxDelay the maximal delay in milliseconds of a round while there
+     * is no progress
+     */
+    public void setDelays(final long minDelay, final long maxDelay) {
+        if (( minDelay <= 0 ) || ( maxDelay < minDelay )) {
+            throw new IllegalArgumentException("The delays must be positive and the maximal delay must not be less than the minimal delay!");
+        }
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * @return the time in milliseconds without progress to terminate the
+     * localisation (0 for never)
+     */
+    public long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout the time in milliseconds without progress to terminate
+     * the localisation (0 for never, i.e. until all the nodes are localised or
+     * the scheduler is shut down)
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("The idle timeout must be a non-negative value!");
+        }
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Terminate the calibration or the localisation after the actual round.
+     */
+    public synchronized void shutdown() {
+        this.shutdown = true;
+        this.notifyAll();
+    }
+
+    /**
+     * @return true iff the scheduler has been shut down
+     */
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    /**
+     * Wait for the next round.
+     *
+     * @param delay the delay in milliseconds
+     * @return false iff the scheduler has been shut down
+     * @throws InterruptedException the waiting has been interrupted
+     */
+    private synchronized boolean await(final long delay) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + delay;
+        for (long remaining = delay; !this.shutdown && ( remaining > 0 );
+                remaining = deadline - System.currentTimeMillis()) {
+            this.wait(remaining);
+        }
+        return !this.shutdown;
+    }
+
+    /**
+     * Calibrate metric of the trilateration strategy from the gathered nodes,
+     * repeatedly until the strategy is calibrated.
+     *
+     * @return true iff the strategy is calibrated (false if the scheduler has
+     * been shut down)
+     * @throws InterruptedException the calibration has been interrupted
+     */
+    public boolean calibrate() throws InterruptedException {
+        TrilaterationStrategy trilaterationStrategy = this.localiser.getTrilaterationStrategy();
+        for (long delay = this.minDelay; !trilaterationStrategy.isCalibrated();
+                delay = Math.min(2 * delay, this.maxDelay)) {
+            if (this.shutdown) {
+                return false;
+            }
+            try {
+                trilaterationStrategy.calibrateMetric(this.transport.gatherNodes().getMapOfNodes());
+            }
+            catch (TrilaterationStrategyException ex) {
+                // next time, there may be enought nodes
+                if (this.listener != null) {
+                    this.listener.calibrationFailed(ex);
+                }
+                if (!this.await(delay)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Localise nodes in rounds (after the calibration, if the strategy has not
+     * been calibrated yet) until all the nodes are localised, the idle timeout
+     * expires, or the scheduler is shut down.
+     *
+     * @return true iff all the nodes are localised
+     * @throws InterruptedException the localisation has been interrupted
+     */
+    public boolean run() throws InterruptedException {
+        if (!this.calibrate()) {
+            return false;
+        }
+        long delay = this.minDelay;
+        long lastProgress = System.currentTimeMillis();
+        while (!this.shutdown) {
+            Outcome outcome = this.round();
+            if (outcome == Outcome.COMPLETED) {
+                return true;
+            } else if (outcome == Outcome.CHANGED) {
+                lastProgress = System.currentTimeMillis();
+                delay = this.minDelay;
+            } else {
+                // the nodes which cannot be localised do not keep the localisation running
+                if (( this.idleTimeout > 0 ) && ( System.currentTimeMillis() - lastProgress >= this.idleTimeout )) {
+                    return false;
+                }
+                delay = Math.min(2 * delay, this.maxDelay);
+            }
+            if (!this.await(delay)) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Perform a round of the localisation.
+     *
+     * @return the outcome of the round
+     */
+    Outcome round() {
+        this.round++;
+        GatheredNodes<S> gatheredNodes = this.transport.gatherNodes();
+        MapOfNodes mapOfNodes = gatheredNodes.getMapOfNodes();
+        // the changed unlocalised nodes and the unlocalised nodes which depend on them
+        Map<String, Long> actualSignatures = new HashMap<>();
+        Map<String, List<String>> dependants = new HashMap<>();
+        Deque<String> changed = new ArrayDeque<>();
+        for (Node node : mapOfNodes.values()) {
+            if (node.getInfo().isAbsolutelyLocalised()) {
+                continue;
+            }
+            String id = node.getInfo().getID();
+            Long signature = signature(node, mapOfNodes);
+            actualSignatures.put(id, signature);
+            if (!signature.equals(this.signatures.get(id))) {
+                changed.add(id);
+            }
+            for (String neighbour : node.getScan().keySet()) {
+                List<String> list = dependants.get(neighbour);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    dependants.put(neighbour, list);
+                }
+                list.add(id);
+            }
+        }
+        Set<String> processed = new HashSet<>(changed);
+        while (!changed.isEmpty()) {
+            List<String> list = dependants.get(changed.poll());
+            if (list != null) {
+                for (String id : list) {
+                    if (processed.add(id)) {
+                        changed.add(id);
+                    }
+                }
+            }
+        }
+        this.signatures = actualSignatures;
+        int unlocalised = actualSignatures.size();
+        if (processed.isEmpty()) {
+            if (this.listener != null) {
+                this.listener.roundCompleted(this.round,
+                        Collections.<String, BatchLocaliser.NodeResult>emptyMap(),
+                        Collections.<String, Exception>emptyMap());
+            }
+            return ( ( unlocalised == 0 ) && !mapOfNodes.isEmpty() && gatheredNodes.isComplete() )
+                    ? Outcome.COMPLETED : Outcome.UNCHANGED;
+        }
+        // localise the processed nodes with all the localised nodes as anchors
+        MapOfNodes selectedNodes = new MapOfNodes();
+        for (Node node : mapOfNodes.values()) {
+            String id = node.getInfo().getID();
+            if (node.getInfo().isAbsolutelyLocalised() || processed.contains(id)) {
+                selectedNodes.put(id, node);
+            }
+        }
+        Map<String, BatchLocaliser.NodeResult> results = new LinkedHashMap<>();
+        Map<String, Vector3D> locations = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, BatchLocaliser.NodeResult> pair : this.localiser.localise(selectedNodes).entrySet()) {
+                if (processed.contains(pair.getKey())) {
+                    results.put(pair.getKey(), pair.getValue());
+                    if (pair.getValue().getStatus() == BatchLocaliser.Status.LOCALISED) {
+                        locations.put(pair.getKey(), pair.getValue().getLocation());
+                    }
+                }
+            }
+        }
+        catch (TrilaterationStrategyException ex) {
+            throw new RuntimeException("Impossible, the strategy has been calibrated!", ex);
+        }
+        Map<String, Exception> errors = locations.isEmpty()
+                ? Collections.<String, Exception>emptyMap()
+                : this.transport.postLocationsAbsolute(gatheredNodes, locations);
+        for (String id : errors.keySet()) {
+            // the node has not been localised, try it again in the next round
+            this.signatures.remove(id);
+        }
+        if (this.listener != null) {
+            this.listener.roundCompleted(this.round, results, errors);
+        }
+        int localised = locations.size() - errors.size();
+        if (( unlocalised == localised ) && gatheredNodes.isComplete()) {
+            return Outcome.COMPLETED;
+        }
+        return ( localised > 0 ) ? Outcome.CHANGED : Outcome.UNCHANGED;
+    }
+
+    /**
+     * Compute a signature of inputs of an unlocalised node, i.e. of its scan
+     * and of the locations of its neighbours in the map of nodes.
+     *
+     * @param node the unlocalised node
+     * @param mapOfNodes the map of nodes
+     * @return the signature
+     */
+    private static Long signature(final Node node, final MapOfNodes mapOfNodes) {
+        long result = node.getScan().toJSONString().hashCode();
+        for (String id : node.getScan().keySet()) {
+            Node neighbour = mapOfNodes.get(id);
+            result = 31 * result + ( ( ( neighbour != null ) && neighbour.getInfo().isAbsolutelyLocalised() )
+                    ? neighbour.getInfo().getLocationAbsolute().hashCode() : 0 );
+        }
+        return result;
+    }
+}
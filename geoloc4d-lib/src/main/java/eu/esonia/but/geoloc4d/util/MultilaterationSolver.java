@@ -0,0 +1,420 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
+import java.util.Arrays;
+
+/**
+ * Multilateration in 3D space from all given anchors (nodes with known
+ * locations and distances), i.e. a least-squares counterpart of {@link WirelessMetric#trilateration3D(eu.esonia.but.geoloc4d.type.Vector3D, eu.esonia.but.geoloc4d.type.Vector3D, eu.esonia.but.geoloc4d.type.Vector3D, eu.esonia.but.geoloc4d.type.Vector3D, double, double, double, double)}
+ * which uses only four anchors. The problem is linearised (by subtracting the
+ * mean of equations of spheres) and solved in closed form by normal
+ * equations, then the solution can be refined by Gauss-Newton or
+ * Levenberg-Marquardt iterations minimising the differences of the actual and
+ * given distances.
+ *
+ * The solver keeps its matrices and residuals, so it does not allocate any
+ * objects after the residuals grow to the maximal number of anchors, however,
+ * it cannot be shared by more threads (use one instance per thread).
+ *
+ * @author rychly
+ */
+public final class MultilaterationSolver {
+
+    /**
+     * Refinement of the closed-form solution.
+     */
+    public enum Refinement {
+
+        /**
+         * Only the closed-form solution of the linearised problem.
+         */
+        NONE,
+        /**
+         * Gauss-Newton iterations.
+         */
+        GAUSS_NEWTON,
+        /**
+         * Levenberg-Marquardt iterations (damped Gauss-Newton).
+         */
+        LEVENBERG_MARQUARDT
+    }
+    /**
+     * Minimal number of anchors for the multilateration in 3D space.
+     */
+    public static final int MIN_ANCHORS = 4;
+    public static final int DEFAULT_MAX_ITERATIONS = 20;
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+    private static final double SINGULARITY_THRESHOLD = 1e-12;
+    private static final double INITIAL_DAMPING = 1e-3;
+    private static final int INITIAL_CAPACITY = 16;
+    private final Refinement refinement;
+    private final int maxIterations;
+    private final double tolerance;
+    /**
+     * Symmetric 3x3 matrix of the normal equations (row by row).
+     */
+    private final double[] normalMatrix = new double[9];
+    /**
+     * The damped normal matrix of Levenberg-Marquardt.
+     */
+    private final double[] dampedMatrix = new double[9];
+    /**
+     * Right-hand side of the normal equations.
+     */
+    private final double[] normalVector = new double[Vector3DMath.SIZE];
+    private final double[] step = new double[Vector3DMath.SIZE];
+    private final double[] candidate = new double[Vector3DMath.SIZE];
+    private final double[] centroid = new double[Vector3DMath.SIZE];
+    private double[] residuals = new double[INITIAL_CAPACITY];
+    private int count;
+    private int iterations;
+
+    /**
+     * Create a solver with Levenberg-Marquardt refinement and default number of
+     * iterations and tolerance.
+     */
+    public MultilaterationSolver() {
+        this(Refinement.LEVENBERG_MARQUARDT);
+    }
+
+    /**
+     * Create a solver with default number of iterations and tolerance.
+     *
+     * @param refinement the refinement of the closed-form solution
+     */
+    public MultilaterationSolver(final Refinement refinement) {
+        this(refinement, DEFAULT_MAX_ITERATIONS, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Create a solver.
+     *
+     * @param refinement the refinement of the closed-form solution
+     * @param maxIterations maximal number of iterations of the refinement
+     * @param tolerance relative size of a step of the refinement to stop the
+     * iterations
+     */
+    public MultilaterationSolver(final Refinement refinement, final int maxIterations, final double tolerance) {
+        this.refinement = ( refinement == null ) ? Refinement.NONE : refinement;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Get the refinement of the closed-form solution.
+     *
+     * @return the refinement
+     */
+    public Refinement getRefinement() {
+        return this.refinement;
+    }
+
+    /**
+     * Compute location of a blind node from locations of anchors and their
+     * distances from the blind node.
+     *
+     * @param locations coordinates of the anchors, i.e. X, Y, Z of the first
+     * anchor, X, Y, Z of the second anchor, etc. (see {@link Vector3DMath})
+     * @param distances distances of the anchors in the same order as the
+     * locations
+     * @param count number of the anchors in the arrays
+     * @param location array for result, i.e. location of the blind node
+     * @param locationOffset offset of the result in the array
+     * @throws WirelessMetricException there are less than {@link #MIN_ANCHORS}
+     * anchors or the anchors are coplanar
+     */
+    public void solve(final double[] locations, final double[] distances, final int count,
+            final double[] location, final int locationOffset) throws WirelessMetricException {
+        if (count < MIN_ANCHORS) {
+            throw new WirelessMetricException("Not enought anchors for 3D multilateration! "
+                    + "We need at the least " + MIN_ANCHORS + " anchors.");
+        }
+        if (count > this.residuals.length) {
+            this.residuals = new double[Math.max(count, 2 * this.residuals.length)];
+        }
+        this.count = count;
+        this.iterations = 0;
+        this.solveLinearised(locations, distances, location, locationOffset);
+        if (this.refinement != Refinement.NONE) {
+            this.refine(locations, distances, location, locationOffset);
+        }
+        this.computeResiduals(locations, distances, location, locationOffset);
+    }
+
+    /**
+     * Closed-form solution of the linearised problem. The spheres are relative
+     * to centroid c of the anchors, i.e. |y - q_i|^2 = d_i^2 for y = x - c and
+     * q_i = p_i - c, and the mean of the equations is subtracted from each of
+     * them, so 2 q_i.y = |q_i|^2 - mean(|q|^2) - d_i^2 + mean(d^2).
+     */
+    private void solveLinearised(final double[] locations, final double[] distances,
+            final double[] location, final int locationOffset) throws WirelessMetricException {
+        Vector3DMath.set(this.centroid, 0, 0, 0, 0);
+        for (int i = 0; i < this.count; i++) {
+            Vector3DMath.add(this.centroid, 0, locations, i * Vector3DMath.SIZE, this.centroid, 0);
+        }
+        Vector3DMath.scale(this.centroid, 0, 1.0 / this.count, this.centroid, 0);
+        double meanNormSquared = 0;
+        double meanDistanceSquared = 0;
+        for (int i = 0; i < this.count; i++) {
+            meanNormSquared += Vector3DMath.distanceSquared(locations, i * Vector3DMath.SIZE, this.centroid, 0);
+            meanDistanceSquared += distances[i] * distances[i];
+        }
+        meanNormSquared /= this.count;
+        meanDistanceSquared /= this.count;
+        Arrays.fill(this.normalMatrix, 0);
+        Arrays.fill(this.normalVector, 0);
+        for (int i = 0; i < this.count; i++) {
+            int offset = i * Vector3DMath.SIZE;
+            double qx = locations[offset] - this.centroid[0];
+            double qy = locations[offset + 1] - this.centroid[1];
+            double qz = locations[offset + 2] - this.centroid[2];
+            double b = ( qx * qx + qy * qy + qz * qz - meanNormSquared
+                    - distances[i] * distances[i] + meanDistanceSquared ) / 2;
+            this.accumulate(qx, qy, qz, b);
+        }
+        if (!solve3x3(this.normalMatrix, this.normalVector, this.step)) {
+            throw new WirelessMetricException("The anchors for 3D multilateration are coplanar!");
+        }
+        Vector3DMath.add(this.step, 0, this.centroid, 0, location, locationOffset);
+    }
+
+    /**
+     * Gauss-Newton or Levenberg-Marquardt refinement minimising sum of squares
+     * of r_i = |x - p_i| - d_i with Jacobian rows (x - p_i) / |x - p_i|.
+     */
+    private void refine(final double[] locations, final double[] distances,
+            final double[] location, final int locationOffset) {
+        boolean damped = ( this.refinement == Refinement.LEVENBERG_MARQUARDT );
+        double damping = INITIAL_DAMPING;
+        double cost = this.cost(locations, distances, location, locationOffset);
+        while (this.iterations < this.maxIterations) {
+            this.iterations++;
+            // normal equations J^T J step = -J^T r
+            Arrays.fill(this.normalMatrix, 0);
+            Arrays.fill(this.normalVector, 0);
+            for (int i = 0; i < this.count; i++) {
+                int offset = i * Vector3DMath.SIZE;
+                double dx = location[locationOffset] - locations[offset];
+                double dy = location[locationOffset + 1] - locations[offset + 1];
+                double dz = location[locationOffset + 2] - locations[offset + 2];
+                double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                if (norm == 0) {
+                    // the gradient is undefined in the anchor itself
+                    continue;
+                }
+                this.accumulate(dx / norm, dy / norm, dz / norm, distances[i] - norm);
+            }
+            boolean improved = false;
+            // try to find a step decreasing the cost (the first step for Gauss-Newton)
+            while (!improved) {
+                System.arraycopy(this.normalMatrix, 0, this.dampedMatrix, 0, this.normalMatrix.length);
+                if (damped) {
+                    for (int j = 0; j < 9; j += 4) {
+                        this.dampedMatrix[j] *= 1 + damping;
+                    }
+                }
+                if (!solve3x3(this.dampedMatrix, this.normalVector, this.step)) {
+                    if (damped && ( damping < 1 / SINGULARITY_THRESHOLD )) {
+                        damping *= 10;
+                        continue;
+                    }
+                    return;
+                }
+                Vector3DMath.add(location, locationOffset, this.step, 0, this.candidate, 0);
+                double candidateCost = this.cost(locations, distances, this.candidate, 0);
+                if (!damped || ( candidateCost < cost )) {
+                    Vector3DMath.copy(this.candidate, 0, location, locationOffset);
+                    cost = candidateCost;
+                    damping /= 10;
+                    improved = true;
+                } else if (damping < 1 / SINGULARITY_THRESHOLD) {
+                    damping *= 10;
+                } else {
+                    // no improvement is possible
+                    return;
+                }
+            }
+            if (Vector3DMath.norm(this.step, 0)
+                    <= this.tolerance * ( 1 + Vector3DMath.norm(location, locationOffset) )) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add a row a and a right-hand side b into the normal equations, i.e.
+     * a a^T into the normal matrix and a b into the normal vector.
+     */
+    private void accumulate(final double ax, final double ay, final double az, final double b) {
+        this.normalMatrix[0] += ax * ax;
+        this.normalMatrix[1] += ax * ay;
+        this.normalMatrix[2] += ax * az;
+        this.normalMatrix[4] += ay * ay;
+        this.normalMatrix[5] += ay * az;
+        this.normalMatrix[8] += az * az;
+        this.normalMatrix[3] = this.normalMatrix[1];
+        this.normalMatrix[6] = this.normalMatrix[2];
+        this.normalMatrix[7] = this.normalMatrix[5];
+        this.normalVector[0] += ax * b;
+        this.normalVector[1] += ay * b;
+        this.normalVector[2] += az * b;
+    }
+
+    private double cost(final double[] locations, final double[] distances,
+            final double[] location, final int locationOffset) {
+        double result = 0;
+        for (int i = 0; i < this.count; i++) {
+            double residual = Vector3DMath.distance(location, locationOffset, locations, i * Vector3DMath.SIZE)
+                    - distances[i];
+            result += residual * residual;
+        }
+        return result;
+    }
+
+    private void computeResiduals(final double[] locations, final double[] distances,
+            final double[] location, final int locationOffset) {
+        for (int i = 0; i < this.count; i++) {
+            this.residuals[i] = Vector3DMath.distance(location, locationOffset, locations, i * Vector3DMath.SIZE)
+                    - distances[i];
+        }
+    }
+
+    /**
+     * Estimate covariance matrix of a location of a blind node computed from
+     * locations of anchors and their distances, i.e. s^2 (J^T J)^-1 where J
+     * is the Jacobian of the distances at the location (as in the refinement)
+     * and s^2 = sum(r_i^2) / (count - 3) is the variance of the residuals
+     * r_i of the distances.
+     *
+     * @param locations coordinates of the anchors (see {@link Vector3DMath})
+     * @param distances distances of the anchors in the same order as the
+     * locations
+     * @param count number of the anchors in the arrays
+     * @param location array with the location of the blind node
+     * @param locationOffset offset of the location in the array
+     * @param covariance array for the covariance matrix (3x3 in row-major
+     * order), it is filled by NaN if the covariance cannot be estimated, i.e.
+     * there are no more than 3 anchors or the matrix is singular (e.g. the
+     * anchors are coplanar)
+     * @return the root mean square of the residuals
+     */
+    public static double estimateCovariance(final double[] locations, final double[] distances, final int count,
+            final double[] location, final int locationOffset, final double[] covariance) {
+        double[] matrix = new double[9];
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            int offset = i * Vector3DMath.SIZE;
+            double dx = location[locationOffset] - locations[offset];
+            double dy = location[locationOffset + 1] - locations[offset + 1];
+            double dz = location[locationOffset + 2] - locations[offset + 2];
+            double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            double residual = norm - distances[i];
+            sum += residual * residual;
+            if (norm == 0) {
+                // the gradient is undefined in the anchor itself
+                continue;
+            }
+            dx /= norm;
+            dy /= norm;
+            dz /= norm;
+            matrix[0] += dx * dx;
+            matrix[1] += dx * dy;
+            matrix[2] += dx * dz;
+            matrix[4] += dy * dy;
+            matrix[5] += dy * dz;
+            matrix[8] += dz * dz;
+        }
+        matrix[3] = matrix[1];
+        matrix[6] = matrix[2];
+        matrix[7] = matrix[5];
+        double rootMeanSquare = ( count == 0 ) ? 0 : Math.sqrt(sum / count);
+        Arrays.fill(covariance, 0, 9, Double.NaN);
+        if (count <= Vector3DMath.SIZE) {
+            return rootMeanSquare;
+        }
+        double variance = sum / ( count - Vector3DMath.SIZE );
+        // columns of the inverse matrix from the unit vectors
+        double[] unit = new double[Vector3DMath.SIZE];
+        double[] column = new double[Vector3DMath.SIZE];
+        for (int j = 0; j < Vector3DMath.SIZE; j++) {
+            Arrays.fill(unit, 0);
+            unit[j] = 1;
+            if (!solve3x3(matrix, unit, column)) {
+                Arrays.fill(covariance, 0, 9, Double.NaN);
+                return rootMeanSquare;
+            }
+            for (int i = 0; i < Vector3DMath.SIZE; i++) {
+                covariance[i * Vector3DMath.SIZE + j] = variance * column[i];
+            }
+        }
+        return rootMeanSquare;
+    }
+
+    /**
+     * Solve 3x3 linear system m x = v by Cramer's rule.
+     *
+     * @return false iff the matrix is (nearly) singular
+     */
+    private static boolean solve3x3(final double[] m, final double[] v, final double[] x) {
+        double c0 = m[4] * m[8] - m[5] * m[7];
+        double c1 = m[5] * m[6] - m[3] * m[8];
+        double c2 = m[3] * m[7] - m[4] * m[6];
+        double determinant = m[0] * c0 + m[1] * c1 + m[2] * c2;
+        double scale = Math.abs(m[0]) + Math.abs(m[4]) + Math.abs(m[8]);
+        if (!( Math.abs(determinant) > SINGULARITY_THRESHOLD * scale * scale * scale )) {
+            return false;
+        }
+        x[0] = ( v[0] * c0
+                + m[1] * ( m[5] * v[2] - v[1] * m[8] )
+                + m[2] * ( v[1] * m[7] - m[4] * v[2] ) ) / determinant;
+        x[1] = ( m[0] * ( v[1] * m[8] - m[5] * v[2] )
+                + v[0] * c1
+                + m[2] * ( m[3] * v[2] - v[1] * m[6] ) ) / determinant;
+        x[2] = ( m[0] * ( m[4] * v[2] - v[1] * m[7] )
+                + m[1] * ( v[1] * m[6] - m[3] * v[2] )
+                + v[0] * c2 ) / determinant;
+        return true;
+    }
+
+    /**
+     * Get number of anchors of the last solution.
+     *
+     * @return the number of anchors
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Get residuals of the last solution, i.e. differences of the actual and
+     * the given distances of the anchors.
+     *
+     * @return the residuals (valid from 0 to {@link #getCount()} exclusive)
+     */
+    public double[] getResiduals() {
+        return this.residuals;
+    }
+
+    /**
+     * Get root mean square of the residuals of the last solution.
+     *
+     * @return the root mean square of the residuals
+     */
+    public double getRootMeanSquareResidual() {
+        double sum = 0;
+        for (int i = 0; i < this.count; i++) {
+            sum += this.residuals[i] * this.residuals[i];
+        }
+        return ( this.count == 0 ) ? 0 : Math.sqrt(sum / this.count);
+    }
+
+    /**
+     * Get number of iterations of the refinement of the last solution.
+     *
+     * @return the number of iterations
+     */
+    public int getIterations() {
+        return this.iterations;
+    }
+}
@@ -0,0 +1,389 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.*;
+import java.util.Map;
+
+/**
+ * Lazy query over neighbours of a node (e.g. its scan), i.e. a composable
+ * counterpart of {@link MapOfNeighbours#getNodesWithLocation(eu.esonia.but.geoloc4d.type.Vector3D, boolean, boolean)},
+ * {@link MapOfNeighbours#getNodesWithDistance(eu.esonia.but.geoloc4d.type.Vector3D, boolean, boolean)}
+ * and sorting of the resulting maps. The query is defined by filters,
+ * derivation of locations and distances, ordering and a limit, and it is
+ * evaluated by {@link #evaluate()} in one pass over the neighbours into
+ * primitive arrays without copying of the neighbours. Only the final result
+ * can be materialised as a map of neighbours by {@link #toMapOfNeighbours()}.
+ *
+ * The query keeps its arrays, so it does not allocate any objects after the
+ * arrays grow to the maximal number of neighbours and it can be evaluated
+ * repeatedly for neighbours of more nodes (see {@link #from(eu.esonia.but.geoloc4d.type.MapOfNeighbours)}),
+ * however, it cannot be shared by more threads.
+ *
+ * @author rychly
+ */
+public final class NeighbourQuery {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Derivation of a distance of a neighbour (e.g. from its RSSI or RTT).
+     */
+    public interface Metric {
+
+        /**
+         * Get a distance of a neighbour.
+         *
+         * @param id the ID of the neighbour
+         * @param neighbour the neighbour
+         * @param locations the array with the absolute location of the
+         * neighbour, or null if the query does not derive the locations
+         * @param offset the offset of the location in the array
+         * @return the distance or NaN to skip the neighbour
+         */
+        double getDistance(final String id, final NeighbourProperties neighbour,
+                final double[] locations, final int offset);
+    }
+
+    /**
+     * Ordering of the result.
+     */
+    private enum Order {
+
+        NONE, DISTANCE, ISOLATION
+    }
+    private MapOfNeighbours neighbours;
+    private boolean isSetRssi = false;
+    private boolean isSetRtt = false;
+    private boolean located = false;
+    private Vector3D locationReference = null;
+    private boolean measured = false;
+    private Vector3D distanceReference = null;
+    private Metric metric = null;
+    private Order order = Order.NONE;
+    private boolean reverseOrder = false;
+    private boolean exactIsolation = true;
+    private int limit = Integer.MAX_VALUE;
+    /**
+     * The result, its indexes of nodes are positions of the neighbours in the
+     * evaluated map.
+     */
+    private final PreparedNodes result = new PreparedNodes();
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private NeighbourProperties[] sources = new NeighbourProperties[INITIAL_CAPACITY];
+
+    /**
+     * Create a query, the neighbours to query must be set by {@link #from(eu.esonia.but.geoloc4d.type.MapOfNeighbours)}.
+     */
+    public NeighbourQuery() {
+        this(null);
+    }
+
+    /**
+     * Create a query over neighbours.
+     *
+     * @param neighbours the neighbours to query
+     */
+    public NeighbourQuery(final MapOfNeighbours neighbours) {
+        this.neighbours = neighbours;
+    }
+
+    /**
+     * Set other neighbours to query, e.g. the scan of the next node.
+     *
+     * @param neighbours the neighbours to query
+     * @return this query
+     */
+    public NeighbourQuery from(final MapOfNeighbours neighbours) {
+        this.neighbours = neighbours;
+        return this;
+    }
+
+    /**
+     * Only the neighbours with set RSSI.
+     *
+     * @return this query
+     */
+    public NeighbourQuery withRssi() {
+        this.isSetRssi = true;
+        return this;
+    }
+
+    /**
+     * Only the neighbours with set RTT.
+     *
+     * @return this query
+     */
+    public NeighbourQuery withRtt() {
+        this.isSetRtt = true;
+        return this;
+    }
+
+    /**
+     * Only the neighbours with absolute location or relative location to a
+     * reference location (as {@link MapOfNeighbours#getNodesWithLocation(eu.esonia.but.geoloc4d.type.Vector3D, boolean, boolean)}).
+     * The absolute locations are available by {@link #getLocations()}.
+     *
+     * @param referenceLocation the reference location (null if cannot be used
+     * in computations)
+     * @return this query
+     */
+    public NeighbourQuery withLocation(final Vector3D referenceLocation) {
+        this.located = true;
+        this.locationReference = referenceLocation;
+        return this;
+    }
+
+    /**
+     * Only the neighbours with set distance or distance computed from their
+     * relative location, or from their absolute location and a reference
+     * location (as {@link MapOfNeighbours#getNodesWithDistance(eu.esonia.but.geoloc4d.type.Vector3D, boolean, boolean)}).
+     * The distances are available by {@link #getDistances()}.
+     *
+     * @param referenceLocation the reference location (null if cannot be used
+     * in computations)
+     * @return this query
+     */
+    public NeighbourQuery withDistance(final Vector3D referenceLocation) {
+        this.measured = true;
+        this.distanceReference = referenceLocation;
+        this.metric = null;
+        return this;
+    }
+
+    /**
+     * Only the neighbours with distance derived by a metric (e.g. from RSSI
+     * or RTT). The distances are available by {@link #getDistances()}.
+     *
+     * @param metric the metric
+     * @return this query
+     */
+    public NeighbourQuery withDistance(final Metric metric) {
+        this.measured = true;
+        this.distanceReference = null;
+        this.metric = metric;
+        return this;
+    }
+
+    /**
+     * Order the result by distances (as {@link MapOfNeighbours#sortByDistance(boolean)}).
+     *
+     * @param reverseOrder true for reverse ordering (the most distant
+     * neighbours first)
+     * @return this query
+     */
+    public NeighbourQuery orderByDistance(final boolean reverseOrder) {
+        this.order = Order.DISTANCE;
+        this.reverseOrder = reverseOrder;
+        return this;
+    }
+
+    /**
+     * Order the result by isolation of absolute locations (as {@link MapOfNeighbours#sortByIsolation(boolean, boolean)}).
+     *
+     * @param reverseOrder true for reverse ordering (the most isolated
+     * neighbours first)
+     * @param exact true for the exact mode, false for the approximate
+     * (faster) ordering
+     * @return this query
+     */
+    public NeighbourQuery orderByIsolation(final boolean reverseOrder, final boolean exact) {
+        this.order = Order.ISOLATION;
+        this.reverseOrder = reverseOrder;
+        this.exactIsolation = exact;
+        return this;
+    }
+
+    /**
+     * Limit the number of neighbours in the result (the first ones after the
+     * ordering).
+     *
+     * @param limit the maximal number of neighbours
+     * @return this query
+     */
+    public NeighbourQuery limit(final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit must not be a negative value!");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Evaluate the query.
+     *
+     * @return the number of neighbours in the result
+     * @throws IllegalStateException the result should be ordered by isolation
+     * without derivation of the absolute locations
+     */
+    public int evaluate() {
+        if (( this.order == Order.ISOLATION ) && !this.located) {
+            throw new IllegalStateException("The ordering by isolation needs absolute locations of the neighbours!");
+        }
+        int size = this.neighbours.size();
+        this.result.clear(size);
+        if (this.sources.length < size) {
+            this.ids = new String[Math.max(size, 2 * this.sources.length)];
+            this.sources = new NeighbourProperties[this.ids.length];
+        }
+        final boolean referenceLocated = ( this.locationReference != null ) && this.locationReference.isDefined();
+        final boolean referenceMeasured = ( this.distanceReference != null ) && this.distanceReference.isDefined();
+        double[] locations = this.result.getLocations();
+        int position = 0;
+        for (Map.Entry<String, NeighbourProperties> pair : this.neighbours.entrySet()) {
+            NeighbourProperties neighbour = pair.getValue();
+            this.ids[position] = pair.getKey();
+            this.sources[position] = neighbour;
+            int offset = this.result.getCount() * Vector3DMath.SIZE;
+            if (( this.isSetRssi && ( neighbour.getRssi() == null ) )
+                    || ( this.isSetRtt && ( neighbour.getRtt() == null ) )) {
+                // test for RSSI and RTT values
+                position++;
+                continue;
+            }
+            if (this.located) {
+                // test for absolute location or absolute location as relative from reference location
+                Vector3D location = neighbour.getLocationAbsolute();
+                Vector3D relative = neighbour.getLocationRelative();
+                if (( location != null ) && location.isDefined()) {
+                    Vector3DMath.set(locations, offset, location.getX(), location.getY(), location.getZ());
+                } else if (( relative != null ) && relative.isDefined() && referenceLocated) {
+                    Vector3DMath.set(locations, offset, this.locationReference.getX() + relative.getX(),
+                            this.locationReference.getY() + relative.getY(), this.locationReference.getZ() + relative.getZ());
+                } else {
+                    position++;
+                    continue;
+                }
+            }
+            double distance = Double.NaN;
+            if (this.metric != null) {
+                distance = this.metric.getDistance(pair.getKey(), neighbour, this.located ? locations : null, offset);
+            } else if (this.measured) {
+                // test for distance value, distance of relative location from its origin, or distance of absolute location to reference location
+                Vector3D location = neighbour.getLocationAbsolute();
+                Vector3D relative = neighbour.getLocationRelative();
+                if (neighbour.getDistance() != null) {
+                    distance = neighbour.getDistance();
+                } else if (( relative != null ) && relative.isDefined()) {
+                    distance = relative.norm();
+                } else if (( location != null ) && location.isDefined() && referenceMeasured) {
+                    distance = location.distance(this.distanceReference);
+                }
+            }
+            if (!this.measured || !Double.isNaN(distance)) {
+                this.result.add(position, distance);
+            }
+            position++;
+        }
+        // order and limit the result
+        if (this.order == Order.DISTANCE) {
+            System.arraycopy(this.result.getDistances(), 0, this.result.getKeys(), 0, this.result.getCount());
+            this.result.sortByKeys(this.reverseOrder);
+        } else if (this.order == Order.ISOLATION) {
+            Vector3DMath.isolations(locations, this.result.getCount(), this.exactIsolation, this.result.getKeys());
+            this.result.sortByKeys(this.reverseOrder);
+        }
+        this.result.truncate(this.limit);
+        return this.result.getCount();
+    }
+
+    /**
+     * Get the result of the last evaluation as prepared nodes, where indexes
+     * of the nodes are positions of the neighbours in the evaluated map
+     * (for {@link #getID(int)} and {@link #getNeighbour(int)}). The result
+     * can be reordered or truncated (e.g. by {@link AnchorSelection}).
+     *
+     * @return the result
+     */
+    public PreparedNodes getResult() {
+        return this.result;
+    }
+
+    /**
+     * Get number of neighbours in the result of the last evaluation.
+     *
+     * @return the number of neighbours
+     */
+    public int getCount() {
+        return this.result.getCount();
+    }
+
+    /**
+     * Get ID of a neighbour in the result of the last evaluation.
+     *
+     * @param index the index of the neighbour in the result
+     * @return the ID of the neighbour
+     */
+    public String getID(final int index) {
+        return this.ids[this.result.getNodes()[index]];
+    }
+
+    /**
+     * Get a neighbour in the result of the last evaluation. It is not a copy,
+     * i.e. it has not set the derived location or distance.
+     *
+     * @param index the index of the neighbour in the result
+     * @return the neighbour
+     */
+    public NeighbourProperties getNeighbour(final int index) {
+        return this.sources[this.result.getNodes()[index]];
+    }
+
+    /**
+     * Get absolute locations of neighbours in the result of the last
+     * evaluation (if the query derives them).
+     *
+     * @return the locations (see {@link Vector3DMath})
+     */
+    public double[] getLocations() {
+        return this.result.getLocations();
+    }
+
+    /**
+     * Get distances of neighbours in the result of the last evaluation (if
+     * the query derives them).
+     *
+     * @return the distances (valid from 0 to {@link #getCount()} exclusive)
+     */
+    public double[] getDistances() {
+        return this.result.getDistances();
+    }
+
+    /**
+     * Materialise the result of the last evaluation as a map of neighbours.
+     * Neighbours with derived location or distance are copies with set the
+     * derived values (the original neighbours are not modified).
+     *
+     * @return the map of neighbours in the order of the result
+     */
+    public MapOfNeighbours toMapOfNeighbours() {
+        MapOfNeighbours map = new MapOfNeighbours();
+        double[] locations = this.result.getLocations();
+        double[] distances = this.result.getDistances();
+        for (int i = 0; i < this.result.getCount(); i++) {
+            NeighbourProperties neighbour = this.getNeighbour(i);
+            Vector3D location = neighbour.getLocationAbsolute();
+            boolean derivedLocation = this.located && ( ( location == null ) || location.isUndefined() );
+            boolean derivedDistance = this.measured && ( ( neighbour.getDistance() == null )
+                    || ( Double.compare(neighbour.getDistance(), distances[i]) != 0 ) );
+            if (derivedLocation || derivedDistance) {
+                neighbour = new NeighbourProperties(neighbour);
+                if (derivedLocation) {
+                    neighbour.setLocationAbsolute(Vector3DMath.toVector3D(locations, i * Vector3DMath.SIZE));
+                }
+                if (derivedDistance) {
+                    neighbour.setDistance((Double) distances[i]);
+                }
+            }
+            map.put(this.getID(i), neighbour);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("NeighbourQuery{count=").append(this.result.getCount()).append(", ids=[");
+        for (int i = 0; i < this.result.getCount(); i++) {
+            builder.append(( i > 0 ) ? ", " : "").append(this.getID(i));
+        }
+        return builder.append("]}").toString();
+    }
+}
@@ -0,0 +1,169 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Node;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Fetcher of nodes from many remote sources at once (e.g. from proxies of
+ * RESTlets or services). The remote calls are performed concurrently by a
+ * limited number of threads and all of them must finish in a given time,
+ * otherwise the late sources are reported as failed. The threads are held by
+ * the fetcher for all its fetches, they are daemons and they terminate while
+ * the fetcher is idle, so the fetcher does not need to be shut down.
+ *
+ * @author rychly
+ */
+public class ParallelNodeFetcher {
+
+    /**
+     * Remote call fetching a node from its source.
+     *
+     * @param <S> type of the sources
+     */
+    public interface Fetch<S> {
+
+        /**
+         * Fetch a node from its source.
+         *
+         * @param source the source
+         * @return the node
+         * @throws Exception an error of the remote call
+         */
+        Node fetch(final S source) throws Exception;
+    }
+    /**
+     * Maximal number of concurrent remote calls.
+     */
+    private final int parallelism;
+    /**
+     * Time in milliseconds for all the remote calls (0 for unlimited).
+     */
+    private final long timeout;
+    /**
+     * Threads for the remote calls of all the fetches.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Create a fetcher.
+     *
+     * @param parallelism maximal number of concurrent remote calls
+     * @param timeout time in milliseconds for all the remote calls (0 for
+     * unlimited)
+     */
+    public ParallelNodeFetcher(final int parallelism, final long timeout) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be a positive value!");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout must be a non-negative value!");
+        }
+        this.parallelism = parallelism;
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        Thread thread = this.threadFactory.newThread(runnable);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the maximal number of concurrent remote calls
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * @return the time in milliseconds for all the remote calls (0 for
+     * unlimited)
+     */
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Fetch nodes from given sources. If the fetching thread is interrupted,
+     * the remaining remote calls are cancelled and reported as failed. The
+     * sources which return no node are reported as failed too. The fetcher
+     * can be used by many threads at once, but all their remote calls share
+     * the limited number of threads.
+     *
+     * @param <S> type of the sources
+     * @param sources the sources of the nodes
+     * @param fetch the remote call fetching a node from a source
+     * @return the nodes (in order of their sources) and errors of the failed
+     * sources
+     */
+    public <S> GatheredNodes<S> fetch(final Collection<S> sources, final Fetch<S> fetch) {
+        GatheredNodes<S> result = new GatheredNodes<>();
+        if (sources.isEmpty()) {
+            return result;
+        }
+        List<Future<Node>> futures = new ArrayList<>(sources.size());
+        try {
+            for (final S source : sources) {
+                futures.add(this.executor.submit(new Callable<Node>() {
+
+                    @Override
+                    public Node call() throws Exception {
+                        return fetch.fetch(source);
+                    }
+                }));
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+            boolean interrupted = false;
+            int i = 0;
+            for (S source : sources) {
+                Future<Node> future = futures.get(i++);
+                try {
+                    if (interrupted) {
+                        future.cancel(true);
+                        result.putError(source, new InterruptedException("Interrupted before the node was fetched."));
+                    } else {
+                        Node node = ( this.timeout == 0 ) ? future.get()
+                                : future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (node != null) {
+                            result.putNode(source, node);
+                        } else {
+                            result.putError(source, new IllegalStateException("No node has been fetched from the source!"));
+                        }
+                    }
+                }
+                catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    result.putError(source, ( cause instanceof Exception ) ? (Exception) cause : ex);
+                }
+                catch (TimeoutException ex) {
+                    future.cancel(true);
+                    result.putError(source, ex);
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                    future.cancel(true);
+                    result.putError(source, ex);
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        finally {
+            // the remote calls of failed fetching must not hold the threads
+            for (Future<Node> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return result;
+    }
+}
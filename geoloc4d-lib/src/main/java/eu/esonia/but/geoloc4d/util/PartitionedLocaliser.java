@@ -0,0 +1,438 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Localisation of nodes of a network split into partitions which are
+ * localised by workers in parallel. The network graph (nodes linked by their
+ * scans) is split into connected partitions of balanced sizes grown from
+ * anchors spread over the network. In each round, every worker localises its
+ * partition by a {@link WaveFrontLocaliser} with copies of localised nodes of
+ * the other partitions in scans of the partition's nodes as boundary anchors
+ * (so the partitions overlap by the boundary anchors). After the round, the
+ * locations of the newly localised boundary nodes are exchanged by the
+ * workers, and the rounds are repeated until the exchange does not localise
+ * any other node.
+ *
+ * Each worker processes only its own partition and the boundary anchors, so
+ * the time of a round decreases nearly linearly with the number of workers
+ * for large networks. With a single partition, the localisation is the same
+ * as by a {@link WaveFrontLocaliser}.
+ *
+ * @author rychly
+ */
+public class PartitionedLocaliser {
+
+    /**
+     * Default maximal number of rounds of the localisation.
+     */
+    public static final int DEFAULT_MAX_ROUNDS = 64;
+    /**
+     * The localiser of the partitions.
+     */
+    private final WaveFrontLocaliser localiser;
+    /**
+     * Number of the partitions.
+     */
+    private final int partitions;
+    /**
+     * The pool of threads for the workers.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Maximal number of rounds of the localisation.
+     */
+    private volatile int maxRounds = DEFAULT_MAX_ROUNDS;
+
+    /**
+     * Create a localiser with a partition for each processor and the shared
+     * pool of threads.
+     *
+     * @param trilaterationStrategy the trilateration strategy to use
+     */
+    public PartitionedLocaliser(final TrilaterationStrategy trilaterationStrategy) {
+        this(trilaterationStrategy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a localiser with the shared pool of threads for all processors
+     * (so at most one worker for each processor runs at once).
+     *
+     * @param trilaterationStrategy the trilateration strategy to use
+     * @param partitions the number of the partitions (and workers)
+     */
+    public PartitionedLocaliser(final TrilaterationStrategy trilaterationStrategy, final int partitions) {
+        this(trilaterationStrategy, partitions, SharedPool.get());
+    }
+
+    /**
+     * Create a localiser.
+     *
+     * @param trilaterationStrategy the trilateration strategy to use
+     * @param partitions the number of the partitions (and workers)
+     * @param pool the pool of threads for the workers (owned by the caller
+     * which shuts it down)
+     */
+    public PartitionedLocaliser(final TrilaterationStrategy trilaterationStrategy, final int partitions,
+            final ForkJoinPool pool) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("The number of partitions must be positive!");
+        }
+        this.localiser = new WaveFrontLocaliser(trilaterationStrategy);
+        this.partitions = partitions;
+        this.pool = pool;
+    }
+
+    /**
+     * Get the trilateration strategy used for the localisation.
+     *
+     * @return the trilateration strategy
+     */
+    public TrilaterationStrategy getTrilaterationStrategy() {
+        return this.localiser.getTrilaterationStrategy();
+    }
+
+    /**
+     * Get the number of the partitions (and workers).
+     *
+     * @return the number of the partitions
+     */
+    public int getPartitions() {
+        return this.partitions;
+    }
+
+    /**
+     * Get the maximal number of rounds of the localisation.
+     *
+     * @return the maximal number of rounds
+     */
+    public int getMaxRounds() {
+        return this.maxRounds;
+    }
+
+    /**
+     * Set the maximal number of rounds of the localisation, i.e. of the
+     * exchanges of locations of boundary nodes of the partitions.
+     *
+     * @param maxRounds the maximal number of rounds
+     */
+    public void setMaxRounds(final int maxRounds) {
+        if (maxRounds < 1) {
+            throw new IllegalArgumentException("The maximal number of rounds must be positive!");
+        }
+        this.maxRounds = maxRounds;
+    }
+
+    /**
+     * Split nodes of a map into connected partitions of balanced sizes. The
+     * partitions are grown breadth-first in the network graph (nodes linked by
+     * their scans in any direction) from seeds, which are localised nodes
+     * selected by the farthest-point sampling (or nodes spread over the map if
+     * there are not enough localised nodes), until they reach the size of the
+     * map divided by the number of the partitions. The other nodes (blocked by
+     * the full partitions or disconnected from the seeds) are added to the
+     * smallest partitions of their neighbours or to the smallest partitions.
+     *
+     * @param mapOfNodes the map of nodes
+     * @return the partitions with the nodes of the map (in order of the map),
+     * some of them can be empty for small maps
+     */
+    public List<MapOfNodes> partition(final MapOfNodes mapOfNodes) {
+        Node[] nodes = mapOfNodes.values().toArray(new Node[mapOfNodes.size()]);
+        int[][] adjacency = adjacency(nodes);
+        int[] partitionOf = new int[nodes.length];
+        Arrays.fill(partitionOf, -1);
+        int[] sizes = new int[this.partitions];
+        int capacity = ( nodes.length + this.partitions - 1 ) / this.partitions;
+        List<ArrayDeque<Integer>> queues = new ArrayList<>(this.partitions);
+        int[] seeds = seeds(nodes, this.partitions);
+        for (int p = 0; p < this.partitions; p++) {
+            queues.add(new ArrayDeque<Integer>());
+            if (( seeds[p] >= 0 ) && ( partitionOf[seeds[p]] < 0 )) {
+                partitionOf[seeds[p]] = p;
+                sizes[p]++;
+                queues.get(p).add(seeds[p]);
+            }
+        }
+        // grow the partitions in turns by a node, so they have balanced sizes
+        boolean growing = true;
+        while (growing) {
+            growing = false;
+            for (int p = 0; p < this.partitions; p++) {
+                ArrayDeque<Integer> queue = queues.get(p);
+                if (queue.isEmpty()) {
+                    continue;
+                }
+                growing = true;
+                int i = queue.poll();
+                for (int j : adjacency[i]) {
+                    if (sizes[p] >= capacity) {
+                        queue.clear();
+                        break;
+                    }
+                    if (partitionOf[j] < 0) {
+                        partitionOf[j] = p;
+                        sizes[p]++;
+                        queue.add(j);
+                    }
+                }
+            }
+        }
+        // add the other nodes, the nodes added to the partitions are neighbours of the next nodes
+        for (int i = 0; i < nodes.length; i++) {
+            if (partitionOf[i] < 0) {
+                assignRemaining(i, adjacency, partitionOf, sizes);
+            }
+        }
+        List<MapOfNodes> result = new ArrayList<>(this.partitions);
+        for (int p = 0; p < this.partitions; p++) {
+            result.add(new MapOfNodes());
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            result.get(partitionOf[i]).put(nodes[i].getInfo().getID(), nodes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Assign a node to the smallest partition of its neighbours (or to the
+     * smallest partition) and its unassigned neighbours breadth-first.
+     */
+    private static void assignRemaining(final int node, final int[][] adjacency, final int[] partitionOf,
+            final int[] sizes) {
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(node);
+        partitionOf[node] = -2;
+        while (!queue.isEmpty()) {
+            int i = queue.poll();
+            int best = -1;
+            for (int j : adjacency[i]) {
+                if (( partitionOf[j] >= 0 ) && ( ( best < 0 ) || ( sizes[partitionOf[j]] < sizes[best] ) )) {
+                    best = partitionOf[j];
+                } else if (partitionOf[j] == -1) {
+                    partitionOf[j] = -2;
+                    queue.add(j);
+                }
+            }
+            if (best < 0) {
+                best = 0;
+                for (int p = 1; p < sizes.length; p++) {
+                    if (sizes[p] < sizes[best]) {
+                        best = p;
+                    }
+                }
+            }
+            partitionOf[i] = best;
+            sizes[best]++;
+        }
+    }
+
+    /**
+     * Get adjacency lists of the network graph, i.e. positions of nodes linked
+     * by their scans in any direction.
+     */
+    private static int[][] adjacency(final Node[] nodes) {
+        Map<String, Integer> positions = new HashMap<>(2 * nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            positions.put(nodes[i].getInfo().getID(), i);
+        }
+        List<Set<Integer>> links = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            links.add(new LinkedHashSet<Integer>());
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            for (String id : nodes[i].getScan().keySet()) {
+                Integer j = positions.get(id);
+                if (( j != null ) && ( j != i )) {
+                    links.get(i).add(j);
+                    links.get(j).add(i);
+                }
+            }
+        }
+        int[][] result = new int[nodes.length][];
+        for (int i = 0; i < nodes.length; i++) {
+            result[i] = new int[links.get(i).size()];
+            int k = 0;
+            for (int j : links.get(i)) {
+                result[i][k++] = j;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Select seeds of the partitions, i.e. localised nodes by the
+     * farthest-point sampling, then nodes spread over the map.
+     */
+    private static int[] seeds(final Node[] nodes, final int count) {
+        int[] result = new int[count];
+        Arrays.fill(result, -1);
+        int selected = 0;
+        // distances of the localised nodes to the nearest selected seed
+        double[] distances = new double[nodes.length];
+        Arrays.fill(distances, Double.NaN);
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].getInfo().isAbsolutelyLocalised()) {
+                if (selected == 0) {
+                    result[selected++] = i;
+                }
+                distances[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+        while (( selected > 0 ) && ( selected < count )) {
+            Vector3D seed = nodes[result[selected - 1]].getInfo().getLocationAbsolute();
+            int farthest = -1;
+            for (int i = 0; i < nodes.length; i++) {
+                if (!Double.isNaN(distances[i])) {
+                    distances[i] = Math.min(distances[i], seed.distance(nodes[i].getInfo().getLocationAbsolute()));
+                    if (( distances[i] > 0 ) && ( ( farthest < 0 ) || ( distances[i] > distances[farthest] ) )) {
+                        farthest = i;
+                    }
+                }
+            }
+            if (farthest < 0) {
+                break;
+            }
+            result[selected++] = farthest;
+        }
+        for (int p = selected; p < count; p++) {
+            if (nodes.length > 0) {
+                result[p] = (int) ( (long) ( p - selected ) * nodes.length / ( count - selected ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Localise as many unlocalised nodes of a map of nodes as possible by the
+     * workers of the partitions. The localised nodes have set their absolute
+     * locations.
+     *
+     * @param mapOfNodes the map of nodes
+     * @return results of all the nodes by their IDs (in order of the map)
+     * @throws TrilaterationStrategyException the strategy is not calibrated
+     */
+    public Map<String, BatchLocaliser.NodeResult> localise(final MapOfNodes mapOfNodes)
+            throws TrilaterationStrategyException {
+        if (!this.getTrilaterationStrategy().isCalibrated()) {
+            throw new TrilaterationStrategyException("Strategy has not calibrated metric!");
+        }
+        if (this.partitions == 1) {
+            return this.localiser.localise(mapOfNodes);
+        }
+        final List<MapOfNodes> parts = this.partition(mapOfNodes);
+        final Map<String, BatchLocaliser.NodeResult> results = new HashMap<>(2 * mapOfNodes.size());
+        final List<Map<String, BatchLocaliser.NodeResult>> partResults = new ArrayList<>(this.partitions);
+        for (int p = 0; p < this.partitions; p++) {
+            partResults.add(null);
+        }
+        // the localised nodes stay localised, so the number of boundary anchors grows on their changes
+        int[] anchors = new int[this.partitions];
+        Arrays.fill(anchors, -1);
+        for (int round = 0; round < this.maxRounds; round++) {
+            // the boundary anchors are copies, the nodes of the other partitions may change in the round
+            final List<MapOfNodes> workerMaps = new ArrayList<>(this.partitions);
+            for (int p = 0; p < this.partitions; p++) {
+                MapOfNodes workerMap = withBoundaryAnchors(parts.get(p), mapOfNodes);
+                if (workerMap.size() == anchors[p]) {
+                    // nothing can change in the partition
+                    workerMap = null;
+                } else {
+                    anchors[p] = workerMap.size();
+                }
+                workerMaps.add(workerMap);
+                partResults.set(p, Collections.<String, BatchLocaliser.NodeResult>emptyMap());
+            }
+            this.pool.invoke(new RecursiveAction() {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    List<RecursiveAction> workers = new ArrayList<>(partitions);
+                    for (int p = 0; p < partitions; p++) {
+                        if (workerMaps.get(p) == null) {
+                            continue;
+                        }
+                        final int partition = p;
+                        workers.add(new RecursiveAction() {
+
+                            private static final long serialVersionUID = 1L;
+
+                            @Override
+                            protected void compute() {
+                                partResults.set(partition, localisePartition(workerMaps.get(partition),
+                                        parts.get(partition)));
+                            }
+                        });
+                    }
+                    invokeAll(workers);
+                }
+            });
+            // exchange the locations of the newly localised nodes
+            int localised = 0;
+            for (Map<String, BatchLocaliser.NodeResult> partResult : partResults) {
+                for (Map.Entry<String, BatchLocaliser.NodeResult> pair : partResult.entrySet()) {
+                    BatchLocaliser.NodeResult previous = results.get(pair.getKey());
+                    if (( previous == null ) || ( previous.getStatus() == BatchLocaliser.Status.FAILED )) {
+                        results.put(pair.getKey(), pair.getValue());
+                        if (pair.getValue().getStatus() == BatchLocaliser.Status.LOCALISED) {
+                            localised++;
+                        }
+                    }
+                }
+            }
+            if (localised == 0) {
+                break;
+            }
+        }
+        Map<String, BatchLocaliser.NodeResult> result = new LinkedHashMap<>(2 * mapOfNodes.size());
+        for (String id : mapOfNodes.keySet()) {
+            result.put(id, results.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Get a map of nodes of a partition with copies of localised nodes of the
+     * other partitions in scans of the partition's nodes.
+     */
+    private static MapOfNodes withBoundaryAnchors(final MapOfNodes part, final MapOfNodes mapOfNodes) {
+        MapOfNodes result = new MapOfNodes(part);
+        MapOfNeighbours noScan = new MapOfNeighbours();
+        for (Node node : part.values()) {
+            if (node.getInfo().isAbsolutelyLocalised()) {
+                continue;
+            }
+            for (String id : node.getScan().keySet()) {
+                Node neighbour = mapOfNodes.get(id);
+                if (( neighbour != null ) && !result.containsKey(id) && neighbour.getInfo().isAbsolutelyLocalised()) {
+                    result.put(id, new Node(neighbour.getInfo(), noScan));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Localise a partition by a worker.
+     *
+     * @param workerMap the nodes of the partition with the boundary anchors
+     * @param part the nodes of the partition
+     * @return the results of the nodes of the partition
+     */
+    private Map<String, BatchLocaliser.NodeResult> localisePartition(final MapOfNodes workerMap,
+            final MapOfNodes part) {
+        try {
+            Map<String, BatchLocaliser.NodeResult> result = this.localiser.localise(workerMap);
+            result.keySet().retainAll(part.keySet());
+            return result;
+        }
+        catch (TrilaterationStrategyException ex) {
+            throw new RuntimeException("Impossible, the strategy has been calibrated!", ex);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package eu.esonia.but.geoloc4d.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fitting of the log-distance path-loss model, i.e. RSSI = -(10 *
+ * propagationConstant * log10(distance) + signalStrengthAtMeter), over all
+ * observed pairs of RSSI values and actual distances by the least squares. The
+ * fitting can be robust to outliers by the Huber's M-estimator computed by
+ * iteratively reweighted least squares (with the scale of residuals fixed to
+ * their median absolute deviation in the least squares). Each iteration is
+ * one pass over primitive arrays of the observations, which is divided into
+ * parallel tasks for large arrays.
+ *
+ * @author rychly
+ */
+public class PathLossRegression {
+
+    /**
+     * Number of observations to process sequentially in one task.
+     */
+    private static final int THRESHOLD = 65536;
+    /**
+     * Tuning constant of the Huber's M-estimator in units of the residual
+     * standard error (95% efficiency for normally distributed residuals).
+     */
+    public static final double HUBER_CONSTANT = 1.345;
+    /**
+     * Maximal number of iterations of the robust fitting.
+     */
+    private static final int MAX_ITERATIONS = 50;
+    /**
+     * Relative change of parameters to stop the iterations.
+     */
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * Fitted path-loss model with quality of the fit.
+     */
+    public static final class Fit {
+
+        private final double signalStrengthAtMeter;
+        private final double propagationConstant;
+        private final long count;
+        private final long inliers;
+        private final double residualStandardError;
+        private final double rSquared;
+        private final int iterations;
+        /**
+         * Table of distances for RSSI values, created on demand.
+         */
+        private volatile WirelessMetric.RssiDistanceTable distanceTable = null;
+
+        Fit(final RunningRegression regression, final long inliers, final int iterations) {
+            this.signalStrengthAtMeter = -regression.getIntercept();
+            this.propagationConstant = -regression.getSlope() / 10;
+            this.count = regression.getCount();
+            this.inliers = inliers;
+            this.residualStandardError = ( regression.getWeight() > 2 )
+                    ? Math.sqrt(regression.getResidualSumOfSquares() / ( regression.getWeight() - 2 )) : Double.NaN;
+            this.rSquared = regression.getRSquared();
+            this.iterations = iterations;
+        }
+
+        /**
+         * @return the received signal strength at 1 meter distance
+         */
+        public double getSignalStrengthAtMeter() {
+            return this.signalStrengthAtMeter;
+        }
+
+        /**
+         * @return the propagation constant
+         */
+        public double getPropagationConstant() {
+            return this.propagationConstant;
+        }
+
+        /**
+         * Get a table of distances for RSSI values by the fitted model. The
+         * table is created on the first call.
+         *
+         * @return the table of distances
+         * @throws WirelessMetricException if the fitted constants are not
+         * valid for the conversion
+         */
+        public WirelessMetric.RssiDistanceTable getDistanceTable() throws WirelessMetricException {
+            WirelessMetric.RssiDistanceTable table = this.distanceTable;
+            if (table == null) {
+                // the concurrent creation of the same tables is harmless
+                table = new WirelessMetric.RssiDistanceTable(this.signalStrengthAtMeter, this.propagationConstant);
+                this.distanceTable = table;
+            }
+            return table;
+        }
+
+        /**
+         * @return the number of the observations used for the fit
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the number of the observations with full weight in the fit,
+         * i.e. not down-weighted as outliers (all the observations for the
+         * least squares)
+         */
+        public long getInliers() {
+            return this.inliers;
+        }
+
+        /**
+         * @return the (weighted) residual standard error of RSSI values, NaN
+         * for less than three observations
+         */
+        public double getResidualStandardError() {
+            return this.residualStandardError;
+        }
+
+        /**
+         * @return the (weighted) coefficient of determination R^2 of the fit
+         */
+        public double getRSquared() {
+            return this.rSquared;
+        }
+
+        /**
+         * @return the number of passes over the observations
+         */
+        public int getIterations() {
+            return this.iterations;
+        }
+
+        @Override
+        public String toString() {
+            return "signalStrengthAtMeter=" + this.signalStrengthAtMeter + ", propagationConstant=" + this.propagationConstant
+                    + ", count=" + this.count + ", inliers=" + this.inliers
+                    + ", residualStandardError=" + this.residualStandardError + ", rSquared=" + this.rSquared;
+        }
+    }
+
+    /**
+     * Running statistics of a pass over a range of the observations.
+     */
+    private static final class Pass {
+
+        private final RunningRegression regression = new RunningRegression();
+        private long inliers = 0;
+
+        private Pass merge(final Pass other) {
+            this.regression.merge(other.regression);
+            this.inliers += other.inliers;
+            return this;
+        }
+    }
+
+    /**
+     * Task of a pass over a range of the observations, i.e. the weighted least
+     * squares with the Huber's weights of residuals of the previous fit.
+     */
+    private static final class PassTask extends RecursiveTask<Pass> {
+
+        private static final long serialVersionUID = 1L;
+        private final double[] distances;
+        private final double[] logDistances;
+        private final double[] rssi;
+        private final int from;
+        private final int to;
+        private final double intercept;
+        private final double slope;
+        private final double threshold;
+
+        /**
+         * @param distances the distances to convert into logDistances in the
+         * pass, or null if they have been converted
+         * @param logDistances the logarithms of the distances (NaN for invalid
+         * observations)
+         * @param rssi the RSSI values
+         * @param from the first observation of the range
+         * @param to the observation after the range
+         * @param intercept the intercept of the previous fit
+         * @param slope the slope of the previous fit
+         * @param threshold the threshold of absolute residuals of the previous
+         * fit for the full weight (infinity for the least squares)
+         */
+        private PassTask(final double[] distances, final double[] logDistances, final double[] rssi,
+                final int from, final int to, final double intercept, final double slope, final double threshold) {
+            this.distances = distances;
+            this.logDistances = logDistances;
+            this.rssi = rssi;
+            this.from = from;
+            this.to = to;
+            this.intercept = intercept;
+            this.slope = slope;
+            this.threshold = threshold;
+        }
+
+        private PassTask subtask(final int from, final int to) {
+            return new PassTask(this.distances, this.logDistances, this.rssi, from, to,
+                    this.intercept, this.slope, this.threshold);
+        }
+
+        @Override
+        protected Pass compute() {
+            if (this.to - this.from > THRESHOLD) {
+                int middle = ( this.from + this.to ) >>> 1;
+                PassTask second = this.subtask(middle, this.to);
+                second.fork();
+                Pass result = this.subtask(this.from, middle).compute();
+                return result.merge(second.join());
+            }
+            Pass result = new Pass();
+            for (int i = this.from; i < this.to; i++) {
+                if (this.distances != null) {
+                    double distance = this.distances[i];
+                    this.logDistances[i] = ( ( distance > 0 ) && !Double.isInfinite(distance) && !Double.isNaN(this.rssi[i]) )
+                            ? Math.log10(distance) : Double.NaN;
+                }
+                double x = this.logDistances[i];
+                if (Double.isNaN(x)) {
+                    continue;
+                }
+                double y = this.rssi[i];
+                double residual = Math.abs(y - this.intercept - this.slope * x);
+                if (residual <= this.threshold) {
+                    result.regression.add(x, y);
+                    result.inliers++;
+                } else {
+                    result.regression.add(x, y, this.threshold / residual);
+                }
+            }
+            return result;
+        }
+    }
+    /**
+     * Use the robust fitting.
+     */
+    private final boolean robust;
+    /**
+     * The pool of threads for large arrays of the observations.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a fitting with the shared pool of threads for all processors.
+     *
+     * @param robust true for the robust fitting by the Huber's M-estimator,
+     * false for the least squares
+     */
+    public PathLossRegression(final boolean robust) {
+        this(robust, SharedPool.get());
+    }
+
+    /**
+     * Create a fitting.
+     *
+     * @param robust true for the robust fitting by the Huber's M-estimator,
+     * false for the least squares
+     * @param pool the pool of threads for large arrays of the observations
+     * (owned by the caller which shuts it down)
+     */
+    public PathLossRegression(final boolean robust, final ForkJoinPool pool) {
+        this.robust = robust;
+        this.pool = pool;
+    }
+
+    /**
+     * Check if the fitting is robust to outliers.
+     *
+     * @return true for the Huber's M-estimator, false for the least squares
+     */
+    public boolean isRobust() {
+        return this.robust;
+    }
+
+    private Pass pass(final PassTask task) {
+        return ( task.to - task.from > THRESHOLD ) ? this.pool.invoke(task) : task.compute();
+    }
+
+    /**
+     * Compute a robust scale of residuals of a fit, i.e. the normalised median
+     * absolute deviation of the residuals.
+     *
+     * @param logDistances the logarithms of the distances (NaN for invalid
+     * observations)
+     * @param rssi the RSSI values
+     * @param count the number of the observations
+     * @param intercept the intercept of the fit
+     * @param slope the slope of the fit
+     * @return the scale (zero for the perfect fit of most of the observations)
+     */
+    private static double scale(final double[] logDistances, final double[] rssi, final int count,
+            final double intercept, final double slope) {
+        double[] residuals = new double[count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (!Double.isNaN(logDistances[i])) {
+                residuals[size++] = rssi[i] - intercept - slope * logDistances[i];
+            }
+        }
+        double median = select(residuals, size, size / 2);
+        for (int i = 0; i < size; i++) {
+            residuals[i] = Math.abs(residuals[i] - median);
+        }
+        // the factor for consistency with the standard deviation of normally distributed residuals
+        return 1.4826 * select(residuals, size, size / 2);
+    }
+
+    /**
+     * Select the k-th smallest value of an array by the quickselect (the
+     * values of the array are reordered).
+     *
+     * @param values the values
+     * @param size the number of the values at the beginning of the array
+     * @param k the index of the value in the sorted values
+     * @return the k-th smallest value
+     */
+    private static double select(final double[] values, final int size, final int k) {
+        int left = 0;
+        int right = size - 1;
+        while (left < right) {
+            double pivot = values[( left + right ) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) {
+                    i++;
+                }
+                while (values[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double value = values[i];
+                    values[i] = values[j];
+                    values[j] = value;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+
+    /**
+     * Fit the path-loss model to observations of RSSI values for actual
+     * distances. Observations with non-positive or undefined distances are
+     * skipped.
+     *
+     * @param distances the actual distances in meters
+     * @param rssi the RSSI values
+     * @param count the number of the observations at the beginning of the
+     * arrays
+     * @return the fitted model
+     * @throws WirelessMetricException if there are not enough observations for
+     * different distances, or the model is degenerated (i.e. RSSI values does
+     * not depend on distances)
+     */
+    public Fit fit(final double[] distances, final double[] rssi, final int count)
+            throws WirelessMetricException {
+        double[] logDistances = new double[count];
+        Pass pass = this.pass(new PassTask(distances, logDistances, rssi, 0, count, 0, 0, Double.POSITIVE_INFINITY));
+        int iterations = 1;
+        if (!pass.regression.hasRegression()) {
+            throw new WirelessMetricException("There must be at the least two observations for different distances!");
+        }
+        if (this.robust) {
+            double intercept = pass.regression.getIntercept();
+            double slope = pass.regression.getSlope();
+            // the threshold from the robust scale of residuals of the least squares
+            double threshold = HUBER_CONSTANT * scale(logDistances, rssi, count, intercept, slope);
+            while (( iterations < MAX_ITERATIONS ) && ( threshold > 0 )) {
+                pass = this.pass(new PassTask(null, logDistances, rssi, 0, count, intercept, slope, threshold));
+                iterations++;
+                double change = Math.abs(pass.regression.getIntercept() - intercept) + Math.abs(pass.regression.getSlope() - slope);
+                intercept = pass.regression.getIntercept();
+                slope = pass.regression.getSlope();
+                if (change <= TOLERANCE * ( 1 + Math.abs(intercept) + Math.abs(slope) )) {
+                    break;
+                }
+            }
+        }
+        if (pass.regression.getSlope() == 0) {
+            throw new WirelessMetricException("The RSSI values must depend on the distances (the propagation constant is zero now)!");
+        }
+        return new Fit(pass.regression, pass.inliers, iterations);
+    }
+}
@@ -0,0 +1,226 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.NodeStore;
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
+import java.util.Arrays;
+
+/**
+ * Group of nodes prepared for the trilateration as primitive arrays, i.e. a
+ * primitive counterpart of the map of nodes returned by {@link TrilaterationStrategy#prepareNodesForTrilateration(eu.esonia.but.geoloc4d.type.NodeData, eu.esonia.but.geoloc4d.type.MapOfNeighbours)}.
+ * It is filled by {@link TrilaterationStrategy#prepareNodesForTrilateration(eu.esonia.but.geoloc4d.type.NodeStore, int, eu.esonia.but.geoloc4d.util.PreparedNodes)}
+ * and it can be reused for many nodes (one instance per thread), so there
+ * are no allocations after the arrays grow to the maximal number of
+ * neighbours.
+ *
+ * @author rychly
+ */
+public final class PreparedNodes {
+
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Maximal number of nodes sorted by the insertion sort.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private int count;
+    /**
+     * Indexes of the prepared nodes in a {@link NodeStore}.
+     */
+    private int[] nodes;
+    /**
+     * Absolute locations of the prepared nodes (see {@link Vector3DMath}).
+     */
+    private double[] locations;
+    /**
+     * Distances of the prepared nodes from the blind node.
+     */
+    private double[] distances;
+    /**
+     * Keys to sort the prepared nodes.
+     */
+    private double[] keys;
+    /**
+     * Workspace for the trilateration.
+     */
+    private final double[] workspace;
+    /**
+     * Permutation and copies of the arrays for the merge sort (allocated
+     * lazily for many nodes).
+     */
+    private int[] order, orderBuffer, nodesBuffer;
+    private double[] locationsBuffer, distancesBuffer, keysBuffer;
+
+    /**
+     * Default constructor of an empty group.
+     */
+    public PreparedNodes() {
+        this.nodes = new int[INITIAL_CAPACITY];
+        this.locations = new double[INITIAL_CAPACITY * Vector3DMath.SIZE];
+        this.distances = new double[INITIAL_CAPACITY];
+        this.keys = new double[INITIAL_CAPACITY];
+        this.workspace = new double[WirelessMetric.TRILATERATION3D_WORKSPACE];
+    }
+
+    /**
+     * Remove all the prepared nodes and ensure capacity for a given number of
+     * nodes.
+     *
+     * @param capacity the number of nodes to be prepared
+     */
+    public void clear(final int capacity) {
+        this.count = 0;
+        if (capacity > this.nodes.length) {
+            int newCapacity = Math.max(capacity, 2 * this.nodes.length);
+            this.nodes = new int[newCapacity];
+            this.locations = new double[newCapacity * Vector3DMath.SIZE];
+            this.distances = new double[newCapacity];
+            this.keys = new double[newCapacity];
+        }
+    }
+
+    /**
+     * Add a prepared node. Its location must be already set in {@link #getLocations()}
+     * at offset {@link #getCount()} * {@link Vector3DMath#SIZE}.
+     *
+     * @param node index of the node in a {@link NodeStore}
+     * @param distance distance of the node from the blind node
+     */
+    public void add(final int node, final double distance) {
+        this.nodes[this.count] = node;
+        this.distances[this.count] = distance;
+        this.count++;
+    }
+
+    /**
+     * Remove the prepared nodes after a given number of the first nodes (e.g.
+     * after a selection of the nodes moved to the first positions).
+     *
+     * @param count the number of the first nodes to keep
+     */
+    public void truncate(final int count) {
+        this.count = Math.min(this.count, Math.max(count, 0));
+    }
+
+    /**
+     * Get number of the prepared nodes.
+     *
+     * @return the number of the prepared nodes
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Get indexes of the prepared nodes in a {@link NodeStore}.
+     *
+     * @return the indexes (valid from 0 to {@link #getCount()} exclusive)
+     */
+    public int[] getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * Get absolute locations of the prepared nodes.
+     *
+     * @return the locations (see {@link Vector3DMath})
+     */
+    public double[] getLocations() {
+        return this.locations;
+    }
+
+    /**
+     * Get distances of the prepared nodes from the blind node.
+     *
+     * @return the distances (valid from 0 to {@link #getCount()} exclusive)
+     */
+    public double[] getDistances() {
+        return this.distances;
+    }
+
+    /**
+     * Get keys to sort the prepared nodes by {@link #sortByKeys(boolean)}.
+     *
+     * @return the keys (to be set from 0 to {@link #getCount()} exclusive)
+     */
+    public double[] getKeys() {
+        return this.keys;
+    }
+
+    /**
+     * Get workspace for the trilateration of length {@link WirelessMetric#TRILATERATION3D_WORKSPACE}.
+     *
+     * @return the workspace
+     */
+    public double[] getWorkspace() {
+        return this.workspace;
+    }
+
+    /**
+     * Sort the prepared nodes by their keys. The sorting is stable, so the
+     * nodes with the same keys keep their order (as in {@link java.util.Collections#sort(java.util.List, java.util.Comparator)}).
+     * It takes O(n log n) time and it does not allocate any objects after
+     * the arrays grow to the maximal number of nodes.
+     *
+     * @param reverseOrder true for reverse ordering (the highest keys first)
+     */
+    public void sortByKeys(final boolean reverseOrder) {
+        if (this.count > INSERTION_SORT_THRESHOLD) {
+            this.mergeSortByKeys(reverseOrder);
+            return;
+        }
+        // insertion sort, the number of neighbours is small
+        for (int i = 1; i < this.count; i++) {
+            double key = this.keys[i];
+            int j = i - 1;
+            while (( j >= 0 ) && ( reverseOrder ? ( this.keys[j] < key ) : ( this.keys[j] > key ) )) {
+                j--;
+            }
+            if (++j < i) {
+                int node = this.nodes[i];
+                double distance = this.distances[i];
+                double x = this.locations[i * Vector3DMath.SIZE];
+                double y = this.locations[i * Vector3DMath.SIZE + 1];
+                double z = this.locations[i * Vector3DMath.SIZE + 2];
+                System.arraycopy(this.keys, j, this.keys, j + 1, i - j);
+                System.arraycopy(this.nodes, j, this.nodes, j + 1, i - j);
+                System.arraycopy(this.distances, j, this.distances, j + 1, i - j);
+                System.arraycopy(this.locations, j * Vector3DMath.SIZE,
+                        this.locations, ( j + 1 ) * Vector3DMath.SIZE, ( i - j ) * Vector3DMath.SIZE);
+                this.keys[j] = key;
+                this.nodes[j] = node;
+                this.distances[j] = distance;
+                Vector3DMath.set(this.locations, j * Vector3DMath.SIZE, x, y, z);
+            }
+        }
+    }
+
+    private void mergeSortByKeys(final boolean reverseOrder) {
+        if (( this.order == null ) || ( this.order.length < this.nodes.length )) {
+            this.order = new int[this.nodes.length];
+            this.orderBuffer = new int[this.nodes.length];
+            this.nodesBuffer = new int[this.nodes.length];
+            this.locationsBuffer = new double[this.locations.length];
+            this.distancesBuffer = new double[this.distances.length];
+            this.keysBuffer = new double[this.keys.length];
+        }
+        Vector3DMath.sortOrder(this.keys, this.count, reverseOrder, this.order, this.orderBuffer);
+        // apply the permutation
+        System.arraycopy(this.nodes, 0, this.nodesBuffer, 0, this.count);
+        System.arraycopy(this.locations, 0, this.locationsBuffer, 0, this.count * Vector3DMath.SIZE);
+        System.arraycopy(this.distances, 0, this.distancesBuffer, 0, this.count);
+        System.arraycopy(this.keys, 0, this.keysBuffer, 0, this.count);
+        for (int i = 0; i < this.count; i++) {
+            int j = this.order[i];
+            this.nodes[i] = this.nodesBuffer[j];
+            Vector3DMath.copy(this.locationsBuffer, j * Vector3DMath.SIZE, this.locations, i * Vector3DMath.SIZE);
+            this.distances[i] = this.distancesBuffer[j];
+            this.keys[i] = this.keysBuffer[j];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedNodes{count=" + this.count
+                + ", nodes=" + Arrays.toString(Arrays.copyOf(this.nodes, this.count))
+                + ", distances=" + Arrays.toString(Arrays.copyOf(this.distances, this.count)) + "}";
+    }
+}
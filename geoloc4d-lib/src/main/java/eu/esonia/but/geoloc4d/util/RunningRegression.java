@@ -0,0 +1,230 @@
+package eu.esonia.but.geoloc4d.util;
+
+/**
+ * Running statistics of observations (x, y) for a simple linear regression
+ * y = intercept + slope * x. The observations are not stored, they are
+ * accumulated in running means and co-moments by the numerically stable
+ * Welford's method, so they can be added and removed one by one in a constant
+ * time. The observations can have weights (e.g. for an iteratively reweighted
+ * regression) and running statistics of disjoint sets of observations can be
+ * merged (e.g. after a parallel accumulation).
+ *
+ * @author rychly
+ */
+public final class RunningRegression {
+
+    private long count = 0;
+    /**
+     * Sum of weights of the observations.
+     */
+    private double weight = 0;
+    private double meanX = 0;
+    private double meanY = 0;
+    /**
+     * Sum of squares of differences of x from its mean.
+     */
+    private double m2X = 0;
+    /**
+     * Sum of squares of differences of y from its mean.
+     */
+    private double m2Y = 0;
+    /**
+     * Sum of products of differences of x and y from their means.
+     */
+    private double cXY = 0;
+
+    /**
+     * Add an observation.
+     *
+     * @param x the value of the independent variable
+     * @param y the value of the dependent variable
+     */
+    public void add(final double x, final double y) {
+        this.add(x, y, 1);
+    }
+
+    /**
+     * Add a weighted observation.
+     *
+     * @param x the value of the independent variable
+     * @param y the value of the dependent variable
+     * @param weight the positive weight of the observation
+     */
+    public void add(final double x, final double y, final double weight) {
+        this.count++;
+        this.weight += weight;
+        double dx = x - this.meanX;
+        double dy = y - this.meanY;
+        this.meanX += dx * weight / this.weight;
+        this.meanY += dy * weight / this.weight;
+        this.m2X += weight * dx * ( x - this.meanX );
+        this.m2Y += weight * dy * ( y - this.meanY );
+        this.cXY += weight * dx * ( y - this.meanY );
+    }
+
+    /**
+     * Remove a previously added observation.
+     *
+     * @param x the value of the independent variable
+     * @param y the value of the dependent variable
+     */
+    public void remove(final double x, final double y) {
+        this.remove(x, y, 1);
+    }
+
+    /**
+     * Remove a previously added weighted observation.
+     *
+     * @param x the value of the independent variable
+     * @param y the value of the dependent variable
+     * @param weight the weight of the observation as it has been added
+     */
+    public void remove(final double x, final double y, final double weight) {
+        if (this.count <= 1) {
+            this.clear();
+            return;
+        }
+        double remainingWeight = this.weight - weight;
+        double meanX = ( this.weight * this.meanX - weight * x ) / remainingWeight;
+        double meanY = ( this.weight * this.meanY - weight * y ) / remainingWeight;
+        this.m2X = Math.max(0, this.m2X - weight * ( x - meanX ) * ( x - this.meanX ));
+        this.m2Y = Math.max(0, this.m2Y - weight * ( y - meanY ) * ( y - this.meanY ));
+        this.cXY -= weight * ( x - meanX ) * ( y - this.meanY );
+        this.meanX = meanX;
+        this.meanY = meanY;
+        this.weight = remainingWeight;
+        this.count--;
+    }
+
+    /**
+     * Merge running statistics of another disjoint set of observations into
+     * this running statistics (by the Chan's parallel algorithm).
+     *
+     * @param other the running statistics to merge (it is not modified)
+     */
+    public void merge(final RunningRegression other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (this.count == 0) {
+            this.count = other.count;
+            this.weight = other.weight;
+            this.meanX = other.meanX;
+            this.meanY = other.meanY;
+            this.m2X = other.m2X;
+            this.m2Y = other.m2Y;
+            this.cXY = other.cXY;
+            return;
+        }
+        double weight = this.weight + other.weight;
+        double dx = other.meanX - this.meanX;
+        double dy = other.meanY - this.meanY;
+        double factor = this.weight * other.weight / weight;
+        this.m2X += other.m2X + dx * dx * factor;
+        this.m2Y += other.m2Y + dy * dy * factor;
+        this.cXY += other.cXY + dx * dy * factor;
+        this.meanX += dx * other.weight / weight;
+        this.meanY += dy * other.weight / weight;
+        this.weight = weight;
+        this.count += other.count;
+    }
+
+    /**
+     * Remove all observations.
+     */
+    public void clear() {
+        this.count = 0;
+        this.weight = 0;
+        this.meanX = 0;
+        this.meanY = 0;
+        this.m2X = 0;
+        this.m2Y = 0;
+        this.cXY = 0;
+    }
+
+    /**
+     * @return the number of observations
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return the sum of weights of the observations (the number of the
+     * observations if they are not weighted)
+     */
+    public double getWeight() {
+        return this.weight;
+    }
+
+    /**
+     * @return the mean of x (0 if there are no observations)
+     */
+    public double getMeanX() {
+        return this.meanX;
+    }
+
+    /**
+     * @return the mean of y (0 if there are no observations)
+     */
+    public double getMeanY() {
+        return this.meanY;
+    }
+
+    /**
+     * @return the sample variance of y (NaN if there are less than two
+     * observations)
+     */
+    public double getVarianceY() {
+        return ( this.count < 2 ) ? Double.NaN : this.m2Y / ( this.weight - 1 );
+    }
+
+    /**
+     * Check if the regression line can be computed, i.e. there are at the
+     * least two observations with different x.
+     *
+     * @return true iff the slope and the intercept are defined
+     */
+    public boolean hasRegression() {
+        return ( this.count >= 2 ) && ( this.m2X > 0 );
+    }
+
+    /**
+     * @return the slope of the regression line (NaN if it is not defined)
+     */
+    public double getSlope() {
+        return this.hasRegression() ? this.cXY / this.m2X : Double.NaN;
+    }
+
+    /**
+     * @return the intercept of the regression line (NaN if it is not defined)
+     */
+    public double getIntercept() {
+        return this.meanY - this.getSlope() * this.meanX;
+    }
+
+    /**
+     * @return the (weighted) sum of squares of residuals of the regression line
+     * (NaN if it is not defined)
+     */
+    public double getResidualSumOfSquares() {
+        return this.hasRegression() ? Math.max(0, this.m2Y - this.cXY * this.cXY / this.m2X) : Double.NaN;
+    }
+
+    /**
+     * @return the coefficient of determination R^2 of the regression line,
+     * i.e. the fraction of variance of y explained by the line (NaN if it is
+     * not defined)
+     */
+    public double getRSquared() {
+        if (!this.hasRegression()) {
+            return Double.NaN;
+        }
+        return ( this.m2Y == 0 ) ? 1 : this.cXY * this.cXY / ( this.m2X * this.m2Y );
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + this.count + ", slope=" + this.getSlope() + ", intercept=" + this.getIntercept();
+    }
+}
@@ -0,0 +1,29 @@
+package eu.esonia.but.geoloc4d.util;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Pool of threads for all processors shared by the parallel computations of
+ * the library (the localisers and the fitting of the path-loss model). The
+ * threads of the pool are daemons and they terminate while the pool is idle,
+ * so the pool does not need to be shut down.
+ *
+ * @author rychly
+ */
+public final class SharedPool {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private SharedPool() {
+        // static methods only
+    }
+
+    /**
+     * Get the shared pool of threads.
+     *
+     * @return the pool
+     */
+    public static ForkJoinPool get() {
+        return POOL;
+    }
+}
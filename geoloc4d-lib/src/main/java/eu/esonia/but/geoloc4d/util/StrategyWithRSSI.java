@@ -1,8 +1,6 @@
 package eu.esonia.but.geoloc4d.util;
 
 import eu.esonia.but.geoloc4d.type.*;
-import java.util.Arrays;
-import java.util.Map;
 
 /**
  * The algorithm for selection of neighbouring nodes and computation of their
@@ -16,12 +14,104 @@ public class StrategyWithRSSI extends TrilaterationStrategy {
      * Received signal strength at 1 meter distance. Have to be computed by {@link WirelessMetric#compSignalStrengthAtMeter(short, short, double, double)},
      * no predefined value.
      */
-    private Double signalStrengthAtMeter = null;
+    private volatile Double signalStrengthAtMeter = null;
     /**
      * Propagation constant. Have to be computed by {@link WirelessMetric#compPropagationConstant(short, short, double, double)},
      * no predefined value.
      */
-    private Double propagationConstant = null;
+    private volatile Double propagationConstant = null;
+    /**
+     * The constants with their table of distances for RSSI values, replaced by
+     * {@link #setConstants(double, double)} (null if the constants are not
+     * set).
+     */
+    private volatile Constants constants = null;
+    /**
+     * Running statistics of observations for online calibration, i.e. the
+     * log-distance regression of RSSI = -signalStrengthAtMeter - 10 *
+     * propagationConstant * log10(distance).
+     */
+    private final RunningRegression observations = new RunningRegression();
+    /**
+     * Fitting of the model over all neighbours with known distances for the
+     * calibration, or null for the calibration from two most closed neighbours
+     * of each node.
+     */
+    private volatile PathLossRegression regression = null;
+    /**
+     * Result of the last calibration by the fitting, or null.
+     */
+    private volatile PathLossRegression.Fit calibrationFit = null;
+    /**
+     * Cache of local models of anchors and their cells, or null for the global
+     * constants only.
+     */
+    private volatile CalibrationCache<PathLossRegression.Fit> calibrationCache = null;
+    /**
+     * Indicates the exact ordering of prepared nodes by their isolation (by
+     * sums of distances), otherwise they are ordered by sums of squares of
+     * the distances.
+     */
+    private volatile boolean exactIsolation = true;
+    /**
+     * Constants of the conversion of RSSI into distance with a table of
+     * distances for RSSI values created on the first lookup, so the constants
+     * can be changed often (e.g. by the online calibration) without rebuilding
+     * the table.
+     */
+    private static final class Constants {
+
+        private final double signalStrengthAtMeter;
+        private final double propagationConstant;
+        /**
+         * Table of distances for RSSI values, created on demand.
+         */
+        private volatile WirelessMetric.RssiDistanceTable distanceTable = null;
+        /**
+         * Indicates that the constants are not valid for the conversion.
+         */
+        private volatile boolean invalid = false;
+
+        private Constants(final double signalStrengthAtMeter, final double propagationConstant) {
+            this.signalStrengthAtMeter = signalStrengthAtMeter;
+            this.propagationConstant = propagationConstant;
+        }
+
+        /**
+         * Get a table of distances for RSSI values by the constants. The table
+         * is created on the first call.
+         *
+         * @return the table or null if the constants are not valid for the
+         * conversion
+         */
+        private WirelessMetric.RssiDistanceTable getDistanceTable() {
+            WirelessMetric.RssiDistanceTable table = this.distanceTable;
+            if (( table == null ) && !this.invalid) {
+                // the concurrent creation of the same tables is harmless
+                try {
+                    table = new WirelessMetric.RssiDistanceTable(this.signalStrengthAtMeter, this.propagationConstant);
+                    this.distanceTable = table;
+                }
+                catch (WirelessMetricException ex) {
+                    // the distances will be uncomputable
+                    this.invalid = true;
+                }
+            }
+            return table;
+        }
+    }
+    /**
+     * Fitting of a local model by the least squares from at the least three
+     * observations with RSSI values decreasing with distance.
+     */
+    private static final CalibrationCache.Fitting<PathLossRegression.Fit> LOCAL_FITTING = new CalibrationCache.Fitting<PathLossRegression.Fit>() {
+
+        @Override
+        public PathLossRegression.Fit fit(final RunningRegression observations) {
+            return ( ( observations.getCount() >= 3 ) && ( observations.getSlope() < 0 ) )
+                    ? new PathLossRegression.Fit(observations, observations.getCount(), 1) : null;
+        }
+    };
 
     /**
      * Get received signal strength at 1 meter distance for this strategy. Can
@@ -42,27 +132,390 @@ public class StrategyWithRSSI extends TrilaterationStrategy {
         return this.propagationConstant;
     }
 
+    /**
+     * Set the constants, the table of distances for RSSI values is created on
+     * its first lookup.
+     *
+     * @param signalStrengthAtMeter received signal strength at 1 meter
+     * distance
+     * @param propagationConstant propagation constant
+     */
+    private void setConstants(final double signalStrengthAtMeter, final double propagationConstant) {
+        this.signalStrengthAtMeter = signalStrengthAtMeter;
+        this.propagationConstant = propagationConstant;
+        this.constants = new Constants(signalStrengthAtMeter, propagationConstant);
+    }
+
+    /**
+     * Set a fitting of the model over all neighbours with known distances for
+     * the calibration by {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.MapOfNodes)}
+     * and {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.NodeStore)},
+     * instead of the average of constants computed from two most closed
+     * neighbours of each node.
+     *
+     * @param regression the fitting or null for the calibration from two most
+     * closed neighbours of each node (by default)
+     */
+    public void setRegression(final PathLossRegression regression) {
+        this.regression = regression;
+    }
+
+    /**
+     * Get the fitting of the model used for the calibration.
+     *
+     * @return the fitting or null for the calibration from two most closed
+     * neighbours of each node
+     */
+    public PathLossRegression getRegression() {
+        return this.regression;
+    }
+
+    /**
+     * Get the result of the last calibration by the fitting of the model with
+     * quality of the fit.
+     *
+     * @return the fitted model or null if the last calibration has not used
+     * the fitting
+     */
+    public PathLossRegression.Fit getCalibrationFit() {
+        return this.calibrationFit;
+    }
+
+    /**
+     * Set a cache of local models of anchors and their cells to fit by {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.MapOfNodes)}
+     * and {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.NodeStore)}.
+     * The preparation of nodes uses a local model for each neighbour, if it is
+     * cached, or the global constants.
+     *
+     * @param calibrationCache the cache or null for the global constants only
+     * (by default)
+     */
+    public void setCalibrationCache(final CalibrationCache<PathLossRegression.Fit> calibrationCache) {
+        this.calibrationCache = calibrationCache;
+    }
+
+    /**
+     * Get the cache of local models of anchors and their cells.
+     *
+     * @return the cache or null for the global constants only
+     */
+    public CalibrationCache<PathLossRegression.Fit> getCalibrationCache() {
+        return this.calibrationCache;
+    }
+
+    /**
+     * Check if the prepared nodes are ordered by their isolation exactly.
+     *
+     * @return true iff the isolations are sums of distances (in O(n^2) time),
+     * false iff they are sums of squares of the distances (in O(n) time)
+     */
+    public boolean isExactIsolation() {
+        return this.exactIsolation;
+    }
+
+    /**
+     * Set the ordering of prepared nodes by their isolation (see {@link eu.esonia.but.geoloc4d.type.Vector3DMath#isolations(double[], int, boolean, double[])}).
+     * The approximate ordering is faster for nodes with many neighbours.
+     *
+     * @param exactIsolation true for the isolations as sums of distances (by
+     * default), false for sums of squares of the distances
+     */
+    public void setExactIsolation(final boolean exactIsolation) {
+        this.exactIsolation = exactIsolation;
+    }
+
+    /**
+     * Fit local models of anchors and their cells into the cache (if it is
+     * set) from neighbours with set distance and RSSI values.
+     *
+     * @param mapOfNodes the map of reference nodes with located neighbours
+     */
+    private void fitLocalModels(final MapOfNodes mapOfNodes) {
+        final CalibrationCache<PathLossRegression.Fit> cache = this.calibrationCache;
+        if (cache == null) {
+            return;
+        }
+        CalibrationCache<PathLossRegression.Fit>.Observations localObservations = cache.newObservations();
+        NeighbourQuery query = new NeighbourQuery().withRssi();
+        for (Node node : mapOfNodes.values()) {
+            query.from(node.getScan()).withDistance(node.getInfo().getLocationAbsolute()).evaluate();
+            for (int i = 0; i < query.getCount(); i++) {
+                if (query.getDistances()[i] > 0) {
+                    localObservations.add(query.getID(i), query.getNeighbour(i).getLocationAbsolute(),
+                            Math.log10(query.getDistances()[i]), query.getNeighbour(i).getRssi());
+                }
+            }
+        }
+        cache.update(localObservations, LOCAL_FITTING);
+    }
+
+    /**
+     * Fit local models of anchors and their cells into the cache (if it is
+     * set) from neighbours with set distance and RSSI values.
+     *
+     * @param nodeStore the store of reference nodes
+     */
+    private void fitLocalModels(final NodeStore nodeStore) {
+        final CalibrationCache<PathLossRegression.Fit> cache = this.calibrationCache;
+        if (cache == null) {
+            return;
+        }
+        CalibrationCache<PathLossRegression.Fit>.Observations localObservations = cache.newObservations();
+        double[] location = new double[Vector3DMath.SIZE];
+        for (int position = 0; position < nodeStore.nodeCount(); position++) {
+            int node = nodeStore.getNodeIndex(position);
+            for (int link = nodeStore.getLinkStart(node); link < nodeStore.getLinkEnd(node); link++) {
+                if (!nodeStore.hasLink(link, NodeStore.LINK_RSSI)
+                        || !nodeStore.getLinkLocationAbsolute(node, link, location, 0)) {
+                    continue;
+                }
+                double distance = nodeStore.getLinkDistanceOrLocation(node, link);
+                if (distance > 0) {
+                    localObservations.add(nodeStore.getID(nodeStore.getLinkTarget(link)), location, 0,
+                            Math.log10(distance), nodeStore.getLinkRssi(link));
+                }
+            }
+        }
+        cache.update(localObservations, LOCAL_FITTING);
+    }
+
+    /**
+     * Calibrate metric by the fitting of the model over observations of RSSI
+     * values for actual distances.
+     *
+     * @param regression the fitting
+     * @param distances the actual distances
+     * @param rssi the RSSI values
+     * @param count the number of the observations
+     * @throws TrilaterationStrategyException in case of incomplete data for the
+     * calibration
+     */
+    private void calibrateMetric(final PathLossRegression regression, final double[] distances, final double[] rssi, final int count)
+            throws TrilaterationStrategyException {
+        PathLossRegression.Fit fit;
+        try {
+            fit = regression.fit(distances, rssi, count);
+        }
+        catch (WirelessMetricException ex) {
+            throw new TrilaterationStrategyException("Not enought nodes for calibration of metric in this strategy! "
+                    + "We need neighbours with set RSSI values for at the least two different distances. " + ex.getMessage());
+        }
+        this.setConstants(fit.getSignalStrengthAtMeter(), fit.getPropagationConstant());
+        this.calibrationFit = fit;
+        this.setAsCalibrated(true);
+    }
+
+    /**
+     * Add an observation of RSSI value for an actual distance into running
+     * statistics for online calibration of metric. See {@link #addObservation(eu.esonia.but.geoloc4d.type.NeighbourProperties, double)}.
+     *
+     * @param rssi the RSSI value
+     * @param distance the actual distance in meters
+     * @return true iff the observation has been used for the calibration
+     * (false for a non-positive distance)
+     */
+    public boolean addObservation(final short rssi, final double distance) {
+        if (( distance <= 0 ) || Double.isNaN(distance) || Double.isInfinite(distance)) {
+            return false;
+        }
+        synchronized (this.observations) {
+            this.observations.add(Math.log10(distance), rssi);
+            this.calibrateMetricFromObservations();
+        }
+        return true;
+    }
+
+    /**
+     * Remove an observation of RSSI value for an actual distance from running
+     * statistics for online calibration of metric. See {@link #removeObservation(eu.esonia.but.geoloc4d.type.NeighbourProperties, double)}.
+     *
+     * @param rssi the RSSI value
+     * @param distance the actual distance in meters
+     * @return true iff the observation has been removed from the calibration
+     */
+    public boolean removeObservation(final short rssi, final double distance) {
+        if (( distance <= 0 ) || Double.isNaN(distance) || Double.isInfinite(distance)) {
+            return false;
+        }
+        synchronized (this.observations) {
+            if (this.observations.getCount() == 0) {
+                return false;
+            }
+            this.observations.remove(Math.log10(distance), rssi);
+            this.calibrateMetricFromObservations();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addObservation(final NeighbourProperties neighbour, final double distance) {
+        return ( neighbour.getRssi() != null ) && this.addObservation(neighbour.getRssi(), distance);
+    }
+
+    @Override
+    public boolean removeObservation(final NeighbourProperties neighbour, final double distance) {
+        return ( neighbour.getRssi() != null ) && this.removeObservation(neighbour.getRssi(), distance);
+    }
+
+    @Override
+    public void clearObservations() {
+        synchronized (this.observations) {
+            this.observations.clear();
+        }
+    }
+
+    /**
+     * Get number of observations in running statistics for online calibration
+     * of metric.
+     *
+     * @return the number of observations
+     */
+    public long getObservationCount() {
+        synchronized (this.observations) {
+            return this.observations.getCount();
+        }
+    }
+
+    /**
+     * Set the constants from running statistics of the observations, if there
+     * are at the least two observations for different distances and the
+     * resulting propagation constant is non-zero. Have to be called while
+     * holding lock of the observations.
+     */
+    private void calibrateMetricFromObservations() {
+        if (!this.observations.hasRegression()) {
+            return;
+        }
+        // RSSI = intercept + slope * log10(distance)
+        double slope = this.observations.getSlope();
+        if (slope == 0) {
+            return;
+        }
+        this.setConstants(-this.observations.getIntercept(), -slope / 10);
+        this.calibrationFit = null;
+        this.setAsCalibrated(true);
+    }
+
     @Override
     public void calibrateMetric(final MapOfNodes mapOfNodes)
             throws TrilaterationStrategyException {
+        final PathLossRegression regressionValue = this.regression;
+        if (regressionValue != null) {
+            int size = 0;
+            for (Node node : mapOfNodes.values()) {
+                size += node.getScan().size();
+            }
+            double[] distances = new double[size];
+            double[] rssi = new double[size];
+            int count = 0;
+            // walk through mapOfNodes and collect all neighbours with set distance and RSSI values
+            NeighbourQuery query = new NeighbourQuery().withRssi();
+            for (Node node : mapOfNodes.values()) {
+                node.getScan().setLocationsFromNodes(mapOfNodes);
+                query.from(node.getScan()).withDistance(node.getInfo().getLocationAbsolute()).evaluate();
+                for (int i = 0; i < query.getCount(); i++) {
+                    distances[count] = query.getDistances()[i];
+                    rssi[count] = query.getNeighbour(i).getRssi();
+                    count++;
+                }
+            }
+            this.calibrateMetric(regressionValue, distances, rssi, count);
+            this.fitLocalModels(mapOfNodes);
+            return;
+        }
         int count = 0;
         double signalStrengthAtMeterSum = 0;
         double propagationConstantSum = 0;
+        // select neighbours with set distance and RSSI values, sort them by distance (the most distant are last) and take two most closed
+        NeighbourQuery query = new NeighbourQuery().withRssi().orderByDistance(false).limit(2);
         // walk through mapOfNodes
         for (Node node : mapOfNodes.values()) {
             // set location of neighbours that are yet known in the map of nodes
             node.getScan().setLocationsFromNodes(mapOfNodes);
-            // select neighbours with set distance and RSSI values
-            MapOfNeighbours mapOfNeighbours = node.getScan().getNodesWithDistance(node.getInfo().getLocationAbsolute(), true, false);
-            // if there exist at the least two such nodes, sort them by distance (the most distant are last) and for compute constants from two most closed
-            if (mapOfNeighbours.size() >= 2) {
-                NeighbourProperties arrayOfNeighbours[] =
-                        Arrays.copyOf(mapOfNeighbours.sortByDistance().values().toArray(), mapOfNeighbours.size(), NeighbourProperties[].class);
+            // if there exist at the least two such nodes, compute constants from the two most closed
+            if (query.from(node.getScan()).withDistance(node.getInfo().getLocationAbsolute()).evaluate() >= 2) {
+                double[] distances = query.getDistances();
+                try {
+                    signalStrengthAtMeterSum += WirelessMetric.compSignalStrengthAtMeter(
+                            query.getNeighbour(0).getRssi(), query.getNeighbour(1).getRssi(), distances[0], distances[1]);
+                    propagationConstantSum += WirelessMetric.compPropagationConstant(
+                            query.getNeighbour(0).getRssi(), query.getNeighbour(1).getRssi(), distances[0], distances[1]);
+                    count++;
+                }
+                catch (WirelessMetricException ex) {
+                    // skip the neightbouring nodes with uncomputable constants
+                }
+            }
+        }
+        if (count == 0) {
+            throw new TrilaterationStrategyException("Not enought nodes for calibration of metric in this strategy! "
+                    + "We need at the least one node with at the least two neighbours with set distances and RSSI values.");
+        } else {
+            // the result is avarange form computed values
+            this.setConstants(signalStrengthAtMeterSum / count, propagationConstantSum / count);
+            this.calibrationFit = null;
+            this.fitLocalModels(mapOfNodes);
+            // and the strategy is calibrated
+            this.setAsCalibrated(true);
+        }
+    }
+
+    @Override
+    public void calibrateMetric(final NodeStore nodeStore)
+            throws TrilaterationStrategyException {
+        final PathLossRegression regressionValue = this.regression;
+        if (regressionValue != null) {
+            double[] distances = new double[nodeStore.linkSize()];
+            double[] rssi = new double[nodeStore.linkSize()];
+            int count = 0;
+            // walk through nodes of the store and collect all neighbours with set distance and RSSI values
+            for (int position = 0; position < nodeStore.nodeCount(); position++) {
+                int node = nodeStore.getNodeIndex(position);
+                for (int link = nodeStore.getLinkStart(node); link < nodeStore.getLinkEnd(node); link++) {
+                    if (nodeStore.hasLink(link, NodeStore.LINK_RSSI)) {
+                        distances[count] = nodeStore.getLinkDistanceOrLocation(node, link);
+                        rssi[count] = nodeStore.getLinkRssi(link);
+                        count++;
+                    }
+                }
+            }
+            this.calibrateMetric(regressionValue, distances, rssi, count);
+            this.fitLocalModels(nodeStore);
+            return;
+        }
+        int count = 0;
+        double signalStrengthAtMeterSum = 0;
+        double propagationConstantSum = 0;
+        // walk through nodes of the store
+        for (int position = 0; position < nodeStore.nodeCount(); position++) {
+            int node = nodeStore.getNodeIndex(position);
+            // select two most closed neighbours with set distance and RSSI values
+            int first = -1;
+            int second = -1;
+            double firstDistance = Double.POSITIVE_INFINITY;
+            double secondDistance = Double.POSITIVE_INFINITY;
+            for (int link = nodeStore.getLinkStart(node); link < nodeStore.getLinkEnd(node); link++) {
+                if (!nodeStore.hasLink(link, NodeStore.LINK_RSSI)) {
+                    continue;
+                }
+                double distance = nodeStore.getLinkDistanceOrLocation(node, link);
+                if (distance < firstDistance) {
+                    second = first;
+                    secondDistance = firstDistance;
+                    first = link;
+                    firstDistance = distance;
+                } else if (distance < secondDistance) {
+                    second = link;
+                    secondDistance = distance;
+                }
+            }
+            // if there exist at the least two such nodes, compute constants from them
+            if (second >= 0) {
                 try {
                     signalStrengthAtMeterSum += WirelessMetric.compSignalStrengthAtMeter(
-                            arrayOfNeighbours[0].getRssi(), arrayOfNeighbours[1].getRssi(), arrayOfNeighbours[0].getDistance(), arrayOfNeighbours[1].getDistance());
+                            nodeStore.getLinkRssi(first), nodeStore.getLinkRssi(second), firstDistance, secondDistance);
                     propagationConstantSum += WirelessMetric.compPropagationConstant(
-                            arrayOfNeighbours[0].getRssi(), arrayOfNeighbours[1].getRssi(), arrayOfNeighbours[0].getDistance(), arrayOfNeighbours[1].getDistance());
+                            nodeStore.getLinkRssi(first), nodeStore.getLinkRssi(second), firstDistance, secondDistance);
                     count++;
                 }
                 catch (WirelessMetricException ex) {
@@ -75,40 +528,102 @@ public class StrategyWithRSSI extends TrilaterationStrategy {
                     + "We need at the least one node with at the least two neighbours with set distances and RSSI values.");
         } else {
             // the result is avarange form computed values
-            this.signalStrengthAtMeter = new Double(signalStrengthAtMeterSum / count);
-            this.propagationConstant = new Double(propagationConstantSum / count);
+            this.setConstants(signalStrengthAtMeterSum / count, propagationConstantSum / count);
+            this.calibrationFit = null;
+            this.fitLocalModels(nodeStore);
             // and the strategy is calibrated
             this.setAsCalibrated(true);
         }
     }
 
+    /**
+     * Get a table of distances for RSSI values of a link by its local model,
+     * if any, or the global table.
+     *
+     * @param localModel the local model or null
+     * @param globalConstants the global constants
+     * @return the table or null if the distances are uncomputable
+     */
+    private static WirelessMetric.RssiDistanceTable getDistanceTable(final PathLossRegression.Fit localModel,
+            final Constants globalConstants) {
+        if (localModel == null) {
+            return globalConstants.getDistanceTable();
+        }
+        try {
+            return localModel.getDistanceTable();
+        }
+        catch (WirelessMetricException ex) {
+            return null;
+        }
+    }
+
     @Override
     public MapOfNeighbours prepareNodesForTrilateration(final NodeData node, final MapOfNeighbours neighbours)
             throws TrilaterationStrategyException {
-        if (( this.signalStrengthAtMeter == null ) || ( this.propagationConstant == null )) {
+        final Constants globalConstants = this.constants;
+        if (globalConstants == null) {
             throw new TrilaterationStrategyException("Strategy has not calibrated metric!");
         }
-        MapOfNeighbours result = new MapOfNeighbours();
+        final CalibrationCache<PathLossRegression.Fit> cache = this.calibrationCache;
         // walk through mapOfNeighbours with set location and RSSI
-        for (Map.Entry<String, NeighbourProperties> pair : neighbours.getNodesWithLocation(node.getLocationAbsolute(), true, false).entrySet()) {
-            // for each create a copy with the node's distance computed from RSSI and put it into result
-            NeighbourProperties neighbourWithDistance = new NeighbourProperties(pair.getValue());
-            try {
-                neighbourWithDistance.setDistance((Double) WirelessMetric.compDistanceFromRssi(neighbourWithDistance.getRssi(), this.signalStrengthAtMeter, this.propagationConstant));
-                result.put(pair.getKey(), neighbourWithDistance);
+        // and sort them to have neighbouring nodes forming cluster at first positions (the most isolated nodes are last)
+        // idea is that RSSI of neighbours is similar location (i.e. similar direction from blind node) will be affected similarly by its environment
+        NeighbourQuery query = new NeighbourQuery(neighbours).withRssi().withLocation(node.getLocationAbsolute())
+                .withDistance(new NeighbourQuery.Metric() {
+
+            @Override
+            public double getDistance(final String id, final NeighbourProperties neighbour,
+                    final double[] locations, final int offset) {
+                // for each compute the node's distance from RSSI (by the local model, if any)
+                WirelessMetric.RssiDistanceTable table = getDistanceTable(
+                        ( cache == null ) ? null : cache.get(id, locations, offset), globalConstants);
+                // skip the neightbouring nodes with uncomputable distance
+                return ( table == null ) ? Double.NaN : table.getDistance(neighbour.getRssi());
             }
-            catch (WirelessMetricException ex) {
+        }).orderByIsolation(false, this.exactIsolation);
+        // we need at the leatest four prepared nodes
+        if (query.evaluate() < 4) {
+            throw new TrilaterationStrategyException("Not enought neighbouring nodes to prepare for this strategy! "
+                    + "We need at the least four neighbours with set distances and RSSI values.");
+        }
+        // select the nodes with the best geometry (if the selection is set) and create copies with the distances
+        this.selectAnchors(query.getResult());
+        return query.toMapOfNeighbours();
+    }
+
+    @Override
+    public void prepareNodesForTrilateration(final NodeStore nodeStore, final int node, final PreparedNodes preparedNodes)
+            throws TrilaterationStrategyException {
+        final Constants globalConstants = this.constants;
+        if (globalConstants == null) {
+            throw new TrilaterationStrategyException("Strategy has not calibrated metric!");
+        }
+        final CalibrationCache<PathLossRegression.Fit> cache = this.calibrationCache;
+        preparedNodes.clear(nodeStore.getLinkCount(node));
+        // walk through neighbours with set location and RSSI
+        for (int link = nodeStore.getLinkStart(node); link < nodeStore.getLinkEnd(node); link++) {
+            if (nodeStore.hasLink(link, NodeStore.LINK_RSSI)
+                    && nodeStore.getLinkLocationAbsolute(node, link,
+                    preparedNodes.getLocations(), preparedNodes.getCount() * Vector3DMath.SIZE)) {
+                // for each compute the node's distance from RSSI (by the local model, if any)
+                int target = nodeStore.getLinkTarget(link);
+                WirelessMetric.RssiDistanceTable table = getDistanceTable(( cache == null ) ? null
+                        : cache.get(nodeStore.getID(target), preparedNodes.getLocations(), preparedNodes.getCount() * Vector3DMath.SIZE), globalConstants);
                 // skip the neightbouring nodes with uncomputable distance
+                if (table != null) {
+                    preparedNodes.add(target, table.getDistance(nodeStore.getLinkRssi(link)));
+                }
             }
         }
         // we need at the leatest four prepared nodes
-        if (result.size() < 4) {
+        if (preparedNodes.getCount() < 4) {
             throw new TrilaterationStrategyException("Not enought neighbouring nodes to prepare for this strategy! "
                     + "We need at the least four neighbours with set distances and RSSI values.");
-        } else {
-            // sort to have neighbouring nodes forming cluster at first positions (the most isolated nodes are last)
-            // idea is that RSSI of neighbours is similar location (i.e. similar direction from blind node) will be affected similarly by its environment
-            return result.sortByIsolation();
         }
+        // sort to have neighbouring nodes forming cluster at first positions (the most isolated nodes are last)
+        Vector3DMath.isolations(preparedNodes.getLocations(), preparedNodes.getCount(), this.exactIsolation,
+                preparedNodes.getKeys());
+        preparedNodes.sortByKeys(false);
+        this.selectAnchors(preparedNodes);
     }
 }
@@ -1,7 +1,6 @@
 package eu.esonia.but.geoloc4d.util;
 
 import eu.esonia.but.geoloc4d.type.*;
-import java.util.Map;
 
 /**
  * The algorithm for selection of neighbouring nodes and computation of their
@@ -16,7 +15,28 @@ public class StrategyWithRTT extends TrilaterationStrategy {
      * computed by {@link WirelessMetric#compCorrectionFactorFromRttForDistance(double, double)},
      * predefined estimated value for routed networks.
      */
-    private Double correctionFactor = 0.4;
+    private volatile Double correctionFactor = 0.4;
+    /**
+     * Running statistics of observations for online calibration, i.e. the
+     * mean of correction factors of the observations (the y values).
+     */
+    private final RunningRegression observations = new RunningRegression();
+    /**
+     * Cache of local correction factors of anchors and their cells, or null
+     * for the global correction factor only.
+     */
+    private volatile CalibrationCache<Double> calibrationCache = null;
+    /**
+     * Fitting of a local correction factor, i.e. the mean of corrections of
+     * the observations (the y values).
+     */
+    private static final CalibrationCache.Fitting<Double> LOCAL_FITTING = new CalibrationCache.Fitting<Double>() {
+
+        @Override
+        public Double fit(final RunningRegression observations) {
+            return ( observations.getCount() > 0 ) ? observations.getMeanY() : null;
+        }
+    };
 
     /**
      * Get correction factor for conversion of RTT into actual distance. For
@@ -28,21 +48,188 @@ public class StrategyWithRTT extends TrilaterationStrategy {
         return this.correctionFactor;
     }
 
+    /**
+     * Set a cache of local correction factors of anchors and their cells to
+     * fit by {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.MapOfNodes)}
+     * and {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.NodeStore)}.
+     * The preparation of nodes uses a local correction factor for each
+     * neighbour, if it is cached, or the global correction factor.
+     *
+     * @param calibrationCache the cache or null for the global correction
+     * factor only (by default)
+     */
+    public void setCalibrationCache(final CalibrationCache<Double> calibrationCache) {
+        this.calibrationCache = calibrationCache;
+    }
+
+    /**
+     * Get the cache of local correction factors of anchors and their cells.
+     *
+     * @return the cache or null for the global correction factor only
+     */
+    public CalibrationCache<Double> getCalibrationCache() {
+        return this.calibrationCache;
+    }
+
+    /**
+     * Fit local correction factors of anchors and their cells into the cache
+     * (if it is set) from neighbours with set distance and RTT values.
+     *
+     * @param mapOfNodes the map of reference nodes with located neighbours
+     */
+    private void fitLocalModels(final MapOfNodes mapOfNodes) {
+        final CalibrationCache<Double> cache = this.calibrationCache;
+        if (cache == null) {
+            return;
+        }
+        CalibrationCache<Double>.Observations localObservations = cache.newObservations();
+        NeighbourQuery query = new NeighbourQuery().withRtt();
+        for (Node node : mapOfNodes.values()) {
+            query.from(node.getScan()).withDistance(node.getInfo().getLocationAbsolute()).evaluate();
+            for (int i = 0; i < query.getCount(); i++) {
+                try {
+                    localObservations.add(query.getID(i), query.getNeighbour(i).getLocationAbsolute(), query.getNeighbour(i).getRtt(),
+                            WirelessMetric.compCorrectionFactorFromRttForDistance(query.getNeighbour(i).getRtt(), query.getDistances()[i]));
+                }
+                catch (WirelessMetricException ex) {
+                    // skip the neightbouring nodes with uncomputable correction
+                }
+            }
+        }
+        cache.update(localObservations, LOCAL_FITTING);
+    }
+
+    /**
+     * Fit local correction factors of anchors and their cells into the cache
+     * (if it is set) from neighbours with set distance and RTT values.
+     *
+     * @param nodeStore the store of reference nodes
+     */
+    private void fitLocalModels(final NodeStore nodeStore) {
+        final CalibrationCache<Double> cache = this.calibrationCache;
+        if (cache == null) {
+            return;
+        }
+        CalibrationCache<Double>.Observations localObservations = cache.newObservations();
+        double[] location = new double[Vector3DMath.SIZE];
+        for (int position = 0; position < nodeStore.nodeCount(); position++) {
+            int node = nodeStore.getNodeIndex(position);
+            for (int link = nodeStore.getLinkStart(node); link < nodeStore.getLinkEnd(node); link++) {
+                if (!nodeStore.hasLink(link, NodeStore.LINK_RTT)
+                        || !nodeStore.getLinkLocationAbsolute(node, link, location, 0)) {
+                    continue;
+                }
+                try {
+                    localObservations.add(nodeStore.getID(nodeStore.getLinkTarget(link)), location, 0, nodeStore.getLinkRtt(link),
+                            WirelessMetric.compCorrectionFactorFromRttForDistance(nodeStore.getLinkRtt(link), nodeStore.getLinkDistanceOrLocation(node, link)));
+                }
+                catch (WirelessMetricException ex) {
+                    // skip the neightbouring nodes with uncomputable correction
+                }
+            }
+        }
+        cache.update(localObservations, LOCAL_FITTING);
+    }
+
+    /**
+     * Add an observation of RTT value for an actual distance into running
+     * statistics for online calibration of metric. See {@link #addObservation(eu.esonia.but.geoloc4d.type.NeighbourProperties, double)}.
+     *
+     * @param rtt the RTT value
+     * @param distance the actual distance in meters
+     * @return true iff the observation has been used for the calibration
+     * (false for uncomputable correction)
+     */
+    public boolean addObservation(final double rtt, final double distance) {
+        double correction;
+        try {
+            correction = WirelessMetric.compCorrectionFactorFromRttForDistance(rtt, distance);
+        }
+        catch (WirelessMetricException ex) {
+            return false;
+        }
+        synchronized (this.observations) {
+            this.observations.add(rtt, correction);
+            this.correctionFactor = this.observations.getMeanY();
+            this.setAsCalibrated(true);
+        }
+        return true;
+    }
+
+    /**
+     * Remove an observation of RTT value for an actual distance from running
+     * statistics for online calibration of metric. See {@link #removeObservation(eu.esonia.but.geoloc4d.type.NeighbourProperties, double)}.
+     *
+     * @param rtt the RTT value
+     * @param distance the actual distance in meters
+     * @return true iff the observation has been removed from the calibration
+     */
+    public boolean removeObservation(final double rtt, final double distance) {
+        double correction;
+        try {
+            correction = WirelessMetric.compCorrectionFactorFromRttForDistance(rtt, distance);
+        }
+        catch (WirelessMetricException ex) {
+            return false;
+        }
+        synchronized (this.observations) {
+            if (this.observations.getCount() == 0) {
+                return false;
+            }
+            this.observations.remove(rtt, correction);
+            if (this.observations.getCount() > 0) {
+                this.correctionFactor = this.observations.getMeanY();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addObservation(final NeighbourProperties neighbour, final double distance) {
+        return ( neighbour.getRtt() != null ) && this.addObservation(neighbour.getRtt(), distance);
+    }
+
+    @Override
+    public boolean removeObservation(final NeighbourProperties neighbour, final double distance) {
+        return ( neighbour.getRtt() != null ) && this.removeObservation(neighbour.getRtt(), distance);
+    }
+
+    @Override
+    public void clearObservations() {
+        synchronized (this.observations) {
+            this.observations.clear();
+        }
+    }
+
+    /**
+     * Get number of observations in running statistics for online calibration
+     * of metric.
+     *
+     * @return the number of observations
+     */
+    public long getObservationCount() {
+        synchronized (this.observations) {
+            return this.observations.getCount();
+        }
+    }
+
     @Override
     public void calibrateMetric(final MapOfNodes mapOfNodes)
             throws TrilaterationStrategyException {
         int count = 0;
         double correctionFactorSum = 0;
+        NeighbourQuery query = new NeighbourQuery().withRtt();
         // walk through mapOfNodes
         for (Node node : mapOfNodes.values()) {
             // set location of neighbours that are yet known in the map of nodes
             node.getScan().setLocationsFromNodes(mapOfNodes);
             // walk through neighbours with set distance and RTT values
-            for (NeighbourProperties neighbourProperties : node.getScan().getNodesWithDistance(node.getInfo().getLocationAbsolute(), false, true).values()) {
+            query.from(node.getScan()).withDistance(node.getInfo().getLocationAbsolute()).evaluate();
+            for (int i = 0; i < query.getCount(); i++) {
                 try {
                     // for such neighbour compute the correction
                     correctionFactorSum += WirelessMetric.compCorrectionFactorFromRttForDistance(
-                            neighbourProperties.getRtt(), neighbourProperties.getDistance());
+                            query.getNeighbour(i).getRtt(), query.getDistances()[i]);
                     count++;
                 }
                 catch (WirelessMetricException ex) {
@@ -56,6 +243,47 @@ public class StrategyWithRTT extends TrilaterationStrategy {
         } else {
             // the result is avarange form computed value
             this.correctionFactor = new Double(correctionFactorSum / count);
+            this.fitLocalModels(mapOfNodes);
+            // and the strategy is calibrated
+            this.setAsCalibrated(true);
+        }
+    }
+
+    @Override
+    public void calibrateMetric(final NodeStore nodeStore)
+            throws TrilaterationStrategyException {
+        int count = 0;
+        double correctionFactorSum = 0;
+        // walk through nodes of the store
+        for (int position = 0; position < nodeStore.nodeCount(); position++) {
+            int node = nodeStore.getNodeIndex(position);
+            // walk through neighbours with set distance and RTT values
+            for (int link = nodeStore.getLinkStart(node); link < nodeStore.getLinkEnd(node); link++) {
+                if (!nodeStore.hasLink(link, NodeStore.LINK_RTT)) {
+                    continue;
+                }
+                double distance = nodeStore.getLinkDistanceOrLocation(node, link);
+                if (Double.isNaN(distance)) {
+                    continue;
+                }
+                try {
+                    // for such neighbour compute the correction
+                    correctionFactorSum += WirelessMetric.compCorrectionFactorFromRttForDistance(
+                            nodeStore.getLinkRtt(link), distance);
+                    count++;
+                }
+                catch (WirelessMetricException ex) {
+                    // skip the neightbouring nodes with uncomputable correction
+                }
+            }
+        }
+        if (count == 0) {
+            throw new TrilaterationStrategyException("Not enought nodes for calibration of metric in this strategy! "
+                    + "We need at the least one node with at the least one neighbour with set distance and RTT value.");
+        } else {
+            // the result is avarange form computed value
+            this.correctionFactor = correctionFactorSum / count;
+            this.fitLocalModels(nodeStore);
             // and the strategy is calibrated
             this.setAsCalibrated(true);
         }
@@ -67,22 +295,63 @@ public class StrategyWithRTT extends TrilaterationStrategy {
         if (this.correctionFactor == null) {
             throw new TrilaterationStrategyException("Strategy has not calibrated metric!");
         }
-        MapOfNeighbours result = new MapOfNeighbours();
+        final double correctionFactorValue = this.correctionFactor;
+        final CalibrationCache<Double> cache = this.calibrationCache;
         // walk through mapOfNeighbours with set location and RTT
-        for (Map.Entry<String, NeighbourProperties> pair : neighbours.getNodesWithLocation(node.getLocationAbsolute(), false, true).entrySet()) {
-            // for each create a copy with the node's distance computed from RTT and put it into result
-            NeighbourProperties neighbourWithDistance = new NeighbourProperties(pair.getValue());
-            neighbourWithDistance.setDistance((Double) WirelessMetric.compDistanceFromRtt(neighbourWithDistance.getRtt(), this.correctionFactor));
-            result.put(pair.getKey(), neighbourWithDistance);
+        // and sort them to have the most distant neighbouring nodes first positions
+        // idea is that with greater distance there is greater precision of RTT-to-distance transformation (RTT for near distances is too small)
+        NeighbourQuery query = new NeighbourQuery(neighbours).withRtt().withLocation(node.getLocationAbsolute())
+                .withDistance(new NeighbourQuery.Metric() {
+
+            @Override
+            public double getDistance(final String id, final NeighbourProperties neighbour,
+                    final double[] locations, final int offset) {
+                // for each compute the node's distance from RTT (by the local correction, if any)
+                Double localCorrectionFactor = ( cache == null ) ? null : cache.get(id, locations, offset);
+                return WirelessMetric.compDistanceFromRtt(neighbour.getRtt(),
+                        ( localCorrectionFactor == null ) ? correctionFactorValue : localCorrectionFactor);
+            }
+        }).orderByDistance(true);
+        // we need at the leatest four prepared nodes
+        if (query.evaluate() < 4) {
+            throw new TrilaterationStrategyException("Not enought neighbouring nodes to prepare for this strategy! "
+                    + "We need at the least four neighbours with set distances and RTT values.");
+        }
+        // select the nodes with the best geometry (if the selection is set) and create copies with the distances
+        this.selectAnchors(query.getResult());
+        return query.toMapOfNeighbours();
+    }
+
+    @Override
+    public void prepareNodesForTrilateration(final NodeStore nodeStore, final int node, final PreparedNodes preparedNodes)
+            throws TrilaterationStrategyException {
+        if (this.correctionFactor == null) {
+            throw new TrilaterationStrategyException("Strategy has not calibrated metric!");
+        }
+        final double correctionFactorValue = this.correctionFactor;
+        final CalibrationCache<Double> cache = this.calibrationCache;
+        preparedNodes.clear(nodeStore.getLinkCount(node));
+        // walk through neighbours with set location and RTT
+        for (int link = nodeStore.getLinkStart(node); link < nodeStore.getLinkEnd(node); link++) {
+            if (nodeStore.hasLink(link, NodeStore.LINK_RTT)
+                    && nodeStore.getLinkLocationAbsolute(node, link,
+                    preparedNodes.getLocations(), preparedNodes.getCount() * Vector3DMath.SIZE)) {
+                // for each compute the node's distance from RTT (by the local correction, if any)
+                int target = nodeStore.getLinkTarget(link);
+                Double localCorrectionFactor = ( cache == null ) ? null
+                        : cache.get(nodeStore.getID(target), preparedNodes.getLocations(), preparedNodes.getCount() * Vector3DMath.SIZE);
+                preparedNodes.add(target, WirelessMetric.compDistanceFromRtt(nodeStore.getLinkRtt(link),
+                        ( localCorrectionFactor == null ) ? correctionFactorValue : localCorrectionFactor));
+            }
         }
         // we need at the leatest four prepared nodes
-        if (result.size() < 4) {
+        if (preparedNodes.getCount() < 4) {
             throw new TrilaterationStrategyException("Not enought neighbouring nodes to prepare for this strategy! "
                     + "We need at the least four neighbours with set distances and RTT values.");
-        } else {
-            // sort to have the most distant neighbouring nodes first positions
-            // idea is that with greater distance there is greater precision of RTT-to-distance transformation (RTT for near distances is too small)
-            return result.sortByDistance(true);
         }
+        // sort to have the most distant neighbouring nodes first positions
+        System.arraycopy(preparedNodes.getDistances(), 0, preparedNodes.getKeys(), 0, preparedNodes.getCount());
+        preparedNodes.sortByKeys(true);
+        this.selectAnchors(preparedNodes);
     }
 }
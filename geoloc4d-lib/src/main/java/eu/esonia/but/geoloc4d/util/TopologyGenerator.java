@@ -0,0 +1,474 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.*;
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Generator of synthetic networks of nodes. The nodes are placed uniformly at
+ * random in a box and each node has in its scan the nodes within its radio
+ * range (optionally only a given number of the nearest ones) with RSSI and
+ * RTT values computed from their exact distances and affected by a noise.
+ * A given ratio of the nodes are anchors with known locations. The generator
+ * is reproducible, i.e. the same seed and settings produce the same network,
+ * and it records exact locations of all nodes (the ground truth).
+ *
+ * @author rychly
+ */
+public class TopologyGenerator {
+
+    /**
+     * Model of a noise added to the generated RSSI and RTT values.
+     */
+    public enum Noise {
+
+        /**
+         * No noise, the values are exact.
+         */
+        NONE,
+        /**
+         * Gaussian noise with zero mean and a given standard deviation.
+         */
+        GAUSSIAN,
+        /**
+         * Uniform noise in the interval of a given deviation around zero.
+         */
+        UNIFORM
+    }
+    private final long seed;
+    private int nodeCount = 100;
+    private double anchorRatio = 0.25;
+    private Vector3D boundsMin = new Vector3D(0, 0, 0);
+    private Vector3D boundsMax = new Vector3D(100, 100, 100);
+    private double radioRange = 30;
+    private int maxNeighbours = 0;
+    private double signalStrengthAtMeter = 40;
+    private double propagationConstant = 2.5;
+    private double correctionFactor = 100;
+    private Noise rssiNoise = Noise.NONE;
+    private double rssiDeviation = 0;
+    private Noise rttNoise = Noise.NONE;
+    private double rttDeviation = 0;
+    /**
+     * Exact locations of all nodes of the last generated network.
+     */
+    private Map<String, Vector3D> groundTruth = new LinkedHashMap<>();
+
+    /**
+     * Create a generator.
+     *
+     * @param seed seed of the random generator
+     */
+    public TopologyGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Get ID of a generated node.
+     *
+     * @param index index of the node
+     * @return ID of the node
+     */
+    public static String getID(final int index) {
+        return "node" + index;
+    }
+
+    /**
+     * @return the seed of the random generator
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @return the number of the generated nodes
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * @param nodeCount the number of the generated nodes to set
+     */
+    public void setNodeCount(final int nodeCount) {
+        if (nodeCount < 0) {
+            throw new IllegalArgumentException("The number of nodes must be a non-negative value!");
+        }
+        this.nodeCount = nodeCount;
+    }
+
+    /**
+     * @return the ratio of anchors (the nodes with known locations)
+     */
+    public double getAnchorRatio() {
+        return this.anchorRatio;
+    }
+
+    /**
+     * @param anchorRatio the ratio of anchors (the nodes with known
+     * locations) to set, from 0 to 1
+     */
+    public void setAnchorRatio(final double anchorRatio) {
+        if (!( ( anchorRatio >= 0 ) && ( anchorRatio <= 1 ) )) {
+            throw new IllegalArgumentException("The ratio of anchors must be a value from 0 to 1!");
+        }
+        this.anchorRatio = anchorRatio;
+    }
+
+    /**
+     * @return the minimal corner of the box where the nodes are placed
+     */
+    public Vector3D getBoundsMin() {
+        return this.boundsMin;
+    }
+
+    /**
+     * @return the maximal corner of the box where the nodes are placed
+     */
+    public Vector3D getBoundsMax() {
+        return this.boundsMax;
+    }
+
+    /**
+     * Set the box where the nodes are placed.
+     *
+     * @param boundsMin the minimal corner of the box
+     * @param boundsMax the maximal corner of the box
+     */
+    public void setBounds(final Vector3D boundsMin, final Vector3D boundsMax) {
+        if (!( ( boundsMin.getX() <= boundsMax.getX() ) && ( boundsMin.getY() <= boundsMax.getY() )
+                && ( boundsMin.getZ() <= boundsMax.getZ() ) )) {
+            throw new IllegalArgumentException("The minimal corner of the box must not exceed the maximal corner!");
+        }
+        this.boundsMin = new Vector3D(boundsMin);
+        this.boundsMax = new Vector3D(boundsMax);
+    }
+
+    /**
+     * @return the radio range in meters, i.e. maximal distance of neighbours
+     */
+    public double getRadioRange() {
+        return this.radioRange;
+    }
+
+    /**
+     * @param radioRange the radio range in meters to set
+     */
+    public void setRadioRange(final double radioRange) {
+        if (!( radioRange > 0 )) {
+            throw new IllegalArgumentException("The radio range must be a positive value!");
+        }
+        this.radioRange = radioRange;
+    }
+
+    /**
+     * @return the maximal number of neighbours in a scan (0 for unlimited)
+     */
+    public int getMaxNeighbours() {
+        return this.maxNeighbours;
+    }
+
+    /**
+     * @param maxNeighbours the maximal number of neighbours in a scan to set
+     * (only the nearest nodes within the radio range are kept, 0 for
+     * unlimited)
+     */
+    public void setMaxNeighbours(final int maxNeighbours) {
+        if (maxNeighbours < 0) {
+            throw new IllegalArgumentException("The maximal number of neighbours must be a non-negative value!");
+        }
+        this.maxNeighbours = maxNeighbours;
+    }
+
+    /**
+     * @return the received signal strength at 1 meter distance of the
+     * generated RSSI
+     */
+    public double getSignalStrengthAtMeter() {
+        return this.signalStrengthAtMeter;
+    }
+
+    /**
+     * @return the propagation constant of the generated RSSI
+     */
+    public double getPropagationConstant() {
+        return this.propagationConstant;
+    }
+
+    /**
+     * Set the radio model of the generated RSSI (see
+     * {@link WirelessMetric#compRssiFromDistance(double, double, double)}).
+     *
+     * @param signalStrengthAtMeter received signal strength at 1 meter
+     * distance
+     * @param propagationConstant propagation constant
+     */
+    public void setRssiModel(final double signalStrengthAtMeter, final double propagationConstant) {
+        this.signalStrengthAtMeter = signalStrengthAtMeter;
+        this.propagationConstant = propagationConstant;
+    }
+
+    /**
+     * @return the correction factor of the generated RTT
+     */
+    public double getCorrectionFactor() {
+        return this.correctionFactor;
+    }
+
+    /**
+     * @param correctionFactor the correction factor of the generated RTT to
+     * set (see {@link WirelessMetric#compDistanceFromRtt(double, double)})
+     */
+    public void setCorrectionFactor(final double correctionFactor) {
+        if (!( correctionFactor > 0 )) {
+            throw new IllegalArgumentException("The correction factor must be a positive value!");
+        }
+        this.correctionFactor = correctionFactor;
+    }
+
+    /**
+     * Set noise of the generated RSSI.
+     *
+     * @param noise model of the noise
+     * @param deviation deviation of the noise in dBm
+     */
+    public void setRssiNoise(final Noise noise, final double deviation) {
+        this.rssiNoise = noise;
+        this.rssiDeviation = deviation;
+    }
+
+    /**
+     * Set noise of the generated RTT.
+     *
+     * @param noise model of the noise
+     * @param deviation deviation of the noise in seconds
+     */
+    public void setRttNoise(final Noise noise, final double deviation) {
+        this.rttNoise = noise;
+        this.rttDeviation = deviation;
+    }
+
+    /**
+     * Get exact locations of all nodes of the last generated network.
+     *
+     * @return the locations of the nodes by their IDs
+     */
+    public Map<String, Vector3D> getGroundTruth() {
+        return this.groundTruth;
+    }
+
+    private static double noise(final Random random, final Noise noise, final double deviation) {
+        switch (noise) {
+            case GAUSSIAN:
+                return random.nextGaussian() * deviation;
+            case UNIFORM:
+                return ( 2 * random.nextDouble() - 1 ) * deviation;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Receiver of the generated nodes.
+     */
+    private interface Output {
+
+        void put(final Node node) throws IOException;
+    }
+
+    /**
+     * Generate a network of nodes.
+     *
+     * @return the map of the nodes
+     */
+    public MapOfNodes generate() {
+        final MapOfNodes mapOfNodes = new MapOfNodes();
+        try {
+            this.generate(new Output() {
+
+                @Override
+                public void put(final Node node) {
+                    mapOfNodes.put(node.getInfo().getID(), node);
+                }
+            });
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("Impossible, nothing is written!", ex);
+        }
+        return mapOfNodes;
+    }
+
+    /**
+     * Generate a network of nodes and write its nodes one by one, so only
+     * locations of the nodes are kept in memory while generating.
+     *
+     * @param nodeWriter the writer of the nodes
+     * @throws IOException a write error
+     */
+    public void generate(final NodeWriter nodeWriter) throws IOException {
+        this.generate(new Output() {
+
+            @Override
+            public void put(final Node node) throws IOException {
+                nodeWriter.write(node);
+            }
+        });
+    }
+
+    private void generate(final Output output) throws IOException {
+        Random random = new Random(this.seed);
+        Vector3D size = this.boundsMax.sub(this.boundsMin);
+        double[] locations = new double[this.nodeCount * Vector3DMath.SIZE];
+        // cells of the index contain a few nodes, but they are not larger than the radio range
+        double extent = Math.max(size.getX(), Math.max(size.getY(), size.getZ()));
+        double cellSize = Math.min(this.radioRange, extent / Math.cbrt(Math.max(this.nodeCount, 1)));
+        SpatialIndex spatialIndex = new SpatialIndex(( cellSize > 0 ) && !Double.isInfinite(cellSize) ? cellSize : 1);
+        this.groundTruth = new LinkedHashMap<>(2 * this.nodeCount);
+        for (int i = 0; i < this.nodeCount; i++) {
+            Vector3D location = new Vector3D(
+                    this.boundsMin.getX() + random.nextDouble() * size.getX(),
+                    this.boundsMin.getY() + random.nextDouble() * size.getY(),
+                    this.boundsMin.getZ() + random.nextDouble() * size.getZ());
+            location.copyTo(locations, i * Vector3DMath.SIZE);
+            spatialIndex.put(getID(i), location);
+            this.groundTruth.put(getID(i), location);
+        }
+        try {
+            for (int i = 0; i < this.nodeCount; i++) {
+                Vector3D location = Vector3DMath.toVector3D(locations, i * Vector3DMath.SIZE);
+                JSONObject info = new JSONObject();
+                info.put("id", getID(i));
+                if (random.nextDouble() < this.anchorRatio) {
+                    info.put("locationAbsolute", location.toJSONArray());
+                }
+                // the nearest node is the node itself
+                List<String> neighbours = ( this.maxNeighbours > 0 )
+                        ? spatialIndex.getNearest(location, this.maxNeighbours + 1)
+                        : spatialIndex.getWithinRadius(location, this.radioRange);
+                JSONArray scan = new JSONArray();
+                for (String id : neighbours) {
+                    double distance = location.distance(spatialIndex.getLocation(id));
+                    if (( distance <= 0 ) || ( distance > this.radioRange )) {
+                        continue;
+                    }
+                    short rssi = WirelessMetric.compRssiFromDistance(distance, this.signalStrengthAtMeter, this.propagationConstant);
+                    double rtt = distance / this.correctionFactor;
+                    JSONObject neighbour = new JSONObject();
+                    neighbour.put("id", id);
+                    neighbour.put("rssi", Math.round(rssi + noise(random, this.rssiNoise, this.rssiDeviation)));
+                    neighbour.put("rtt", Math.max(0, rtt + noise(random, this.rttNoise, this.rttDeviation)));
+                    scan.put(neighbour);
+                }
+                JSONObject representation = new JSONObject();
+                representation.put("info", info);
+                representation.put("scan", scan);
+                output.put(new Node(representation));
+            }
+        }
+        catch (JSONException | WirelessMetricException ex) {
+            throw new RuntimeException("Impossible, the generated values are valid numbers and distances!", ex);
+        }
+    }
+
+    /**
+     * Generate a network of nodes and write it into a file with its JSON
+     * representation (streamed node by node).
+     *
+     * @param filename the file to write into
+     * @throws IOException a write error to the file
+     */
+    public void generate(final String filename) throws IOException {
+        try (NodeWriter nodeWriter = new NodeWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filename), "UTF-8")))) {
+            this.generate(nodeWriter);
+        }
+    }
+
+    /**
+     * Save exact locations of all nodes of the last generated network into a
+     * file with JSON representation of a map of nodes (the nodes have no
+     * neighbours in their scans).
+     *
+     * @param filename the file to write into
+     * @throws IOException a write error to the file
+     */
+    public void saveGroundTruth(final String filename) throws IOException {
+        try (NodeWriter nodeWriter = new NodeWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(filename), "UTF-8")))) {
+            for (Map.Entry<String, Vector3D> pair : this.groundTruth.entrySet()) {
+                JSONObject info = new JSONObject();
+                info.put("id", pair.getKey());
+                info.put("locationAbsolute", pair.getValue().toJSONArray());
+                JSONObject representation = new JSONObject();
+                representation.put("info", info);
+                representation.put("scan", new JSONArray());
+                nodeWriter.write(new Node(representation));
+            }
+        }
+        catch (JSONException ex) {
+            throw new RuntimeException("Impossible, the value cannot be an invalid number!", ex);
+        }
+    }
+
+    /**
+     * Generate a network of nodes into a file.
+     *
+     * @param args number of the nodes, the output file, and optionally the
+     * seed, the ratio of anchors, the radio range, the maximal number of
+     * neighbours, the deviation of Gaussian noise of RSSI and RTT, and a file
+     * for the ground truth
+     */
+    public static void main(final String[] args) {
+        if (( args.length < 2 ) || ( args.length > 9 )) {
+            System.err.println("Usage: java " + TopologyGenerator.class.getName()
+                    + " <node-count> <services.json|services.snapshot> [seed] [anchor-ratio] [radio-range]"
+                    + " [max-neighbours] [rssi-deviation] [rtt-deviation] [ground-truth.json]");
+            System.exit(-1);
+        }
+        try {
+            TopologyGenerator generator = new TopologyGenerator(( args.length > 2 ) ? Long.parseLong(args[2]) : 0);
+            int nodeCount = Integer.parseInt(args[0]);
+            generator.setNodeCount(nodeCount);
+            if (args.length > 3) {
+                generator.setAnchorRatio(Double.parseDouble(args[3]));
+            }
+            // the nodes are spread with the same density regardless of their count
+            double side = Math.cbrt(nodeCount) * 10;
+            generator.setBounds(new Vector3D(0, 0, 0), new Vector3D(side, side, side));
+            if (args.length > 4) {
+                generator.setRadioRange(Double.parseDouble(args[4]));
+            }
+            if (args.length > 5) {
+                generator.setMaxNeighbours(Integer.parseInt(args[5]));
+            }
+            if (args.length > 6) {
+                generator.setRssiNoise(Noise.GAUSSIAN, Double.parseDouble(args[6]));
+            }
+            if (args.length > 7) {
+                generator.setRttNoise(Noise.GAUSSIAN, Double.parseDouble(args[7]));
+            }
+            if (args[1].endsWith(".snapshot")) {
+                NodeSnapshotWriter.write(generator.generate(), args[1]);
+            } else {
+                generator.generate(args[1]);
+            }
+            if (args.length > 8) {
+                generator.saveGroundTruth(args[8]);
+            }
+        }
+        catch (IllegalArgumentException ex) {
+            System.err.println("!!! exception: Invalid arguments!\n" + ex.toString());
+            System.exit(-2);
+        }
+        catch (IOException ex) {
+            System.err.println("!!! exception: " + ex.toString());
+            System.exit(-3);
+        }
+    }
+}
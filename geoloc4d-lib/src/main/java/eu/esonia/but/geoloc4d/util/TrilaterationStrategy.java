@@ -1,11 +1,17 @@
 package eu.esonia.but.geoloc4d.util;
 
 import eu.esonia.but.geoloc4d.type.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Abstract class of algorithms for selection of neighbouring nodes and
  * computation of their distanecs for trilateration. Strategy design pattern.
+ * After calibration, the preparation of nodes and the trilateration can be
+ * used concurrently by more threads (e.g. by {@link BatchLocaliser}).
  *
  * @author rychly
  */
@@ -14,7 +20,27 @@ public abstract class TrilaterationStrategy {
     /**
      * Indicates the strategy with calibrated metric.
      */
-    private boolean calibrated = false;
+    private volatile boolean calibrated = false;
+    /**
+     * Refinement of multilateration from all prepared nodes, or null for the
+     * trilateration from four prepared nodes.
+     */
+    private volatile MultilaterationSolver.Refinement multilateration = null;
+    /**
+     * Selection of prepared nodes with the best geometry, or null to use the
+     * prepared nodes in the order of the strategy.
+     */
+    private volatile AnchorSelection anchorSelection = null;
+    /**
+     * Multilateration solvers of threads (each thread needs its own solver).
+     */
+    private final ThreadLocal<MultilaterationSolver> multilaterationSolver = new ThreadLocal<MultilaterationSolver>() {
+
+        @Override
+        protected MultilaterationSolver initialValue() {
+            return new MultilaterationSolver(multilateration);
+        }
+    };
 
     /**
      * Calibrate metric used by the trilateration strategy (e.g. transformation
@@ -27,6 +53,128 @@ public abstract class TrilaterationStrategy {
     public abstract void calibrateMetric(final MapOfNodes mapOfNodes)
             throws TrilaterationStrategyException;
 
+    /**
+     * Calibrate metric used by the trilateration strategy (e.g. transformation
+     * of RSSI/RTT to distance) for a store of reference nodes. The result is
+     * the same as of {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.MapOfNodes)}
+     * for the same nodes, however, the nodes are not modified.
+     *
+     * @param nodeStore the store of reference nodes
+     * @throws TrilaterationStrategyException in case of incomplete data for the
+     * calibration
+     */
+    public abstract void calibrateMetric(final NodeStore nodeStore)
+            throws TrilaterationStrategyException;
+
+    /**
+     * Add an observation of a link to a neighbour with known actual distance
+     * into running statistics of the strategy for online calibration of its
+     * metric. The strategy is recalibrated from the running statistics in a
+     * constant time after each observation (if there are enought observations
+     * for the calibration). The result is not affected by {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.MapOfNodes)}
+     * (however, the last calibration, online or not, sets the metric).
+     *
+     * @param neighbour the properties of the neighbour (e.g. its RSSI/RTT)
+     * @param distance the actual distance of the neighbour in meters
+     * @return true iff the observation has been used for the calibration
+     * (false for observations without values required by the strategy)
+     */
+    public abstract boolean addObservation(final NeighbourProperties neighbour, final double distance);
+
+    /**
+     * Remove an observation previously added by {@link #addObservation(eu.esonia.but.geoloc4d.type.NeighbourProperties, double)}
+     * from running statistics of the strategy for online calibration of its
+     * metric, e.g. to replace an observation of a changed link. The
+     * properties of the neighbour and the distance have to be the same as of
+     * the added observation.
+     *
+     * @param neighbour the properties of the neighbour (e.g. its RSSI/RTT)
+     * @param distance the actual distance of the neighbour in meters
+     * @return true iff the observation has been removed from the calibration
+     */
+    public abstract boolean removeObservation(final NeighbourProperties neighbour, final double distance);
+
+    /**
+     * Remove all observations from running statistics of the strategy for
+     * online calibration of its metric. The metric is not changed.
+     */
+    public abstract void clearObservations();
+
+    /**
+     * Get an actual distance of a neighbour of a node in a map of nodes, i.e.
+     * the distance of the neighbour, or the distance between locations of the
+     * node and the neighbour in the map of nodes.
+     *
+     * @param node the node
+     * @param id the ID of the neighbour
+     * @param neighbour the properties of the neighbour
+     * @param mapOfNodes the map of nodes
+     * @return the distance or null if it is unknown
+     */
+    private static Double getObservedDistance(final Node node, final String id,
+            final NeighbourProperties neighbour, final MapOfNodes mapOfNodes) {
+        if (neighbour.getDistance() != null) {
+            return neighbour.getDistance();
+        }
+        Vector3D location = node.getInfo().getLocationAbsolute();
+        Node neighbourNode = mapOfNodes.get(id);
+        if (( location == null ) || !location.isDefined() || ( neighbourNode == null )) {
+            return null;
+        }
+        Vector3D neighbourLocation = neighbourNode.getInfo().getLocationAbsolute();
+        if (( neighbourLocation == null ) || !neighbourLocation.isDefined()) {
+            return null;
+        }
+        return location.distance(neighbourLocation);
+    }
+
+    /**
+     * Add observations of links of a node to its neighbours with known actual
+     * distances (or locations in a map of nodes) by {@link #addObservation(eu.esonia.but.geoloc4d.type.NeighbourProperties, double)}.
+     * In contrast to {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.MapOfNodes)},
+     * the nodes are not modified.
+     *
+     * @param node the node with its scan
+     * @param mapOfNodes the map of nodes with locations of the neighbours
+     * @return the number of the observations used for the calibration
+     */
+    public int addObservations(final Node node, final MapOfNodes mapOfNodes) {
+        int count = 0;
+        if (node.getScan() == null) {
+            return count;
+        }
+        for (Map.Entry<String, NeighbourProperties> pair : node.getScan().entrySet()) {
+            Double distance = getObservedDistance(node, pair.getKey(), pair.getValue(), mapOfNodes);
+            if (( distance != null ) && this.addObservation(pair.getValue(), distance)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove observations of links of a node previously added by {@link #addObservations(eu.esonia.but.geoloc4d.type.Node, eu.esonia.but.geoloc4d.type.MapOfNodes)}.
+     * The scan of the node and the locations in the map of nodes have to be
+     * the same as for the added observations.
+     *
+     * @param node the node with its scan
+     * @param mapOfNodes the map of nodes with locations of the neighbours
+     * @return the number of the observations removed from the calibration
+     */
+    public int removeObservations(final Node node, final MapOfNodes mapOfNodes) {
+        int count = 0;
+        if (node.getScan() == null) {
+            return count;
+        }
+        for (Map.Entry<String, NeighbourProperties> pair : node.getScan().entrySet()) {
+            Double distance = getObservedDistance(node, pair.getKey(), pair.getValue(), mapOfNodes);
+            if (( distance != null ) && this.removeObservation(pair.getValue(), distance)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     /**
      * Check if the strategy is calibrated, i.e. {@link #calibrateMetric(eu.esonia.but.geoloc4d.type.MapOfNodes)}
      * has been executed before or the strategy do not need calibration.
@@ -47,6 +195,89 @@ public abstract class TrilaterationStrategy {
         this.calibrated = calibrated;
     }
 
+    /**
+     * Check if the strategy uses multilateration from all prepared nodes by
+     * {@link MultilaterationSolver} instead of the trilateration from four
+     * prepared nodes.
+     *
+     * @return true iff the strategy uses the multilateration
+     */
+    public boolean isMultilateration() {
+        return this.multilateration != null;
+    }
+
+    /**
+     * Set the strategy to use multilateration from all prepared nodes by
+     * {@link MultilaterationSolver} instead of the trilateration from four
+     * prepared nodes (by {@link WirelessMetric#trilateration3D(double[], double[], int, int, int, int, double[], double[], int)}).
+     * It should be set before the strategy is used by more threads.
+     *
+     * @param refinement the refinement of the multilateration, or null to use
+     * the trilateration
+     */
+    public void setMultilateration(final MultilaterationSolver.Refinement refinement) {
+        this.multilateration = refinement;
+    }
+
+    /**
+     * Get the multilateration solver of the current thread with results of
+     * its last multilateration (e.g. residuals).
+     *
+     * @return the multilateration solver or null if the strategy does not use
+     * the multilateration
+     */
+    public MultilaterationSolver getMultilaterationSolver() {
+        if (!this.isMultilateration()) {
+            return null;
+        }
+        MultilaterationSolver solver = this.multilaterationSolver.get();
+        if (solver.getRefinement() != this.multilateration) {
+            // the refinement has been changed after the solver was created
+            solver = new MultilaterationSolver(this.multilateration);
+            this.multilaterationSolver.set(solver);
+        }
+        return solver;
+    }
+
+    /**
+     * Get the selection of prepared nodes with the best geometry.
+     *
+     * @return the selection or null if the prepared nodes are used in the
+     * order of the strategy
+     */
+    public AnchorSelection getAnchorSelection() {
+        return this.anchorSelection;
+    }
+
+    /**
+     * Set the selection of prepared nodes with the best geometry (the lowest
+     * GDOP). The prepared nodes are reduced to the selected nodes, which are
+     * used by the trilateration (the first four of them) or by the
+     * multilateration (all of them).
+     *
+     * @param anchorSelection the selection or null to use the prepared nodes
+     * in the order of the strategy
+     */
+    public void setAnchorSelection(final AnchorSelection anchorSelection) {
+        this.anchorSelection = anchorSelection;
+    }
+
+    /**
+     * Reduce prepared nodes to nodes selected by {@link #getAnchorSelection()},
+     * if any. It is used by both prepareNodesForTrilateration methods of
+     * strategy implementations (see {@link NeighbourQuery#getResult()}).
+     *
+     * @param preparedNodes the prepared nodes in the order of the strategy to
+     * reduce to the selected nodes in the order of the selection
+     */
+    protected void selectAnchors(final PreparedNodes preparedNodes) {
+        final AnchorSelection selection = this.anchorSelection;
+        if (selection != null) {
+            preparedNodes.truncate(selection.select(preparedNodes.getLocations(), preparedNodes.getDistances(),
+                    preparedNodes.getNodes(), preparedNodes.getCount()));
+        }
+    }
+
     /**
      * Prepare a group of nodes suitable for the trilateration strategy for a
      * reference node and its neighbours. There can be different approaches for
@@ -61,6 +292,21 @@ public abstract class TrilaterationStrategy {
     public abstract MapOfNeighbours prepareNodesForTrilateration(final NodeData node, final MapOfNeighbours neighbours)
             throws TrilaterationStrategyException;
 
+    /**
+     * Prepare a group of nodes suitable for the trilateration strategy for a
+     * reference node and its neighbours in a store of nodes. The result is the
+     * same as of {@link #prepareNodesForTrilateration(eu.esonia.but.geoloc4d.type.NodeData, eu.esonia.but.geoloc4d.type.MapOfNeighbours)}
+     * for the node with its neighbours located by {@link MapOfNeighbours#setLocationsFromNodes(eu.esonia.but.geoloc4d.type.MapOfNodes)}.
+     *
+     * @param nodeStore the store of nodes
+     * @param node index of the reference node in the store
+     * @param preparedNodes the prepared group of nodes to fill in
+     * @throws TrilaterationStrategyException in case of incomplete data for the
+     * further trilateration
+     */
+    public abstract void prepareNodesForTrilateration(final NodeStore nodeStore, final int node, final PreparedNodes preparedNodes)
+            throws TrilaterationStrategyException;
+
     /**
      * Perform the trilateration according to the specific strategy and prepared
      * nodes.
@@ -72,27 +318,149 @@ public abstract class TrilaterationStrategy {
      */
     public Vector3D doTrilateration(final MapOfNeighbours preparedNodes)
             throws TrilaterationStrategyException {
-        NeighbourProperties nodes[] = Arrays.copyOf(preparedNodes.values().toArray(), preparedNodes.size(), NeighbourProperties[].class);
+        return this.doTrilaterationWithEstimate(preparedNodes).getLocation();
+    }
+
+    /**
+     * Perform the trilateration according to the specific strategy and prepared
+     * nodes with an estimate of uncertainty of the result.
+     *
+     * @param preparedNodes node used for the trilateration
+     * @return result of the trilateration, i.e. location of blind node with
+     * its estimated uncertainty
+     * @throws TrilaterationStrategyException in case of incomplete data for the
+     * trilateration
+     */
+    public LocationEstimate doTrilaterationWithEstimate(final MapOfNeighbours preparedNodes)
+            throws TrilaterationStrategyException {
+        // we need at the leatest four prepared nodes (or all of them for the multilateration)
+        int maxCount = this.isMultilateration() ? preparedNodes.size() : 4;
+        double[] locations = new double[maxCount * Vector3DMath.SIZE];
+        double[] distances = new double[maxCount];
+        String[] anchors = new String[maxCount];
+        int count = 0;
+        for (Iterator<Map.Entry<String, NeighbourProperties>> iterator = preparedNodes.entrySet().iterator();
+                iterator.hasNext() && ( count < maxCount ); count++) {
+            Map.Entry<String, NeighbourProperties> pair = iterator.next();
+            NeighbourProperties node = pair.getValue();
+            if (( node.getLocationAbsolute() == null ) || node.getLocationAbsolute().isUndefined()
+                    || ( node.getDistance() == null )) {
+                break;
+            }
+            node.getLocationAbsolute().copyTo(locations, count * Vector3DMath.SIZE);
+            distances[count] = node.getDistance();
+            anchors[count] = pair.getKey();
+        }
+        double[] location = new double[Vector3DMath.SIZE];
+        int used = this.doTrilateration(locations, distances, count,
+                new double[WirelessMetric.TRILATERATION3D_WORKSPACE], location);
+        return estimate(locations, distances, Arrays.asList(anchors).subList(0, used), location);
+    }
+
+    /**
+     * Perform the trilateration according to the specific strategy and prepared
+     * nodes by {@link #prepareNodesForTrilateration(eu.esonia.but.geoloc4d.type.NodeStore, int, eu.esonia.but.geoloc4d.util.PreparedNodes)}
+     * with an estimate of uncertainty of the result.
+     *
+     * @param nodeStore the store of the prepared nodes
+     * @param preparedNodes nodes used for the trilateration
+     * @return result of the trilateration, i.e. location of blind node with
+     * its estimated uncertainty
+     * @throws TrilaterationStrategyException in case of incomplete data for the
+     * trilateration
+     */
+    public LocationEstimate doTrilaterationWithEstimate(final NodeStore nodeStore, final PreparedNodes preparedNodes)
+            throws TrilaterationStrategyException {
+        double[] location = new double[Vector3DMath.SIZE];
+        int used = this.doTrilateration(preparedNodes, location);
+        List<String> anchors = new ArrayList<>(used);
+        for (int i = 0; i < used; i++) {
+            anchors.add(nodeStore.getID(preparedNodes.getNodes()[i]));
+        }
+        return estimate(preparedNodes.getLocations(), preparedNodes.getDistances(), anchors, location);
+    }
+
+    /**
+     * Estimate uncertainty of a result of the trilateration from the anchors
+     * actually used for the trilateration (the first anchors of the arrays) (by {@link MultilaterationSolver#estimateCovariance(double[], double[], int, double[], int, double[])}).
+     *
+     * @param locations coordinates of the anchors
+     * @param distances distances of the anchors
+     * @param anchors IDs of the anchors
+     * @param location the result of the trilateration
+     * @return the result with its estimated uncertainty
+     */
+    private static LocationEstimate estimate(final double[] locations, final double[] distances,
+            final List<String> anchors, final double[] location) {
+        double[] covariance = new double[9];
+        double residual = MultilaterationSolver.estimateCovariance(locations, distances, anchors.size(),
+                location, 0, covariance);
+        return new LocationEstimate(Vector3DMath.toVector3D(location, 0), residual,
+                Double.isNaN(covariance[0]) ? null : covariance, anchors);
+    }
+
+    /**
+     * Perform the trilateration according to the specific strategy and prepared
+     * nodes by {@link #prepareNodesForTrilateration(eu.esonia.but.geoloc4d.type.NodeStore, int, eu.esonia.but.geoloc4d.util.PreparedNodes)}.
+     *
+     * @param preparedNodes nodes used for the trilateration
+     * @param location array for result of the trilateration, i.e. location of
+     * blind node (3 coordinates)
+     * @return number of the prepared nodes used for the trilateration (see
+     * {@link #doTrilateration(double[], double[], int, double[], double[])})
+     * @throws TrilaterationStrategyException in case of incomplete data for the
+     * trilateration
+     */
+    public int doTrilateration(final PreparedNodes preparedNodes, final double[] location)
+            throws TrilaterationStrategyException {
+        return this.doTrilateration(preparedNodes.getLocations(), preparedNodes.getDistances(), preparedNodes.getCount(),
+                preparedNodes.getWorkspace(), location);
+    }
+
+    /**
+     * Perform the trilateration according to the specific strategy and prepared
+     * nodes given by their primitive coordinates and distances (see {@link Vector3DMath}).
+     * It does not allocate any objects, so it can be called repeatedly with
+     * the same arrays on a hot path. In the case of the multilateration, all
+     * the prepared nodes are used and if they are coplanar, the trilateration
+     * from the first four prepared nodes is used instead.
+     *
+     * @param locations coordinates of the prepared nodes, i.e. X, Y, Z of the
+     * first node, X, Y, Z of the second node, etc.
+     * @param distances distances of the prepared nodes in the same order as
+     * the locations
+     * @param count number of the prepared nodes in the arrays
+     * @param workspace array for temporary values of length {@link WirelessMetric#TRILATERATION3D_WORKSPACE}
+     * @param location array for result of the trilateration, i.e. location of
+     * blind node (3 coordinates)
+     * @return number of the prepared nodes used for the trilateration, i.e.
+     * the first four nodes or all of them in the case of the multilateration
+     * (four if it falls back to the trilateration)
+     * @throws TrilaterationStrategyException in case of incomplete data for the
+     * trilateration
+     */
+    public int doTrilateration(final double[] locations, final double[] distances, final int count,
+            final double[] workspace, final double[] location)
+            throws TrilaterationStrategyException {
         // we need at the leatest four prepared nodes
-        if (( nodes.length < 4 )
-                || ( nodes[0].getLocationAbsolute() == null ) || ( nodes[0].getLocationAbsolute().isUndefined() )
-                || ( nodes[0].getDistance() == null )
-                || ( nodes[1].getLocationAbsolute() == null ) || ( nodes[1].getLocationAbsolute().isUndefined() )
-                || ( nodes[1].getDistance() == null )
-                || ( nodes[2].getLocationAbsolute() == null ) || ( nodes[2].getLocationAbsolute().isUndefined() )
-                || ( nodes[2].getDistance() == null )
-                || ( nodes[3].getLocationAbsolute() == null ) || ( nodes[3].getLocationAbsolute().isUndefined() )
-                || ( nodes[3].getDistance() == null )) {
+        if (count < 4) {
             throw new TrilaterationStrategyException("Not enought neighbouring nodes for 3D trilateration! "
                     + "We need at the least four prepared nodes with absolute locations and set distances.");
         }
+        if (this.isMultilateration()) {
+            try {
+                // perform 3D multilateration from all the prepared nodes
+                this.getMultilaterationSolver().solve(locations, distances, count, location, 0);
+                return count;
+            }
+            catch (WirelessMetricException ex) {
+                // the prepared nodes are coplanar, try the trilateration
+            }
+        }
         try {
             // perform 3D trilateration
-            return WirelessMetric.trilateration3D(
-                    nodes[0].getLocationAbsolute(), nodes[0].getDistance(),
-                    nodes[1].getLocationAbsolute(), nodes[1].getDistance(),
-                    nodes[2].getLocationAbsolute(), nodes[2].getDistance(),
-                    nodes[3].getLocationAbsolute(), nodes[3].getDistance());
+            WirelessMetric.trilateration3D(locations, distances, 0, 1, 2, 3, workspace, location, 0);
+            return 4;
         }
         catch (WirelessMetricException ex) {
             throw new TrilaterationStrategyException(ex.getMessage());
@@ -17,6 +17,21 @@ public final class TrilaterationStrategyFactory {
         return new StrategyWithRSSI();
     }
 
+    /**
+     * Make a new instance of a specific trilateration strategy based on RSSI
+     * calibrated by fitting of the path-loss model over all neighbours with
+     * known distances.
+     *
+     * @param robust true for the fitting robust to outliers, false for the
+     * least squares
+     * @return the trilateration strategy
+     */
+    public static TrilaterationStrategy newRegressionStrategyWithRSSI(final boolean robust) {
+        StrategyWithRSSI strategy = new StrategyWithRSSI();
+        strategy.setRegression(new PathLossRegression(robust));
+        return strategy;
+    }
+
     /**
      * Make a new instance of a specific trilateration strategy based on RTT.
      *
@@ -25,4 +40,30 @@ public final class TrilaterationStrategyFactory {
     public static TrilaterationStrategy newStrategyWithRTT() {
         return new StrategyWithRTT();
     }
+
+    /**
+     * Make a new instance of a specific trilateration strategy based on RSSI
+     * with multilateration from all prepared nodes.
+     *
+     * @param refinement the refinement of the multilateration
+     * @return the trilateration strategy
+     */
+    public static TrilaterationStrategy newMultilaterationStrategyWithRSSI(final MultilaterationSolver.Refinement refinement) {
+        TrilaterationStrategy strategy = new StrategyWithRSSI();
+        strategy.setMultilateration(refinement);
+        return strategy;
+    }
+
+    /**
+     * Make a new instance of a specific trilateration strategy based on RTT
+     * with multilateration from all prepared nodes.
+     *
+     * @param refinement the refinement of the multilateration
+     * @return the trilateration strategy
+     */
+    public static TrilaterationStrategy newMultilaterationStrategyWithRTT(final MultilaterationSolver.Refinement refinement) {
+        TrilaterationStrategy strategy = new StrategyWithRTT();
+        strategy.setMultilateration(refinement);
+        return strategy;
+    }
 }
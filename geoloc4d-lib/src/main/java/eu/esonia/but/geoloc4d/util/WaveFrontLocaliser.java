@@ -0,0 +1,187 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.*;
+import java.util.*;
+
+/**
+ * Iterative localisation of nodes of a network in waves. The unlocalised
+ * nodes are processed in order of numbers of their localised neighbours (the
+ * nodes with the most localised neighbours first) and each newly localised
+ * node becomes immediately an anchor for the nodes which have it in their
+ * scans, i.e. the localisation spreads from the anchors as a wave-front in a
+ * single run. The locations of neighbours are set as by {@link MapOfNeighbours#setLocationsFromNodes(eu.esonia.but.geoloc4d.type.MapOfNodes)},
+ * however, only the affected neighbours are updated after localisation of a
+ * node.
+ *
+ * @author rychly
+ */
+public class WaveFrontLocaliser {
+
+    /**
+     * Minimal number of localised neighbours to try to localise a node.
+     */
+    public static final int MIN_LOCALISED_NEIGHBOURS = 4;
+    /**
+     * The trilateration strategy used for the localisation.
+     */
+    private final TrilaterationStrategy trilaterationStrategy;
+
+    /**
+     * A node waiting for the localisation with its number of localised
+     * neighbours at the time of enqueuing.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+
+        private final int position;
+        private final int localisedNeighbours;
+        private final long sequence;
+
+        Candidate(final int position, final int localisedNeighbours, final long sequence) {
+            this.position = position;
+            this.localisedNeighbours = localisedNeighbours;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(final Candidate candidate) {
+            // the most localised neighbours first, then in order of enqueuing
+            if (this.localisedNeighbours != candidate.localisedNeighbours) {
+                return ( this.localisedNeighbours > candidate.localisedNeighbours ) ? -1 : 1;
+            }
+            return ( this.sequence < candidate.sequence ) ? -1 : ( ( this.sequence == candidate.sequence ) ? 0 : 1 );
+        }
+    }
+
+    /**
+     * Create a localiser.
+     *
+     * @param trilaterationStrategy the trilateration strategy to use
+     */
+    public WaveFrontLocaliser(final TrilaterationStrategy trilaterationStrategy) {
+        this.trilaterationStrategy = trilaterationStrategy;
+    }
+
+    /**
+     * Get the trilateration strategy used for the localisation.
+     *
+     * @return the trilateration strategy
+     */
+    public TrilaterationStrategy getTrilaterationStrategy() {
+        return this.trilaterationStrategy;
+    }
+
+    /**
+     * Localise as many unlocalised nodes of a map of nodes as possible. The
+     * localised nodes have set their absolute locations and they are used as
+     * neighbours for localisation of other nodes in the same run.
+     *
+     * @param mapOfNodes the map of nodes
+     * @return results of all the nodes by their IDs (in order of the map)
+     * @throws TrilaterationStrategyException the strategy is not calibrated
+     */
+    public Map<String, BatchLocaliser.NodeResult> localise(final MapOfNodes mapOfNodes)
+            throws TrilaterationStrategyException {
+        if (!this.trilaterationStrategy.isCalibrated()) {
+            throw new TrilaterationStrategyException("Strategy has not calibrated metric!");
+        }
+        Node[] nodes = mapOfNodes.values().toArray(new Node[mapOfNodes.size()]);
+        Map<String, Integer> positions = new HashMap<>(2 * nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            positions.put(nodes[i].getInfo().getID(), i);
+        }
+        // for each node, the unlocalised nodes with the node in their scans
+        List<List<Integer>> dependants = new ArrayList<>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            dependants.add(null);
+        }
+        int[] localisedNeighbours = new int[nodes.length];
+        BatchLocaliser.NodeResult[] results = new BatchLocaliser.NodeResult[nodes.length];
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        long sequence = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            if (node.getInfo().isAbsolutelyLocalised()) {
+                results[i] = new BatchLocaliser.NodeResult(BatchLocaliser.Status.ALREADY_LOCALISED,
+                        node.getInfo().getLocationAbsolute(), null);
+                continue;
+            }
+            // set location of neighbours that are yet known in the map of nodes
+            node.getScan().setLocationsFromNodes(mapOfNodes);
+            for (Map.Entry<String, NeighbourProperties> pair : node.getScan().entrySet()) {
+                if (( pair.getValue().getLocationAbsolute() != null ) && pair.getValue().getLocationAbsolute().isDefined()) {
+                    localisedNeighbours[i]++;
+                } else {
+                    Integer neighbour = positions.get(pair.getKey());
+                    if (neighbour != null) {
+                        if (dependants.get(neighbour) == null) {
+                            dependants.set(neighbour, new ArrayList<Integer>());
+                        }
+                        dependants.get(neighbour).add(i);
+                    }
+                }
+            }
+            queue.add(new Candidate(i, localisedNeighbours[i], sequence++));
+        }
+        // localise the nodes in waves
+        while (!queue.isEmpty()) {
+            Candidate candidate = queue.poll();
+            int i = candidate.position;
+            if (( results[i] != null ) && ( results[i].getStatus() != BatchLocaliser.Status.FAILED )) {
+                // the node has been already localised
+                continue;
+            }
+            if (candidate.localisedNeighbours != localisedNeighbours[i]) {
+                // an outdated candidate, the node has been enqueued again with more localised neighbours
+                continue;
+            }
+            if (candidate.localisedNeighbours < MIN_LOCALISED_NEIGHBOURS) {
+                // the other nodes have even less localised neighbours
+                for (Candidate rest : queue) {
+                    if (results[rest.position] == null) {
+                        results[rest.position] = notEnoughNeighbours(localisedNeighbours[rest.position]);
+                    }
+                }
+                if (results[i] == null) {
+                    results[i] = notEnoughNeighbours(localisedNeighbours[i]);
+                }
+                break;
+            }
+            Node node = nodes[i];
+            try {
+                MapOfNeighbours selectedNeighbours =
+                        this.trilaterationStrategy.prepareNodesForTrilateration(node.getInfo(), node.getScan());
+                LocationEstimate estimate = this.trilaterationStrategy.doTrilaterationWithEstimate(selectedNeighbours);
+                node.getInfo().setLocationAbsolute(new Vector3D(estimate.getLocation()), estimate);
+                results[i] = new BatchLocaliser.NodeResult(BatchLocaliser.Status.LOCALISED, estimate.getLocation(),
+                        estimate, null);
+            }
+            catch (TrilaterationStrategyException ex) {
+                // the node can be localised later with more localised neighbours
+                results[i] = new BatchLocaliser.NodeResult(BatchLocaliser.Status.FAILED, null, ex.getMessage());
+                continue;
+            }
+            // the newly localised node is an anchor for its dependants
+            if (dependants.get(i) != null) {
+                String id = node.getInfo().getID();
+                for (int dependant : dependants.get(i)) {
+                    if (( results[dependant] == null ) || ( results[dependant].getStatus() == BatchLocaliser.Status.FAILED )) {
+                        nodes[dependant].getScan().get(id).setLocationAbsolute(node.getInfo().getLocationAbsolute());
+                        localisedNeighbours[dependant]++;
+                        queue.add(new Candidate(dependant, localisedNeighbours[dependant], sequence++));
+                    }
+                }
+                dependants.set(i, null);
+            }
+        }
+        Map<String, BatchLocaliser.NodeResult> result = new LinkedHashMap<>(2 * nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            result.put(nodes[i].getInfo().getID(), results[i]);
+        }
+        return result;
+    }
+
+    private static BatchLocaliser.NodeResult notEnoughNeighbours(final int localisedNeighbours) {
+        return new BatchLocaliser.NodeResult(BatchLocaliser.Status.FAILED, null,
+                "Not enought localised neighbours, there are only " + localisedNeighbours + " of them!");
+    }
+}
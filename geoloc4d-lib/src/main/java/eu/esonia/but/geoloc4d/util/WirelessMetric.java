@@ -1,7 +1,7 @@
 package eu.esonia.but.geoloc4d.util;
 
 import eu.esonia.but.geoloc4d.type.Vector3D;
-import java.util.Arrays;
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
 
 /**
  * Various functions for measurements in wireless networks. RSSI related
@@ -20,6 +20,28 @@ import java.util.Arrays;
  */
 public final class WirelessMetric {
 
+    /**
+     * Length of a workspace array for the trilateration on primitive
+     * coordinates, see {@link #trilateration3D(double[], double[], int, int, int, double[], double[], int)}
+     * and {@link #trilateration3D(double[], double[], int, int, int, int, double[], double[], int)}.
+     */
+    public static final int TRILATERATION3D_WORKSPACE = 9 * Vector3DMath.SIZE;
+    /**
+     * Minimal RSSI value in {@link RssiDistanceTable}.
+     */
+    public static final short TABLE_MIN_RSSI = -255;
+    /**
+     * Maximal RSSI value in {@link RssiDistanceTable}.
+     */
+    public static final short TABLE_MAX_RSSI = 255;
+    // offsets of temporary vectors in the workspace
+    private static final int WORKSPACE_TMPB = 0;
+    private static final int WORKSPACE_TMPC = Vector3DMath.SIZE;
+    private static final int WORKSPACE_EX = 2 * Vector3DMath.SIZE;
+    private static final int WORKSPACE_EY = 3 * Vector3DMath.SIZE;
+    private static final int WORKSPACE_EZ = 4 * Vector3DMath.SIZE;
+    private static final int WORKSPACE_CANDIDATES = 5 * Vector3DMath.SIZE;
+
     /**
      * Compute a received signal strength at 1 meter distance according to a
      * reference node and its RSSIs and actual distances to nodes A and B.
@@ -111,6 +133,68 @@ public final class WirelessMetric {
                 / ( -10 * propagationConstant ));
     }
 
+    /**
+     * Precomputed distances for RSSI values in range from {@link #TABLE_MIN_RSSI}
+     * to {@link #TABLE_MAX_RSSI} for given received signal strength at 1 meter
+     * distance and propagation constant, so the conversion of RSSI into
+     * distance is an array load instead of {@link #compDistanceFromRssi(short, double, double)}.
+     * Immutable, can be shared by more threads.
+     */
+    public static final class RssiDistanceTable {
+
+        private final double signalStrengthAtMeter;
+        private final double propagationConstant;
+        private final double[] distances = new double[TABLE_MAX_RSSI - TABLE_MIN_RSSI + 1];
+
+        /**
+         * Create a table of distances for RSSI values.
+         *
+         * @param signalStrengthAtMeter received signal strength at 1 meter
+         * distance
+         * @param propagationConstant propagation constant
+         * @throws WirelessMetricException if cannot perform computation with
+         * the such parameters
+         */
+        public RssiDistanceTable(final double signalStrengthAtMeter, final double propagationConstant) throws WirelessMetricException {
+            this.signalStrengthAtMeter = signalStrengthAtMeter;
+            this.propagationConstant = propagationConstant;
+            for (int i = 0; i < this.distances.length; i++) {
+                this.distances[i] = compDistanceFromRssi((short) ( TABLE_MIN_RSSI + i ), signalStrengthAtMeter, propagationConstant);
+            }
+        }
+
+        /**
+         * @return the received signal strength at 1 meter distance of the
+         * table
+         */
+        public double getSignalStrengthAtMeter() {
+            return this.signalStrengthAtMeter;
+        }
+
+        /**
+         * @return the propagation constant of the table
+         */
+        public double getPropagationConstant() {
+            return this.propagationConstant;
+        }
+
+        /**
+         * Get a distance in meters of a reference node and a blind node from
+         * received signal RSSI value. The same as {@link #compDistanceFromRssi(short, double, double)}
+         * with the constants of the table.
+         *
+         * @param rssi received signal RSSI value
+         * @return the distance in meters
+         */
+        public double getDistance(final short rssi) {
+            if (( rssi < TABLE_MIN_RSSI ) || ( rssi > TABLE_MAX_RSSI )) {
+                // out of the table, compute it (the constants has been checked)
+                return Math.pow(10, ( rssi + this.signalStrengthAtMeter ) / ( -10 * this.propagationConstant ));
+            }
+            return this.distances[rssi - TABLE_MIN_RSSI];
+        }
+    }
+
     /**
      * Compute a correction factor according to a reference node and its RTT and
      * actual distance to another node.
@@ -165,40 +249,19 @@ public final class WirelessMetric {
         // we need exactly three diferent vectors, check it
         if (( nodeA == null ) || nodeA.isUndefined()
                 || ( nodeB == null ) || nodeB.isUndefined()
-                || ( nodeC == null ) || nodeC.isUndefined()
-                || nodeA.equals(nodeB) || nodeA.equals(nodeC) || nodeB.equals(nodeC)) {
+                || ( nodeC == null ) || nodeC.isUndefined()) {
             throw new WirelessMetricException("Three diferent vectors are needed for the trilateration!");
         }
-        // step 1: we have Cartesian coordinates, so no transformation from lat/long coordinates is needed
-        //System.out.println(distanceA + " from " + nodeA + ", " + distanceB + " from " + nodeB + ", " + distanceC + " from " + nodeC);
-        // step 2: translating the points to nodeA be at the origin
-        Vector3D tmpB = nodeB.sub(nodeA);
-        Vector3D tmpC = nodeC.sub(nodeA);
-        // step 3: rotating to tmpB be on the X axis and tmpC be in the X-Y plane
-        double d = tmpB.norm();
-        Vector3D ex = tmpB.scale(1 / d);
-        double i = ex.dot(tmpC);
-        Vector3D ey = tmpC.sub(ex.scale(i));
-        ey = ey.scale(1 / ey.norm());
-        double j = ey.dot(tmpC);
-        Vector3D ez = ex.cross(ey);
-        // step 4: derivation from distances
-        // (we have three diferent vectors so zPlus^2 have to be a positive number,
-        // however this may not be true due to the double precision and
-        // therefore we will use an absolute value of the zPlus^2)
-        double x = ( Math.pow(distanceA, 2) - Math.pow(distanceB, 2) + Math.pow(d, 2) ) / ( 2 * d );
-        double y = ( ( Math.pow(distanceA, 2) - Math.pow(distanceC, 2) + Math.pow(i, 2) + Math.pow(j, 2) ) / ( 2 * j ) ) - ( ( i * x ) / j );
-        double zPlus = Math.sqrt(Math.abs(Math.pow(distanceA, 2) - Math.pow(x, 2) - Math.pow(y, 2)));
-        // step 5: translating the points in the original coordinate system
-        Vector3D[] results = new Vector3D[]{
-            nodeA.add(ex.scale(x)).add(ey.scale(y)).add(ez.scale(zPlus)),
-            nodeA.add(ex.scale(x)).add(ey.scale(y)).add(ez.scale(-1 * zPlus))};
-        if (( results[0] == null ) || ( results[1] == null )) {
-            throw new WirelessMetricException("Something goes wrong in the trilateration's comuputation!");
-        }
-        //System.out.println("tmpB=" + tmpB + ",tmpC" + tmpC + ",d=" + d + ",ex=" + ex + ",i=" + i + ",ey=" + ey + ",j=" + j + ",ez=" + ez + ",x=" + x + ",y=" + y + ",zPlus=" + zPlus + "=>" + results[0] + "," + results[1]);
-        return results;
-        // step 6: we have Cartesian coordinates, so no transformation to lat/long coordinates is needed
+        double[] locations = new double[3 * Vector3DMath.SIZE];
+        nodeA.copyTo(locations, 0);
+        nodeB.copyTo(locations, Vector3DMath.SIZE);
+        nodeC.copyTo(locations, 2 * Vector3DMath.SIZE);
+        double[] results = new double[2 * Vector3DMath.SIZE];
+        WirelessMetric.trilateration3D(locations, new double[]{distanceA, distanceB, distanceC}, 0, 1, 2,
+                new double[WirelessMetric.TRILATERATION3D_WORKSPACE], results, 0);
+        return new Vector3D[]{
+            Vector3DMath.toVector3D(results, 0),
+            Vector3DMath.toVector3D(results, Vector3DMath.SIZE)};
     }
 
     /**
@@ -221,15 +284,133 @@ public final class WirelessMetric {
             final Vector3D nodeB, final double distanceB,
             final Vector3D nodeC, final double distanceC,
             final Vector3D nodeD, final double distanceD) throws WirelessMetricException {
+        // we need four defined vectors, check it
+        if (( nodeA == null ) || nodeA.isUndefined()
+                || ( nodeB == null ) || nodeB.isUndefined()
+                || ( nodeC == null ) || nodeC.isUndefined()
+                || ( nodeD == null ) || nodeD.isUndefined()) {
+            throw new WirelessMetricException("Three diferent vectors are needed for the trilateration!");
+        }
+        double[] locations = new double[4 * Vector3DMath.SIZE];
+        nodeA.copyTo(locations, 0);
+        nodeB.copyTo(locations, Vector3DMath.SIZE);
+        nodeC.copyTo(locations, 2 * Vector3DMath.SIZE);
+        nodeD.copyTo(locations, 3 * Vector3DMath.SIZE);
+        double[] result = new double[Vector3DMath.SIZE];
+        WirelessMetric.trilateration3D(locations, new double[]{distanceA, distanceB, distanceC, distanceD}, 0, 1, 2, 3,
+                new double[WirelessMetric.TRILATERATION3D_WORKSPACE], result, 0);
+        return Vector3DMath.toVector3D(result, 0);
+    }
+
+    /**
+     * Performs (undeterministic) trilateration in 3D according to locations of
+     * nodes A, B, C, and their distances from a blind node. Works on primitive
+     * coordinates by {@link Vector3DMath} and does not allocate any objects
+     * (except the exception).
+     *
+     * @param locations coordinates of nodes, i.e. X, Y, Z of the first node,
+     * X, Y, Z of the second node, etc.
+     * @param distances distances of the nodes and the blind node in the same
+     * order as the locations
+     * @param a index of node A in the locations and the distances
+     * @param b index of node B in the locations and the distances
+     * @param c index of node C in the locations and the distances
+     * @param workspace array for temporary values of length {@link #TRILATERATION3D_WORKSPACE}
+     * @param results array for the two possible locations of the blind node (6
+     * coordinates)
+     * @param resultsOffset offset of the locations of the blind node
+     * @throws WirelessMetricException cannot perform trilateration for such
+     * nodes
+     */
+    public static void trilateration3D(final double[] locations, final double[] distances,
+            final int a, final int b, final int c,
+            final double[] workspace, final double[] results, final int resultsOffset) throws WirelessMetricException {
+        final int nodeA = a * Vector3DMath.SIZE;
+        final int nodeB = b * Vector3DMath.SIZE;
+        final int nodeC = c * Vector3DMath.SIZE;
+        // we need exactly three diferent vectors, check it
+        if (Vector3DMath.equals(locations, nodeA, locations, nodeB)
+                || Vector3DMath.equals(locations, nodeA, locations, nodeC)
+                || Vector3DMath.equals(locations, nodeB, locations, nodeC)) {
+            throw new WirelessMetricException("Three diferent vectors are needed for the trilateration!");
+        }
+        final double distanceA = distances[a];
+        final double distanceB = distances[b];
+        final double distanceC = distances[c];
+        // step 1: we have Cartesian coordinates, so no transformation from lat/long coordinates is needed
+        // step 2: translating the points to nodeA be at the origin
+        Vector3DMath.sub(locations, nodeB, locations, nodeA, workspace, WORKSPACE_TMPB);
+        Vector3DMath.sub(locations, nodeC, locations, nodeA, workspace, WORKSPACE_TMPC);
+        // step 3: rotating to tmpB be on the X axis and tmpC be in the X-Y plane
+        double d = Vector3DMath.norm(workspace, WORKSPACE_TMPB);
+        Vector3DMath.scale(workspace, WORKSPACE_TMPB, 1 / d, workspace, WORKSPACE_EX);
+        double i = Vector3DMath.dot(workspace, WORKSPACE_EX, workspace, WORKSPACE_TMPC);
+        Vector3DMath.addScaled(workspace, WORKSPACE_TMPC, -i, workspace, WORKSPACE_EX, workspace, WORKSPACE_EY);
+        Vector3DMath.scale(workspace, WORKSPACE_EY, 1 / Vector3DMath.norm(workspace, WORKSPACE_EY), workspace, WORKSPACE_EY);
+        double j = Vector3DMath.dot(workspace, WORKSPACE_EY, workspace, WORKSPACE_TMPC);
+        Vector3DMath.cross(workspace, WORKSPACE_EX, workspace, WORKSPACE_EY, workspace, WORKSPACE_EZ);
+        // step 4: derivation from distances
+        // (we have three diferent vectors so zPlus^2 have to be a positive number,
+        // however this may not be true due to the double precision and
+        // therefore we will use an absolute value of the zPlus^2)
+        double x = ( distanceA * distanceA - distanceB * distanceB + d * d ) / ( 2 * d );
+        double y = ( ( distanceA * distanceA - distanceC * distanceC + i * i + j * j ) / ( 2 * j ) ) - ( ( i * x ) / j );
+        double zPlus = Math.sqrt(Math.abs(distanceA * distanceA - x * x - y * y));
+        // step 5: translating the points in the original coordinate system
+        final int resultPlus = resultsOffset;
+        final int resultMinus = resultsOffset + Vector3DMath.SIZE;
+        Vector3DMath.addScaled(locations, nodeA, x, workspace, WORKSPACE_EX, results, resultPlus);
+        Vector3DMath.addScaled(results, resultPlus, y, workspace, WORKSPACE_EY, results, resultPlus);
+        Vector3DMath.addScaled(results, resultPlus, -zPlus, workspace, WORKSPACE_EZ, results, resultMinus);
+        Vector3DMath.addScaled(results, resultPlus, zPlus, workspace, WORKSPACE_EZ, results, resultPlus);
+        // step 6: we have Cartesian coordinates, so no transformation to lat/long coordinates is needed
+    }
+
+    /**
+     * Performs (deterministic) trilateration in 3D according to locations of
+     * nodes A, B, C, D, and their distances from a blind node. Works on
+     * primitive coordinates by {@link Vector3DMath} and does not allocate any
+     * objects (except the exception).
+     *
+     * @param locations coordinates of nodes, i.e. X, Y, Z of the first node,
+     * X, Y, Z of the second node, etc.
+     * @param distances distances of the nodes and the blind node in the same
+     * order as the locations
+     * @param a index of node A in the locations and the distances
+     * @param b index of node B in the locations and the distances
+     * @param c index of node C in the locations and the distances
+     * @param d index of node D in the locations and the distances
+     * @param workspace array for temporary values of length {@link #TRILATERATION3D_WORKSPACE}
+     * @param result array for the location of the blind node (3 coordinates)
+     * @param resultOffset offset of the location of the blind node
+     * @throws WirelessMetricException cannot perform trilateration for such
+     * nodes
+     */
+    public static void trilateration3D(final double[] locations, final double[] distances,
+            final int a, final int b, final int c, final int d,
+            final double[] workspace, final double[] result, final int resultOffset) throws WirelessMetricException {
         // perform trilateration on two triplets of nodes
-        Vector3D[] trilateratedABC = WirelessMetric.trilateration3D(
-                nodeA, distanceA, nodeB, distanceB, nodeC, distanceC);
-        Vector3D[] trilateratedABD = WirelessMetric.trilateration3D(
-                nodeA, distanceA, nodeB, distanceB, nodeD, distanceD);
+        WirelessMetric.trilateration3D(locations, distances, a, b, c,
+                workspace, workspace, WORKSPACE_CANDIDATES);
+        WirelessMetric.trilateration3D(locations, distances, a, b, d,
+                workspace, workspace, WORKSPACE_CANDIDATES + 2 * Vector3DMath.SIZE);
         // merge results and select averange of two most similar
-        Vector3D[] result = Arrays.copyOf(trilateratedABC, trilateratedABC.length + trilateratedABD.length);
-        System.arraycopy(trilateratedABD, 0, result, trilateratedABC.length, trilateratedABD.length);
-        result = Vector3D.selectTwoMostSimilar(result);
-        return result[0].avg(result[1]);
+        int first = -1;
+        int second = -1;
+        double minDistance = Double.MAX_VALUE;
+        for (int i = WORKSPACE_CANDIDATES; i < WORKSPACE_CANDIDATES + 4 * Vector3DMath.SIZE; i += Vector3DMath.SIZE) {
+            for (int j = i + Vector3DMath.SIZE; j < WORKSPACE_CANDIDATES + 4 * Vector3DMath.SIZE; j += Vector3DMath.SIZE) {
+                double distance = Vector3DMath.distanceSquared(workspace, i, workspace, j);
+                if (distance < minDistance) {
+                    first = i;
+                    second = j;
+                    minDistance = distance;
+                }
+            }
+        }
+        if (first < 0) {
+            throw new WirelessMetricException("Something goes wrong in the trilateration's comuputation!");
+        }
+        Vector3DMath.avg(workspace, first, workspace, second, result, resultOffset);
     }
 }
@@ -0,0 +1,115 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for nodes with a spatial index of localised nodes.
+ *
+ * @author rychly
+ */
+public class IndexedNodesTest {
+
+    private MapOfNodes mapOfNodes;
+    private IndexedNodes indexedNodes;
+
+    public IndexedNodesTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.mapOfNodes = new MapOfNodes("["
+                + "{info:{id:\"nodeA\", locationAbsolute:[0,0,0]}, scan:[]},"
+                + "{info:{id:\"nodeB\", locationAbsolute:[10,0,0]}, scan:[]},"
+                + "{info:{id:\"nodeC\", locationAbsolute:[0,20,0]}, scan:[]},"
+                + "{info:{id:\"nodeD\", locationAbsolute:[-30,0,-30]}, scan:[]},"
+                + "{info:{id:\"node0\"}, scan:[]}"
+                + "]");
+        this.indexedNodes = new IndexedNodes(this.mapOfNodes);
+    }
+
+    @After
+    public void tearDown() {
+        this.indexedNodes.close();
+        this.indexedNodes = null;
+        this.mapOfNodes = null;
+    }
+
+    /**
+     * Test of incremental updates of the index, of class IndexedNodes.
+     *
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testIncrementalUpdates() throws JSONException {
+        SpatialIndex index = this.indexedNodes.getSpatialIndex();
+        assertEquals(4, index.size());
+        this.mapOfNodes.get("node0").getInfo().setLocationAbsolute(new Vector3D(100, 100, 100));
+        assertEquals(Arrays.asList("node0"), index.getNearest(new Vector3D(90, 90, 90), 1));
+        this.mapOfNodes.get("nodeA").getInfo().setLocationAbsolute(new Vector3D(95, 95, 95));
+        assertEquals(Arrays.asList("nodeA"), index.getNearest(new Vector3D(90, 90, 90), 1));
+        this.indexedNodes.remove("nodeA");
+        assertFalse(index.contains("nodeA"));
+        assertEquals(new Vector3D(100, 100, 100), index.getLocation("node0"));
+        // the removed node is not listened to
+        this.mapOfNodes.get("nodeA").getInfo().setLocationAbsolute(new Vector3D(90, 90, 90));
+        assertFalse(index.contains("nodeA"));
+        this.mapOfNodes.get("node0").getInfo().setLocationAbsolute(new Vector3D());
+        assertEquals(3, index.size());
+        assertEquals(new HashSet<>(Arrays.asList("nodeC")),
+                this.indexedNodes.getNearestLocalisedNodes(new Vector3D(90, 90, 90), 1).keySet());
+        this.indexedNodes.put("nodeE", new Node("{info:{id:\"nodeE\"}, scan:[]}"));
+        this.indexedNodes.getNodes().get("nodeE").getInfo().setLocationAbsolute(new Vector3D(80, 80, 80));
+        assertEquals(new HashSet<>(Arrays.asList("nodeE")),
+                this.indexedNodes.getNearestLocalisedNodes(new Vector3D(90, 90, 90), 1).keySet());
+    }
+
+    /**
+     * Test of getNodes method, of class IndexedNodes.
+     */
+    @Test
+    public void testGetNodes() {
+        // the nodes cannot be changed by the views (bypassing the index)
+        try {
+            this.indexedNodes.getNodes().keySet().remove("nodeB");
+            fail("The view of the nodes must be unmodifiable.");
+        }
+        catch (UnsupportedOperationException ex) {
+            assertTrue(this.indexedNodes.getSpatialIndex().contains("nodeB"));
+        }
+        try {
+            this.indexedNodes.getNodes().entrySet().iterator().next().setValue(this.mapOfNodes.get("node0"));
+            fail("The entries of the nodes must be unmodifiable.");
+        }
+        catch (UnsupportedOperationException ex) {
+            assertSame(this.mapOfNodes.get("nodeA"), this.indexedNodes.getNodes().get("nodeA"));
+        }
+        // the map is copied
+        this.mapOfNodes.remove("nodeB");
+        assertTrue(this.indexedNodes.getNodes().containsKey("nodeB"));
+    }
+
+    /**
+     * Test of close method, of class IndexedNodes.
+     */
+    @Test
+    public void testClose() {
+        SpatialIndex index = this.indexedNodes.getSpatialIndex();
+        this.indexedNodes.close();
+        // the closed index does not listen to the nodes
+        this.mapOfNodes.get("node0").getInfo().setLocationAbsolute(new Vector3D(100, 100, 100));
+        assertFalse(index.contains("node0"));
+        try {
+            this.indexedNodes.remove("nodeA");
+            fail("The closed nodes must not be changed.");
+        }
+        catch (IllegalStateException ex) {
+            assertTrue(index.contains("nodeA"));
+        }
+    }
+}
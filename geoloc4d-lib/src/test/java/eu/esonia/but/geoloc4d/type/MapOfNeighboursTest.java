@@ -0,0 +1,95 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for a map of neighbouring nodes.
+ *
+ * @author rychly
+ */
+public class MapOfNeighboursTest {
+
+    private MapOfNeighbours mapOfNeighbours;
+
+    public MapOfNeighboursTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        // corners of a square, its centre and a distant node (the corners and
+        // the centres are of the same isolations)
+        this.mapOfNeighbours = new MapOfNeighbours("["
+                + "{id:\"nodeA\", locationAbsolute:[0,0,0]},"
+                + "{id:\"nodeB\", locationAbsolute:[10,0,0]},"
+                + "{id:\"centre1\", locationAbsolute:[5,5,0]},"
+                + "{id:\"nodeC\", locationAbsolute:[10,10,0]},"
+                + "{id:\"distant\", locationAbsolute:[5,5,100]},"
+                + "{id:\"nodeD\", locationAbsolute:[0,10,0]},"
+                + "{id:\"centre2\", locationAbsolute:[5,5,0]}"
+                + "]");
+    }
+
+    @After
+    public void tearDown() {
+        this.mapOfNeighbours = null;
+    }
+
+    /**
+     * Sort IDs of the neighbours by their isolations by the previous
+     * implementation (a stable sort of boxed indexes by a comparator).
+     *
+     * @param reverseOrder true for reverse ordering
+     * @param exact true for the sums of distances
+     * @return the sorted IDs
+     */
+    private String[] sortByIsolationWithComparator(final boolean reverseOrder, final boolean exact) {
+        String[] ids = this.mapOfNeighbours.keySet().toArray(new String[this.mapOfNeighbours.size()]);
+        double[] locations = new double[ids.length * Vector3DMath.SIZE];
+        for (int i = 0; i < ids.length; i++) {
+            this.mapOfNeighbours.get(ids[i]).getLocationAbsolute().copyTo(locations, i * Vector3DMath.SIZE);
+        }
+        final double[] isolations = new double[ids.length];
+        Vector3DMath.isolations(locations, ids.length, exact, isolations);
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(final Integer i1, final Integer i2) {
+                return reverseOrder ? Double.compare(isolations[i2], isolations[i1])
+                        : Double.compare(isolations[i1], isolations[i2]);
+            }
+        });
+        String[] result = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            result[i] = ids[order[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Test of sortByIsolation method, of class MapOfNeighbours.
+     */
+    @Test
+    public void testSortByIsolation() {
+        for (boolean reverseOrder : new boolean[]{false, true}) {
+            for (boolean exact : new boolean[]{true, false}) {
+                assertArrayEquals(this.sortByIsolationWithComparator(reverseOrder, exact),
+                        this.mapOfNeighbours.sortByIsolation(reverseOrder, exact).keySet().toArray(new String[0]));
+            }
+        }
+        // the nodes of the same isolations keep their order
+        assertArrayEquals(new String[]{"centre1", "centre2", "nodeA", "nodeB", "nodeC", "nodeD", "distant"},
+                this.mapOfNeighbours.sortByIsolation(false, true).keySet().toArray(new String[0]));
+        assertArrayEquals(new String[]{"distant", "nodeA", "nodeB", "nodeC", "nodeD", "centre1", "centre2"},
+                this.mapOfNeighbours.sortByIsolation(true, true).keySet().toArray(new String[0]));
+    }
+}
@@ -0,0 +1,100 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of classes for streaming reader and writer of nodes.
+ *
+ * @author rychly
+ */
+public class NodeReaderTest {
+
+    private MapOfNodes mapOfNodes;
+
+    public NodeReaderTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.mapOfNodes = new MapOfNodes("["
+                + "{info:{id:\"nodeA\", locationAbsolute:[10,0,0]}, scan:[]},"
+                + "{info:{id:\"node0\", ip:\"1.2.3.4\"}, scan:["
+                + "{id:\"nodeA\", rssi:-70, rtt:0.025},"
+                + "{id:\"nodeB\", distance:10, locationRelative:[0,20,0]}]}"
+                + "]");
+    }
+
+    @After
+    public void tearDown() {
+        this.mapOfNodes = null;
+    }
+
+    /**
+     * Test of saveNodes and loadNodes methods, of class MapOfNodes.
+     *
+     * @throws IOException assertion failed with the exception
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testSaveAndLoadNodes() throws IOException, JSONException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.mapOfNodes.saveNodes(output);
+        assertEquals(this.mapOfNodes.toJSONString(), output.toString());
+        MapOfNodes result = MapOfNodes.loadNodes(new ByteArrayInputStream(output.toByteArray()));
+        assertEquals(this.mapOfNodes.toJSONString(), result.toJSONString());
+    }
+
+    /**
+     * Test of next method with replacement of IDs, of class NodeReader.
+     *
+     * @throws IOException assertion failed with the exception
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testNextWithIDReplacement() throws IOException, JSONException {
+        try (NodeReader nodeReader = new NodeReader(new StringReader(this.mapOfNodes.toString()), "http://host/%/geoloc4d")) {
+            assertTrue(nodeReader.hasNext());
+            assertEquals("http://host/nodeA/geoloc4d", nodeReader.next().getInfo().getID());
+            Node node = nodeReader.next();
+            assertEquals("http://host/node0/geoloc4d", node.getInfo().getID());
+            assertTrue(node.getScan().containsKey("http://host/nodeB/geoloc4d"));
+            assertFalse(nodeReader.hasNext());
+        }
+    }
+
+    /**
+     * Test of readAll method for a store of nodes, of class NodeReader.
+     *
+     * @throws IOException assertion failed with the exception
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testReadAllIntoNodeStore() throws IOException, JSONException {
+        try (NodeReader nodeReader = new NodeReader(new StringReader(this.mapOfNodes.toJSONString()))) {
+            NodeStore nodeStore = nodeReader.readAll(new NodeStore());
+            assertEquals(2, nodeStore.nodeCount());
+            assertEquals(this.mapOfNodes.toJSONString(), nodeStore.toMapOfNodes().toJSONString());
+        }
+    }
+
+    /**
+     * Test of next method for an invalid representation, of class
+     * NodeReader.
+     *
+     * @throws JSONException the expected exception
+     */
+    @Test(expected = JSONException.class)
+    public void testNextInvalid() throws JSONException {
+        NodeReader nodeReader = new NodeReader(new StringReader("[{info:{id:\"nodeA\"}, scan:[]} {}]"));
+        nodeReader.next();
+        nodeReader.next();
+    }
+}
@@ -0,0 +1,86 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of classes for binary snapshots of nodes.
+ *
+ * @author rychly
+ */
+public class NodeSnapshotTest {
+
+    private MapOfNodes mapOfNodes;
+    private File file;
+
+    public NodeSnapshotTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException, IOException {
+        this.mapOfNodes = new MapOfNodes("["
+                + "{info:{id:\"nodeA\", locationAbsolute:[10,0,0]}, scan:[]},"
+                + "{info:{id:\"node0\", ip:\"1.2.3.4\"}, scan:["
+                + "{id:\"nodeA\", rssi:-70, rtt:0.025, locationAbsolute:[10,0,0]},"
+                + "{id:\"nodeB\", ip:\"1.2.3.5\", distance:10, locationRelative:[0,20,0]}]}"
+                + "]");
+        this.file = File.createTempFile("geoloc4d", ".snapshot");
+        NodeSnapshotWriter.write(this.mapOfNodes, this.file.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        this.file.delete();
+        this.mapOfNodes = null;
+    }
+
+    /**
+     * Test of open method and accessors, of class NodeSnapshot.
+     *
+     * @throws IOException assertion failed with the exception
+     */
+    @Test
+    public void testOpen() throws IOException {
+        assertTrue(NodeSnapshot.isSnapshot(this.file.getPath()));
+        NodeSnapshot snapshot = NodeSnapshot.open(this.file.getPath());
+        assertEquals(2, snapshot.size());
+        assertEquals(2, snapshot.linkCount());
+        assertEquals("node0", snapshot.getID(1));
+        assertEquals(1, snapshot.indexOf("node0"));
+        assertEquals(-1, snapshot.indexOf("nodeB"));
+        assertEquals(this.mapOfNodes.get("node0").toJSONString(), snapshot.getNode(1).toJSONString());
+        assertEquals(this.mapOfNodes.toJSONString(), snapshot.toMapOfNodes().toJSONString());
+        assertEquals(this.mapOfNodes.toJSONString(), snapshot.toNodeStore().toMapOfNodes().toJSONString());
+    }
+
+    /**
+     * Test of loadNodes method for a snapshot with replacement of IDs, of
+     * class MapOfNodes.
+     *
+     * @throws IOException assertion failed with the exception
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testLoadNodesWithIDReplacement() throws IOException, JSONException {
+        MapOfNodes result = MapOfNodes.loadNodes(this.file.getPath(), "http://host/%/geoloc4d");
+        assertEquals(2, result.size());
+        assertTrue(result.get("http://host/node0/geoloc4d").getScan().containsKey("http://host/nodeB/geoloc4d"));
+        assertEquals("1.2.3.5", result.get("http://host/node0/geoloc4d").getScan().get("http://host/nodeB/geoloc4d").getIP());
+    }
+
+    /**
+     * Test of constructor for an invalid content, of class NodeSnapshot.
+     *
+     * @throws IOException the expected exception
+     */
+    @Test(expected = IOException.class)
+    public void testInvalid() throws IOException {
+        new NodeSnapshot(ByteBuffer.wrap("[{info:{id:\"nodeA\"}, scan:[]}]".getBytes()), null);
+    }
+}
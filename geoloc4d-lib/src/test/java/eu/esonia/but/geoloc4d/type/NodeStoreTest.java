@@ -0,0 +1,79 @@
+package eu.esonia.but.geoloc4d.type;
+
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for columnar store of nodes.
+ *
+ * @author rychly
+ */
+public class NodeStoreTest {
+
+    private MapOfNodes mapOfNodes;
+    private NodeStore nodeStore;
+
+    public NodeStoreTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.mapOfNodes = new MapOfNodes("["
+                + "{info:{id:\"nodeA\", locationAbsolute:[10,0,0]}, scan:[]},"
+                + "{info:{id:\"node0\", ip:\"1.2.3.4\"}, scan:["
+                + "{id:\"nodeA\", rssi:-70, rtt:0.025},"
+                + "{id:\"nodeB\", rssi:-79, locationRelative:[0,20,0]},"
+                + "{id:\"nodeC\", distance:10, locationAbsolute:[0,0,10]}]},"
+                + "{info:{id:\"nodeB\", locationAbsolute:[0,20,0]}, scan:[{id:\"node0\", rtt:0.05}]}"
+                + "]");
+        this.nodeStore = new NodeStore(this.mapOfNodes);
+    }
+
+    @After
+    public void tearDown() {
+        this.mapOfNodes = null;
+        this.nodeStore = null;
+    }
+
+    /**
+     * Test of toMapOfNodes method, of class NodeStore.
+     */
+    @Test
+    public void testToMapOfNodes() {
+        assertEquals(this.mapOfNodes.toJSONString(), this.nodeStore.toMapOfNodes().toJSONString());
+    }
+
+    /**
+     * Test of links of a node, of class NodeStore.
+     */
+    @Test
+    public void testLinks() {
+        assertEquals(3, this.nodeStore.nodeCount());
+        assertEquals(4, this.nodeStore.size());
+        int node0 = this.nodeStore.indexOf("node0");
+        assertEquals(3, this.nodeStore.getLinkCount(node0));
+        int link = this.nodeStore.getLinkStart(node0);
+        assertEquals("nodeA", this.nodeStore.getID(this.nodeStore.getLinkTarget(link)));
+        assertTrue(this.nodeStore.hasLink(link, (byte) ( NodeStore.LINK_RSSI | NodeStore.LINK_RTT )));
+        assertFalse(this.nodeStore.hasLink(link, NodeStore.LINK_DISTANCE));
+        assertEquals(-70, this.nodeStore.getLinkRssi(link));
+        assertFalse(this.nodeStore.isNode(this.nodeStore.indexOf("nodeC")));
+    }
+
+    /**
+     * Test of getLinkLocationAbsolute method, of class NodeStore.
+     */
+    @Test
+    public void testGetLinkLocationAbsolute() {
+        int node0 = this.nodeStore.indexOf("node0");
+        double[] location = new double[Vector3DMath.SIZE];
+        for (int link = this.nodeStore.getLinkStart(node0); link < this.nodeStore.getLinkEnd(node0); link++) {
+            assertTrue(this.nodeStore.getLinkLocationAbsolute(node0, link, location, 0));
+        }
+        assertEquals(new Vector3D(0, 0, 10), Vector3DMath.toVector3D(location, 0));
+        assertTrue(Double.isNaN(this.nodeStore.getLinkDistanceOrLocation(node0, this.nodeStore.getLinkStart(node0))));
+    }
+}
@@ -0,0 +1,105 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.util.Map;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class SharedNode.
+ *
+ * @author rychly
+ */
+public class SharedNodeTest {
+
+    private MapOfNodes mapOfNodes;
+    private Map<String, SharedNode> sharedNodes;
+
+    public SharedNodeTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.mapOfNodes = new MapOfNodes("["
+                + "{info:{id:\"nodeA\", locationAbsolute:[10,0,0]}, scan:[]},"
+                + "{info:{id:\"node0\", ip:\"1.2.3.4\"}, scan:["
+                + "{id:\"nodeA\", rssi:-70, locationAbsolute:[10,0,0]}]}"
+                + "]");
+        this.sharedNodes = SharedNode.share(this.mapOfNodes);
+    }
+
+    @After
+    public void tearDown() {
+        this.mapOfNodes = null;
+        this.sharedNodes = null;
+    }
+
+    /**
+     * Test of setLocationAbsolute method, of class SharedNode.
+     */
+    @Test
+    public void testSetLocationAbsolute() {
+        IndexedNodes indexedNodes = new IndexedNodes(this.mapOfNodes);
+        SharedNode sharedNode = this.sharedNodes.get("node0");
+        SharedNode.Snapshot previous = sharedNode.getSnapshot();
+        assertEquals(this.mapOfNodes.get("node0").toJSONString(), previous.toJSONString());
+        assertEquals("null", previous.getLocationAbsoluteJSONString());
+        assertNull(previous.getLocationEstimateJSONString());
+        Vector3D location = new Vector3D(1, 2, 3);
+        SharedNode.Snapshot next = sharedNode.setLocationAbsolute(location);
+        // the location is copied, so its changes are not visible in the snapshot
+        location.setX(100);
+        assertSame(next, sharedNode.getSnapshot());
+        assertEquals(previous.getVersion() + 1, next.getVersion());
+        assertTrue(next.getModificationTime() > previous.getModificationTime());
+        assertEquals(new Vector3D(1, 2, 3), next.getNode().getInfo().getLocationAbsolute());
+        assertEquals(new Vector3D(1, 2, 3).toJSONString(), next.getLocationAbsoluteJSONString());
+        assertEquals(previous.getScanJSONString(), next.getScanJSONString());
+        // the previous snapshot is not changed
+        assertEquals("null", previous.getLocationAbsoluteJSONString());
+        assertFalse(previous.getNode().getInfo().isAbsolutelyLocalised());
+        // the hosted node is changed too
+        assertEquals(new Vector3D(1, 2, 3), this.mapOfNodes.get("node0").getInfo().getLocationAbsolute());
+        assertEquals(this.mapOfNodes.get("node0").toJSONString(), next.toJSONString());
+        assertEquals(1, indexedNodes.getNearestLocalisedNodes(new Vector3D(0, 0, 0), 1).size());
+        assertTrue(indexedNodes.getNearestLocalisedNodes(new Vector3D(0, 0, 0), 1).containsKey("node0"));
+        indexedNodes.close();
+    }
+
+    /**
+     * Test of getSnapshot method with concurrent writers, of class SharedNode.
+     *
+     * @throws InterruptedException assertion failed with the exception
+     */
+    @Test
+    public void testGetSnapshotConcurrently() throws InterruptedException {
+        final SharedNode sharedNode = this.sharedNodes.get("nodeA");
+        final int writes = 1000;
+        Thread writer = new Thread() {
+
+            @Override
+            public void run() {
+                for (int i = 1; i <= writes; i++) {
+                    sharedNode.setLocationAbsolute(new Vector3D(i, i, i));
+                }
+            }
+        };
+        writer.start();
+        long version = 0;
+        while (version < writes) {
+            SharedNode.Snapshot snapshot = sharedNode.getSnapshot();
+            assertTrue(snapshot.getVersion() >= version);
+            version = snapshot.getVersion();
+            // all the coordinates and the representation are of the same version
+            double coordinate = ( version == 0 ) ? 10 : version;
+            Vector3D location = snapshot.getNode().getInfo().getLocationAbsolute();
+            assertEquals(coordinate, location.getX(), 0);
+            assertEquals(( version == 0 ) ? 0 : coordinate, location.getY(), 0);
+            assertEquals(location.toJSONString(), snapshot.getLocationAbsoluteJSONString());
+        }
+        writer.join();
+        assertEquals(writes, sharedNode.getSnapshot().getVersion());
+    }
+}
@@ -0,0 +1,89 @@
+package eu.esonia.but.geoloc4d.type;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for spatial index of localised nodes.
+ *
+ * @author rychly
+ */
+public class SpatialIndexTest {
+
+    private MapOfNodes mapOfNodes;
+
+    public SpatialIndexTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.mapOfNodes = new MapOfNodes("["
+                + "{info:{id:\"nodeA\", locationAbsolute:[0,0,0]}, scan:[]},"
+                + "{info:{id:\"nodeB\", locationAbsolute:[10,0,0]}, scan:[]},"
+                + "{info:{id:\"nodeC\", locationAbsolute:[0,20,0]}, scan:[]},"
+                + "{info:{id:\"nodeD\", locationAbsolute:[-30,0,-30]}, scan:[]},"
+                + "{info:{id:\"node0\"}, scan:[]}"
+                + "]");
+    }
+
+    @After
+    public void tearDown() {
+        this.mapOfNodes = null;
+    }
+
+    /**
+     * Test of getNearest method, of class SpatialIndex.
+     */
+    @Test
+    public void testGetNearest() {
+        SpatialIndex index = new SpatialIndex(this.mapOfNodes);
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("nodeB", "nodeA", "nodeC"), index.getNearest(new Vector3D(9, 1, 0), 3));
+        assertEquals(Arrays.asList("nodeD", "nodeA", "nodeC", "nodeB"), index.getNearest(new Vector3D(-100, 0, -100), 10));
+        // the points far outside of the grid do not walk through the empty cells
+        assertEquals(Arrays.asList("nodeB"), index.getNearest(new Vector3D(1e9, 0, 0), 1));
+        assertEquals(Arrays.asList("nodeD"), index.getNearest(new Vector3D(-1e300, 0, -1e300), 1));
+        assertTrue(index.getNearest(new Vector3D(9, 1, 0), 0).isEmpty());
+        assertTrue(index.getNearest(new Vector3D(9, 1, 0), -1).isEmpty());
+    }
+
+    /**
+     * Test of getWithinRadius and getWithinBox methods, of class SpatialIndex.
+     */
+    @Test
+    public void testGetWithinRadiusAndBox() {
+        SpatialIndex index = new SpatialIndex(this.mapOfNodes);
+        assertEquals(new HashSet<>(Arrays.asList("nodeA", "nodeB")),
+                new HashSet<>(index.getWithinRadius(new Vector3D(5, 0, 0), 5)));
+        assertEquals(new HashSet<>(Arrays.asList("nodeA", "nodeC")),
+                new HashSet<>(index.getWithinBox(new Vector3D(-1, -1, -1), new Vector3D(1, 25, 1))));
+    }
+
+    /**
+     * Test of the adaptive size of cells, of class SpatialIndex.
+     */
+    @Test
+    public void testAdaptiveCellSize() {
+        SpatialIndex index = new SpatialIndex();
+        index.put("node0", new Vector3D(0, 0, 0));
+        assertEquals(1, index.getCellSize(), 0);
+        for (int i = 1; i < 1000; i++) {
+            index.put("node" + i, new Vector3D(i % 10 * 100, i / 10 % 10 * 100, i / 100 * 100));
+        }
+        // about one node per cell of 1000 nodes in a cube of 900 meters
+        assertTrue(( index.getCellSize() > 45 ) && ( index.getCellSize() < 180 ));
+        assertEquals(Arrays.asList("node999", "node998"), index.getNearest(new Vector3D(1000, 1000, 1000), 2));
+        assertEquals(new HashSet<>(Arrays.asList("node0", "node1")),
+                new HashSet<>(index.getWithinRadius(new Vector3D(50, 0, 0), 50)));
+        for (int i = 10; i < 1000; i++) {
+            index.remove("node" + i);
+        }
+        assertTrue(index.getCellSize() > 180);
+        assertEquals(Arrays.asList("node9"), index.getNearest(new Vector3D(1000, 1000, 1000), 1));
+    }
+}
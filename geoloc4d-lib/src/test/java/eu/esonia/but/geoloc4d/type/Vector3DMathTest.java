@@ -0,0 +1,64 @@
+package eu.esonia.but.geoloc4d.type;
+
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for algebraical operations on vectors in 3D stored as
+ * primitive coordinates.
+ *
+ * @author rychly
+ */
+public class Vector3DMathTest {
+
+    private Vector3D vectorA, vectorB;
+    private double[] vectors;
+
+    public Vector3DMathTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.vectorA = new Vector3D(1.2, 3.4, 5.6);
+        this.vectorB = new Vector3D(7.8, 9.0, 1.2);
+        this.vectors = new double[3 * Vector3DMath.SIZE];
+        this.vectorA.copyTo(this.vectors, 0);
+        this.vectorB.copyTo(this.vectors, Vector3DMath.SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        this.vectorA = null;
+        this.vectorB = null;
+        this.vectors = null;
+    }
+
+    /**
+     * Test of sub method, of class Vector3DMath.
+     */
+    @Test
+    public void testSub() {
+        Vector3DMath.sub(this.vectors, 0, this.vectors, Vector3DMath.SIZE, this.vectors, 2 * Vector3DMath.SIZE);
+        assertEquals(this.vectorA.sub(this.vectorB), Vector3DMath.toVector3D(this.vectors, 2 * Vector3DMath.SIZE));
+    }
+
+    /**
+     * Test of cross method, of class Vector3DMath.
+     */
+    @Test
+    public void testCross() {
+        Vector3DMath.cross(this.vectors, 0, this.vectors, Vector3DMath.SIZE, this.vectors, 2 * Vector3DMath.SIZE);
+        assertEquals(this.vectorA.cross(this.vectorB), Vector3DMath.toVector3D(this.vectors, 2 * Vector3DMath.SIZE));
+    }
+
+    /**
+     * Test of distance method, of class Vector3DMath.
+     */
+    @Test
+    public void testDistance() {
+        assertEquals(this.vectorA.distance(this.vectorB),
+                Vector3DMath.distance(this.vectors, 0, this.vectors, Vector3DMath.SIZE), 1e-12);
+    }
+}
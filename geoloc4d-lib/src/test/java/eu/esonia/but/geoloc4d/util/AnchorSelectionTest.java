@@ -0,0 +1,108 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for selection of anchors with the best geometry.
+ *
+ * @author rychly
+ */
+public class AnchorSelectionTest {
+
+    private double[] node0;
+    private double[] anchors;
+    private double[] distances;
+    private int[] indexes;
+    private int count;
+
+    public AnchorSelectionTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.node0 = new double[]{1, 2, 3};
+        // the first anchors are nearly coplanar, the last ones are above and below the plane
+        this.anchors = new double[]{
+            10, 0, 0,
+            0, 10, 0.1,
+            -10, 0, 0,
+            0, -10, -0.1,
+            7, 7, 0,
+            -7, -7, 0.1,
+            0, 0, 15,
+            2, 1, -12};
+        this.count = this.anchors.length / Vector3DMath.SIZE;
+        this.distances = new double[this.count];
+        this.indexes = new int[this.count];
+        for (int i = 0; i < this.count; i++) {
+            this.distances[i] = Vector3DMath.distance(this.node0, 0, this.anchors, i * Vector3DMath.SIZE);
+            this.indexes[i] = i;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        this.node0 = null;
+        this.anchors = null;
+        this.distances = null;
+        this.indexes = null;
+    }
+
+    /**
+     * Test of select method, of class AnchorSelection.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testSelect() throws WirelessMetricException {
+        double gdop = AnchorSelection.getDilutionOfPrecision(this.anchors, 4, this.node0, 0);
+        AnchorSelection selection = new AnchorSelection();
+        assertEquals(4, selection.select(this.anchors, this.distances, this.indexes, this.count));
+        // the first anchor is kept and the anchors off the plane are selected
+        assertEquals(0, this.indexes[0]);
+        boolean above = false, below = false;
+        for (int i = 0; i < 4; i++) {
+            above |= ( this.indexes[i] == 6 );
+            below |= ( this.indexes[i] == 7 );
+            // the arrays are reordered consistently
+            assertEquals(Vector3DMath.distance(this.node0, 0, this.anchors, i * Vector3DMath.SIZE), this.distances[i], 1e-9);
+        }
+        assertTrue(above || below);
+        assertTrue(AnchorSelection.getDilutionOfPrecision(this.anchors, 4, this.node0, 0) < gdop);
+        // the trilateration from the selected anchors
+        double[] location = new double[Vector3DMath.SIZE];
+        WirelessMetric.trilateration3D(this.anchors, this.distances, 0, 1, 2, 3,
+                new double[WirelessMetric.TRILATERATION3D_WORKSPACE], location, 0);
+        assertEquals(0, Vector3DMath.distance(this.node0, 0, location, 0), 1e-6);
+    }
+
+    /**
+     * Test of select method with not more anchors than needed, of class
+     * AnchorSelection.
+     */
+    @Test
+    public void testSelectAll() {
+        AnchorSelection selection = new AnchorSelection(this.count);
+        assertEquals(this.count, selection.select(this.anchors, this.distances, this.indexes, this.count));
+        for (int i = 0; i < this.count; i++) {
+            assertEquals(i, this.indexes[i]);
+        }
+    }
+
+    /**
+     * Test of getDilutionOfPrecision method, of class AnchorSelection.
+     */
+    @Test
+    public void testGetDilutionOfPrecision() {
+        // four anchors in a plane with the blind node
+        double[] coplanar = new double[]{10, 0, 0, 0, 10, 0, -10, 0, 0, 0, -10, 0};
+        assertTrue(Double.isInfinite(AnchorSelection.getDilutionOfPrecision(coplanar, 4, new double[]{0, 0, 0}, 0)));
+        // orthogonal anchors
+        double[] orthogonal = new double[]{10, 0, 0, 0, 10, 0, 0, 0, 10};
+        assertEquals(Math.sqrt(3), AnchorSelection.getDilutionOfPrecision(orthogonal, 3, new double[]{0, 0, 0}, 0), 1e-9);
+    }
+}
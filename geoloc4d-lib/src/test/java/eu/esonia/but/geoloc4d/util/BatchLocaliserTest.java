@@ -0,0 +1,115 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.NodeStore;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.Map;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for parallel localisation of all nodes.
+ *
+ * @author rychly
+ */
+public class BatchLocaliserTest {
+
+    private static final double CORRECTION_FACTOR = 100;
+    private static final String[] ANCHORS = new String[]{"nodeA", "nodeB", "nodeC", "nodeD"};
+    private static final Vector3D[] ANCHOR_LOCATIONS = new Vector3D[]{
+        new Vector3D(10, 0, 0), new Vector3D(0, 20, 0), new Vector3D(0, 0, 10), new Vector3D(20, 0, 0)};
+    private Vector3D node0, node1;
+    private MapOfNodes mapOfNodes;
+
+    public BatchLocaliserTest() {
+    }
+
+    /**
+     * Scan of a node with RTT to given number of the anchors.
+     */
+    private static String scan(final Vector3D location, final int anchors) {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < anchors; i++) {
+            if (!ANCHOR_LOCATIONS[i].equals(location)) {
+                result.append("{id:\"").append(ANCHORS[i]).append("\", rtt:")
+                        .append(location.distance(ANCHOR_LOCATIONS[i]) / CORRECTION_FACTOR).append("},");
+            }
+        }
+        return result.append("]").toString();
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.node0 = new Vector3D(1, 2, 3);
+        this.node1 = new Vector3D(5, 5, 5);
+        StringBuilder representation = new StringBuilder("[");
+        for (int i = 0; i < ANCHORS.length; i++) {
+            representation.append("{info:{id:\"").append(ANCHORS[i]).append("\", locationAbsolute:")
+                    .append(ANCHOR_LOCATIONS[i].toJSONString()).append("}, scan:")
+                    .append(scan(ANCHOR_LOCATIONS[i], ANCHORS.length)).append("},");
+        }
+        representation.append("{info:{id:\"node0\"}, scan:").append(scan(this.node0, 4)).append("},");
+        representation.append("{info:{id:\"node1\"}, scan:").append(scan(this.node1, 4)).append("},");
+        representation.append("{info:{id:\"node2\"}, scan:").append(scan(this.node1, 3)).append("}]");
+        this.mapOfNodes = new MapOfNodes(representation.toString());
+    }
+
+    @After
+    public void tearDown() {
+        this.node0 = null;
+        this.node1 = null;
+        this.mapOfNodes = null;
+    }
+
+    /**
+     * Test of localise method for a map of nodes, of class BatchLocaliser.
+     *
+     * @throws TrilaterationStrategyException assertion failed with the
+     * exception
+     */
+    @Test
+    public void testLocaliseMapOfNodes() throws TrilaterationStrategyException {
+        TrilaterationStrategy strategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        strategy.calibrateMetric(this.mapOfNodes);
+        Map<String, BatchLocaliser.NodeResult> results = new BatchLocaliser(strategy).localise(this.mapOfNodes);
+        assertEquals(7, results.size());
+        assertEquals(BatchLocaliser.Status.ALREADY_LOCALISED, results.get("nodeA").getStatus());
+        assertEquals(BatchLocaliser.Status.LOCALISED, results.get("node0").getStatus());
+        assertEquals(0, this.node0.distance(results.get("node0").getLocation()), 1e-6);
+        assertEquals(0, this.node1.distance(this.mapOfNodes.get("node1").getInfo().getLocationAbsolute()), 1e-6);
+        assertEquals(BatchLocaliser.Status.FAILED, results.get("node2").getStatus());
+        assertFalse(this.mapOfNodes.get("node2").getInfo().isAbsolutelyLocalised());
+    }
+
+    /**
+     * Test of localise method for a store of nodes, of class BatchLocaliser.
+     *
+     * @throws TrilaterationStrategyException assertion failed with the
+     * exception
+     */
+    @Test
+    public void testLocaliseNodeStore() throws TrilaterationStrategyException {
+        NodeStore nodeStore = new NodeStore(this.mapOfNodes);
+        TrilaterationStrategy strategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        strategy.calibrateMetric(nodeStore);
+        Map<String, BatchLocaliser.NodeResult> results = new BatchLocaliser(strategy).localise(nodeStore);
+        assertEquals(BatchLocaliser.Status.LOCALISED, results.get("node1").getStatus());
+        assertEquals(0, this.node1.distance(results.get("node1").getLocation()), 1e-6);
+        assertTrue(nodeStore.isAbsolutelyLocalised(nodeStore.indexOf("node0")));
+        assertEquals(BatchLocaliser.Status.FAILED, results.get("node2").getStatus());
+    }
+
+    /**
+     * Test of localise method with uncalibrated strategy, of class
+     * BatchLocaliser.
+     *
+     * @throws TrilaterationStrategyException the expected exception
+     */
+    @Test(expected = TrilaterationStrategyException.class)
+    public void testLocaliseUncalibrated() throws TrilaterationStrategyException {
+        new BatchLocaliser(TrilaterationStrategyFactory.newStrategyWithRTT()).localise(this.mapOfNodes);
+    }
+}
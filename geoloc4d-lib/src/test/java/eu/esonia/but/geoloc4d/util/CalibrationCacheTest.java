@@ -0,0 +1,114 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for cache of local models of a calibrated metric.
+ *
+ * @author rychly
+ */
+public class CalibrationCacheTest {
+
+    private static final CalibrationCache.Fitting<Double> MEAN = new CalibrationCache.Fitting<Double>() {
+
+        @Override
+        public Double fit(final RunningRegression observations) {
+            return observations.getMeanY();
+        }
+    };
+    private CalibrationCache<Double> cache;
+
+    public CalibrationCacheTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.cache = new CalibrationCache<>(3, 100);
+    }
+
+    @After
+    public void tearDown() {
+        this.cache = null;
+    }
+
+    /**
+     * Test of get method, of class CalibrationCache.
+     */
+    @Test
+    public void testGet() {
+        this.cache.putAnchorModel("nodeA", 1.0);
+        this.cache.putCellModel(new Vector3D(10, 10, 10), 2.0);
+        // the model of the anchor, then the model of its cell, then none
+        assertEquals(1.0, this.cache.get("nodeA", new Vector3D(10, 10, 10)), 0);
+        assertEquals(2.0, this.cache.get("nodeB", new Vector3D(90, 50, 0)), 0);
+        assertEquals(2.0, this.cache.get("nodeB", new double[]{0, 0, 0, 90, 50, 0}, 3), 0);
+        assertNull(this.cache.get("nodeB", new Vector3D(110, 50, 0)));
+        assertNull(this.cache.get("nodeB", null));
+    }
+
+    /**
+     * Test of eviction of the least recently used models, of class
+     * CalibrationCache.
+     */
+    @Test
+    public void testEviction() {
+        this.cache.putAnchorModel("nodeA", 1.0);
+        this.cache.putAnchorModel("nodeB", 2.0);
+        this.cache.putAnchorModel("nodeC", 3.0);
+        // the earliest put model has been used recently
+        assertEquals(1.0, this.cache.get("nodeA", null), 0);
+        this.cache.putAnchorModel("nodeD", 4.0);
+        assertEquals(3, this.cache.size());
+        assertNull(this.cache.getAnchorModel("nodeB"));
+        assertEquals(1.0, this.cache.getAnchorModel("nodeA"), 0);
+        // the models put again are more recent than the model used before
+        this.cache.putAnchorModel("nodeD", 5.0);
+        this.cache.putAnchorModel("nodeC", 6.0);
+        this.cache.putAnchorModel("nodeE", 7.0);
+        assertEquals(3, this.cache.size());
+        assertNull(this.cache.getAnchorModel("nodeA"));
+        assertEquals(5.0, this.cache.getAnchorModel("nodeD"), 0);
+        assertEquals(6.0, this.cache.getAnchorModel("nodeC"), 0);
+    }
+
+    /**
+     * Test of update method, of class CalibrationCache.
+     */
+    @Test
+    public void testUpdate() {
+        CalibrationCache<Double>.Observations observations = this.cache.newObservations();
+        observations.add("nodeA", new Vector3D(10, 10, 10), 0, 1);
+        observations.add("nodeA", new Vector3D(10, 10, 10), 0, 3);
+        observations.add("nodeB", new Vector3D(20, 20, 20), 0, 5);
+        observations.add("nodeC", (Vector3D) null, 0, 7);
+        assertEquals(3, this.cache.update(observations, MEAN));
+        // the models from the most observations are cached, i.e. of the cell and nodeA
+        assertEquals(3.0, this.cache.getCellModel(new Vector3D(0, 0, 0)), 0);
+        assertEquals(2.0, this.cache.getAnchorModel("nodeA"), 0);
+        assertEquals(1, ( this.cache.getAnchorModel("nodeB") == null ? 0 : 1 )
+                + ( this.cache.getAnchorModel("nodeC") == null ? 0 : 1 ));
+    }
+
+    /**
+     * Test of the bounded number of running statistics of observations, of
+     * class CalibrationCache.
+     */
+    @Test
+    public void testObservationsBound() {
+        CalibrationCache<Double>.Observations observations = this.cache.newObservations();
+        for (int i = 0; i < 10; i++) {
+            observations.add("nodeA", (Vector3D) null, 0, 1);
+        }
+        for (int i = 0; i < 1000; i++) {
+            observations.add("node" + i, (Vector3D) null, 0, 2);
+            assertTrue(observations.size() <= 2 * this.cache.getCapacity());
+        }
+        // the statistics from the most observations are kept
+        assertEquals(3, this.cache.update(observations, MEAN));
+        assertEquals(1.0, this.cache.getAnchorModel("nodeA"), 0);
+    }
+}
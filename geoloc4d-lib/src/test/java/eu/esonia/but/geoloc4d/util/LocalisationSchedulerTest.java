@@ -0,0 +1,174 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for scheduling of rounds of calibration and localisation.
+ *
+ * @author rychly
+ */
+public class LocalisationSchedulerTest {
+
+    private static final double CORRECTION_FACTOR = 100;
+    private MapOfNodes network;
+    private LocalisationScheduler<String> scheduler;
+    private List<Map<String, BatchLocaliser.NodeResult>> rounds;
+
+    public LocalisationSchedulerTest() {
+    }
+
+    private static String neighbour(final String id, final Vector3D location, final Vector3D neighbourLocation) {
+        return "{id:\"" + id + "\", rtt:" + ( location.distance(neighbourLocation) / CORRECTION_FACTOR ) + "}";
+    }
+
+    private static String anchor(final String id, final Vector3D location) {
+        // the anchors have in their scans an anchor in the origin for calibration
+        return "{info:{id:\"" + id + "\", locationAbsolute:" + location.toJSONString() + "}, scan:["
+                + neighbour("nodeO", location, Vector3D.NULL) + "]}";
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        Vector3D nodeA = new Vector3D(10, 0, 0);
+        Vector3D nodeB = new Vector3D(0, 20, 0);
+        Vector3D nodeC = new Vector3D(0, 0, 10);
+        Vector3D nodeD = new Vector3D(20, 0, 0);
+        Vector3D node0 = new Vector3D(1, 2, 3);
+        Vector3D node1 = new Vector3D(5, 5, 5);
+        this.network = new MapOfNodes("["
+                + anchor("nodeA", nodeA) + ","
+                + anchor("nodeB", nodeB) + ","
+                + anchor("nodeC", nodeC) + ","
+                + anchor("nodeD", nodeD) + ","
+                + "{info:{id:\"nodeO\", locationAbsolute:[0,0,0]}, scan:[]},"
+                + "{info:{id:\"node1\"}, scan:["
+                + neighbour("nodeA", node1, nodeA) + ","
+                + neighbour("nodeB", node1, nodeB) + ","
+                + neighbour("nodeC", node1, nodeC) + ","
+                + neighbour("node0", node1, node0) + "]},"
+                + "{info:{id:\"node0\"}, scan:["
+                + neighbour("nodeA", node0, nodeA) + ","
+                + neighbour("nodeB", node0, nodeB) + ","
+                + neighbour("nodeC", node0, nodeC) + ","
+                + neighbour("nodeD", node0, nodeD) + "]},"
+                // node2 cannot be localised
+                + "{info:{id:\"node2\"}, scan:["
+                + neighbour("nodeA", node1, nodeA) + "]}"
+                + "]");
+        // the transport accesses copies of the nodes of the network
+        this.scheduler = new LocalisationScheduler<>(new LocalisationScheduler.Transport<String>() {
+
+            @Override
+            public GatheredNodes<String> gatherNodes() {
+                GatheredNodes<String> result = new GatheredNodes<>();
+                for (Node node : LocalisationSchedulerTest.this.network.values()) {
+                    result.putNode(node.getInfo().getID(), new Node(node.getInfo(), node.getScan()));
+                }
+                return result;
+            }
+
+            @Override
+            public Map<String, Exception> postLocationsAbsolute(final GatheredNodes<String> gatheredNodes,
+                    final Map<String, Vector3D> locations) {
+                for (Map.Entry<String, Vector3D> pair : locations.entrySet()) {
+                    LocalisationSchedulerTest.this.network.get(pair.getKey()).getInfo().setLocationAbsolute(pair.getValue());
+                }
+                return Collections.emptyMap();
+            }
+        }, TrilaterationStrategyFactory.newStrategyWithRTT());
+        this.rounds = new ArrayList<>();
+        this.scheduler.setListener(new LocalisationScheduler.Listener() {
+
+            @Override
+            public void calibrationFailed(final TrilaterationStrategyException ex) {
+                fail(ex.toString());
+            }
+
+            @Override
+            public void roundCompleted(final int round, final Map<String, BatchLocaliser.NodeResult> results,
+                    final Map<String, Exception> errors) {
+                assertEquals(LocalisationSchedulerTest.this.rounds.size() + 1, round);
+                assertTrue(errors.isEmpty());
+                LocalisationSchedulerTest.this.rounds.add(results);
+            }
+        });
+        this.scheduler.setDelays(1, 4);
+    }
+
+    @After
+    public void tearDown() {
+        this.network = null;
+        this.scheduler = null;
+        this.rounds = null;
+    }
+
+    /**
+     * Test of run method, of class LocalisationScheduler.
+     *
+     * @throws InterruptedException assertion failed with the exception
+     */
+    @Test
+    public void testRun() throws InterruptedException {
+        // node2 cannot be localised, so the localisation terminates after the idle timeout
+        this.scheduler.setIdleTimeout(50);
+        assertFalse(this.scheduler.run());
+        assertTrue(this.rounds.size() > 1);
+        assertArrayEquals(new String[]{"node1", "node0", "node2"},
+                this.rounds.get(0).keySet().toArray(new String[0]));
+        assertEquals(BatchLocaliser.Status.LOCALISED, this.rounds.get(0).get("node1").getStatus());
+        assertEquals(BatchLocaliser.Status.FAILED, this.rounds.get(0).get("node2").getStatus());
+        assertTrue(this.network.get("node1").getInfo().isAbsolutelyLocalised());
+        // the unchanged node2 is not processed again
+        for (int i = 1; i < this.rounds.size(); i++) {
+            assertTrue(this.rounds.get(i).isEmpty());
+        }
+    }
+
+    /**
+     * Test of run method of complete localisation, of class
+     * LocalisationScheduler.
+     *
+     * @throws InterruptedException assertion failed with the exception
+     */
+    @Test
+    public void testRunCompleted() throws InterruptedException {
+        this.network.remove("node2");
+        assertTrue(this.scheduler.run());
+        // both node0 and node1 are localised in the first round
+        assertEquals(1, this.rounds.size());
+        assertEquals(2, this.rounds.get(0).size());
+    }
+
+    /**
+     * Test of round method, of class LocalisationScheduler.
+     *
+     * @throws InterruptedException assertion failed with the exception
+     */
+    @Test
+    public void testRound() throws InterruptedException {
+        assertTrue(this.scheduler.calibrate());
+        assertEquals(LocalisationScheduler.Outcome.CHANGED, this.scheduler.round());
+        assertEquals(LocalisationScheduler.Outcome.UNCHANGED, this.scheduler.round());
+        // a changed scan of node2 which still cannot be localised is no progress
+        this.network.get("node2").getScan().put("nodeB", this.network.get("node0").getScan().get("nodeB"));
+        assertEquals(LocalisationScheduler.Outcome.UNCHANGED, this.scheduler.round());
+        assertEquals(BatchLocaliser.Status.FAILED, this.rounds.get(2).get("node2").getStatus());
+        // a new scan of node2 changes its inputs
+        this.network.get("node2").getScan().putAll(this.network.get("node0").getScan());
+        assertEquals(LocalisationScheduler.Outcome.COMPLETED, this.scheduler.round());
+        assertEquals(4, this.rounds.size());
+        assertEquals(1, this.rounds.get(3).size());
+        assertEquals(BatchLocaliser.Status.LOCALISED, this.rounds.get(3).get("node2").getStatus());
+    }
+}
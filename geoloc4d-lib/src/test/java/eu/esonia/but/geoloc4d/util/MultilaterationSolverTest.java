@@ -0,0 +1,137 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for multilateration from all anchors.
+ *
+ * @author rychly
+ */
+public class MultilaterationSolverTest {
+
+    private double[] node0;
+    private double[] anchors;
+    private double[] distances;
+    private int count;
+
+    public MultilaterationSolverTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.node0 = new double[]{1, 2, 3};
+        this.anchors = new double[]{
+            10, 0, 0,
+            0, 20, 0,
+            0, 0, 10,
+            20, 0, 0,
+            -10, -10, 5,
+            5, 15, -10};
+        this.count = this.anchors.length / Vector3DMath.SIZE;
+        this.distances = new double[this.count];
+        for (int i = 0; i < this.count; i++) {
+            this.distances[i] = Vector3DMath.distance(this.node0, 0, this.anchors, i * Vector3DMath.SIZE);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        this.node0 = null;
+        this.anchors = null;
+        this.distances = null;
+    }
+
+    /**
+     * Test of solve method, of class MultilaterationSolver.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testSolve() throws WirelessMetricException {
+        double[] location = new double[Vector3DMath.SIZE];
+        for (MultilaterationSolver.Refinement refinement : MultilaterationSolver.Refinement.values()) {
+            MultilaterationSolver solver = new MultilaterationSolver(refinement);
+            solver.solve(this.anchors, this.distances, this.count, location, 0);
+            assertEquals(0, Vector3DMath.distance(this.node0, 0, location, 0), 1e-6);
+            assertEquals(0, solver.getRootMeanSquareResidual(), 1e-6);
+        }
+    }
+
+    /**
+     * Test of solve method with noisy distances, of class
+     * MultilaterationSolver.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testSolveWithNoise() throws WirelessMetricException {
+        double[] noise = new double[]{0.5, -0.3, 0.2, -0.4, 0.1, 0.3};
+        for (int i = 0; i < this.count; i++) {
+            this.distances[i] += noise[i];
+        }
+        double[] location = new double[Vector3DMath.SIZE];
+        MultilaterationSolver linear = new MultilaterationSolver(MultilaterationSolver.Refinement.NONE);
+        linear.solve(this.anchors, this.distances, this.count, location, 0);
+        MultilaterationSolver refined = new MultilaterationSolver(MultilaterationSolver.Refinement.LEVENBERG_MARQUARDT);
+        refined.solve(this.anchors, this.distances, this.count, location, 0);
+        assertTrue(refined.getRootMeanSquareResidual() <= linear.getRootMeanSquareResidual());
+        assertEquals(0, Vector3DMath.distance(this.node0, 0, location, 0), 1);
+    }
+
+    /**
+     * Test of solve method with coplanar anchors, of class
+     * MultilaterationSolver.
+     *
+     * @throws WirelessMetricException the expected exception
+     */
+    @Test(expected = WirelessMetricException.class)
+    public void testSolveCoplanar() throws WirelessMetricException {
+        double[] coplanar = new double[]{0, 0, 0, 10, 0, 0, 0, 10, 0, 10, 10, 0};
+        new MultilaterationSolver().solve(coplanar, this.distances, 4, new double[Vector3DMath.SIZE], 0);
+    }
+
+    /**
+     * Test of estimateCovariance method, of class MultilaterationSolver.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testEstimateCovariance() throws WirelessMetricException {
+        double[] covariance = new double[9];
+        // exact distances, no residuals and no uncertainty
+        assertEquals(0, MultilaterationSolver.estimateCovariance(this.anchors, this.distances, this.count,
+                this.node0, 0, covariance), 1e-9);
+        for (double value : covariance) {
+            assertEquals(0, value, 1e-9);
+        }
+        // noisy distances
+        double[] noise = new double[]{0.5, -0.3, 0.2, -0.4, 0.1, 0.3};
+        for (int i = 0; i < this.count; i++) {
+            this.distances[i] += noise[i];
+        }
+        double[] location = new double[Vector3DMath.SIZE];
+        MultilaterationSolver solver = new MultilaterationSolver();
+        solver.solve(this.anchors, this.distances, this.count, location, 0);
+        double residual = MultilaterationSolver.estimateCovariance(this.anchors, this.distances, this.count,
+                location, 0, covariance);
+        assertEquals(solver.getRootMeanSquareResidual(), residual, 1e-6);
+        for (int i = 0; i < Vector3DMath.SIZE; i++) {
+            // positive variances and a symmetric matrix
+            assertTrue(covariance[i * Vector3DMath.SIZE + i] > 0);
+            for (int j = 0; j < i; j++) {
+                assertEquals(covariance[i * Vector3DMath.SIZE + j], covariance[j * Vector3DMath.SIZE + i], 1e-9);
+            }
+        }
+        // the error of the location should be within the confidence radius
+        double confidenceRadius = Math.sqrt(covariance[0] + covariance[4] + covariance[8]);
+        assertTrue(Vector3DMath.distance(this.node0, 0, location, 0) <= 3 * confidenceRadius);
+        // not enough anchors
+        MultilaterationSolver.estimateCovariance(this.anchors, this.distances, Vector3DMath.SIZE,
+                location, 0, covariance);
+        assertTrue(Double.isNaN(covariance[0]));
+    }
+}
@@ -0,0 +1,102 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
+import eu.esonia.but.geoloc4d.type.NeighbourProperties;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for lazy queries over neighbours.
+ *
+ * @author rychly
+ */
+public class NeighbourQueryTest {
+
+    private MapOfNeighbours neighbours;
+    private Vector3D reference;
+
+    public NeighbourQueryTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.neighbours = new MapOfNeighbours();
+        this.neighbours.put("nodeA", new NeighbourProperties("{id:\"nodeA\", locationAbsolute:[1,2,3], rssi:-40 }"));
+        this.neighbours.put("nodeB", new NeighbourProperties("{id:\"nodeB\", locationRelative:[1,2,3], rssi:-50 }"));
+        this.neighbours.put("nodeC", new NeighbourProperties("{id:\"nodeC\", distance:12 }"));
+        this.neighbours.put("nodeD", new NeighbourProperties("{id:\"nodeD\", locationAbsolute:[10,0,0], rtt:0.5 }"));
+        this.neighbours.put("nodeE", new NeighbourProperties("{id:\"nodeE\", locationAbsolute:[0,-5,1], rssi:-60, distance:3 }"));
+        this.reference = new Vector3D(1.0, 1.0, 1.0);
+    }
+
+    @After
+    public void tearDown() {
+        this.neighbours = null;
+        this.reference = null;
+    }
+
+    /**
+     * Test of evaluate method with derivation of locations, of class
+     * NeighbourQuery.
+     */
+    @Test
+    public void testWithLocation() {
+        for (boolean isSetRssi : new boolean[]{false, true}) {
+            NeighbourQuery query = new NeighbourQuery(this.neighbours).withLocation(this.reference);
+            if (isSetRssi) {
+                query.withRssi();
+            }
+            query.evaluate();
+            assertEquals(this.neighbours.getNodesWithLocation(this.reference, isSetRssi, false), query.toMapOfNeighbours());
+        }
+        // the original neighbours are not modified
+        assertNull(this.neighbours.get("nodeB").getLocationAbsolute());
+    }
+
+    /**
+     * Test of evaluate method with derivation of distances, of class
+     * NeighbourQuery.
+     */
+    @Test
+    public void testWithDistance() {
+        NeighbourQuery query = new NeighbourQuery(this.neighbours).withDistance(this.reference);
+        assertEquals(5, query.evaluate());
+        MapOfNeighbours expected = this.neighbours.getNodesWithDistance(this.reference);
+        assertEquals(expected, query.toMapOfNeighbours());
+        // ordered and limited
+        query.orderByDistance(true).limit(3).evaluate();
+        assertEquals(new ArrayList<>(expected.sortByDistance(true).keySet()).subList(0, 3),
+                Arrays.asList(query.getID(0), query.getID(1), query.getID(2)));
+        assertEquals(12, query.getDistances()[0], 0);
+        assertSame(this.neighbours.get("nodeC"), query.getNeighbour(0));
+    }
+
+    /**
+     * Test of evaluate method with a metric and ordering by isolation, of
+     * class NeighbourQuery.
+     */
+    @Test
+    public void testWithMetric() {
+        NeighbourQuery query = new NeighbourQuery(this.neighbours).withRssi().withLocation(null)
+                .withDistance(new NeighbourQuery.Metric() {
+
+            @Override
+            public double getDistance(final String id, final NeighbourProperties neighbour,
+                    final double[] locations, final int offset) {
+                return ( neighbour.getRssi() < -50 ) ? Double.NaN : -neighbour.getRssi();
+            }
+        }).orderByIsolation(false, true);
+        // nodeB has no absolute location and nodeE is skipped by the metric
+        assertEquals(1, query.evaluate());
+        assertEquals("nodeA", query.getID(0));
+        assertEquals(40, query.getDistances()[0], 0);
+        assertEquals(Double.valueOf(40), query.toMapOfNeighbours().get("nodeA").getDistance());
+        assertNull(this.neighbours.get("nodeA").getDistance());
+    }
+}
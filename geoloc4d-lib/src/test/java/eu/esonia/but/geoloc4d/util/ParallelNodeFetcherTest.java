@@ -0,0 +1,105 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Node;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for fetching nodes from many sources at once.
+ *
+ * @author rychly
+ */
+public class ParallelNodeFetcherTest {
+
+    private List<String> sources;
+    private ParallelNodeFetcher.Fetch<String> fetch;
+
+    public ParallelNodeFetcherTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.sources = Arrays.asList("nodeA", "dead", "nodeB", "slow", "nodeC");
+        this.fetch = new ParallelNodeFetcher.Fetch<String>() {
+
+            @Override
+            public Node fetch(final String source) throws Exception {
+                if (source.equals("dead")) {
+                    throw new IOException("Connection refused");
+                } else if (source.equals("slow")) {
+                    Thread.sleep(10000);
+                } else if (source.equals("empty")) {
+                    return null;
+                }
+                return new Node("{info:{id:\"" + source + "\"}, scan:[]}");
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        this.sources = null;
+        this.fetch = null;
+    }
+
+    /**
+     * Test of fetch method, of class ParallelNodeFetcher.
+     */
+    @Test
+    public void testFetch() {
+        GatheredNodes<String> result = new ParallelNodeFetcher(3, 500).fetch(this.sources, this.fetch);
+        assertFalse(result.isComplete());
+        assertArrayEquals(new String[]{"nodeA", "nodeB", "nodeC"},
+                result.getMapOfNodes().keySet().toArray(new String[0]));
+        assertEquals("nodeB", result.getSource("nodeB"));
+        assertEquals(2, result.getErrors().size());
+        assertTrue(result.getErrors().get("dead") instanceof IOException);
+        assertTrue(result.getErrors().get("slow") instanceof TimeoutException);
+    }
+
+    /**
+     * Test of fetch method without failures, of class ParallelNodeFetcher.
+     */
+    @Test
+    public void testFetchComplete() {
+        GatheredNodes<String> result = new ParallelNodeFetcher(1, 0).fetch(Arrays.asList("nodeA", "nodeB"), this.fetch);
+        assertTrue(result.isComplete());
+        assertEquals(2, result.getMapOfNodes().size());
+    }
+
+    /**
+     * Test of fetch method with a source returning no node, of class
+     * ParallelNodeFetcher.
+     */
+    @Test
+    public void testFetchNoNode() {
+        GatheredNodes<String> result = new ParallelNodeFetcher(2, 0).fetch(
+                Arrays.asList("nodeA", "empty", "nodeB"), this.fetch);
+        assertFalse(result.isComplete());
+        assertArrayEquals(new String[]{"nodeA", "nodeB"},
+                result.getMapOfNodes().keySet().toArray(new String[0]));
+        assertTrue(result.getErrors().get("empty") instanceof IllegalStateException);
+    }
+
+    /**
+     * Test of repeated fetch method by the same fetcher, of class
+     * ParallelNodeFetcher.
+     */
+    @Test
+    public void testFetchRepeated() {
+        ParallelNodeFetcher fetcher = new ParallelNodeFetcher(2, 500);
+        // the late remote call of the first fetch does not block the others
+        assertEquals(2, fetcher.fetch(this.sources, this.fetch).getErrors().size());
+        for (int i = 0; i < 3; i++) {
+            GatheredNodes<String> result = fetcher.fetch(Arrays.asList("nodeA", "nodeB", "nodeC"), this.fetch);
+            assertTrue(result.isComplete());
+            assertEquals(3, result.getMapOfNodes().size());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for localisation of nodes in partitions of a network.
+ *
+ * @author rychly
+ */
+public class PartitionedLocaliserTest {
+
+    private TopologyGenerator generator;
+
+    public PartitionedLocaliserTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.generator = new TopologyGenerator(42);
+        this.generator.setNodeCount(400);
+        this.generator.setAnchorRatio(0.1);
+        this.generator.setBounds(new Vector3D(0, 0, 0), new Vector3D(160, 160, 20));
+        this.generator.setRadioRange(25);
+    }
+
+    @After
+    public void tearDown() {
+        this.generator = null;
+    }
+
+    /**
+     * Test of partition method, of class PartitionedLocaliser.
+     */
+    @Test
+    public void testPartition() {
+        MapOfNodes mapOfNodes = this.generator.generate();
+        List<MapOfNodes> partitions = new PartitionedLocaliser(
+                TrilaterationStrategyFactory.newStrategyWithRTT(), 4).partition(mapOfNodes);
+        assertEquals(4, partitions.size());
+        Set<String> ids = new HashSet<>();
+        for (MapOfNodes partition : partitions) {
+            // the partitions are balanced
+            assertTrue(partition.size() > mapOfNodes.size() / 8);
+            assertTrue(partition.size() <= mapOfNodes.size() / 2);
+            for (String id : partition.keySet()) {
+                assertTrue(ids.add(id));
+            }
+        }
+        assertEquals(mapOfNodes.keySet(), ids);
+    }
+
+    /**
+     * Test of localise method, of class PartitionedLocaliser.
+     *
+     * @throws TrilaterationStrategyException assertion failed with the
+     * exception
+     */
+    @Test
+    public void testLocalise() throws TrilaterationStrategyException {
+        MapOfNodes mapOfNodes = this.generator.generate();
+        MapOfNodes expectedNodes = this.generator.generate();
+        TrilaterationStrategy strategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        strategy.calibrateMetric(mapOfNodes);
+        Map<String, BatchLocaliser.NodeResult> expected = new WaveFrontLocaliser(strategy).localise(expectedNodes);
+        Map<String, BatchLocaliser.NodeResult> results = new PartitionedLocaliser(strategy, 4).localise(mapOfNodes);
+        assertEquals(expected.keySet(), results.keySet());
+        for (Map.Entry<String, BatchLocaliser.NodeResult> pair : results.entrySet()) {
+            // the boundary anchors are exchanged, so the same nodes are localised
+            assertEquals(expected.get(pair.getKey()).getStatus(), pair.getValue().getStatus());
+            if (pair.getValue().getStatus() == BatchLocaliser.Status.LOCALISED) {
+                assertEquals(pair.getValue().getLocation(),
+                        mapOfNodes.get(pair.getKey()).getInfo().getLocationAbsolute());
+                assertEquals(0, this.generator.getGroundTruth().get(pair.getKey())
+                        .distance(pair.getValue().getLocation()), 1e-3);
+            }
+        }
+    }
+}
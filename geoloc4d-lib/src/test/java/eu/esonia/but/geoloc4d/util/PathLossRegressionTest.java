@@ -0,0 +1,108 @@
+package eu.esonia.but.geoloc4d.util;
+
+import java.util.Random;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for fitting of the log-distance path-loss model.
+ *
+ * @author rychly
+ */
+public class PathLossRegressionTest {
+
+    private static final double SIGNAL_STRENGTH_AT_METER = 40;
+    private static final double PROPAGATION_CONSTANT = 3;
+    private double[] distances, rssi;
+
+    public PathLossRegressionTest() {
+    }
+
+    /**
+     * Generate observations with a normal noise and with a fraction of
+     * outliers with much weaker signal (e.g. behind walls).
+     */
+    private void generate(final int count, final double outliers) {
+        Random random = new Random(1234);
+        this.distances = new double[count];
+        this.rssi = new double[count];
+        for (int i = 0; i < count; i++) {
+            this.distances[i] = 1 + 99 * random.nextDouble();
+            this.rssi[i] = -( 10 * PROPAGATION_CONSTANT * Math.log10(this.distances[i]) + SIGNAL_STRENGTH_AT_METER )
+                    + random.nextGaussian() - ( ( random.nextDouble() < outliers ) ? 30 : 0 );
+        }
+    }
+
+    @Before
+    public void setUp() {
+        this.generate(1000, 0.2);
+    }
+
+    @After
+    public void tearDown() {
+        this.distances = null;
+        this.rssi = null;
+    }
+
+    /**
+     * Test of fit method of the least squares, of class PathLossRegression.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testFitLeastSquares() throws WirelessMetricException {
+        this.generate(1000, 0);
+        PathLossRegression.Fit fit = new PathLossRegression(false).fit(this.distances, this.rssi, 1000);
+        assertEquals(SIGNAL_STRENGTH_AT_METER, fit.getSignalStrengthAtMeter(), 0.5);
+        assertEquals(PROPAGATION_CONSTANT, fit.getPropagationConstant(), 0.1);
+        assertEquals(1000, fit.getCount());
+        assertEquals(1000, fit.getInliers());
+        assertEquals(1, fit.getResidualStandardError(), 0.1);
+        assertTrue(fit.getRSquared() > 0.9);
+    }
+
+    /**
+     * Test of fit method of the robust fitting, of class PathLossRegression.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testFitRobust() throws WirelessMetricException {
+        PathLossRegression.Fit leastSquares = new PathLossRegression(false).fit(this.distances, this.rssi, 1000);
+        PathLossRegression.Fit robust = new PathLossRegression(true).fit(this.distances, this.rssi, 1000);
+        // the outliers bias the least squares
+        assertTrue(Math.abs(leastSquares.getSignalStrengthAtMeter() - SIGNAL_STRENGTH_AT_METER) > 3);
+        assertTrue(Math.abs(robust.getSignalStrengthAtMeter() - SIGNAL_STRENGTH_AT_METER)
+                < Math.abs(leastSquares.getSignalStrengthAtMeter() - SIGNAL_STRENGTH_AT_METER) / 2);
+        assertEquals(PROPAGATION_CONSTANT, robust.getPropagationConstant(), 0.3);
+        assertTrue(robust.getInliers() < robust.getCount());
+        assertTrue(robust.getIterations() > 1);
+    }
+
+    /**
+     * Test of fit method for large arrays, of class PathLossRegression.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testFitParallel() throws WirelessMetricException {
+        this.generate(300000, 0.1);
+        this.distances[0] = 0;
+        PathLossRegression.Fit fit = new PathLossRegression(true).fit(this.distances, this.rssi, 300000);
+        assertEquals(299999, fit.getCount());
+        assertEquals(PROPAGATION_CONSTANT, fit.getPropagationConstant(), 0.1);
+    }
+
+    /**
+     * Test of fit method without enough observations, of class
+     * PathLossRegression.
+     *
+     * @throws WirelessMetricException the expected exception
+     */
+    @Test(expected = WirelessMetricException.class)
+    public void testFitIncomplete() throws WirelessMetricException {
+        new PathLossRegression(false).fit(new double[]{10, 10}, new double[]{-70, -71}, 2);
+    }
+}
@@ -0,0 +1,122 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for nodes prepared for the trilateration.
+ *
+ * @author rychly
+ */
+public class PreparedNodesTest {
+
+    private static final int COUNT = 200;
+    private PreparedNodes preparedNodes;
+
+    public PreparedNodesTest() {
+    }
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        this.preparedNodes = new PreparedNodes();
+        this.preparedNodes.clear(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            Vector3DMath.set(this.preparedNodes.getLocations(), i * Vector3DMath.SIZE,
+                    100 * random.nextDouble(), 100 * random.nextDouble(), 10 * random.nextDouble());
+            this.preparedNodes.add(i, i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        this.preparedNodes = null;
+    }
+
+    /**
+     * Check that the prepared nodes are ordered as the nodes of given
+     * indexes.
+     */
+    private void assertOrder(final Integer[] expected, final double[] locations) {
+        for (int i = 0; i < COUNT; i++) {
+            int node = expected[i];
+            assertEquals(node, this.preparedNodes.getNodes()[i]);
+            assertEquals(node, this.preparedNodes.getDistances()[i], 0);
+            assertTrue(Vector3DMath.equals(locations, node * Vector3DMath.SIZE,
+                    this.preparedNodes.getLocations(), i * Vector3DMath.SIZE));
+        }
+    }
+
+    /**
+     * Test of sortByKeys method, of class PreparedNodes.
+     */
+    @Test
+    public void testSortByKeys() {
+        double[] locations = Arrays.copyOf(this.preparedNodes.getLocations(), COUNT * Vector3DMath.SIZE);
+        final double[] keys = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            // many equal keys to check the stability
+            keys[i] = i % 7;
+        }
+        Integer[] expected = new Integer[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            expected[i] = i;
+        }
+        for (final boolean reverseOrder : new boolean[]{false, true}) {
+            System.arraycopy(keys, 0, this.preparedNodes.getKeys(), 0, COUNT);
+            Arrays.sort(expected, new Comparator<Integer>() {
+
+                @Override
+                public int compare(final Integer i1, final Integer i2) {
+                    return reverseOrder ? Double.compare(keys[i2], keys[i1]) : Double.compare(keys[i1], keys[i2]);
+                }
+            });
+            this.preparedNodes.sortByKeys(reverseOrder);
+            this.assertOrder(expected, locations);
+            // restore the original order
+            this.setUp();
+            for (int i = 0; i < COUNT; i++) {
+                expected[i] = i;
+            }
+        }
+    }
+
+    /**
+     * Test of sorting by approximate isolations, of class PreparedNodes.
+     */
+    @Test
+    public void testSortByIsolation() {
+        double[] locations = Arrays.copyOf(this.preparedNodes.getLocations(), COUNT * Vector3DMath.SIZE);
+        // the sums of squares of distances computed directly
+        final double[] squares = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            for (int j = 0; j < COUNT; j++) {
+                squares[i] += Vector3DMath.distanceSquared(locations, i * Vector3DMath.SIZE, locations, j * Vector3DMath.SIZE);
+            }
+        }
+        Vector3DMath.isolations(locations, COUNT, false, this.preparedNodes.getKeys());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(squares[i], this.preparedNodes.getKeys()[i], 1e-9 * squares[i]);
+        }
+        Integer[] expected = new Integer[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            expected[i] = i;
+        }
+        final double[] keys = Arrays.copyOf(this.preparedNodes.getKeys(), COUNT);
+        Arrays.sort(expected, new Comparator<Integer>() {
+
+            @Override
+            public int compare(final Integer i1, final Integer i2) {
+                return Double.compare(keys[i1], keys[i2]);
+            }
+        });
+        this.preparedNodes.sortByKeys(false);
+        this.assertOrder(expected, locations);
+    }
+}
@@ -0,0 +1,122 @@
+package eu.esonia.but.geoloc4d.util;
+
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for running statistics of a simple linear regression.
+ *
+ * @author rychly
+ */
+public class RunningRegressionTest {
+
+    private static final double DELTA = 1e-9;
+    private double[] x, y;
+    private RunningRegression regression;
+
+    public RunningRegressionTest() {
+    }
+
+    @Before
+    public void setUp() {
+        // y = 3 - 2 * x with a noise
+        this.x = new double[]{0, 1, 2, 3, 4, 5};
+        this.y = new double[]{3.1, 0.9, -1.2, -2.9, -5.1, -7.0};
+        this.regression = new RunningRegression();
+    }
+
+    @After
+    public void tearDown() {
+        this.x = null;
+        this.y = null;
+        this.regression = null;
+    }
+
+    /**
+     * Compute the slope of the regression line directly from all observations.
+     */
+    private static double slope(final double[] x, final double[] y, final int count) {
+        double meanX = 0, meanY = 0;
+        for (int i = 0; i < count; i++) {
+            meanX += x[i] / count;
+            meanY += y[i] / count;
+        }
+        double sxy = 0, sxx = 0;
+        for (int i = 0; i < count; i++) {
+            sxy += ( x[i] - meanX ) * ( y[i] - meanY );
+            sxx += ( x[i] - meanX ) * ( x[i] - meanX );
+        }
+        return sxy / sxx;
+    }
+
+    /**
+     * Test of add method, of class RunningRegression.
+     */
+    @Test
+    public void testAdd() {
+        this.regression.add(this.x[0], this.y[0]);
+        assertFalse(this.regression.hasRegression());
+        assertTrue(Double.isNaN(this.regression.getSlope()));
+        for (int i = 1; i < this.x.length; i++) {
+            this.regression.add(this.x[i], this.y[i]);
+        }
+        assertTrue(this.regression.hasRegression());
+        assertEquals(this.x.length, this.regression.getCount());
+        assertEquals(2.5, this.regression.getMeanX(), DELTA);
+        assertEquals(slope(this.x, this.y, this.x.length), this.regression.getSlope(), DELTA);
+        assertEquals(this.regression.getMeanY() - this.regression.getSlope() * 2.5, this.regression.getIntercept(), DELTA);
+        assertEquals(-2, this.regression.getSlope(), 0.1);
+        assertEquals(3, this.regression.getIntercept(), 0.1);
+    }
+
+    /**
+     * Test of remove method, of class RunningRegression.
+     */
+    @Test
+    public void testRemove() {
+        for (int i = 0; i < this.x.length; i++) {
+            this.regression.add(this.x[i], this.y[i]);
+        }
+        // replace the last observation
+        this.regression.remove(this.x[this.x.length - 1], this.y[this.y.length - 1]);
+        assertEquals(this.x.length - 1, this.regression.getCount());
+        assertEquals(slope(this.x, this.y, this.x.length - 1), this.regression.getSlope(), DELTA);
+        this.y[this.y.length - 1] = -7.2;
+        this.regression.add(this.x[this.x.length - 1], this.y[this.y.length - 1]);
+        assertEquals(slope(this.x, this.y, this.x.length), this.regression.getSlope(), DELTA);
+        // remove all observations
+        for (int i = 0; i < this.x.length; i++) {
+            this.regression.remove(this.x[i], this.y[i]);
+        }
+        assertEquals(0, this.regression.getCount());
+        assertFalse(this.regression.hasRegression());
+    }
+
+    /**
+     * Test of merge method, of class RunningRegression.
+     */
+    @Test
+    public void testMerge() {
+        RunningRegression other = new RunningRegression();
+        for (int i = 0; i < this.x.length; i++) {
+            ( ( i < 2 ) ? this.regression : other ).add(this.x[i], this.y[i]);
+        }
+        this.regression.merge(other);
+        assertEquals(this.x.length, this.regression.getCount());
+        assertEquals(slope(this.x, this.y, this.x.length), this.regression.getSlope(), DELTA);
+        // the weighted observation is the same as the repeated observation
+        other.clear();
+        other.add(this.x[0], this.y[0], 2);
+        this.regression.merge(other);
+        this.regression.remove(this.x[0], this.y[0]);
+        RunningRegression repeated = new RunningRegression();
+        for (int i = 0; i < this.x.length; i++) {
+            repeated.add(this.x[i], this.y[i]);
+        }
+        repeated.add(this.x[0], this.y[0]);
+        assertEquals(repeated.getSlope(), this.regression.getSlope(), DELTA);
+        assertEquals(repeated.getRSquared(), this.regression.getRSquared(), DELTA);
+    }
+}
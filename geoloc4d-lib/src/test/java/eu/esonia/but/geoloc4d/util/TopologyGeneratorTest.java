@@ -0,0 +1,103 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.*;
+import java.io.IOException;
+import java.io.StringWriter;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for generation of synthetic networks of nodes.
+ *
+ * @author rychly
+ */
+public class TopologyGeneratorTest {
+
+    private TopologyGenerator generator;
+
+    public TopologyGeneratorTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.generator = new TopologyGenerator(42);
+        this.generator.setNodeCount(200);
+        this.generator.setAnchorRatio(0.3);
+        this.generator.setBounds(new Vector3D(-50, -50, 0), new Vector3D(50, 50, 20));
+        this.generator.setRadioRange(25);
+    }
+
+    @After
+    public void tearDown() {
+        this.generator = null;
+    }
+
+    /**
+     * Test of generate method, of class TopologyGenerator.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testGenerate() throws WirelessMetricException {
+        MapOfNodes mapOfNodes = this.generator.generate();
+        assertEquals(200, mapOfNodes.size());
+        assertEquals(200, this.generator.getGroundTruth().size());
+        int anchors = 0;
+        for (Node node : mapOfNodes.values()) {
+            Vector3D location = this.generator.getGroundTruth().get(node.getInfo().getID());
+            assertTrue(( location.getX() >= -50 ) && ( location.getX() <= 50 ));
+            assertTrue(( location.getZ() >= 0 ) && ( location.getZ() <= 20 ));
+            if (node.getInfo().isAbsolutelyLocalised()) {
+                assertEquals(0, location.distance(node.getInfo().getLocationAbsolute()), 1e-9);
+                anchors++;
+            }
+            for (NeighbourProperties neighbour : node.getScan().values()) {
+                double distance = location.distance(this.generator.getGroundTruth().get(neighbour.getID()));
+                assertTrue(distance <= 25);
+                assertEquals(WirelessMetric.compRssiFromDistance(distance, 40, 2.5), (short) neighbour.getRssi());
+                assertEquals(distance, WirelessMetric.compDistanceFromRtt(neighbour.getRtt(), 100), 1e-9);
+            }
+        }
+        assertTrue(( anchors > 30 ) && ( anchors < 90 ));
+    }
+
+    /**
+     * Test of generate method with a limited number of neighbours and noise,
+     * of class TopologyGenerator.
+     */
+    @Test
+    public void testGenerateWithMaxNeighboursAndNoise() {
+        this.generator.setMaxNeighbours(5);
+        this.generator.setRssiNoise(TopologyGenerator.Noise.GAUSSIAN, 4);
+        this.generator.setRttNoise(TopologyGenerator.Noise.UNIFORM, 0.01);
+        MapOfNodes mapOfNodes = this.generator.generate();
+        for (Node node : mapOfNodes.values()) {
+            assertTrue(node.getScan().size() <= 5);
+            assertFalse(node.getScan().containsKey(node.getInfo().getID()));
+            for (NeighbourProperties neighbour : node.getScan().values()) {
+                assertTrue(neighbour.getRtt() >= 0);
+            }
+        }
+        // the same seed produces the same network
+        assertEquals(mapOfNodes.toJSONString(), this.generator.generate().toJSONString());
+    }
+
+    /**
+     * Test of generate method with a streamed output, of class
+     * TopologyGenerator.
+     *
+     * @throws IOException assertion failed with the exception
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testGenerateStreamed() throws IOException, JSONException {
+        StringWriter output = new StringWriter();
+        try (NodeWriter nodeWriter = new NodeWriter(output)) {
+            this.generator.generate(nodeWriter);
+        }
+        assertEquals(this.generator.generate().toJSONString(), new MapOfNodes(output.toString()).toJSONString());
+    }
+}
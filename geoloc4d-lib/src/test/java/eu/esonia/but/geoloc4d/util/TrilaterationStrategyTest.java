@@ -0,0 +1,90 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.LocationEstimate;
+import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
+import eu.esonia.but.geoloc4d.type.NeighbourProperties;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.Arrays;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for trilateration strategies.
+ *
+ * @author rychly
+ */
+public class TrilaterationStrategyTest {
+
+    private Vector3D node0;
+    private TrilaterationStrategy strategy;
+
+    public TrilaterationStrategyTest() {
+    }
+
+    @Before
+    public void setUp() {
+        this.node0 = new Vector3D(3, 4, 5);
+        this.strategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        this.strategy.setMultilateration(MultilaterationSolver.Refinement.GAUSS_NEWTON);
+    }
+
+    @After
+    public void tearDown() {
+        this.strategy = null;
+        this.node0 = null;
+    }
+
+    /**
+     * Prepare anchors with exact distances to the blind node.
+     *
+     * @param anchors the locations of the anchors
+     * @return the prepared anchors
+     * @throws JSONException assertion failed with the exception
+     */
+    private MapOfNeighbours prepare(final Vector3D... anchors) throws JSONException {
+        MapOfNeighbours result = new MapOfNeighbours();
+        for (int i = 0; i < anchors.length; i++) {
+            NeighbourProperties neighbourProperties = new NeighbourProperties("{id:\"anchor" + i + "\"}");
+            neighbourProperties.setLocationAbsolute(anchors[i]);
+            neighbourProperties.setDistance(anchors[i].distance(this.node0));
+            result.put(neighbourProperties.getID(), neighbourProperties);
+        }
+        return result;
+    }
+
+    /**
+     * Test of doTrilaterationWithEstimate method by the multilateration, of
+     * class TrilaterationStrategy.
+     *
+     * @throws Exception assertion failed with the exception
+     */
+    @Test
+    public void testDoTrilaterationWithEstimate() throws Exception {
+        LocationEstimate estimate = this.strategy.doTrilaterationWithEstimate(this.prepare(
+                new Vector3D(0, 0, 0), new Vector3D(10, 0, 0), new Vector3D(0, 10, 0),
+                new Vector3D(0, 0, 10), new Vector3D(10, 10, 10)));
+        assertEquals(0, this.node0.distance(estimate.getLocation()), 1e-6);
+        assertEquals(Arrays.asList("anchor0", "anchor1", "anchor2", "anchor3", "anchor4"), estimate.getAnchors());
+    }
+
+    /**
+     * Test of doTrilaterationWithEstimate method by the trilateration if the
+     * anchors for the multilateration are coplanar, of class
+     * TrilaterationStrategy.
+     *
+     * @throws Exception assertion failed with the exception
+     */
+    @Test
+    public void testDoTrilaterationWithEstimateCoplanar() throws Exception {
+        LocationEstimate estimate = this.strategy.doTrilaterationWithEstimate(this.prepare(
+                new Vector3D(0, 0, 0), new Vector3D(10, 0, 0), new Vector3D(0, 10, 0),
+                new Vector3D(10, 10, 0), new Vector3D(5, 5, 0)));
+        // only the first four anchors are used by the trilateration
+        assertEquals(Arrays.asList("anchor0", "anchor1", "anchor2", "anchor3"), estimate.getAnchors());
+        assertEquals(3, estimate.getLocation().getX(), 1e-6);
+        assertEquals(4, estimate.getLocation().getY(), 1e-6);
+    }
+}
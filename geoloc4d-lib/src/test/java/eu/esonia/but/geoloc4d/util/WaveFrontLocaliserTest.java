@@ -0,0 +1,90 @@
+package eu.esonia.but.geoloc4d.util;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.Map;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of class for iterative localisation of nodes in waves.
+ *
+ * @author rychly
+ */
+public class WaveFrontLocaliserTest {
+
+    private static final double CORRECTION_FACTOR = 100;
+    private Vector3D nodeA, nodeB, nodeC, nodeD, node0, node1;
+    private MapOfNodes mapOfNodes;
+
+    public WaveFrontLocaliserTest() {
+    }
+
+    private static String neighbour(final String id, final Vector3D location, final Vector3D neighbourLocation) {
+        return "{id:\"" + id + "\", rtt:" + ( location.distance(neighbourLocation) / CORRECTION_FACTOR ) + "}";
+    }
+
+    private static String anchor(final String id, final Vector3D location) {
+        // the anchors have in their scans an anchor in the origin for calibration
+        return "{info:{id:\"" + id + "\", locationAbsolute:" + location.toJSONString() + "}, scan:["
+                + neighbour("nodeO", location, Vector3D.NULL) + "]}";
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.nodeA = new Vector3D(10, 0, 0);
+        this.nodeB = new Vector3D(0, 20, 0);
+        this.nodeC = new Vector3D(0, 0, 10);
+        this.nodeD = new Vector3D(20, 0, 0);
+        this.node0 = new Vector3D(1, 2, 3);
+        this.node1 = new Vector3D(5, 5, 5);
+        this.mapOfNodes = new MapOfNodes("["
+                + anchor("nodeA", this.nodeA) + ","
+                + anchor("nodeB", this.nodeB) + ","
+                + anchor("nodeC", this.nodeC) + ","
+                + anchor("nodeD", this.nodeD) + ","
+                + "{info:{id:\"nodeO\", locationAbsolute:[0,0,0]}, scan:[]},"
+                // node1 can be localised only after node0
+                + "{info:{id:\"node1\"}, scan:["
+                + neighbour("nodeA", this.node1, this.nodeA) + ","
+                + neighbour("nodeB", this.node1, this.nodeB) + ","
+                + neighbour("nodeC", this.node1, this.nodeC) + ","
+                + neighbour("node0", this.node1, this.node0) + "]},"
+                + "{info:{id:\"node0\"}, scan:["
+                + neighbour("nodeA", this.node0, this.nodeA) + ","
+                + neighbour("nodeB", this.node0, this.nodeB) + ","
+                + neighbour("nodeC", this.node0, this.nodeC) + ","
+                + neighbour("nodeD", this.node0, this.nodeD) + "]},"
+                + "{info:{id:\"node2\"}, scan:["
+                + neighbour("nodeA", this.node1, this.nodeA) + "]}"
+                + "]");
+    }
+
+    @After
+    public void tearDown() {
+        this.mapOfNodes = null;
+    }
+
+    /**
+     * Test of localise method, of class WaveFrontLocaliser.
+     *
+     * @throws TrilaterationStrategyException assertion failed with the
+     * exception
+     */
+    @Test
+    public void testLocalise() throws TrilaterationStrategyException {
+        TrilaterationStrategy strategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        strategy.calibrateMetric(this.mapOfNodes);
+        assertEquals(CORRECTION_FACTOR, ( (StrategyWithRTT) strategy ).getCorrectionFactor(), 1e-9);
+        Map<String, BatchLocaliser.NodeResult> results = new WaveFrontLocaliser(strategy).localise(this.mapOfNodes);
+        assertEquals(BatchLocaliser.Status.ALREADY_LOCALISED, results.get("nodeA").getStatus());
+        assertEquals(BatchLocaliser.Status.LOCALISED, results.get("node0").getStatus());
+        assertEquals(0, this.node0.distance(results.get("node0").getLocation()), 1e-6);
+        assertEquals(BatchLocaliser.Status.LOCALISED, results.get("node1").getStatus());
+        assertEquals(0, this.node1.distance(this.mapOfNodes.get("node1").getInfo().getLocationAbsolute()), 1e-6);
+        assertEquals(BatchLocaliser.Status.FAILED, results.get("node2").getStatus());
+    }
+}
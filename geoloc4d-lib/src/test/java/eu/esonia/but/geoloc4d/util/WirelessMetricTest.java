@@ -1,6 +1,7 @@
 package eu.esonia.but.geoloc4d.util;
 
 import eu.esonia.but.geoloc4d.type.Vector3D;
+import eu.esonia.but.geoloc4d.type.Vector3DMath;
 import org.junit.After;
 import static org.junit.Assert.assertEquals;
 import org.junit.Before;
@@ -100,6 +101,22 @@ public class WirelessMetricTest {
                 this.signalStrengthAtMeter, this.propagationConstant), 0.1);
     }
 
+    /**
+     * Test of RssiDistanceTable class, of class WirelessMetric.
+     *
+     * @throws WirelessMetricException assertion failed with the exception
+     */
+    @Test
+    public void testRssiDistanceTable() throws WirelessMetricException {
+        WirelessMetric.RssiDistanceTable table =
+                new WirelessMetric.RssiDistanceTable(this.signalStrengthAtMeter, this.propagationConstant);
+        assertEquals(this.nodeA.distance(this.node0), table.getDistance(this.rssiA), 0.5);
+        for (short rssi : new short[]{WirelessMetric.TABLE_MIN_RSSI, -79, 0, WirelessMetric.TABLE_MAX_RSSI, -300, 300}) {
+            assertEquals(WirelessMetric.compDistanceFromRssi(rssi, this.signalStrengthAtMeter, this.propagationConstant),
+                    table.getDistance(rssi), 0);
+        }
+    }
+
     /**
      * Test of compCorrectionFactorFromRttForDistance method, of class
      * WirelessMetric.
@@ -153,4 +170,27 @@ public class WirelessMetricTest {
                 this.nodeC, this.nodeC.distance(this.node0),
                 this.nodeD, this.nodeD.distance(this.node0))), 0.001);
     }
+
+    /**
+     * Test of trilateration3D method on primitive coordinates, of class
+     * WirelessMetric.
+     *
+     * @throws WirelessMetricException cannot perform trilateration for such
+     * nodes
+     */
+    @Test
+    public void testTrilateration3D_primitive() throws WirelessMetricException {
+        double[] locations = new double[4 * Vector3DMath.SIZE];
+        this.nodeA.copyTo(locations, 0);
+        this.nodeB.copyTo(locations, Vector3DMath.SIZE);
+        this.nodeC.copyTo(locations, 2 * Vector3DMath.SIZE);
+        this.nodeD.copyTo(locations, 3 * Vector3DMath.SIZE);
+        double[] distances = new double[]{
+            this.nodeA.distance(this.node0), this.nodeB.distance(this.node0),
+            this.nodeC.distance(this.node0), this.nodeD.distance(this.node0)};
+        double[] result = new double[Vector3DMath.SIZE];
+        WirelessMetric.trilateration3D(locations, distances, 0, 1, 2, 3,
+                new double[WirelessMetric.TRILATERATION3D_WORKSPACE], result, 0);
+        assertEquals(0, this.node0.distance(Vector3DMath.toVector3D(result, 0)), 0.001);
+    }
 }
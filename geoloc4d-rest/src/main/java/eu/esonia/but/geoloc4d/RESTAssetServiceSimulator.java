@@ -1,10 +1,15 @@
 package eu.esonia.but.geoloc4d;
 
+import eu.esonia.but.geoloc4d.rest.NodeBulkRestlet;
+import eu.esonia.but.geoloc4d.rest.NodeQueryRestlet;
+import eu.esonia.but.geoloc4d.rest.NodeRestlet;
 import eu.esonia.but.geoloc4d.rest.NodeRestletApplication;
+import eu.esonia.but.geoloc4d.type.IndexedNodes;
 import eu.esonia.but.geoloc4d.type.MapOfNodes;
-import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.SharedNode;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Map;
 import org.json.JSONException;
 import org.restlet.Component;
 import org.restlet.data.Protocol;
@@ -19,7 +24,7 @@ public class RESTAssetServiceSimulator {
     public static void main(final String[] args) {
         // Check parameters
         if (args.length != 3) {
-            System.err.println("Usage: java " + RESTAssetServiceSimulator.class.getName() + " <hostname> <port> <services.properties>");
+            System.err.println("Usage: java " + RESTAssetServiceSimulator.class.getName() + " <hostname> <port> <services.json|services.snapshot>");
             System.exit(-1);
         }
 
@@ -34,16 +39,31 @@ public class RESTAssetServiceSimulator {
         // Read services.properties for services, prepare and add the services to the device
         System.out.println("=== Loading nodes' definitions from file...");
         try {
-            for (Node node : MapOfNodes.loadNodes(args[2],
-                    "http://" + args[0] + ":" + args[1] + "/%/" + NodeRestletApplication.ROOTPATH).values()) {
-                String path = node.getInfo().getURI().getPath();
+            MapOfNodes mapOfNodes = MapOfNodes.loadNodes(args[2],
+                    "http://" + args[0] + ":" + args[1] + "/%/" + NodeRestletApplication.ROOTPATH);
+            // the nodes are shared by their RESTlets and the bulk and query RESTlets
+            Map<String, SharedNode> sharedNodes = SharedNode.share(mapOfNodes);
+            for (SharedNode node : sharedNodes.values()) {
+                String path = node.getSnapshot().getNode().getInfo().getURI().getPath();
                 int firstSlash = path.indexOf('/', 1);
                 path = path.substring(0, firstSlash > 0 ? firstSlash : path.length());
                 System.out.println("=== a RESTlet will be created for node '"
                         + path + "':\n" + node.toString());
-                // attach the RESTlet application for the node to the component
-                component.getDefaultHost().attach(path, new NodeRestletApplication(node));
+                // attach the RESTlet application for the node (advertising the bulk RESTlet) to the component
+                component.getDefaultHost().attach(path,
+                        new NodeRestletApplication(node, "/" + NodeBulkRestlet.ROOTPATH));
             }
+            // attach the RESTlet for bulk access to all the nodes
+            System.out.println("=== a RESTlet will be created for bulk access '/"
+                    + NodeBulkRestlet.ROOTPATH + "'");
+            NodeBulkRestlet nodeBulkRestlet = new NodeBulkRestlet(sharedNodes);
+            component.getDefaultHost().attach("/" + NodeBulkRestlet.ROOTPATH + "/{" + NodeRestlet.ATTRIBUTE + "}",
+                    nodeBulkRestlet);
+            component.getDefaultHost().attach("/" + NodeBulkRestlet.ROOTPATH, nodeBulkRestlet);
+            // attach the RESTlet for spatial queries on all the nodes
+            System.out.println("=== a RESTlet will be created for spatial queries '/"
+                    + NodeQueryRestlet.ROOTPATH + "'");
+            component.getDefaultHost().attach("/" + NodeQueryRestlet.ROOTPATH, new NodeQueryRestlet(new IndexedNodes(mapOfNodes), sharedNodes));
         }
         catch (FileNotFoundException fnfe) {
             System.err.println("!!! exception: The file " + args[1] + " with service descriptions was not found!\n" + fnfe.toString());
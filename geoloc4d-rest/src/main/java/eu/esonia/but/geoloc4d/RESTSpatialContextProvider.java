@@ -1,23 +1,15 @@
 package eu.esonia.but.geoloc4d;
 
 import eu.esonia.but.geoloc4d.rest.NodeRestletCrawler;
-import eu.esonia.but.geoloc4d.rest.NodeRestletInterface;
 import eu.esonia.but.geoloc4d.rest.NodeRestletProxy;
-import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
-import eu.esonia.but.geoloc4d.type.MapOfNodes;
-import eu.esonia.but.geoloc4d.type.NodeData;
 import eu.esonia.but.geoloc4d.type.Vector3D;
 import eu.esonia.but.geoloc4d.util.*;
-import java.io.IOException;
 import java.util.Arrays;
-import java.util.Set;
-import org.json.JSONArray;
+import java.util.Map;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.restlet.Client;
 import org.restlet.Context;
 import org.restlet.data.Protocol;
-import org.restlet.resource.ResourceException;
 
 /**
  * Spatial context provider (RESTful client).
@@ -29,7 +21,30 @@ public class RESTSpatialContextProvider {
     public static void main(final String[] args) throws InterruptedException, JSONException {
         // check parameters
         if (args.length < 2) {
-            System.err.println("Usage: java " + RESTSpatialContextProvider.class.getName() + " [rssi-startegy|rtt-strategy] <URIs>");
+            System.err.println("Usage: java " + RESTSpatialContextProvider.class.getName() + " [rssi-startegy|rtt-strategy|rssi-multilateration|rtt-multilateration] [-partitions <count>] [-idle-timeout <seconds>] <URIs>");
+            System.exit(-1);
+        }
+        // the network can be localised in partitions by parallel workers
+        int partitions = 1;
+        // the localisation terminates after 10 minutes without progress (0 for never)
+        long idleTimeout = 600;
+        int firstURI = 1;
+        for (; ( firstURI < args.length ) && args[firstURI].startsWith("-"); firstURI += 2) {
+            if (firstURI + 1 >= args.length) {
+                System.err.println("!!! Missing the value of option '" + args[firstURI] + "'!");
+                System.exit(-1);
+            }
+            if (args[firstURI].equalsIgnoreCase("-partitions")) {
+                partitions = Integer.parseInt(args[firstURI + 1]);
+            } else if (args[firstURI].equalsIgnoreCase("-idle-timeout")) {
+                idleTimeout = Long.parseLong(args[firstURI + 1]);
+            } else {
+                System.err.println("!!! Unknown option '" + args[firstURI] + "'!");
+                System.exit(-1);
+            }
+        }
+        if (firstURI >= args.length) {
+            System.err.println("!!! Missing URIs!");
             System.exit(-1);
         }
 
@@ -40,8 +55,13 @@ public class RESTSpatialContextProvider {
 
         // crawl throught the RESTlets given by defined URIs
         System.out.println("=== Starting RESTlets crawler...");
-        NodeRestletCrawler nodeRestletCrawler =
-                new NodeRestletCrawler(client, Arrays.copyOfRange(args, 1, args.length));
+        final NodeRestletCrawler nodeRestletCrawler =
+                new NodeRestletCrawler(client, Arrays.copyOfRange(args, firstURI, args.length));
+        // query up to 16 RESTlets at once, but at most 4 of them on the same host
+        nodeRestletCrawler.setParallelism(16);
+        nodeRestletCrawler.setMaxRequestsPerHost(4);
+        // the RESTlets not responding in 10 seconds will be tried next time
+        nodeRestletCrawler.setTimeout(10000);
         nodeRestletCrawler.crawlGatheredNodes();
 
         // Create a trilateration strategy
@@ -51,30 +71,69 @@ public class RESTSpatialContextProvider {
             trilaterationStrategy = TrilaterationStrategyFactory.newStrategyWithRSSI();
         } else if (args[0].equalsIgnoreCase("rtt-strategy")) {
             trilaterationStrategy = TrilaterationStrategyFactory.newStrategyWithRTT();
+        } else if (args[0].equalsIgnoreCase("rssi-multilateration")) {
+            trilaterationStrategy = TrilaterationStrategyFactory.newMultilaterationStrategyWithRSSI(
+                    MultilaterationSolver.Refinement.LEVENBERG_MARQUARDT);
+        } else if (args[0].equalsIgnoreCase("rtt-multilateration")) {
+            trilaterationStrategy = TrilaterationStrategyFactory.newMultilaterationStrategyWithRTT(
+                    MultilaterationSolver.Refinement.LEVENBERG_MARQUARDT);
         } else {
             System.err.println("!!! Unknown trilateration strategy '" + args[0] + "'!");
             System.exit(-2);
         }
 
-        // Calibrate the strategy's metric
-        while (!trilaterationStrategy.isCalibrated()) {
-            System.out.println("=== Calibrate the trilateration strategy's metric...");
-            Thread.sleep(1000);
-            try {
-                MapOfNodes mapOfNodes = nodeRestletCrawler.getMapOfNodesForGatheredRestlets(true);
-                System.out.println("=== the calibration will be performed for nodes:\n"
-                        + mapOfNodes.toString());
-                trilaterationStrategy.calibrateMetric(mapOfNodes);
-            }
-            catch (IOException | ResourceException | JSONException ex) {
-                // RESTlet error will be ignored -- next time, the network may be ready
-                System.err.println("!!! exception: " + ex.toString());
-            }
-            catch (TrilaterationStrategyException ex) {
+        // Calibrate and localise the nodes in rounds, a round is delayed while nothing changes
+        LocalisationScheduler<NodeRestletProxy> localisationScheduler = new LocalisationScheduler<>(
+                new LocalisationScheduler.Transport<NodeRestletProxy>() {
+
+                    @Override
+                    public GatheredNodes<NodeRestletProxy> gatherNodes() {
+                        // get actually gathered the nodes' RESTlets and their nodes (all at once)
+                        GatheredNodes<NodeRestletProxy> gatheredNodes = nodeRestletCrawler.getMapOfNodesForGatheredRestlets(true);
+                        for (Map.Entry<NodeRestletProxy, Exception> pair : gatheredNodes.getErrors().entrySet()) {
+                            // RESTlet error will be ignored -- we will try it next time
+                            System.err.println("!!! exception of RESTlet " + pair.getKey() + ": " + pair.getValue().toString());
+                        }
+                        return gatheredNodes;
+                    }
+
+                    @Override
+                    public Map<String, Exception> postLocationsAbsolute(final GatheredNodes<NodeRestletProxy> gatheredNodes,
+                            final Map<String, Vector3D> locations) {
+                        return nodeRestletCrawler.postLocationsAbsolute(gatheredNodes, locations);
+                    }
+                }, trilaterationStrategy, partitions);
+        localisationScheduler.setDelays(1000, 30000);
+        localisationScheduler.setIdleTimeout(idleTimeout * 1000);
+        localisationScheduler.setListener(new LocalisationScheduler.Listener() {
+
+            @Override
+            public void calibrationFailed(final TrilaterationStrategyException ex) {
                 // calibration error will be ignored -- next time, there may be enought nodes
                 System.err.println("!!! exception: " + ex.toString());
             }
-        }
+
+            @Override
+            public void roundCompleted(final int round, final Map<String, BatchLocaliser.NodeResult> results,
+                    final Map<String, Exception> errors) {
+                System.out.println("=== Performed trilateration of " + results.size() + " changed nodes in round " + round);
+                for (Map.Entry<String, BatchLocaliser.NodeResult> pair : results.entrySet()) {
+                    BatchLocaliser.NodeResult result = pair.getValue();
+                    if (result.getStatus() == BatchLocaliser.Status.LOCALISED) {
+                        System.out.println("=== the node's " + pair.getKey() + " location will be set to the trilateration's result: " + result.getLocation().toString());
+                    } else {
+                        // trilateration error will be ignored -- we will try it after a change of the node
+                        System.err.println("!!! the node " + pair.getKey() + " cannot be localised: " + result.getMessage());
+                    }
+                }
+                for (Map.Entry<String, Exception> pair : errors.entrySet()) {
+                    // RESTlet error will be ignored -- we will try it next time
+                    System.err.println("!!! exception of node " + pair.getKey() + ": " + pair.getValue().toString());
+                }
+            }
+        });
+        System.out.println("=== Calibrate the trilateration strategy's metric...");
+        localisationScheduler.calibrate();
         System.out.println("=== The trilateration strategy has calibrated metric:");
         if (trilaterationStrategy instanceof StrategyWithRSSI) {
             System.out.println(
@@ -91,66 +150,18 @@ public class RESTSpatialContextProvider {
                     "=== an unknown implementation of the strategy!");
         }
 
-        // Localise all detected nodes
-        Set<NodeRestletProxy> restlets;
-        boolean completelyLocalised;
-        do {
-            System.out.println("=== Performing trilateration of detected nodes...");
-            // nodes can be completely localised only if there are some
-            //completelyLocalised = !((restlets == null) || restlets.isEmpty());
-            completelyLocalised = false; // infinite loop for debuging
-            // get actually gathered the nodes' RESTlets
-            restlets = nodeRestletCrawler.getGatheredRestlets();
-            for (NodeRestletInterface restlet : restlets) {
-                System.out.println("=== found a node's RESTlet: " + restlet.toString());
-                try {
-                    // get data of node and check if it is localised
-                    NodeData nodeData = new NodeData(new JSONObject(restlet.getInfo()));
-                    System.out.println("=== the RESTlet represents node with ID: " + nodeData.getID());
-                    if (nodeData.isAbsolutelyLocalised()) {
-                        // if it is localised, print its location
-                        System.out.println("=== the node is localised as: " + nodeData.getLocationAbsolute().toString());
-                    } else {
-                        // if not, get scan of its neighbours and perform trilateration
-                        System.out.println("=== the node is not localised, locating its neighbours...");
-                        MapOfNeighbours nodeNeighbours = new MapOfNeighbours(new JSONArray(restlet.getScan()));
-                        nodeNeighbours.setLocationsFromNodes(nodeRestletCrawler.getMapOfNodesForGatheredRestlets(false));
-                        System.out.println("=== preparing for the node's trilateration with neighbours:\n" + nodeNeighbours.toString());
-                        MapOfNeighbours selectedNeighbours =
-                                trilaterationStrategy.prepareNodesForTrilateration(nodeData, nodeNeighbours);
-                        System.out.println("=== the trilateration will be performed with nodes:\n" + selectedNeighbours.toString());
-                        Vector3D newLocation =
-                                trilaterationStrategy.doTrilateration(selectedNeighbours);
-                        System.out.println("=== the node's location will be set to the trilateration's result: " + newLocation.toString());
-                        // finally, set trilateration result as the node's location
-                        restlet.postLocationAbsolute(newLocation.toJSONString());
-                    }
-                }
-                catch (IOException | ResourceException | JSONException ex) {
-                    // RESTlet error will be ignored -- we will try it next time
-                    System.err.println("!!! exception: " + ex.toString());
-                    completelyLocalised = false;
-                }
-                catch (TrilaterationStrategyException ex) {
-                    // trilateration error will be ignored -- we will try it next time
-                    System.err.println("!!! exception: " + ex.toString());
-                    completelyLocalised = false;
-                }
-            }
-            Thread.sleep(3000);
-        } while (!completelyLocalised);
-        try {
-            // Print all nodes including their locations
-            System.out.println("=== Localised nodes (without scan of their neighbours):\n"
-                    + nodeRestletCrawler.getMapOfNodesForGatheredRestlets(false).toString());
+        // Localise all detected nodes, until all of them are localised or there is no progress
+        System.out.println("=== Performing trilateration of detected nodes...");
+        if (!localisationScheduler.run()) {
+            System.err.println("!!! Some nodes have not been localised in " + idleTimeout + " seconds without progress!");
         }
-        catch (IOException ex) {
-            System.err.println("!!! exception: " + ex.toString());
+        // Print all nodes including their locations
+        GatheredNodes<NodeRestletProxy> gatheredNodes = nodeRestletCrawler.getMapOfNodesForGatheredRestlets(false);
+        System.out.println("=== Localised nodes (without scan of their neighbours):\n"
+                + gatheredNodes.getMapOfNodes().toString());
+        if (!gatheredNodes.isComplete()) {
+            System.err.println("!!! exception: " + gatheredNodes.getErrors().toString());
             System.exit(-2);
         }
-        catch (JSONException ex) {
-            System.err.println("!!! exception: " + ex.toString());
-            System.exit(-3);
-        }
     }
 }
\ No newline at end of file
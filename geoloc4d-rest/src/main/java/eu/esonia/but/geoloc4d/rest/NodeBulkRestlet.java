@@ -0,0 +1,207 @@
+package eu.esonia.but.geoloc4d.rest;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.SharedNode;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.MediaType;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+
+/**
+ * RESTlet class for bulk access to all nodes hosted by a server, i.e. the
+ * whole nodes (JSON array of the nodes), their info (path "/info", JSON array
+ * of the nodes' info), or setting of locations of many nodes at once (POST
+ * of a JSON object of locations by the nodes' IDs to path
+ * "/locationAbsolute"). The GET requests can be restricted to a subset of
+ * the nodes by their comma-separated IDs (parameter ids). The nodes are held
+ * by {@link SharedNode}s (which can be shared with {@link NodeRestlet}s), so
+ * the requests are served from immutable snapshots of the nodes without
+ * locking.
+ *
+ * @author rychly
+ */
+public class NodeBulkRestlet extends Restlet {
+
+    public static final String ROOTPATH = "geoloc4d-bulk";
+    public static final String PARAMETER_ids = "ids";
+    /**
+     * Map of the hosted nodes
+     */
+    private Map<String, SharedNode> sharedNodes;
+
+    /**
+     * Construct NodeBulkRestlet object from a map of nodes.
+     *
+     * @param mapOfNodes the map of the hosted nodes
+     */
+    public NodeBulkRestlet(final MapOfNodes mapOfNodes) {
+        this(SharedNode.share(mapOfNodes));
+    }
+
+    /**
+     * Construct NodeBulkRestlet object from a map of nodes.
+     *
+     * @param mapOfNodes the map of the hosted nodes
+     * @param context the context of the Restlet
+     */
+    public NodeBulkRestlet(final MapOfNodes mapOfNodes, final Context context) {
+        super(context);
+        this.sharedNodes = SharedNode.share(mapOfNodes);
+    }
+
+    /**
+     * Construct NodeBulkRestlet object from a map of shared nodes.
+     *
+     * @param sharedNodes the map of the hosted nodes by their IDs (see
+     * {@link SharedNode#share(eu.esonia.but.geoloc4d.type.MapOfNodes)})
+     */
+    public NodeBulkRestlet(final Map<String, SharedNode> sharedNodes) {
+        super();
+        this.sharedNodes = sharedNodes;
+    }
+
+    /**
+     * Get snapshots of the hosted nodes with given IDs.
+     *
+     * @param ids the IDs of the nodes or null for all the nodes
+     * @return the snapshots (unknown IDs are skipped)
+     */
+    private List<SharedNode.Snapshot> getSnapshots(final List<String> ids) {
+        List<SharedNode.Snapshot> result = new ArrayList<>();
+        if (ids == null) {
+            for (SharedNode node : this.sharedNodes.values()) {
+                result.add(node.getSnapshot());
+            }
+        } else {
+            for (String id : ids) {
+                SharedNode node = this.sharedNodes.get(id);
+                if (node != null) {
+                    result.add(node.getSnapshot());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the all (basic data and scan) of the hosted nodes as a JSONArray
+     * string.
+     *
+     * @param ids the IDs of the nodes or null for all the nodes
+     * @return the nodes as a toJSONString result
+     */
+    public String get(final List<String> ids) {
+        StringBuilder result = new StringBuilder("[");
+        for (SharedNode.Snapshot snapshot : this.getSnapshots(ids)) {
+            if (result.length() > 1) {
+                result.append(',');
+            }
+            result.append(snapshot.toJSONString());
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * Get basic data of the hosted nodes as a JSONArray string.
+     *
+     * @param ids the IDs of the nodes or null for all the nodes
+     * @return the basic data of the nodes as a toJSONString result
+     */
+    public String getInfo(final List<String> ids) {
+        StringBuilder result = new StringBuilder("[");
+        for (SharedNode.Snapshot snapshot : this.getSnapshots(ids)) {
+            if (result.length() > 1) {
+                result.append(',');
+            }
+            result.append(snapshot.getInfoJSONString());
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * Set locations of the hosted nodes from given JSONObject string of
+     * JSONArray[3] locations by the nodes' IDs.
+     *
+     * @param locations the nodes' locations to set in a string representation
+     * @return IDs of the nodes which are not hosted (their locations are not
+     * set)
+     * @throws JSONException fail to parse the locations in JSON
+     */
+    public List<String> postLocationsAbsolute(final String locations) throws JSONException {
+        JSONObject representation = new JSONObject(locations);
+        // parse all the locations before setting any of them
+        List<SharedNode> nodes = new ArrayList<>();
+        List<Vector3D> vectors = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (Iterator<?> iterator = representation.keys(); iterator.hasNext();) {
+            String id = iterator.next().toString();
+            SharedNode node = this.sharedNodes.get(id);
+            if (node != null) {
+                nodes.add(node);
+                vectors.add(new Vector3D(representation.getJSONArray(id)));
+            } else {
+                unknown.add(id);
+            }
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            nodes.get(i).setLocationAbsolute(vectors.get(i));
+        }
+        return unknown;
+    }
+
+    /**
+     * Handles a call of RESTlet.
+     *
+     * @param request the request to handle
+     * @param response the response to update
+     */
+    @Override
+    public void handle(final Request request, Response response) {
+        // call super before adding our own logic
+        super.handle(request, response);
+        String idsParameter = request.getResourceRef().getQueryAsForm().getFirstValue(NodeBulkRestlet.PARAMETER_ids);
+        List<String> ids = ( idsParameter == null ) ? null : Arrays.asList(idsParameter.split(","));
+        // check attributes of the RESTlet
+        if (request.getAttributes().containsKey(NodeRestlet.ATTRIBUTE)) {
+            // the RESTlet has been called as a resource with a specific property
+            String property =
+                    request.getAttributes().get(NodeRestlet.ATTRIBUTE).toString();
+            if (property.equalsIgnoreCase(NodeRestlet.ATTRIBUTE_info)) {
+                // URL ends with "/info"
+                response.setEntity(this.getInfo(ids), MediaType.TEXT_PLAIN);
+            } else if (property.equalsIgnoreCase(NodeRestlet.ATTRIBUTE_locationAbsolute)
+                    && ( request.getMethod() == Method.POST )) {
+                // URL ends with "/locationAbsolute" and HTTP method is POST
+                try {
+                    List<String> unknown = this.postLocationsAbsolute(request.getEntity().getText());
+                    if (!unknown.isEmpty()) {
+                        response.setStatus(Status.CLIENT_ERROR_NOT_FOUND,
+                                "Unknown nodes " + unknown.toString() + ", the other locations have been set!");
+                    }
+                }
+                catch (IOException | JSONException ex) {
+                    response.setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+                            ex.getMessage());
+                }
+            } else {
+                response.setStatus(Status.CLIENT_ERROR_NOT_FOUND,
+                        "Unknown property '" + property + "' of the accessed resource!");
+            }
+        } else {
+            // the RESTlet has been called as a whole resource
+            response.setEntity(this.get(ids), MediaType.TEXT_PLAIN);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package eu.esonia.but.geoloc4d.rest;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.NodeData;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.restlet.data.MediaType;
+import org.restlet.resource.ClientResource;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Proxy for a remote bulk RESTlet representing all nodes hosted by a server
+ * (see {@link NodeBulkRestlet}).
+ *
+ * @author rychly
+ */
+public class NodeBulkRestletProxy {
+
+    private ClientResource clientResource;
+
+    public NodeBulkRestletProxy(final ClientResource clientResource) {
+        this.clientResource = clientResource;
+    }
+
+    private ClientResource getChild(final String property, final Collection<String> ids)
+            throws IOException, ResourceException {
+        // the child is relative to the last segment of the bulk RESTlet's path
+        StringBuilder path = new StringBuilder(this.clientResource.getReference().getLastSegment());
+        if (property != null) {
+            path.append('/').append(property);
+        }
+        if (ids != null) {
+            String separator = "?" + NodeBulkRestlet.PARAMETER_ids + "=";
+            for (String id : ids) {
+                path.append(separator).append(URLEncoder.encode(id, "UTF-8"));
+                separator = ",";
+            }
+        }
+        return this.clientResource.getChild(path.toString());
+    }
+
+    /**
+     * Get the all (basic data and scan) of the hosted nodes as a JSONArray
+     * string.
+     *
+     * @param ids the IDs of the nodes or null for all the nodes
+     * @return the nodes as a toJSONString result
+     * @throws IOException error in the HTTP query
+     * @throws ResourceException error when accessing the remote resource
+     */
+    public String get(final Collection<String> ids) throws IOException, ResourceException {
+        return this.getChild(null, ids).get(MediaType.TEXT_PLAIN).getText();
+    }
+
+    /**
+     * Get basic data of the hosted nodes as a JSONArray string.
+     *
+     * @param ids the IDs of the nodes or null for all the nodes
+     * @return the basic data of the nodes as a toJSONString result
+     * @throws IOException error in the HTTP query
+     * @throws ResourceException error when accessing the remote resource
+     */
+    public String getInfo(final Collection<String> ids) throws IOException, ResourceException {
+        return this.getChild(NodeRestlet.ATTRIBUTE_info, ids).get(MediaType.TEXT_PLAIN).getText();
+    }
+
+    /**
+     * Get the all (basic data and optionally also scan) of the hosted nodes as
+     * a MapOfNodes object.
+     *
+     * @param ids the IDs of the nodes or null for all the nodes
+     * @param includingScan query also neighbours of the nodes
+     * @return the nodes (the nodes which are not hosted are skipped)
+     * @throws IOException error in the HTTP query while getting the string
+     * representation in JSON
+     * @throws ResourceException error when accessing the remote resource
+     * @throws JSONException fail to parse the string representation in JSON
+     */
+    public MapOfNodes getMapOfNodes(final Collection<String> ids, final boolean includingScan)
+            throws IOException, ResourceException, JSONException {
+        if (includingScan) {
+            return new MapOfNodes(this.get(ids));
+        } else {
+            MapOfNodes result = new MapOfNodes();
+            JSONArray representation = new JSONArray(this.getInfo(ids));
+            for (int i = 0; i < representation.length(); i++) {
+                Node node = new Node(new NodeData(representation.getJSONObject(i)), null);
+                result.put(node.getInfo().getID(), node);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Set locations of the hosted nodes from given JSONObject string of
+     * JSONArray[3] locations by the nodes' IDs.
+     *
+     * @param locations the nodes' locations to set in a string representation
+     * @throws IOException error in the HTTP query
+     * @throws ResourceException error when accessing the remote resource (e.g.
+     * some of the nodes are not hosted)
+     */
+    public void postLocationsAbsolute(final String locations) throws IOException, ResourceException {
+        this.getChild(NodeRestlet.ATTRIBUTE_locationAbsolute, null).post(locations, MediaType.TEXT_PLAIN);
+    }
+
+    /**
+     * Set locations of the hosted nodes from given Vector3D objects.
+     *
+     * @param locations the nodes' locations by the nodes' IDs
+     * @throws IOException error in the HTTP query
+     * @throws ResourceException error when accessing the remote resource (e.g.
+     * some of the nodes are not hosted)
+     */
+    public void postLocationsAbsolute(final Map<String, Vector3D> locations) throws IOException, ResourceException {
+        JSONObject representation = new JSONObject();
+        try {
+            for (Map.Entry<String, Vector3D> pair : locations.entrySet()) {
+                representation.put(pair.getKey(), pair.getValue().toJSONArray());
+            }
+        }
+        catch (JSONException ex) {
+            throw new RuntimeException("Impossible, the key cannot be null!", ex);
+        }
+        this.postLocationsAbsolute(representation.toString());
+    }
+
+    @Override
+    public String toString() {
+        return this.clientResource.getReference().toString();
+    }
+}
@@ -0,0 +1,192 @@
+package eu.esonia.but.geoloc4d.rest;
+
+import eu.esonia.but.geoloc4d.type.IndexedNodes;
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.SharedNode;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.Map;
+import org.json.JSONArray;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.Restlet;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+
+/**
+ * RESTlet class for spatial queries on localised nodes of a network, i.e.
+ * nodes nearest to a point (parameters x, y, z, and k), nodes within a
+ * distance from a point (parameters x, y, z, and radius), or nodes in a
+ * bounding box (parameters minX, minY, minZ, maxX, maxY, and maxZ). The
+ * result is JSON array of the nodes' info (from snapshots of the nodes if
+ * they are held by {@link SharedNode}s).
+ *
+ * @author rychly
+ */
+public class NodeQueryRestlet extends Restlet {
+
+    public static final String ROOTPATH = "geoloc4d-query";
+    public static final String PARAMETER_k = "k";
+    public static final String PARAMETER_radius = "radius";
+    /**
+     * Indexed nodes to query
+     */
+    private IndexedNodes indexedNodes;
+    /**
+     * Shared nodes of the map by their IDs (or null)
+     */
+    private Map<String, SharedNode> sharedNodes;
+
+    /**
+     * Construct NodeQueryRestlet object from indexed nodes.
+     *
+     * @param indexedNodes the indexed nodes to query
+     */
+    public NodeQueryRestlet(final IndexedNodes indexedNodes) {
+        super();
+        this.indexedNodes = indexedNodes;
+    }
+
+    /**
+     * Construct NodeQueryRestlet object from indexed nodes.
+     *
+     * @param indexedNodes the indexed nodes to query
+     * @param context the context of the Restlet
+     */
+    public NodeQueryRestlet(final IndexedNodes indexedNodes, final Context context) {
+        super(context);
+        this.indexedNodes = indexedNodes;
+    }
+
+    /**
+     * Construct NodeQueryRestlet object from indexed nodes changed by their
+     * shared nodes.
+     *
+     * @param indexedNodes the indexed nodes to query
+     * @param sharedNodes the shared nodes of the indexed nodes by their IDs
+     * (see {@link SharedNode#share(eu.esonia.but.geoloc4d.type.MapOfNodes)})
+     */
+    public NodeQueryRestlet(final IndexedNodes indexedNodes, final Map<String, SharedNode> sharedNodes) {
+        super();
+        this.indexedNodes = indexedNodes;
+        this.sharedNodes = sharedNodes;
+    }
+
+    /**
+     * Get k localised nodes nearest to a given point.
+     *
+     * @param point the point
+     * @param k maximal number of the nodes
+     * @return JSON array of the nodes' info (the nearest first)
+     */
+    public String getNearest(final Vector3D point, final int k) {
+        return this.infoToJSONString(this.indexedNodes.getNearestLocalisedNodes(point, k));
+    }
+
+    /**
+     * Get localised nodes within a given distance from a given point.
+     *
+     * @param point the point
+     * @param radius the maximal distance from the point
+     * @return JSON array of the nodes' info
+     */
+    public String getWithinRadius(final Vector3D point, final double radius) {
+        return this.infoToJSONString(this.indexedNodes.getLocalisedNodesWithinRadius(point, radius));
+    }
+
+    /**
+     * Get localised nodes in a given bounding box.
+     *
+     * @param min the corner of the box with minimal coordinates
+     * @param max the corner of the box with maximal coordinates
+     * @return JSON array of the nodes' info
+     */
+    public String getWithinBox(final Vector3D min, final Vector3D max) {
+        return this.infoToJSONString(this.indexedNodes.getLocalisedNodesWithinBox(min, max));
+    }
+
+    private String infoToJSONString(final MapOfNodes nodes) {
+        if (this.sharedNodes == null) {
+            JSONArray result = new JSONArray();
+            for (Node node : nodes.values()) {
+                result.put(node.getInfo().toJSONObject());
+            }
+            return result.toString();
+        }
+        StringBuilder result = new StringBuilder("[");
+        for (Node node : nodes.values()) {
+            if (result.length() > 1) {
+                result.append(',');
+            }
+            SharedNode sharedNode = this.sharedNodes.get(node.getInfo().getID());
+            result.append(( sharedNode != null )
+                    ? sharedNode.getSnapshot().getInfoJSONString() : node.getInfo().toJSONString());
+        }
+        return result.append(']').toString();
+    }
+
+    private static Vector3D getPoint(final Form query, final String prefix) {
+        String x = query.getFirstValue(prefix.isEmpty() ? "x" : prefix + "X");
+        String y = query.getFirstValue(prefix.isEmpty() ? "y" : prefix + "Y");
+        String z = query.getFirstValue(prefix.isEmpty() ? "z" : prefix + "Z");
+        if (( x == null ) || ( y == null ) || ( z == null )) {
+            return null;
+        }
+        return new Vector3D(parseFinite(x), parseFinite(y), parseFinite(z));
+    }
+
+    private static double parseFinite(final String value) {
+        double result = Double.parseDouble(value);
+        if (Double.isNaN(result) || Double.isInfinite(result)) {
+            throw new IllegalArgumentException("The value '" + value + "' is not a finite number!");
+        }
+        return result;
+    }
+
+    /**
+     * Handles a call of RESTlet.
+     *
+     * @param request the request to handle
+     * @param response the response to update
+     */
+    @Override
+    public void handle(final Request request, Response response) {
+        // call super before adding our own logic
+        super.handle(request, response);
+        Form query = request.getResourceRef().getQueryAsForm();
+        try {
+            Vector3D point = getPoint(query, "");
+            Vector3D min = getPoint(query, "min");
+            Vector3D max = getPoint(query, "max");
+            String k = query.getFirstValue(NodeQueryRestlet.PARAMETER_k);
+            String radius = query.getFirstValue(NodeQueryRestlet.PARAMETER_radius);
+            if (( point != null ) && ( k != null )) {
+                int count = Integer.parseInt(k);
+                if (count < 1) {
+                    throw new IllegalArgumentException("The parameter " + NodeQueryRestlet.PARAMETER_k
+                            + " must be a positive number!");
+                }
+                response.setEntity(this.getNearest(point, count), MediaType.TEXT_PLAIN);
+            } else if (( point != null ) && ( radius != null )) {
+                double distance = parseFinite(radius);
+                if (distance < 0) {
+                    throw new IllegalArgumentException("The parameter " + NodeQueryRestlet.PARAMETER_radius
+                            + " must not be negative!");
+                }
+                response.setEntity(this.getWithinRadius(point, distance), MediaType.TEXT_PLAIN);
+            } else if (( min != null ) && ( max != null )) {
+                response.setEntity(this.getWithinBox(min, max), MediaType.TEXT_PLAIN);
+            } else {
+                response.setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+                        "Missing parameters, use x, y, z with k or radius, or minX, minY, minZ, maxX, maxY, maxZ!");
+            }
+        }
+        catch (IllegalArgumentException ex) {
+            // including NumberFormatException
+            response.setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+                    ex.getMessage());
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package eu.esonia.but.geoloc4d.rest;
 
 import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.SharedNode;
 import eu.esonia.but.geoloc4d.type.Vector3D;
 import java.io.IOException;
+import java.util.Date;
 import org.json.JSONException;
 import org.restlet.Context;
 import org.restlet.Request;
@@ -11,9 +13,19 @@ import org.restlet.Restlet;
 import org.restlet.data.MediaType;
 import org.restlet.data.Method;
 import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.StringRepresentation;
 
 /**
- * Basic RESTlet class for forwarding request to a node's webservice.
+ * Basic RESTlet class for forwarding request to a node's webservice. The node
+ * is held by a {@link SharedNode} (which can be shared with other services,
+ * e.g. {@link NodeBulkRestlet}), so the requests are served from immutable
+ * snapshots of the node without locking. The string representations have
+ * entity tags and modification dates of the node's version, and conditional
+ * GET requests of unchanged representations are answered by "304 Not
+ * Modified". The requests of a location which is not known (e.g. an estimate
+ * of a location which has not been estimated) are answered by "404 Not
+ * Found".
  *
  * @author rychly
  */
@@ -23,10 +35,22 @@ public class NodeRestlet extends Restlet implements NodeRestletInterface {
     public static final String ATTRIBUTE_info = "info";
     public static final String ATTRIBUTE_scan = "scan";
     public static final String ATTRIBUTE_locationAbsolute = "locationAbsolute";
+    public static final String ATTRIBUTE_locationEstimate = "locationEstimate";
+    public static final String ATTRIBUTE_bulk = "bulk";
     /**
      * Data of node where is restlet
      */
-    private Node node;
+    private SharedNode node;
+    /**
+     * Path of a bulk RESTlet for all nodes of the server (see
+     * {@link NodeBulkRestlet}) or null if there is no such RESTlet
+     */
+    private String bulkPath;
+    /**
+     * Prefix of entity tags unique for the RESTlet's instance (so the tags of
+     * a restarted RESTlet differ)
+     */
+    private final String tagPrefix = Long.toHexString(System.currentTimeMillis()) + "-";
 
     /**
      * Construct NodeRestlet object from a node of a network with geolocation
@@ -35,8 +59,7 @@ public class NodeRestlet extends Restlet implements NodeRestletInterface {
      * @param restletNode the node to construct from
      */
     public NodeRestlet(final Node restletNode) {
-        super();
-        this.node = restletNode;
+        this(new SharedNode(restletNode), (String) null);
     }
 
     /**
@@ -48,32 +71,129 @@ public class NodeRestlet extends Restlet implements NodeRestletInterface {
      */
     public NodeRestlet(final Node restletNode, final Context context) {
         super(context);
+        this.node = new SharedNode(restletNode);
+    }
+
+    /**
+     * Construct NodeRestlet object from a node of a network with geolocation
+     * ability which advertises a bulk RESTlet of its server.
+     *
+     * @param restletNode the node to construct from
+     * @param bulkPath the path of the bulk RESTlet for all nodes of the server
+     * (see {@link NodeBulkRestlet})
+     */
+    public NodeRestlet(final Node restletNode, final String bulkPath) {
+        this(new SharedNode(restletNode), bulkPath);
+    }
+
+    /**
+     * Construct NodeRestlet object from a shared node of a network with
+     * geolocation ability which advertises a bulk RESTlet of its server.
+     *
+     * @param restletNode the shared node to construct from
+     * @param bulkPath the path of the bulk RESTlet for all nodes of the server
+     * (see {@link NodeBulkRestlet}) or null if there is no such RESTlet
+     */
+    public NodeRestlet(final SharedNode restletNode, final String bulkPath) {
+        super();
         this.node = restletNode;
+        this.bulkPath = bulkPath;
     }
 
     @Override
     public String get() {
-        return this.node.toJSONString();
+        return this.node.getSnapshot().toJSONString();
     }
 
     @Override
     public String getInfo() {
-        return this.node.getInfo().toJSONString();
+        return this.node.getSnapshot().getInfoJSONString();
     }
 
     @Override
     public String getScan() {
-        return this.node.getScan().toJSONString();
+        return this.node.getSnapshot().getScanJSONString();
     }
 
     @Override
     public String getLocationAbsolute() {
-        return this.node.getInfo().getLocationAbsolute().toJSONString();
+        return this.node.getSnapshot().getLocationAbsoluteJSONString();
+    }
+
+    @Override
+    public String getLocationEstimate() {
+        return this.node.getSnapshot().getLocationEstimateJSONString();
+    }
+
+    /**
+     * Get a string representation of a snapshot of the node.
+     *
+     * @param snapshot the snapshot of the node
+     * @param property the RESTlet's property or null for the whole node
+     * @return the string representation or null if there is no such
+     * representation
+     */
+    private static String getRepresentation(final SharedNode.Snapshot snapshot, final String property) {
+        if (property == null) {
+            return snapshot.toJSONString();
+        } else if (property.equals(NodeRestlet.ATTRIBUTE_info)) {
+            return snapshot.getInfoJSONString();
+        } else if (property.equals(NodeRestlet.ATTRIBUTE_scan)) {
+            return snapshot.getScanJSONString();
+        } else if (property.equals(NodeRestlet.ATTRIBUTE_locationEstimate)) {
+            return snapshot.getLocationEstimateJSONString();
+        } else {
+            return snapshot.getLocationAbsoluteJSONString();
+        }
+    }
+
+    /**
+     * Set a string representation of the actual version of the node as an
+     * entity of a response, or answer "304 Not Modified" if the request's
+     * conditions (If-None-Match or If-Modified-Since) match the version.
+     *
+     * @param request the request to handle
+     * @param response the response to update
+     * @param property the RESTlet's property or null for the whole node
+     */
+    private void setEntity(final Request request, Response response, final String property) {
+        // the representation, the tag, and the date must be of the same version
+        SharedNode.Snapshot snapshot = this.node.getSnapshot();
+        String text = getRepresentation(snapshot, property);
+        if (text == null) {
+            response.setStatus(Status.CLIENT_ERROR_NOT_FOUND,
+                    "The location of the accessed resource is not known!");
+            return;
+        }
+        Tag tag = new Tag(this.tagPrefix + snapshot.getVersion());
+        Date date = new Date(snapshot.getModificationTime());
+        if (isNotModified(request, tag, date)) {
+            response.setStatus(Status.REDIRECTION_NOT_MODIFIED);
+        } else {
+            StringRepresentation representation = new StringRepresentation(text, MediaType.TEXT_PLAIN);
+            representation.setTag(tag);
+            representation.setModificationDate(date);
+            response.setEntity(representation);
+        }
+    }
+
+    private static boolean isNotModified(final Request request, final Tag tag, final Date date) {
+        if (!request.getConditions().getNoneMatch().isEmpty()) {
+            // If-None-Match takes precedence over If-Modified-Since
+            for (Tag noneMatch : request.getConditions().getNoneMatch()) {
+                if (noneMatch.equals(Tag.ALL) || noneMatch.equals(tag, false)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        Date modifiedSince = request.getConditions().getModifiedSince();
+        return ( modifiedSince != null ) && !date.after(modifiedSince);
     }
 
     @Override
     public void postLocationAbsolute(final String location) throws JSONException {
-        this.node.getInfo().setLocationAbsolute(new Vector3D(location));
+        this.node.setLocationAbsolute(new Vector3D(location));
     }
 
     /**
@@ -94,10 +214,10 @@ public class NodeRestlet extends Restlet implements NodeRestletInterface {
                     request.getAttributes().get(NodeRestlet.ATTRIBUTE).toString();
             if (property.equalsIgnoreCase(NodeRestlet.ATTRIBUTE_info)) {
                 // URL ends with "/info"
-                response.setEntity(this.getInfo(), MediaType.TEXT_PLAIN);
+                this.setEntity(request, response, NodeRestlet.ATTRIBUTE_info);
             } else if (property.equalsIgnoreCase(NodeRestlet.ATTRIBUTE_scan)) {
                 // URL ends with "/scan"
-                response.setEntity(this.getScan(), MediaType.TEXT_PLAIN);
+                this.setEntity(request, response, NodeRestlet.ATTRIBUTE_scan);
             } else if (property.equalsIgnoreCase(NodeRestlet.ATTRIBUTE_locationAbsolute)) {
                 // URL ends with "/locationAbsolute"
                 if (request.getMethod() == Method.POST) {
@@ -111,16 +231,22 @@ public class NodeRestlet extends Restlet implements NodeRestletInterface {
                     }
                 } else {
                     // and HTTP method is not POST (e.g. GET)
-                    response.setEntity(this.getLocationAbsolute(), MediaType.TEXT_PLAIN);
+                    this.setEntity(request, response, NodeRestlet.ATTRIBUTE_locationAbsolute);
                 }
+            } else if (property.equalsIgnoreCase(NodeRestlet.ATTRIBUTE_locationEstimate)) {
+                // URL ends with "/locationEstimate"
+                this.setEntity(request, response, NodeRestlet.ATTRIBUTE_locationEstimate);
+            } else if (property.equalsIgnoreCase(NodeRestlet.ATTRIBUTE_bulk) && ( this.bulkPath != null )) {
+                // URL ends with "/bulk" and the bulk RESTlet is advertised
+                response.setEntity(this.bulkPath, MediaType.TEXT_PLAIN);
             } else {
-                // URL ends with "/info"
+                // URL ends with an unknown property
                 response.setStatus(Status.CLIENT_ERROR_NOT_FOUND,
                         "Unknown property '" + property + "' of the accessed resource!");
             }
         } else {
             // the RESTlet has been called as a whole resource
-            response.setEntity(this.get(), MediaType.TEXT_PLAIN);
+            this.setEntity(request, response, null);
         }
     }
 
@@ -130,6 +256,6 @@ public class NodeRestlet extends Restlet implements NodeRestletInterface {
      * @return identificator of the node
      */
     public String getID() {
-        return this.node.getInfo().getID();
+        return this.node.getID();
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package eu.esonia.but.geoloc4d.rest;
 
 import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.SharedNode;
 import org.restlet.Application;
 import org.restlet.Context;
 import org.restlet.Restlet;
@@ -31,6 +32,33 @@ public class NodeRestletApplication extends Application {
         this.nodeRestlet = new NodeRestlet(restletNode);
     }
 
+    /**
+     * Constructor of REST application form a node of a network with geolocation
+     * ability which advertises a bulk RESTlet of its server.
+     *
+     * @param restletNode the node to construct from
+     * @param bulkPath the path of the bulk RESTlet for all nodes of the server
+     * (see {@link NodeBulkRestlet})
+     */
+    public NodeRestletApplication(Node restletNode, String bulkPath) {
+        super();
+        this.nodeRestlet = new NodeRestlet(restletNode, bulkPath);
+    }
+
+    /**
+     * Constructor of REST application form a shared node of a network with
+     * geolocation ability which advertises a bulk RESTlet of its server.
+     *
+     * @param restletNode the shared node to construct from (e.g. shared with
+     * {@link NodeBulkRestlet})
+     * @param bulkPath the path of the bulk RESTlet for all nodes of the server
+     * (see {@link NodeBulkRestlet})
+     */
+    public NodeRestletApplication(SharedNode restletNode, String bulkPath) {
+        super();
+        this.nodeRestlet = new NodeRestlet(restletNode, bulkPath);
+    }
+
     /**
      * Constructor of REST application form a node of a network with geolocation
      * ability.
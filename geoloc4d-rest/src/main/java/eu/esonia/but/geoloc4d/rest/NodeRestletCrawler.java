@@ -1,12 +1,17 @@
 package eu.esonia.but.geoloc4d.rest;
 
-import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
 import eu.esonia.but.geoloc4d.type.NeighbourProperties;
 import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import eu.esonia.but.geoloc4d.util.GatheredNodes;
+import eu.esonia.but.geoloc4d.util.ParallelNodeFetcher;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.json.JSONException;
 import org.restlet.Client;
 import org.restlet.resource.ClientResource;
@@ -14,6 +19,9 @@ import org.restlet.resource.ResourceException;
 
 /**
  * Class that gathers and categorizes RESTlets in a network of wireless nodes.
+ * If a server of the RESTlets advertises a bulk RESTlet of all its nodes (see
+ * {@link NodeBulkRestlet}), the nodes of the server are accessed at once by a
+ * single request instead of a request per node.
  *
  * @author rychly
  */
@@ -27,6 +35,30 @@ public class NodeRestletCrawler {
      * The client connector for a client resource common for all RESTlets.
      */
     private Client clientConnector;
+    /**
+     * Maximal number of concurrent requests (1 for sequential crawling).
+     */
+    private int parallelism = 1;
+    /**
+     * Maximal number of concurrent requests to a single host.
+     */
+    private int maxRequestsPerHost = 4;
+    /**
+     * Time in milliseconds for getting all nodes of gathered RESTlets (0 for
+     * unlimited).
+     */
+    private long timeout = 0;
+    /**
+     * Fetcher of nodes of gathered RESTlets with the actual parallelism and time (it
+     * holds its threads for all the fetches).
+     */
+    private ParallelNodeFetcher fetcher = new ParallelNodeFetcher(1, 0);
+    /**
+     * Proxies of bulk RESTlets by hosts (null if a host does not advertise
+     * any), each being obtained by the first request for the host.
+     */
+    private final ConcurrentMap<String, FutureTask<NodeBulkRestletProxy>> bulkRestlets =
+            new ConcurrentHashMap<>();
 
     /**
      * Construct a crawler starting with given URIs of RESTlets.
@@ -85,6 +117,91 @@ public class NodeRestletCrawler {
         }
     }
 
+    /**
+     * Get the maximal number of concurrent requests.
+     *
+     * @return the maximal number of concurrent requests
+     */
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Set the maximal number of concurrent requests (for crawling and for
+     * getting nodes of gathered RESTlets). The crawler queries the RESTlets
+     * sequentially if it is 1 (the default).
+     *
+     * @param parallelism the maximal number of concurrent requests
+     */
+    public void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be a positive value!");
+        }
+        this.parallelism = parallelism;
+        this.fetcher = new ParallelNodeFetcher(this.parallelism, this.timeout);
+    }
+
+    /**
+     * Get the maximal number of concurrent requests to a single host.
+     *
+     * @return the maximal number of concurrent requests to a single host
+     */
+    public int getMaxRequestsPerHost() {
+        return this.maxRequestsPerHost;
+    }
+
+    /**
+     * Set the maximal number of concurrent requests to a single host (e.g.
+     * to a simulator hosting many nodes).
+     *
+     * @param maxRequestsPerHost the maximal number of concurrent requests to
+     * a single host
+     */
+    public void setMaxRequestsPerHost(final int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("The maximal number of requests per host must be a positive value!");
+        }
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    /**
+     * Get the time for getting all nodes of gathered RESTlets.
+     *
+     * @return the time in milliseconds (0 for unlimited)
+     */
+    public long getTimeout() {
+        return this.timeout;
+    }
+
+    /**
+     * Set the time for getting all nodes of gathered RESTlets, the RESTlets
+     * which do not respond in the time are reported as failed.
+     *
+     * @param timeout the time in milliseconds (0 for unlimited)
+     */
+    public void setTimeout(final long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("The timeout must be a non-negative value!");
+        }
+        this.timeout = timeout;
+        this.fetcher = new ParallelNodeFetcher(this.parallelism, this.timeout);
+    }
+
+    /**
+     * Create a proxy for a node's RESTlet with given URI.
+     *
+     * @param uri the given URI of the node's RESTlet
+     * @return the proxy
+     */
+    private NodeRestletProxy newNodeRestletProxy(final URI uri) {
+        ClientResource clientResource = new ClientResource(uri);
+        if (this.clientConnector != null) {
+            // set the client connector if any
+            clientResource.setNext(this.clientConnector);
+        }
+        return new NodeRestletProxy(clientResource);
+    }
+
     /**
      * Add a new node with given URI into the gathered nodes.
      *
@@ -95,12 +212,7 @@ public class NodeRestletCrawler {
             return null;
         } else if (!this.gatheredRestlets.containsKey(uri)) {
             // put into the gathered if does not exists yet
-            ClientResource clientResource = new ClientResource(uri);
-            if (this.clientConnector != null) {
-                // set the client connector if any
-                clientResource.setNext(this.clientConnector);
-            }
-            NodeRestletProxy nodeRestletProxy = new NodeRestletProxy(clientResource);
+            NodeRestletProxy nodeRestletProxy = this.newNodeRestletProxy(uri);
             this.gatheredRestlets.put(uri, nodeRestletProxy);
             return nodeRestletProxy;
         } else {
@@ -110,24 +222,171 @@ public class NodeRestletCrawler {
     }
 
     /**
-     * Crawl gathered nodes and extend them by the newly obtained.
+     * Get a host and a port of an URI.
+     *
+     * @param uri the URI
+     * @return the host and the port
+     */
+    private static String getHost(final URI uri) {
+        return String.valueOf(uri.getHost()) + ":" + uri.getPort();
+    }
+
+    /**
+     * Get a value of a host memoised by a given map. The value is computed only
+     * by the first caller for the host, the other callers for the host wait for
+     * the value, but the callers for other hosts are not blocked.
+     *
+     * @param memo the map of the host's computations of the values
+     * @param host the host
+     * @param callable the computation of the value (if it is not memoised)
+     * @return the value or null if the waiting has been interrupted
+     */
+    private static <V> V getMemoised(final ConcurrentMap<String, FutureTask<V>> memo, final String host,
+            final Callable<V> callable) {
+        FutureTask<V> task = memo.get(host);
+        if (task == null) {
+            FutureTask<V> newTask = new FutureTask<>(callable);
+            task = memo.putIfAbsent(host, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException ex) {
+            throw new RuntimeException("Impossible, the computation of a host's value throws no exceptions!",
+                    ex.getCause());
+        }
+    }
+
+    /**
+     * Get a proxy for a bulk RESTlet of a host. The host is asked for the
+     * bulk RESTlet only once, by the first of its RESTlets.
+     *
+     * @param uri the URI of a RESTlet of the host
+     * @param nodeRestletProxy the proxy of the RESTlet
+     * @return the proxy for the bulk RESTlet or null if it is not advertised
+     */
+    private NodeBulkRestletProxy getBulkRestletProxy(final URI uri, final NodeRestletProxy nodeRestletProxy) {
+        return getMemoised(this.bulkRestlets, getHost(uri), new Callable<NodeBulkRestletProxy>() {
+            @Override
+            public NodeBulkRestletProxy call() {
+                return nodeRestletProxy.getBulkRestletProxy();
+            }
+        });
+    }
+
+    /**
+     * Nodes obtained from bulk RESTlets of their hosts, each host is queried
+     * only once (when the first of its nodes is requested).
+     */
+    private final class BulkNodes {
+
+        /**
+         * Query also neighbours of the nodes.
+         */
+        private final boolean includingScan;
+        /**
+         * Nodes by their URIs by hosts (empty if a host has no bulk RESTlet),
+         * each being obtained by the first request for the host.
+         */
+        private final ConcurrentMap<String, FutureTask<Map<URI, Node>>> hosts = new ConcurrentHashMap<>();
+
+        BulkNodes(final boolean includingScan) {
+            this.includingScan = includingScan;
+        }
+
+        /**
+         * Get a node of a RESTlet from a bulk RESTlet of its host.
+         *
+         * @param uri the URI of the node's RESTlet
+         * @param nodeRestletProxy the proxy of the node's RESTlet
+         * @return the node or null if it cannot be obtained from a bulk
+         * RESTlet
+         */
+        Node get(final URI uri, final NodeRestletProxy nodeRestletProxy) {
+            Map<URI, Node> nodes = getMemoised(this.hosts, getHost(uri), new Callable<Map<URI, Node>>() {
+                @Override
+                public Map<URI, Node> call() {
+                    return BulkNodes.this.getNodes(uri, nodeRestletProxy);
+                }
+            });
+            return ( nodes != null ) ? nodes.get(uri.normalize()) : null;
+        }
+
+        /**
+         * Get nodes of a host from its bulk RESTlet.
+         *
+         * @param uri the URI of a RESTlet of the host
+         * @param nodeRestletProxy the proxy of the RESTlet
+         * @return the nodes by their URIs (empty if the host has no bulk
+         * RESTlet or it cannot be accessed)
+         */
+        private Map<URI, Node> getNodes(final URI uri, final NodeRestletProxy nodeRestletProxy) {
+            Map<URI, Node> nodes = new HashMap<>();
+            NodeBulkRestletProxy nodeBulkRestletProxy =
+                    NodeRestletCrawler.this.getBulkRestletProxy(uri, nodeRestletProxy);
+            if (nodeBulkRestletProxy != null) {
+                try {
+                    for (Node node : nodeBulkRestletProxy.getMapOfNodes(null, this.includingScan).values()) {
+                        URI nodeUri = node.getInfo().getURI();
+                        if (nodeUri != null) {
+                            nodes.put(nodeUri, node);
+                        }
+                    }
+                }
+                catch (IOException | ResourceException | JSONException ex) {
+                    // fall back to the nodes' RESTlets
+                }
+            }
+            return nodes;
+        }
+    }
+
+    /**
+     * Get neighbouring nodes of a RESTlet's node from a bulk RESTlet of its
+     * host or from the RESTlet itself.
+     */
+    private static MapOfNeighbours getScanObject(final URI uri, final NodeRestletProxy nodeRestletProxy,
+            final BulkNodes bulkNodes) throws IOException, ResourceException, JSONException {
+        Node node = bulkNodes.get(uri, nodeRestletProxy);
+        return ( node != null ) ? node.getScan() : nodeRestletProxy.getScanObject();
+    }
+
+    /**
+     * Crawl gathered nodes and extend them by the newly obtained. The RESTlets
+     * are queried concurrently if the {@link #setParallelism(int) parallelism}
+     * is greater than 1, but the gathered nodes are the same (and in the same
+     * order) as if they were queried sequentially.
      */
     public void crawlGatheredNodes() {
-        // go throught all the gathered RESTlets' proxies
-        for (Queue<NodeRestletProxy> queue = new LinkedList<>(this.gatheredRestlets.values());
+        if (this.parallelism > 1) {
+            this.crawlGatheredNodesConcurrently();
+            return;
+        }
+        BulkNodes bulkNodes = new BulkNodes(true);
+        // go throught all the gathered RESTlets' URIs
+        for (Queue<URI> queue = new LinkedList<>(this.gatheredRestlets.keySet());
                 !queue.isEmpty();) {
-            // dequeue the first proxy
-            NodeRestletProxy nodeRestletProxy = queue.poll();
+            // dequeue the first URI and its proxy
+            URI nodeUri = queue.poll();
+            NodeRestletProxy nodeRestletProxy = this.gatheredRestlets.get(nodeUri);
             try {
                 // get URIs of RESTlets of neighbouring nodes of the proxied RESTlet
-                for (NeighbourProperties neighbourProperties : nodeRestletProxy.getScanObject().values()) {
+                for (NeighbourProperties neighbourProperties
+                        : getScanObject(nodeUri, nodeRestletProxy, bulkNodes).values()) {
                     URI uri = neighbourProperties.getURI();
                     if (( uri != null ) && !this.gatheredRestlets.containsKey(uri)) {
                         // if a new URI sucessfully obtained, add to the gathered ...
-                        NodeRestletProxy newNodeRestletProxy =
-                                this.addNodeRestletProxy(uri);
+                        this.addNodeRestletProxy(uri);
                         // ... and enque a new RESTlet with the URI
-                        queue.add(newNodeRestletProxy);
+                        queue.add(uri);
                     }
                 }
             }
@@ -137,6 +396,156 @@ public class NodeRestletCrawler {
         }
     }
 
+    /**
+     * Crawl gathered nodes concurrently. The URIs of neighbours obtained from
+     * the RESTlets are recorded and the breadth-first order of the sequential
+     * crawling is replayed on them at the end.
+     */
+    private void crawlGatheredNodesConcurrently() {
+        ConcurrentCrawl crawl = new ConcurrentCrawl();
+        try {
+            for (Map.Entry<URI, NodeRestletProxy> pair : this.gatheredRestlets.entrySet()) {
+                crawl.visited.put(pair.getKey(), pair.getValue());
+            }
+            for (Map.Entry<URI, NodeRestletProxy> pair : this.gatheredRestlets.entrySet()) {
+                crawl.submit(pair.getKey(), pair.getValue());
+            }
+            crawl.arrive();
+            crawl.done.await();
+        }
+        catch (InterruptedException ex) {
+            // keep the nodes gathered so far
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            crawl.executor.shutdownNow();
+        }
+        // replay the sequential breadth-first crawling on the obtained URIs
+        for (Queue<URI> queue = new LinkedList<>(this.gatheredRestlets.keySet()); !queue.isEmpty();) {
+            List<URI> neighbours = crawl.scans.get(queue.poll());
+            if (neighbours == null) {
+                continue;
+            }
+            for (URI uri : neighbours) {
+                if (!this.gatheredRestlets.containsKey(uri)) {
+                    this.gatheredRestlets.put(uri, crawl.visited.get(uri));
+                    queue.add(uri);
+                }
+            }
+        }
+    }
+
+    /**
+     * State of a concurrent crawling.
+     */
+    private final class ConcurrentCrawl {
+
+        /**
+         * Proxies of all RESTlets found so far by their URIs.
+         */
+        final ConcurrentMap<URI, NodeRestletProxy> visited = new ConcurrentHashMap<>();
+        /**
+         * URIs of neighbours obtained from the queried RESTlets (in order of
+         * their scans).
+         */
+        final ConcurrentMap<URI, List<URI>> scans = new ConcurrentHashMap<>();
+        /**
+         * Limits of concurrent requests by hosts.
+         */
+        final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<>();
+        final BulkNodes bulkNodes = new BulkNodes(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(NodeRestletCrawler.this.parallelism);
+        /**
+         * Number of pending requests and the crawling thread itself (until it
+         * submits the initial requests).
+         */
+        final AtomicInteger pending = new AtomicInteger(1);
+        /**
+         * Released when there are no pending requests.
+         */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        void arrive() {
+            if (this.pending.decrementAndGet() == 0) {
+                this.done.countDown();
+            }
+        }
+
+        void submit(final URI uri, final NodeRestletProxy nodeRestletProxy) {
+            this.pending.incrementAndGet();
+            try {
+                this.executor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            ConcurrentCrawl.this.crawl(uri, nodeRestletProxy);
+                        }
+                        finally {
+                            ConcurrentCrawl.this.arrive();
+                        }
+                    }
+                });
+            }
+            catch (RejectedExecutionException ex) {
+                // the crawling has been interrupted
+                this.arrive();
+            }
+        }
+
+        private Semaphore getHostSemaphore(final URI uri) {
+            String host = NodeRestletCrawler.getHost(uri);
+            Semaphore semaphore = this.hosts.get(host);
+            if (semaphore == null) {
+                Semaphore newSemaphore = new Semaphore(NodeRestletCrawler.this.maxRequestsPerHost);
+                semaphore = this.hosts.putIfAbsent(host, newSemaphore);
+                if (semaphore == null) {
+                    semaphore = newSemaphore;
+                }
+            }
+            return semaphore;
+        }
+
+        private void crawl(final URI uri, final NodeRestletProxy nodeRestletProxy) {
+            List<URI> neighbours = new ArrayList<>();
+            Semaphore host = this.getHostSemaphore(uri);
+            try {
+                host.acquire();
+                try {
+                    // get URIs of RESTlets of neighbouring nodes of the proxied RESTlet
+                    for (NeighbourProperties neighbourProperties
+                            : NodeRestletCrawler.getScanObject(uri, nodeRestletProxy, this.bulkNodes).values()) {
+                        URI neighbourUri = neighbourProperties.getURI();
+                        if (neighbourUri != null) {
+                            neighbours.add(neighbourUri);
+                        }
+                    }
+                }
+                finally {
+                    host.release();
+                }
+            }
+            catch (IOException | ResourceException | JSONException ex) {
+                // skip unaccesible URIs
+                neighbours.clear();
+            }
+            catch (InterruptedException ex) {
+                // the crawling has been interrupted
+                return;
+            }
+            this.scans.put(uri, neighbours);
+            for (URI neighbourUri : neighbours) {
+                if (!this.visited.containsKey(neighbourUri)) {
+                    NodeRestletProxy newNodeRestletProxy = NodeRestletCrawler.this.newNodeRestletProxy(neighbourUri);
+                    if (this.visited.putIfAbsent(neighbourUri, newNodeRestletProxy) == null) {
+                        // if a new URI sucessfully obtained, query its RESTlet
+                        this.submit(neighbourUri, newNodeRestletProxy);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Get an actual set of gathered RESTlets.
      *
@@ -147,21 +556,99 @@ public class NodeRestletCrawler {
     }
 
     /**
-     * Get a map of all nodes of actually gathered RESTlets.
+     * Get a map of all nodes of actually gathered RESTlets. The RESTlets are
+     * queried concurrently (see {@link #setParallelism(int)} and
+     * {@link #setTimeout(long)}), or at once by bulk RESTlets of their hosts
+     * if advertised, and the RESTlets which cannot be accessed
+     * (e.g. due to an error in the HTTP query, when accessing the remote
+     * resource, or in parsing of JSON string representation) are reported
+     * without affecting the nodes of the other RESTlets.
      *
      * @param includingNeighbours query also neighbours of the RESTlets' nodes
-     * @return the map of all nodes of actually gathered RESTlets
-     * @throws IOException error in the HTTP query while getting the string
-     * representation in JSON
-     * @throws ResourceException error when accessing the remote resource
-     * @throws JSONException error in parsing of JSON string representation
-     */
-    public MapOfNodes getMapOfNodesForGatheredRestlets(final boolean includingNeighbours)
-            throws IOException, ResourceException, JSONException {
-        MapOfNodes result = new MapOfNodes();
-        for (NodeRestletProxy nodeRestletProxy : this.gatheredRestlets.values()) {
-            Node node = nodeRestletProxy.getNodeObject(includingNeighbours);
-            result.put(node.getInfo().getID(), node);
+     * @return the map of all nodes of actually gathered RESTlets, their
+     * RESTlets, and errors of the failed RESTlets
+     */
+    public GatheredNodes<NodeRestletProxy> getMapOfNodesForGatheredRestlets(final boolean includingNeighbours) {
+        final Map<NodeRestletProxy, URI> uris = this.getGatheredUris();
+        final BulkNodes bulkNodes = new BulkNodes(includingNeighbours);
+        return this.fetcher.fetch(
+                new ArrayList<>(this.gatheredRestlets.values()),
+                new ParallelNodeFetcher.Fetch<NodeRestletProxy>() {
+
+                    @Override
+                    public Node fetch(final NodeRestletProxy nodeRestletProxy)
+                            throws IOException, ResourceException, JSONException {
+                        Node node = bulkNodes.get(uris.get(nodeRestletProxy), nodeRestletProxy);
+                        return ( node != null ) ? node : nodeRestletProxy.getNodeObject(includingNeighbours);
+                    }
+                });
+    }
+
+    /**
+     * Set locations of nodes of gathered RESTlets. The locations of nodes of
+     * a host which advertises a bulk RESTlet are set at once by a single
+     * request.
+     *
+     * @param gatheredNodes the nodes and their RESTlets
+     * @param locations the locations to set by the nodes' IDs
+     * @return errors of the nodes whose locations have not been set by the
+     * nodes' IDs
+     */
+    public Map<String, Exception> postLocationsAbsolute(final GatheredNodes<NodeRestletProxy> gatheredNodes,
+            final Map<String, Vector3D> locations) {
+        Map<String, Exception> result = new LinkedHashMap<>();
+        Map<NodeRestletProxy, URI> uris = this.getGatheredUris();
+        // group the locations by bulk RESTlets, the others are set one by one
+        Map<NodeBulkRestletProxy, Map<String, Vector3D>> bulks = new LinkedHashMap<>();
+        Map<String, Vector3D> singles = new LinkedHashMap<>();
+        for (Map.Entry<String, Vector3D> pair : locations.entrySet()) {
+            NodeRestletProxy nodeRestletProxy = gatheredNodes.getSource(pair.getKey());
+            URI uri = uris.get(nodeRestletProxy);
+            if (uri == null) {
+                result.put(pair.getKey(), new IllegalArgumentException("The node has not been gathered!"));
+                continue;
+            }
+            NodeBulkRestletProxy nodeBulkRestletProxy = this.getBulkRestletProxy(uri, nodeRestletProxy);
+            if (nodeBulkRestletProxy == null) {
+                singles.put(pair.getKey(), pair.getValue());
+                continue;
+            }
+            Map<String, Vector3D> bulk = bulks.get(nodeBulkRestletProxy);
+            if (bulk == null) {
+                bulk = new LinkedHashMap<>();
+                bulks.put(nodeBulkRestletProxy, bulk);
+            }
+            bulk.put(pair.getKey(), pair.getValue());
+        }
+        for (Map.Entry<NodeBulkRestletProxy, Map<String, Vector3D>> pair : bulks.entrySet()) {
+            try {
+                pair.getKey().postLocationsAbsolute(pair.getValue());
+            }
+            catch (IOException | ResourceException ex) {
+                // fall back to the nodes' RESTlets
+                singles.putAll(pair.getValue());
+            }
+        }
+        for (Map.Entry<String, Vector3D> pair : singles.entrySet()) {
+            try {
+                gatheredNodes.getSource(pair.getKey()).postLocationAbsolute(pair.getValue());
+            }
+            catch (IOException | ResourceException ex) {
+                result.put(pair.getKey(), ex);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get URIs of the gathered RESTlets by their proxies.
+     *
+     * @return the URIs by the proxies
+     */
+    private Map<NodeRestletProxy, URI> getGatheredUris() {
+        Map<NodeRestletProxy, URI> result = new IdentityHashMap<>();
+        for (Map.Entry<URI, NodeRestletProxy> pair : this.gatheredRestlets.entrySet()) {
+            result.put(pair.getValue(), pair.getKey());
         }
         return result;
     }
@@ -52,6 +52,19 @@ public interface NodeRestletInterface {
     public String getLocationAbsolute()
             throws IOException, ResourceException;
 
+    /**
+     * Get estimate of node's location with its uncertainty as a JSONObject
+     * string.
+     *
+     * @return the estimate of node's location as a toJSONString result or
+     * null if the location has not been estimated by trilateration (the
+     * RESTlet answers "404 Not Found")
+     * @throws IOException error in the HTTP query if needed
+     * @throws ResourceException error when accessing the remote resource
+     */
+    public String getLocationEstimate()
+            throws IOException, ResourceException;
+
     /**
      * Set node's location from given JSONArray[3] string.
      *
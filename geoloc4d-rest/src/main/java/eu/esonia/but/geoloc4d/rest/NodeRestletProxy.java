@@ -1,38 +1,96 @@
 package eu.esonia.but.geoloc4d.rest;
 
+import eu.esonia.but.geoloc4d.type.LocationEstimate;
 import eu.esonia.but.geoloc4d.type.MapOfNeighbours;
+import eu.esonia.but.geoloc4d.type.NeighbourProperties;
 import eu.esonia.but.geoloc4d.type.Node;
 import eu.esonia.but.geoloc4d.type.NodeData;
 import eu.esonia.but.geoloc4d.type.Vector3D;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.restlet.Context;
 import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.Representation;
 import org.restlet.resource.ClientResource;
 import org.restlet.resource.ResourceException;
 
 /**
  * Proxy for a remote RESTlet representing a network node and its data (e.g.
- * location).
+ * location). The representations with entity tags are cached (including their
+ * parsed objects) and they are requested again only if they have been
+ * modified, i.e. by conditional GET requests with If-None-Match.
  *
  * @author rychly
  */
 public class NodeRestletProxy implements NodeRestletInterface {
 
     private ClientResource clientResource;
+    /**
+     * Cached representations with entity tags by their paths
+     */
+    private final ConcurrentMap<String, CachedRepresentation> cache = new ConcurrentHashMap<>();
 
     public NodeRestletProxy(final ClientResource clientResource) {
         this.clientResource = clientResource;
     }
 
+    /**
+     * Representation of a remote resource with its entity tag and its parsed
+     * object (if any).
+     */
+    private static final class CachedRepresentation {
+
+        final Tag tag;
+        final String text;
+        volatile Object object;
+
+        CachedRepresentation(final Tag tag, final String text) {
+            this.tag = tag;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Get a representation of a remote resource, from the cache if the
+     * resource has not been modified.
+     *
+     * @param path the path of the resource
+     * @return the representation
+     * @throws IOException error in the HTTP query
+     * @throws ResourceException error when accessing the remote resource
+     */
+    private CachedRepresentation getRepresentation(final String path) throws IOException, ResourceException {
+        ClientResource child = this.clientResource.getChild(path);
+        CachedRepresentation cached = this.cache.get(path);
+        if (cached != null) {
+            child.getConditions().setNoneMatch(Collections.singletonList(cached.tag));
+        }
+        Representation representation = child.get(MediaType.TEXT_PLAIN);
+        if (( cached != null ) && Status.REDIRECTION_NOT_MODIFIED.equals(child.getStatus())) {
+            return cached;
+        }
+        CachedRepresentation result = new CachedRepresentation(
+                ( representation == null ) ? null : representation.getTag(),
+                ( representation == null ) ? null : representation.getText());
+        if (result.tag != null) {
+            this.cache.put(path, result);
+        } else {
+            this.cache.remove(path);
+        }
+        return result;
+    }
+
     @Override
     public String get() throws IOException, ResourceException {
-        return this.clientResource.
-                getChild(NodeRestletApplication.ROOTPATH).
-                get(MediaType.TEXT_PLAIN).getText();
+        return this.getRepresentation(NodeRestletApplication.ROOTPATH).text;
     }
 
     /**
@@ -45,7 +103,14 @@ public class NodeRestletProxy implements NodeRestletInterface {
      * @throws JSONException fail to parse the string representation in JSON
      */
     public Node getNodeObject() throws IOException, ResourceException, JSONException {
-        return new Node(new JSONObject(this.get()));
+        CachedRepresentation cached = this.getRepresentation(NodeRestletApplication.ROOTPATH);
+        Node node = (Node) cached.object;
+        if (node == null) {
+            node = new Node(new JSONObject(cached.text));
+            cached.object = node;
+        }
+        // a copy, the cached object must not be modified
+        return new Node(node.getInfo(), copyOf(node.getScan()));
     }
 
     /**
@@ -70,9 +135,7 @@ public class NodeRestletProxy implements NodeRestletInterface {
 
     @Override
     public String getInfo() throws IOException, ResourceException {
-        return this.clientResource.
-                getChild(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_info).
-                get(MediaType.TEXT_PLAIN).getText();
+        return this.getRepresentation(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_info).text;
     }
 
     /**
@@ -85,14 +148,19 @@ public class NodeRestletProxy implements NodeRestletInterface {
      * @throws JSONException fail to parse the string representation in JSON
      */
     public NodeData getInfoObject() throws IOException, ResourceException, JSONException {
-        return new NodeData(new JSONObject(this.getInfo()));
+        CachedRepresentation cached = this.getRepresentation(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_info);
+        NodeData info = (NodeData) cached.object;
+        if (info == null) {
+            info = new NodeData(new JSONObject(cached.text));
+            cached.object = info;
+        }
+        // a copy, the cached object must not be modified
+        return new NodeData(info);
     }
 
     @Override
     public String getScan() throws IOException, ResourceException {
-        return this.clientResource.
-                getChild(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_scan).
-                get(MediaType.TEXT_PLAIN).getText();
+        return this.getRepresentation(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_scan).text;
     }
 
     /**
@@ -105,14 +173,33 @@ public class NodeRestletProxy implements NodeRestletInterface {
      * @throws JSONException fail to parse the string representation in JSON
      */
     public MapOfNeighbours getScanObject() throws IOException, ResourceException, JSONException {
-        return new MapOfNeighbours(new JSONArray(this.getScan()));
+        CachedRepresentation cached = this.getRepresentation(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_scan);
+        MapOfNeighbours scan = (MapOfNeighbours) cached.object;
+        if (scan == null) {
+            scan = new MapOfNeighbours(new JSONArray(cached.text));
+            cached.object = scan;
+        }
+        // a copy, the cached object must not be modified
+        return copyOf(scan);
+    }
+
+    /**
+     * Deep copy of neighbouring nodes (including their properties).
+     *
+     * @param source the neighbouring nodes to copy
+     * @return the copy
+     */
+    private static MapOfNeighbours copyOf(final MapOfNeighbours source) {
+        MapOfNeighbours result = new MapOfNeighbours();
+        for (NeighbourProperties neighbourProperties : source.values()) {
+            result.put(neighbourProperties.getID(), new NeighbourProperties(neighbourProperties));
+        }
+        return result;
     }
 
     @Override
     public String getLocationAbsolute() throws IOException, ResourceException {
-        return this.clientResource.
-                getChild(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute).
-                get(MediaType.TEXT_PLAIN).getText();
+        return this.getRepresentation(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute).text;
     }
 
     /**
@@ -125,11 +212,71 @@ public class NodeRestletProxy implements NodeRestletInterface {
      * @throws JSONException fail to parse the string representation in JSON
      */
     public Vector3D getLocationAbsoluteObject() throws IOException, ResourceException, JSONException {
-        return new Vector3D(new JSONArray(this.getLocationAbsolute()));
+        CachedRepresentation cached = this.getRepresentation(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute);
+        Vector3D location = (Vector3D) cached.object;
+        if (location == null) {
+            location = new Vector3D(new JSONArray(cached.text));
+            cached.object = location;
+        }
+        // a copy, the cached object must not be modified
+        return new Vector3D(location);
+    }
+
+    /**
+     * Get a representation of the estimate of node's location, from the cache
+     * if the estimate has not been modified.
+     *
+     * @return the representation or null if the location has not been
+     * estimated (the remote RESTlet answers "404 Not Found")
+     * @throws IOException error in the HTTP query
+     * @throws ResourceException error when accessing the remote resource
+     */
+    private CachedRepresentation getLocationEstimateRepresentation() throws IOException, ResourceException {
+        String path = NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_locationEstimate;
+        try {
+            return this.getRepresentation(path);
+        }
+        catch (ResourceException ex) {
+            if (Status.CLIENT_ERROR_NOT_FOUND.equals(ex.getStatus())) {
+                this.cache.remove(path);
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    @Override
+    public String getLocationEstimate() throws IOException, ResourceException {
+        CachedRepresentation cached = this.getLocationEstimateRepresentation();
+        return ( cached == null ) ? null : cached.text;
+    }
+
+    /**
+     * Get estimate of node's location with its uncertainty as an object.
+     *
+     * @return the estimate of node's location (immutable) or null if the
+     * location has not been estimated by trilateration
+     * @throws IOException error in the HTTP query while getting the string
+     * representation in JSON
+     * @throws ResourceException error when accessing the remote resource
+     * @throws JSONException fail to parse the string representation in JSON
+     */
+    public LocationEstimate getLocationEstimateObject() throws IOException, ResourceException, JSONException {
+        CachedRepresentation cached = this.getLocationEstimateRepresentation();
+        if (cached == null) {
+            return null;
+        }
+        LocationEstimate estimate = (LocationEstimate) cached.object;
+        if (estimate == null) {
+            estimate = new LocationEstimate(cached.text);
+            cached.object = estimate;
+        }
+        return estimate;
     }
 
     @Override
     public void postLocationAbsolute(final String location) throws IOException, ResourceException {
+        // the cached representations are validated by their entity tags
         this.clientResource.
                 getChild(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute).
                 post(location, MediaType.TEXT_PLAIN);
@@ -147,6 +294,27 @@ public class NodeRestletProxy implements NodeRestletInterface {
         this.postLocationAbsolute(location.toJSONString());
     }
 
+    /**
+     * Get a proxy for a bulk RESTlet of all nodes of the remote RESTlet's
+     * server if the RESTlet advertises it (see {@link NodeBulkRestlet}).
+     *
+     * @return the proxy for the bulk RESTlet or null if it is not advertised
+     * (or the advertisement cannot be accessed)
+     */
+    public NodeBulkRestletProxy getBulkRestletProxy() {
+        try {
+            String bulkPath = this.clientResource.
+                    getChild(NodeRestletApplication.ROOTPATH + "/" + NodeRestlet.ATTRIBUTE_bulk).
+                    get(MediaType.TEXT_PLAIN).getText();
+            return ( bulkPath == null ) ? null
+                    : new NodeBulkRestletProxy(this.clientResource.getChild(bulkPath.trim()));
+        }
+        catch (IOException | ResourceException ex) {
+            // e.g. the server does not know the property of the RESTlet
+            return null;
+        }
+    }
+
     /**
      * Get the context of the proxy's client resource for a remote RESTlet.
      *
@@ -0,0 +1,131 @@
+package eu.esonia.but.geoloc4d.rest;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.SharedNode;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+import org.restlet.data.Status;
+import org.restlet.representation.StringRepresentation;
+
+/**
+ * Test of RESTlet class for bulk access to all nodes hosted by a server.
+ *
+ * @author rychly
+ */
+public class NodeBulkRestletTest {
+
+    private static final String ROOT = "http://localhost/" + NodeBulkRestlet.ROOTPATH;
+    private Map<String, SharedNode> sharedNodes;
+    private NodeBulkRestlet nodeBulkRestlet;
+
+    public NodeBulkRestletTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.sharedNodes = SharedNode.share(new MapOfNodes("["
+                + "{info:{id:\"nodeA\", locationAbsolute:[0,0,0]}, scan:[{id:\"nodeB\", distance:10}]},"
+                + "{info:{id:\"nodeB\", locationAbsolute:[10,0,0]}, scan:[{id:\"nodeA\", distance:10}]},"
+                + "{info:{id:\"nodeC\"}, scan:[]}"
+                + "]"));
+        this.nodeBulkRestlet = new NodeBulkRestlet(this.sharedNodes);
+    }
+
+    @After
+    public void tearDown() {
+        this.nodeBulkRestlet = null;
+        this.sharedNodes = null;
+    }
+
+    /**
+     * Handle a request by the tested RESTlet.
+     *
+     * @param request the request
+     * @param property the RESTlet's property or null for the whole resource
+     * @return the response
+     */
+    private Response handle(final Request request, final String property) {
+        if (property != null) {
+            request.getAttributes().put(NodeRestlet.ATTRIBUTE, property);
+        }
+        Response response = new Response(request);
+        this.nodeBulkRestlet.handle(request, response);
+        return response;
+    }
+
+    /**
+     * Test of handle method for GET of all the nodes, of class
+     * NodeBulkRestlet.
+     *
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testGet() throws JSONException {
+        Response response = this.handle(new Request(Method.GET, ROOT), null);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        MapOfNodes nodes = new MapOfNodes(response.getEntityAsText());
+        assertEquals(3, nodes.size());
+        assertEquals(1, nodes.get("nodeA").getScan().size());
+    }
+
+    /**
+     * Test of handle method for GET of the nodes filtered by their IDs, of
+     * class NodeBulkRestlet.
+     *
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testGetFiltered() throws JSONException {
+        // in the order of the IDs, the unknown IDs are skipped
+        Response response = this.handle(new Request(Method.GET,
+                ROOT + "?" + NodeBulkRestlet.PARAMETER_ids + "=nodeC,unknown,nodeA"), null);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertArrayEquals(new String[]{"nodeC", "nodeA"},
+                new MapOfNodes(response.getEntityAsText()).keySet().toArray(new String[0]));
+        // the info of the nodes only
+        response = this.handle(new Request(Method.GET,
+                ROOT + "/" + NodeRestlet.ATTRIBUTE_info + "?" + NodeBulkRestlet.PARAMETER_ids + "=nodeB"),
+                NodeRestlet.ATTRIBUTE_info);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        JSONArray info = new JSONArray(response.getEntityAsText());
+        assertEquals(1, info.length());
+        assertEquals("nodeB", info.getJSONObject(0).getString("id"));
+        assertFalse(info.getJSONObject(0).has("scan"));
+    }
+
+    /**
+     * Test of handle method for POST of locations of the nodes, of class
+     * NodeBulkRestlet.
+     */
+    @Test
+    public void testPostLocationsAbsolute() {
+        Response response = this.handle(new Request(Method.POST, ROOT + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute,
+                new StringRepresentation("{nodeA:[1,2,3], nodeC:[4,5,6]}")), NodeRestlet.ATTRIBUTE_locationAbsolute);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals(new Vector3D(1, 2, 3),
+                this.sharedNodes.get("nodeA").getSnapshot().getNode().getInfo().getLocationAbsolute());
+        assertEquals(new Vector3D(4, 5, 6),
+                this.sharedNodes.get("nodeC").getSnapshot().getNode().getInfo().getLocationAbsolute());
+        // the locations of the hosted nodes are set even if some nodes are unknown
+        response = this.handle(new Request(Method.POST, ROOT + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute,
+                new StringRepresentation("{unknown:[0,0,0], nodeB:[7,8,9]}")), NodeRestlet.ATTRIBUTE_locationAbsolute);
+        assertEquals(Status.CLIENT_ERROR_NOT_FOUND, response.getStatus());
+        assertEquals(new Vector3D(7, 8, 9),
+                this.sharedNodes.get("nodeB").getSnapshot().getNode().getInfo().getLocationAbsolute());
+        // none of the locations is set if any of them cannot be parsed
+        response = this.handle(new Request(Method.POST, ROOT + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute,
+                new StringRepresentation("{nodeA:[0,0,0], nodeB:\"here\"}")), NodeRestlet.ATTRIBUTE_locationAbsolute);
+        assertEquals(Status.CLIENT_ERROR_BAD_REQUEST, response.getStatus());
+        assertEquals(new Vector3D(1, 2, 3),
+                this.sharedNodes.get("nodeA").getSnapshot().getNode().getInfo().getLocationAbsolute());
+    }
+}
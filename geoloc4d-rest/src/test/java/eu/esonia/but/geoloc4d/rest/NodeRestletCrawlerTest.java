@@ -0,0 +1,217 @@
+package eu.esonia.but.geoloc4d.rest;
+
+import eu.esonia.but.geoloc4d.type.MapOfNodes;
+import eu.esonia.but.geoloc4d.type.SharedNode;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import eu.esonia.but.geoloc4d.util.GatheredNodes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.Component;
+import org.restlet.data.Protocol;
+
+/**
+ * Test of class that gathers and categorizes RESTlets in a network of wireless
+ * nodes. The nodes are served by two local servers, the first one advertises
+ * a bulk RESTlet of its nodes and the second one does not.
+ *
+ * @author rychly
+ */
+public class NodeRestletCrawlerTest {
+
+    private static final int PORT_BULK = 18182;
+    private static final int PORT_SINGLE = 18183;
+    /**
+     * The served nodes of both the servers by their IDs.
+     */
+    private Map<String, SharedNode> sharedNodes;
+    private Component bulkComponent;
+    private Component singleComponent;
+
+    public NodeRestletCrawlerTest() {
+    }
+
+    /**
+     * Get an URI of a node's RESTlet (also the ID of the node).
+     *
+     * @param port the port of the node's server
+     * @param name the name of the node
+     * @return the URI
+     */
+    private static String uri(final int port, final String name) {
+        return "http://localhost:" + port + "/" + name + "/" + NodeRestletApplication.ROOTPATH;
+    }
+
+    /**
+     * Get a string representation of a node and its neighbours.
+     *
+     * @param port the port of the node's server
+     * @param name the name of the node
+     * @param neighbours the URIs of the node's neighbours
+     * @return the representation in JSON
+     */
+    private static String node(final int port, final String name, final String... neighbours) {
+        StringBuilder result = new StringBuilder("{info:{id:\"").append(uri(port, name)).append("\"}, scan:[");
+        for (int i = 0; i < neighbours.length; i++) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append("{id:\"").append(neighbours[i]).append("\", distance:").append(i + 1).append('}');
+        }
+        return result.append("]}").toString();
+    }
+
+    /**
+     * Start a server of nodes.
+     *
+     * @param port the port of the server
+     * @param bulk advertise a bulk RESTlet of the nodes
+     * @param nodes the representations of the nodes in JSON
+     * @return the component of the server
+     * @throws Exception the server cannot be started
+     */
+    private Component startComponent(final int port, final boolean bulk, final String... nodes) throws Exception {
+        StringBuilder representation = new StringBuilder("[");
+        for (String node : nodes) {
+            if (representation.length() > 1) {
+                representation.append(',');
+            }
+            representation.append(node);
+        }
+        Map<String, SharedNode> hosted = SharedNode.share(new MapOfNodes(representation.append(']').toString()));
+        this.sharedNodes.putAll(hosted);
+        Component component = new Component();
+        component.getServers().add(Protocol.HTTP, "localhost", port);
+        for (SharedNode node : hosted.values()) {
+            String path = node.getSnapshot().getNode().getInfo().getURI().getPath();
+            component.getDefaultHost().attach(path.substring(0, path.indexOf('/', 1)),
+                    new NodeRestletApplication(node, bulk ? "/" + NodeBulkRestlet.ROOTPATH : null));
+        }
+        if (bulk) {
+            NodeBulkRestlet nodeBulkRestlet = new NodeBulkRestlet(hosted);
+            component.getDefaultHost().attach("/" + NodeBulkRestlet.ROOTPATH + "/{" + NodeRestlet.ATTRIBUTE + "}",
+                    nodeBulkRestlet);
+            component.getDefaultHost().attach("/" + NodeBulkRestlet.ROOTPATH, nodeBulkRestlet);
+        }
+        component.start();
+        return component;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        this.sharedNodes = new HashMap<>();
+        this.bulkComponent = this.startComponent(PORT_BULK, true,
+                node(PORT_BULK, "a0", uri(PORT_BULK, "a1"), uri(PORT_SINGLE, "b0"), uri(PORT_BULK, "a2")),
+                node(PORT_BULK, "a1", uri(PORT_BULK, "a3"), uri(PORT_BULK, "a0")),
+                node(PORT_BULK, "a2", uri(PORT_SINGLE, "b3")),
+                node(PORT_BULK, "a3", uri(PORT_BULK, "a4")),
+                node(PORT_BULK, "a4", uri(PORT_SINGLE, "b1"), uri(PORT_BULK, "a5")),
+                node(PORT_BULK, "a5"));
+        this.singleComponent = this.startComponent(PORT_SINGLE, false,
+                node(PORT_SINGLE, "b0", uri(PORT_SINGLE, "b1"), uri(PORT_BULK, "a4"), uri(PORT_SINGLE, "b2")),
+                node(PORT_SINGLE, "b1", uri(PORT_SINGLE, "b4")),
+                node(PORT_SINGLE, "b2", uri(PORT_BULK, "a5"), uri(PORT_SINGLE, "b5")),
+                node(PORT_SINGLE, "b3", uri(PORT_SINGLE, "b0")),
+                node(PORT_SINGLE, "b4"),
+                node(PORT_SINGLE, "b5", uri(PORT_BULK, "a3")));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.bulkComponent.stop();
+        this.singleComponent.stop();
+        this.bulkComponent = null;
+        this.singleComponent = null;
+        this.sharedNodes = null;
+    }
+
+    /**
+     * Crawl the nodes from the first node of the first server.
+     *
+     * @param parallelism the maximal number of concurrent requests
+     * @return the crawler with the gathered RESTlets
+     */
+    private NodeRestletCrawler crawl(final int parallelism) {
+        NodeRestletCrawler crawler = new NodeRestletCrawler(new String[]{uri(PORT_BULK, "a0")});
+        crawler.setParallelism(parallelism);
+        crawler.setMaxRequestsPerHost(2);
+        crawler.crawlGatheredNodes();
+        return crawler;
+    }
+
+    /**
+     * Test of crawlGatheredNodes and getMapOfNodesForGatheredRestlets methods
+     * (sequentially and concurrently), of class NodeRestletCrawler.
+     */
+    @Test
+    public void testCrawlGatheredNodes() {
+        GatheredNodes<NodeRestletProxy> sequential = this.crawl(1).getMapOfNodesForGatheredRestlets(true);
+        assertTrue(sequential.isComplete());
+        // the nodes in the order of the breadth-first search
+        assertArrayEquals(new String[]{
+                    uri(PORT_BULK, "a0"), uri(PORT_BULK, "a1"), uri(PORT_SINGLE, "b0"), uri(PORT_BULK, "a2"),
+                    uri(PORT_BULK, "a3"), uri(PORT_SINGLE, "b1"), uri(PORT_BULK, "a4"), uri(PORT_SINGLE, "b2"),
+                    uri(PORT_SINGLE, "b3"), uri(PORT_SINGLE, "b4"), uri(PORT_BULK, "a5"), uri(PORT_SINGLE, "b5")},
+                sequential.getMapOfNodes().keySet().toArray(new String[0]));
+        for (int parallelism : new int[]{2, 8}) {
+            GatheredNodes<NodeRestletProxy> concurrent =
+                    this.crawl(parallelism).getMapOfNodesForGatheredRestlets(true);
+            assertTrue(concurrent.isComplete());
+            // the same nodes (including their neighbours) in the same order
+            assertArrayEquals(sequential.getMapOfNodes().keySet().toArray(new String[0]),
+                    concurrent.getMapOfNodes().keySet().toArray(new String[0]));
+            assertEquals(sequential.getMapOfNodes().toJSONString(), concurrent.getMapOfNodes().toJSONString());
+            assertEquals(sequential.getSources(), concurrent.getSources());
+        }
+    }
+
+    /**
+     * Test of getMapOfNodesForGatheredRestlets method without neighbours, of
+     * class NodeRestletCrawler.
+     */
+    @Test
+    public void testGetMapOfNodesForGatheredRestletsWithoutNeighbours() {
+        GatheredNodes<NodeRestletProxy> gatheredNodes = this.crawl(4).getMapOfNodesForGatheredRestlets(false);
+        assertTrue(gatheredNodes.isComplete());
+        assertEquals(12, gatheredNodes.getMapOfNodes().size());
+        // from the bulk RESTlet and from the node's RESTlet
+        assertTrue(gatheredNodes.getMapOfNodes().get(uri(PORT_BULK, "a0")).getScan().isEmpty());
+        assertTrue(gatheredNodes.getMapOfNodes().get(uri(PORT_SINGLE, "b0")).getScan().isEmpty());
+    }
+
+    /**
+     * Test of postLocationsAbsolute method (by the bulk RESTlet and by the
+     * nodes' RESTlets), of class NodeRestletCrawler.
+     *
+     * @throws JSONException assertion failed with the exception
+     */
+    @Test
+    public void testPostLocationsAbsolute() throws JSONException {
+        NodeRestletCrawler crawler = this.crawl(4);
+        GatheredNodes<NodeRestletProxy> gatheredNodes = crawler.getMapOfNodesForGatheredRestlets(false);
+        Map<String, Vector3D> locations = new LinkedHashMap<>();
+        locations.put(uri(PORT_BULK, "a1"), new Vector3D(1, 2, 3));
+        locations.put(uri(PORT_BULK, "a5"), new Vector3D(4, 5, 6));
+        locations.put(uri(PORT_SINGLE, "b2"), new Vector3D(7, 8, 9));
+        locations.put(uri(PORT_BULK, "x0"), new Vector3D(0, 0, 0));
+        Map<String, Exception> errors = crawler.postLocationsAbsolute(gatheredNodes, locations);
+        // the node which has not been gathered fails only
+        assertEquals(Collections.singleton(uri(PORT_BULK, "x0")), errors.keySet());
+        assertTrue(errors.get(uri(PORT_BULK, "x0")) instanceof IllegalArgumentException);
+        for (String id : new String[]{uri(PORT_BULK, "a1"), uri(PORT_BULK, "a5"), uri(PORT_SINGLE, "b2")}) {
+            assertEquals(locations.get(id),
+                    this.sharedNodes.get(id).getSnapshot().getNode().getInfo().getLocationAbsolute());
+        }
+        assertNull(this.sharedNodes.get(uri(PORT_BULK, "a0")).getSnapshot().getNode().getInfo().getLocationAbsolute());
+        // the posted locations are read back (the cached representations are modified)
+        gatheredNodes = crawler.getMapOfNodesForGatheredRestlets(false);
+        assertEquals(new Vector3D(7, 8, 9),
+                gatheredNodes.getMapOfNodes().get(uri(PORT_SINGLE, "b2")).getInfo().getLocationAbsolute());
+    }
+}
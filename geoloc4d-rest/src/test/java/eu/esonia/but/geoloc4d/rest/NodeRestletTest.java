@@ -0,0 +1,166 @@
+package eu.esonia.but.geoloc4d.rest;
+
+import eu.esonia.but.geoloc4d.type.LocationEstimate;
+import eu.esonia.but.geoloc4d.type.Node;
+import eu.esonia.but.geoloc4d.type.NodeData;
+import eu.esonia.but.geoloc4d.type.SharedNode;
+import eu.esonia.but.geoloc4d.type.Vector3D;
+import java.util.Arrays;
+import java.util.Date;
+import org.json.JSONException;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.Component;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Method;
+import org.restlet.data.Protocol;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.ClientResource;
+
+/**
+ * Test of RESTlet class for a node's webservice and of the proxy for a remote
+ * RESTlet.
+ *
+ * @author rychly
+ */
+public class NodeRestletTest {
+
+    private static final int PORT = 18184;
+    private static final String ROOT = "http://localhost:" + PORT + "/nodeA/" + NodeRestletApplication.ROOTPATH;
+    private SharedNode sharedNode;
+    private NodeRestlet nodeRestlet;
+
+    public NodeRestletTest() {
+    }
+
+    @Before
+    public void setUp() throws JSONException {
+        this.sharedNode = new SharedNode(new Node("{info:{id:\"" + ROOT + "\", locationAbsolute:[0,0,0]}, "
+                + "scan:[{id:\"nodeB\", distance:10}]}"));
+        this.nodeRestlet = new NodeRestlet(this.sharedNode, null);
+    }
+
+    @After
+    public void tearDown() {
+        this.nodeRestlet = null;
+        this.sharedNode = null;
+    }
+
+    /**
+     * Handle a GET request by the tested RESTlet.
+     *
+     * @param property the RESTlet's property or null for the whole resource
+     * @param noneMatch the tag of the If-None-Match condition or null
+     * @param modifiedSince the date of the If-Modified-Since condition or null
+     * @return the response
+     */
+    private Response get(final String property, final Tag noneMatch, final Date modifiedSince) {
+        Request request = new Request(Method.GET, ( property == null ) ? ROOT : ROOT + "/" + property);
+        if (property != null) {
+            request.getAttributes().put(NodeRestlet.ATTRIBUTE, property);
+        }
+        if (noneMatch != null) {
+            request.getConditions().setNoneMatch(Arrays.asList(noneMatch));
+        }
+        request.getConditions().setModifiedSince(modifiedSince);
+        Response response = new Response(request);
+        this.nodeRestlet.handle(request, response);
+        return response;
+    }
+
+    /**
+     * Test of handle method for conditional GET requests, of class
+     * NodeRestlet.
+     */
+    @Test
+    public void testConditionalGet() {
+        Response response = this.get(NodeRestlet.ATTRIBUTE_info, null, null);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        Tag tag = response.getEntity().getTag();
+        Date date = response.getEntity().getModificationDate();
+        assertNotNull(tag);
+        assertNotNull(date);
+        // the same version of the node is not modified
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, this.get(NodeRestlet.ATTRIBUTE_info, tag, null).getStatus());
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, this.get(NodeRestlet.ATTRIBUTE_info, Tag.ALL, null).getStatus());
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, this.get(NodeRestlet.ATTRIBUTE_info, null, date).getStatus());
+        assertEquals(Status.REDIRECTION_NOT_MODIFIED, this.get(null, tag, null).getStatus());
+        assertEquals(Status.SUCCESS_OK,
+                this.get(NodeRestlet.ATTRIBUTE_info, null, new Date(date.getTime() - 1000)).getStatus());
+        // If-None-Match takes precedence over If-Modified-Since
+        assertEquals(Status.SUCCESS_OK,
+                this.get(NodeRestlet.ATTRIBUTE_info, new Tag("other"), date).getStatus());
+        // a new version of the node is modified
+        Request request = new Request(Method.POST, ROOT + "/" + NodeRestlet.ATTRIBUTE_locationAbsolute,
+                new StringRepresentation("[1,2,3]"));
+        request.getAttributes().put(NodeRestlet.ATTRIBUTE, NodeRestlet.ATTRIBUTE_locationAbsolute);
+        this.nodeRestlet.handle(request, new Response(request));
+        response = this.get(NodeRestlet.ATTRIBUTE_info, tag, null);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertFalse(tag.equals(response.getEntity().getTag()));
+        assertEquals(Status.SUCCESS_OK, this.get(null, tag, null).getStatus());
+    }
+
+    /**
+     * Test of getLocationEstimate method and of handle method for GET of the
+     * estimate, of class NodeRestlet.
+     */
+    @Test
+    public void testGetLocationEstimate() {
+        // the location has been set manually
+        assertNull(this.nodeRestlet.getLocationEstimate());
+        assertEquals(Status.CLIENT_ERROR_NOT_FOUND,
+                this.get(NodeRestlet.ATTRIBUTE_locationEstimate, null, null).getStatus());
+        this.sharedNode.setLocationAbsolute(new Vector3D(1, 2, 3),
+                new LocationEstimate(new Vector3D(1, 2, 3), 0.5, null, Arrays.asList("nodeB")));
+        assertNotNull(this.nodeRestlet.getLocationEstimate());
+        Response response = this.get(NodeRestlet.ATTRIBUTE_locationEstimate, null, null);
+        assertEquals(Status.SUCCESS_OK, response.getStatus());
+        assertEquals(this.nodeRestlet.getLocationEstimate(), response.getEntityAsText());
+    }
+
+    /**
+     * Test of the cache of representations, of class NodeRestletProxy.
+     *
+     * @throws Exception assertion failed with the exception
+     */
+    @Test
+    public void testProxyCache() throws Exception {
+        Component component = new Component();
+        component.getServers().add(Protocol.HTTP, "localhost", PORT);
+        component.getDefaultHost().attach("/nodeA", new NodeRestletApplication(this.sharedNode, null));
+        component.start();
+        try {
+            NodeRestletProxy nodeRestletProxy = new NodeRestletProxy(new ClientResource(ROOT));
+            String info = nodeRestletProxy.getInfo();
+            // the unmodified representation is reused (answered by "304 Not Modified")
+            assertSame(info, nodeRestletProxy.getInfo());
+            NodeData infoObject = nodeRestletProxy.getInfoObject();
+            assertEquals(new Vector3D(0, 0, 0), infoObject.getLocationAbsolute());
+            // the cached object is not modified by the modifications of its copies
+            infoObject.setLocationAbsolute(new Vector3D(9, 9, 9));
+            assertEquals(new Vector3D(0, 0, 0), nodeRestletProxy.getInfoObject().getLocationAbsolute());
+            // the modified representation is requested again
+            nodeRestletProxy.postLocationAbsolute(new Vector3D(1, 2, 3));
+            assertNotSame(info, nodeRestletProxy.getInfo());
+            assertEquals(new Vector3D(1, 2, 3), nodeRestletProxy.getInfoObject().getLocationAbsolute());
+            assertEquals(new Vector3D(1, 2, 3), nodeRestletProxy.getLocationAbsoluteObject());
+            assertEquals(1, nodeRestletProxy.getNodeObject().getScan().size());
+            // the location has not been estimated, then it has been
+            assertNull(nodeRestletProxy.getLocationEstimate());
+            assertNull(nodeRestletProxy.getLocationEstimateObject());
+            this.sharedNode.setLocationAbsolute(new Vector3D(4, 5, 6),
+                    new LocationEstimate(new Vector3D(4, 5, 6), 0.5, null, Arrays.asList("nodeB")));
+            assertEquals(new Vector3D(4, 5, 6), nodeRestletProxy.getLocationEstimateObject().getLocation());
+            assertEquals(this.nodeRestlet.getLocationEstimate(), nodeRestletProxy.getLocationEstimate());
+        }
+        finally {
+            component.stop();
+        }
+    }
+}